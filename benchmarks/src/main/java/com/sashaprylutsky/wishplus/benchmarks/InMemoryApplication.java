@@ -0,0 +1,54 @@
+package com.sashaprylutsky.wishplus.benchmarks;
+
+import com.sashaprylutsky.wishplus.WishPlusApplication;
+import com.sashaprylutsky.wishplus.model.User;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Boots the application on the H2 {@code test} profile for benchmarks that need the real service layer.
+ * SQL logging, the reminder jobs, rate limiting and link previews are switched off so they do not skew
+ * measurements; every client of a benchmark comes from the same address, and seeded wishes point at pages that
+ * do not exist.
+ */
+public final class InMemoryApplication {
+
+    private InMemoryApplication() {
+    }
+
+    /**
+     * @param arguments extra {@code --name=value} arguments, replacing defaults of the same name
+     */
+    public static ConfigurableApplicationContext start(String... arguments) {
+        // command-line arguments outrank spring.profiles.active=prod in application.properties
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.profiles.active=test",
+                "--server.port=0",
+                "--spring.jpa.show-sql=false",
+                "--reminders.enabled=false",
+                "--rate-limit.enabled=false",
+                "--link-preview.enabled=false",
+                "--logging.level.root=WARN"));
+        // a repeated argument would become a comma-separated list, not an override
+        for (String argument : arguments) {
+            args.removeIf(arg -> arg.substring(0, arg.indexOf('=') + 1)
+                    .equals(argument.substring(0, argument.indexOf('=') + 1)));
+        }
+        args.addAll(List.of(arguments));
+        return new SpringApplicationBuilder(WishPlusApplication.class).run(args.toArray(String[]::new));
+    }
+
+    /**
+     * Authenticates the calling thread as the given user, the way {@code JwtAuthenticationFilter} does.
+     */
+    public static void authenticate(Long userId, String username) {
+        User principal = new User(userId, username);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(principal, null, List.of()));
+    }
+}
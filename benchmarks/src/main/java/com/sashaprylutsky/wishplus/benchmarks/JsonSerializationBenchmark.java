@@ -0,0 +1,107 @@
+package com.sashaprylutsky.wishplus.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sashaprylutsky.wishplus.dto.UserView;
+import com.sashaprylutsky.wishplus.dto.WishView;
+import com.sashaprylutsky.wishplus.model.User;
+import com.sashaprylutsky.wishplus.model.Wish;
+import com.sashaprylutsky.wishplus.repository.UserRepository;
+import com.sashaprylutsky.wishplus.repository.WishRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Serializing a page of wishes and users with the application's own {@code ObjectMapper}.
+ * The {@code *Entities} benchmarks write the JPA entities, as the API did before it switched to views;
+ * the {@code *Views} benchmarks write the records the controllers return now. Rows are read from H2 once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonSerializationBenchmark {
+
+    private static final long OWNER_ID = 1;
+
+    @Param({"50", "500"})
+    public int size;
+
+    private ConfigurableApplicationContext context;
+    private ObjectMapper objectMapper;
+    private List<Wish> wishEntities;
+    private List<WishView> wishViews;
+    private List<User> userEntities;
+    private List<UserView> userViews;
+
+    @Setup(Level.Trial)
+    public void loadRows() {
+        context = InMemoryApplication.start();
+        objectMapper = context.getBean(ObjectMapper.class);
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+
+        jdbc.batchUpdate("insert into users (id, email, username, password, first_name, last_name) values (?, ?, ?, ?, ?, ?)",
+                IntStream.rangeClosed(1, size)
+                        .mapToObj(i -> new Object[]{(long) i, "user" + i + "@example.com", "benchmark_" + i,
+                                "$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z3kHhZ8a1Q7ZlZ4Xq9e8J5yG", "First" + i, "Last" + i})
+                        .toList());
+        jdbc.batchUpdate("""
+                        insert into wishlist (user_id, title, description, url, created_at, updated_at, is_archived)
+                        values (?, ?, ?, ?, current_timestamp, current_timestamp, false)
+                        """,
+                IntStream.range(0, size)
+                        .mapToObj(i -> new Object[]{OWNER_ID, "Wish " + i, "Description of wish number " + i,
+                                "https://example.com/items/" + i})
+                        .toList());
+
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        WishRepository wishRepository = context.getBean(WishRepository.class);
+        userViews = userRepository.findPage(0L, Limit.of(size));
+        userEntities = userRepository.findAll();
+        wishViews = wishRepository.findPageByUserId(OWNER_ID, 0L, Limit.of(size));
+        User owner = userEntities.get(0);
+        wishEntities = wishViews.stream()
+                .map(view -> {
+                    Wish wish = new Wish(view.title(), view.description(), view.url());
+                    wish.setId(view.id());
+                    wish.setUser(owner);
+                    wish.setCreatedAt(view.createdAt());
+                    wish.setUpdatedAt(view.updatedAt());
+                    return wish;
+                })
+                .toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] wishEntities() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(wishEntities);
+    }
+
+    @Benchmark
+    public byte[] wishViews() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(wishViews);
+    }
+
+    @Benchmark
+    public byte[] userEntities() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(userEntities);
+    }
+
+    @Benchmark
+    public byte[] userViews() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(userViews);
+    }
+}
@@ -0,0 +1,79 @@
+package com.sashaprylutsky.wishplus.benchmarks;
+
+import com.sashaprylutsky.wishplus.model.User;
+import com.sashaprylutsky.wishplus.security.JwtAuthenticationFilter;
+import com.sashaprylutsky.wishplus.security.JwtService;
+import com.sashaprylutsky.wishplus.security.VerifiedTokenCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One pass of a request through {@code JwtAuthenticationFilter}, including building the authentication
+ * and its web details. {@code uncachedToken} empties the verified-token cache first, so it pays for
+ * the signature check on every call, as the first request with a fresh token does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtAuthenticationFilterBenchmark {
+
+    private static final String SECRET = "a3f4d5e6b7c8d9e0f1a2b3c4d5e6f7a8b9c0d1e2f3a4b5c6d7e8f9a0b1c2d3e4";
+
+    private VerifiedTokenCache verifiedTokens;
+    private JwtAuthenticationFilter filter;
+    private MockHttpServletRequest authenticatedRequest;
+    private MockHttpServletRequest anonymousRequest;
+    private MockHttpServletResponse response;
+    private FilterChain chain;
+
+    @Setup
+    public void setUp() {
+        verifiedTokens = new VerifiedTokenCache(10_000, new SimpleMeterRegistry());
+        JwtService jwtService = new JwtService(SECRET, 3_600_000L, verifiedTokens);
+        filter = new JwtAuthenticationFilter(jwtService);
+
+        String token = jwtService.generateToken(new User(42L, "benchmark_user"));
+        authenticatedRequest = new MockHttpServletRequest("GET", "/api/wishlist/user/42");
+        authenticatedRequest.addHeader("Authorization", "Bearer " + token);
+        anonymousRequest = new MockHttpServletRequest("GET", "/api/users/42");
+        response = new MockHttpServletResponse();
+        chain = (request, response) -> { };
+    }
+
+    @Benchmark
+    public Authentication cachedToken() throws ServletException, IOException {
+        return filter(authenticatedRequest);
+    }
+
+    @Benchmark
+    public Authentication uncachedToken() throws ServletException, IOException {
+        verifiedTokens.invalidateAll();
+        return filter(authenticatedRequest);
+    }
+
+    @Benchmark
+    public Authentication noToken() throws ServletException, IOException {
+        return filter(anonymousRequest);
+    }
+
+    private Authentication filter(MockHttpServletRequest request) throws ServletException, IOException {
+        try {
+            filter.doFilter(request, response, chain);
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.sashaprylutsky.wishplus.benchmarks;
+
+import com.sashaprylutsky.wishplus.model.User;
+import com.sashaprylutsky.wishplus.security.JwtService;
+import com.sashaprylutsky.wishplus.security.VerifiedToken;
+import com.sashaprylutsky.wishplus.security.VerifiedTokenCache;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of issuing and authenticating a bearer token.
+ * {@code legacyFilterPath} replays what {@code JwtAuthenticationFilter} used to do: four full parses,
+ * each with a freshly built parser. The other benchmarks measure signing, the single-parse and the cached paths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtVerificationBenchmark {
+
+    private static final String SECRET = "a3f4d5e6b7c8d9e0f1a2b3c4d5e6f7a8b9c0d1e2f3a4b5c6d7e8f9a0b1c2d3e4";
+
+    private SecretKey secretKey;
+    private JwtService jwtService;
+    private User user;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        secretKey = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        jwtService = new JwtService(SECRET, 3_600_000L,
+                new VerifiedTokenCache(10_000, new SimpleMeterRegistry()));
+        user = new User(42L, "benchmark_user");
+        token = jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public void legacyFilterPath(Blackhole bh) {
+        String subject = legacyParse(token).getSubject();
+        Claims claims = legacyParse(token);
+        bh.consume(claims.get("userId", Long.class));
+        boolean sameSubject = subject.equals(legacyParse(token).getSubject());
+        boolean expired = legacyParse(token).getExpiration().before(new Date());
+        bh.consume(sameSubject && !expired);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public Claims singleParse() {
+        return jwtService.extractAllClaims(token);
+    }
+
+    @Benchmark
+    public VerifiedToken cachedVerify() {
+        return jwtService.verify(token);
+    }
+
+    private Claims legacyParse(String token) {
+        return Jwts.parser()
+                .verifyWith(secretKey)
+                .build()
+                .parseSignedClaims(token)
+                .getPayload();
+    }
+}
@@ -0,0 +1,103 @@
+package com.sashaprylutsky.wishplus.benchmarks;
+
+import com.sashaprylutsky.wishplus.model.User;
+import com.sashaprylutsky.wishplus.security.RateLimitFilter;
+import com.sashaprylutsky.wishplus.security.RateLimitProperties;
+import com.sashaprylutsky.wishplus.security.RateLimitProperties.Key;
+import com.sashaprylutsky.wishplus.security.RateLimitProperties.Policy;
+import com.sashaprylutsky.wishplus.security.TokenBuckets;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of rate limiting per request, with the policies of {@code application.properties} and buckets large
+ * enough that nothing is rejected. {@code authenticated} and {@code anonymous} go through the filter for a search
+ * request, which matches two policies; {@code unmatched} matches none. {@code contended} takes tokens from one
+ * bucket on every thread, {@code spread} from one of 10 000 buckets.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimitFilterBenchmark {
+
+    private static final long LARGE = 1_000_000_000L;
+
+    private RateLimitFilter filter;
+    private TokenBuckets buckets;
+    private MockHttpServletRequest searchRequest;
+    private MockHttpServletRequest unmatchedRequest;
+    private MockHttpServletResponse response;
+    private UsernamePasswordAuthenticationToken authentication;
+    private FilterChain chain;
+
+    @Setup
+    public void setUp() {
+        Map<String, Policy> policies = new LinkedHashMap<>();
+        policies.put("login", new Policy("/api/users/login", Key.IP, LARGE, LARGE));
+        policies.put("register", new Policy("/api/users/register", Key.IP, LARGE, LARGE));
+        policies.put("search", new Policy("/api/users/search/**", Key.USER, LARGE, LARGE));
+        policies.put("api", new Policy("/api/**", Key.USER, LARGE, LARGE));
+        filter = new RateLimitFilter(new RateLimitProperties(true, 100_000, policies), new SimpleMeterRegistry());
+        buckets = new TokenBuckets(LARGE, LARGE, 100_000);
+
+        searchRequest = new MockHttpServletRequest("GET", "/api/users/search/al");
+        searchRequest.setRemoteAddr("203.0.113.7");
+        unmatchedRequest = new MockHttpServletRequest("GET", "/about");
+        response = new MockHttpServletResponse();
+        authentication = new UsernamePasswordAuthenticationToken(new User(42L, "benchmark_user"), null, List.of());
+        chain = (request, response) -> { };
+    }
+
+    @Benchmark
+    public int authenticated() throws ServletException, IOException {
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        try {
+            return filter(searchRequest);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Benchmark
+    public int anonymous() throws ServletException, IOException {
+        return filter(searchRequest);
+    }
+
+    @Benchmark
+    public int unmatched() throws ServletException, IOException {
+        return filter(unmatchedRequest);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long contended() {
+        return buckets.tryAcquire(42L, System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long spread() {
+        return buckets.tryAcquire((long) ThreadLocalRandom.current().nextInt(10_000), System.nanoTime());
+    }
+
+    private int filter(MockHttpServletRequest request) throws ServletException, IOException {
+        filter.doFilter(request, response, chain);
+        return response.getStatus();
+    }
+}
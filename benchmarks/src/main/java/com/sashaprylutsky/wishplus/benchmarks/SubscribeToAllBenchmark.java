@@ -0,0 +1,120 @@
+package com.sashaprylutsky.wishplus.benchmarks;
+
+import com.sashaprylutsky.wishplus.model.DateSubscription;
+import com.sashaprylutsky.wishplus.model.ImportantDate;
+import com.sashaprylutsky.wishplus.model.User;
+import com.sashaprylutsky.wishplus.repository.DateSubscriptionRepository;
+import com.sashaprylutsky.wishplus.service.DataSubscriptionService;
+import jakarta.persistence.EntityManager;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * {@code subscribeToAll} for a followee with many dates, half of which the follower is already subscribed to.
+ * {@code legacyDiff} replays the previous implementation: load both lists, diff with {@code List.contains}
+ * and write one row per statement through {@code saveAll}. {@code setBased} is the current service method.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubscribeToAllBenchmark {
+
+    private static final long FOLLOWER_ID = 1;
+    private static final long FOLLOWEE_ID = 2;
+
+    @Param({"1000", "5000"})
+    public int dates;
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate transaction;
+    private DataSubscriptionService service;
+    private DateSubscriptionRepository subscriptionRepo;
+    private EntityManager entityManager;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = InMemoryApplication.start();
+        jdbc = context.getBean(JdbcTemplate.class);
+        transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        service = context.getBean(DataSubscriptionService.class);
+        subscriptionRepo = context.getBean(DateSubscriptionRepository.class);
+        entityManager = context.getBean(EntityManager.class);
+
+        jdbc.update("insert into users (id, email, username, password) values (?, ?, ?, ?), (?, ?, ?, ?)",
+                FOLLOWER_ID, "follower@example.com", "follower_1", "x",
+                FOLLOWEE_ID, "followee@example.com", "followee_1", "x");
+        LocalDate first = LocalDate.of(1990, 1, 1);
+        jdbc.batchUpdate("insert into important_dates (user_id, title, date, month_day) values (?, ?, ?, ?)",
+                IntStream.range(0, dates)
+                        .mapToObj(i -> {
+                            LocalDate date = first.plusDays(i);
+                            return new Object[]{FOLLOWEE_ID, "date " + i, Date.valueOf(date),
+                                    date.getMonthValue() * 100 + date.getDayOfMonth()};
+                        })
+                        .toList());
+        InMemoryApplication.authenticate(FOLLOWER_ID, "follower_1");
+    }
+
+    @Setup(Level.Iteration)
+    public void subscribeToHalf() {
+        jdbc.update("delete from date_subscriptions");
+        jdbc.update("""
+                insert into date_subscriptions (follower_id, followee_id, important_date_id, subscribed_at)
+                select ?, user_id, id, current_timestamp from important_dates where mod(id, 2) = 0
+                """, FOLLOWER_ID);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public void setBased() {
+        service.subscribeToAll(FOLLOWEE_ID);
+    }
+
+    @Benchmark
+    public void legacyDiff() {
+        transaction.executeWithoutResult(status -> {
+            User principal = new User(FOLLOWER_ID);
+            User followee = new User(FOLLOWEE_ID);
+
+            List<ImportantDate> followeeImportantDates = entityManager
+                    .createQuery("select d from ImportantDate d where d.user.id = :user_id", ImportantDate.class)
+                    .setParameter("user_id", FOLLOWEE_ID)
+                    .getResultList();
+            List<DateSubscription> existingSubscriptions = subscriptionRepo.findAllByFolloweeAndFollower(followee, principal);
+
+            List<Long> existingDateIds = existingSubscriptions.stream()
+                    .map(sub -> sub.getImportantDate().getId())
+                    .toList();
+            List<DateSubscription> subscriptionsToSave = followeeImportantDates.stream()
+                    .filter(date -> !existingDateIds.contains(date.getId()))
+                    .map(date -> new DateSubscription(followee, principal, date))
+                    .toList();
+            List<Long> currentFolloweeDateIds = followeeImportantDates.stream()
+                    .map(ImportantDate::getId)
+                    .toList();
+            List<DateSubscription> subscriptionsToRemove = existingSubscriptions.stream()
+                    .filter(sub -> !currentFolloweeDateIds.contains(sub.getImportantDate().getId()))
+                    .toList();
+
+            subscriptionRepo.deleteAll(subscriptionsToRemove);
+            subscriptionRepo.saveAll(subscriptionsToSave);
+        });
+    }
+}
@@ -0,0 +1,87 @@
+package com.sashaprylutsky.wishplus.benchmarks;
+
+import com.sashaprylutsky.wishplus.search.WishIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Full-text queries against a {@link WishIndex} of 10 000 users with {@code wishes} wishes in total, titles and
+ * descriptions drawn from a vocabulary of 2 000 words with a skewed distribution. {@code followees} keeps the
+ * wishes of 50 users, {@code everyone} all of them; {@code rareWords} looks for two uncommon words,
+ * {@code commonWord} for the most frequent word, which occurs in about 6% of wishes, {@code prefix} types the start of a word.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WishSearchBenchmark {
+
+    private static final int USERS = 10_000;
+    private static final int VOCABULARY = 2_000;
+
+    @Param({"100000"})
+    private int wishes;
+
+    private WishIndex index;
+    private Set<Long> followees;
+    private String rareWords;
+    private String commonWord;
+    private String prefix;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<String> words = LongStream.range(0, VOCABULARY).mapToObj(i -> "w" + Long.toString(i * 7919, 36)).toList();
+        index = new WishIndex();
+        for (long id = 1; id <= wishes; id++) {
+            index.put(id, random.nextInt(USERS), sentence(random, words, 3), sentence(random, words, 12));
+        }
+        followees = LongStream.range(0, 50).map(i -> i * (USERS / 50)).boxed().collect(Collectors.toSet());
+        rareWords = words.get(VOCABULARY - 1) + " " + words.get(VOCABULARY - 2);
+        commonWord = words.get(0);
+        prefix = words.get(1).substring(0, 3);
+    }
+
+    private static String sentence(Random random, List<String> words, int length) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            // squaring skews towards the start of the vocabulary, like word frequencies in real text
+            double skewed = random.nextDouble() * random.nextDouble();
+            sentence.append(words.get((int) (skewed * VOCABULARY))).append(' ');
+        }
+        return sentence.toString();
+    }
+
+    @Benchmark
+    public List<WishIndex.Hit> rareWordsEveryone() {
+        return index.search(rareWords, owner -> true, 20);
+    }
+
+    @Benchmark
+    public List<WishIndex.Hit> rareWordsFollowees() {
+        return index.search(rareWords, followees::contains, 20);
+    }
+
+    @Benchmark
+    public List<WishIndex.Hit> commonWordEveryone() {
+        return index.search(commonWord, owner -> true, 20);
+    }
+
+    @Benchmark
+    public List<WishIndex.Hit> commonWordFollowees() {
+        return index.search(commonWord, followees::contains, 20);
+    }
+
+    @Benchmark
+    public List<WishIndex.Hit> prefixEveryone() {
+        return index.search(prefix, owner -> true, 20);
+    }
+}
@@ -0,0 +1,321 @@
+package com.sashaprylutsky.wishplus.benchmarks.live;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sashaprylutsky.wishplus.benchmarks.InMemoryApplication;
+import com.sashaprylutsky.wishplus.model.User;
+import com.sashaprylutsky.wishplus.security.JwtService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * End-to-end check of live updates: boots the application on the H2 {@code test} profile, opens an event stream
+ * for each of {@value #FOLLOWERS} followers of one owner, and changes the owner's wishes and dates over HTTP.
+ * <p>
+ * Checked: every stream gets {@code ready}, then a {@code wishes} or {@code dates} event for each change carrying the
+ * list's current ETag; a user who does not follow the owner gets nothing; subscribing and unsubscribing take effect
+ * on an open stream; a burst of changes ends with every stream holding the final ETag; opening more than
+ * {@code live.max-connections-per-user} streams closes the oldest. Also measured: request threads busy while the
+ * streams are idle, and the time from a change to its event on the last stream. The process exits with status 1
+ * on any failure.
+ */
+public final class LiveUpdatesCheck {
+
+    private static final int FOLLOWERS = 1000;
+    private static final int BURST = 20;
+    private static final Duration WAIT = Duration.ofSeconds(60);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * Callbacks of every stream run on these two threads, so the client does not add a thread per stream either.
+     */
+    private final ExecutorService clientExecutor = Executors.newFixedThreadPool(2);
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(clientExecutor)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final Map<String, String> results = new LinkedHashMap<>();
+    private final Map<String, String> measurements = new LinkedHashMap<>();
+    private final URI baseUri;
+    private final JwtService jwtService;
+
+    private LiveUpdatesCheck(URI baseUri, JwtService jwtService) {
+        this.baseUri = baseUri;
+        this.jwtService = jwtService;
+    }
+
+    /**
+     * @param args {@code --name=value} arguments for the application
+     */
+    public static void main(String[] args) {
+        ConfigurableApplicationContext context = InMemoryApplication.start(args);
+        int exitCode;
+        LiveUpdatesCheck check = null;
+        try {
+            URI baseUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+            check = new LiveUpdatesCheck(baseUri, context.getBean(JwtService.class));
+            check.run(context.getBean(JdbcTemplate.class), context.getBean(MeterRegistry.class));
+            exitCode = check.report();
+        } catch (RuntimeException | IOException | InterruptedException e) {
+            e.printStackTrace();
+            exitCode = 1;
+        } finally {
+            context.close();
+            if (check != null) {
+                check.clientExecutor.shutdownNow();
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    private void run(JdbcTemplate jdbc, MeterRegistry meterRegistry) throws IOException, InterruptedException {
+        long ownerId = insertUser(jdbc, "live_owner");
+        jdbc.update("insert into important_dates (user_id, title, date, month_day) values (?, ?, ?, ?)",
+                ownerId, "Birthday", Date.valueOf(LocalDate.of(1990, 5, 1)), 501);
+        List<Long> followerIds = new ArrayList<>(FOLLOWERS);
+        for (int i = 0; i < FOLLOWERS; i++) {
+            followerIds.add(insertUser(jdbc, "live_f_%05d".formatted(i)));
+        }
+        jdbc.update("""
+                insert into date_subscriptions (follower_id, followee_id, important_date_id, subscribed_at)
+                select u.id, d.user_id, d.id, current_timestamp from users u, important_dates d
+                where u.username like 'live_f_%' and d.user_id = ?
+                """, ownerId);
+        long strangerId = insertUser(jdbc, "live_stranger");
+        long lateId = insertUser(jdbc, "live_latecomer");
+        String owner = token(ownerId, "live_owner");
+
+        // signed up front, so the timing below is of the server rather than of the signing
+        List<String> followerTokens = new ArrayList<>(FOLLOWERS);
+        for (int i = 0; i < FOLLOWERS; i++) {
+            followerTokens.add(token(followerIds.get(i), "live_f_%05d".formatted(i)));
+        }
+
+        int busyBefore = busyRequestThreads();
+        int threadsBefore = Thread.activeCount();
+        long started = System.nanoTime();
+        List<Stream> followers = new ArrayList<>(FOLLOWERS);
+        for (String token : followerTokens) {
+            followers.add(open(token));
+        }
+        Stream stranger = open(token(strangerId, "live_stranger"));
+        String lateToken = token(lateId, "live_latecomer");
+        Stream late = open(lateToken);
+        expect("every stream gets ready", awaitAll(followers, stream -> stream.count("ready") == 1), "ok");
+        measurements.put("open " + FOLLOWERS + " streams", (System.nanoTime() - started) / 1_000_000 + " ms");
+        Thread.sleep(1000);
+        measurements.put("request threads busy with " + (FOLLOWERS + 2) + " idle streams",
+                busyBefore + " before, " + busyRequestThreads() + " after");
+        measurements.put("JVM threads", threadsBefore + " before, " + Thread.activeCount() + " after");
+
+        started = System.nanoTime();
+        JsonNode wish = JSON.readTree(send("POST", "/api/wishlist", owner,
+                "{\"title\": \"Live wish\", \"description\": \"pushed\", \"url\": \"https://example.com/live\"}").body());
+        expect("every follower gets the new wish", awaitAll(followers, stream -> stream.count("wishes") == 1), "ok");
+        measurements.put("change to event on all " + FOLLOWERS + " streams", (System.nanoTime() - started) / 1_000_000 + " ms");
+        String listETag = send("GET", "/api/wishlist/user/" + ownerId, owner, null).headers().firstValue("ETag").orElse("");
+        Event event = followers.get(FOLLOWERS - 1).last("wishes");
+        expect("event carries the owner and the list ETag",
+                event.data().path("userId").asLong() + " " + event.data().path("etag").asText(), ownerId + " " + listETag);
+        expect("list ETag answers 304", String.valueOf(http.send(request("/api/wishlist/user/" + ownerId, owner)
+                .header("If-None-Match", listETag).build(), HttpResponse.BodyHandlers.discarding()).statusCode()), "304");
+
+        send("POST", "/api/subscription/" + ownerId + "/all", lateToken, null);
+        send("POST", "/api/dates", owner, "{\"title\": \"Anniversary\", \"date\": \"2015-09-12\"}");
+        expect("every follower gets the new date", awaitAll(followers, stream -> stream.count("dates") == 1), "ok");
+        expect("subscribing on an open stream takes effect", awaitAll(List.of(late), stream -> stream.count("dates") == 1), "ok");
+
+        send("DELETE", "/api/subscription/" + ownerId + "/all", lateToken, null);
+        long wishId = wish.get("id").asLong();
+        for (int i = 0; i < BURST; i++) {
+            send("PUT", "/api/wishlist/" + wishId, owner, "{\"title\": \"Live wish " + i + "\"}");
+        }
+        String finalETag = send("GET", "/api/wishlist/user/" + ownerId, owner, null).headers().firstValue("ETag").orElse("");
+        expect("after a burst every stream ends on the final ETag", awaitAll(followers, stream -> {
+            Event last = stream.last("wishes");
+            return last != null && last.data().path("etag").asText().equals(finalETag);
+        }), "ok");
+        long events = followers.stream().mapToLong(stream -> stream.count("wishes") - 1).sum();
+        measurements.put(BURST + " updates, events per stream", "%.1f".formatted((double) events / FOLLOWERS));
+        expect("unsubscribing on an open stream takes effect", String.valueOf(late.count("wishes")), "0");
+        expect("a stranger gets nothing but ready", String.valueOf(stranger.events.size()), "1");
+
+        String repeated = token(followerIds.get(0), "live_f_00000");
+        List<Stream> tabs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tabs.add(open(repeated));
+        }
+        awaitAll(tabs, stream -> stream.count("ready") == 1);
+        expect("more streams than max-connections-per-user close the oldest",
+                awaitAll(List.of(followers.get(0)), stream -> stream.completed), "ok");
+
+        measurements.put("changes queued / coalesced / overflowed", "%.0f / %.0f / %.0f".formatted(
+                meterRegistry.get("live.changes").tag("outcome", "queued").counter().count(),
+                meterRegistry.get("live.changes").tag("outcome", "coalesced").counter().count(),
+                meterRegistry.get("live.changes").tag("outcome", "overflowed").counter().count()));
+    }
+
+    /**
+     * Request threads doing work; idle pool threads wait in the executor's queue.
+     */
+    private static int busyRequestThreads() {
+        int busy = 0;
+        for (Map.Entry<Thread, StackTraceElement[]> thread : Thread.getAllStackTraces().entrySet()) {
+            if (!thread.getKey().getName().contains("-exec-")) {
+                continue;
+            }
+            boolean idle = false;
+            for (StackTraceElement frame : thread.getValue()) {
+                if (frame.getClassName().endsWith("TaskQueue")) {
+                    idle = true;
+                    break;
+                }
+            }
+            if (!idle) {
+                busy++;
+            }
+        }
+        return busy;
+    }
+
+    private String awaitAll(List<Stream> streams, Predicate<Stream> condition) throws InterruptedException {
+        long waitUntil = System.nanoTime() + WAIT.toNanos();
+        while (System.nanoTime() < waitUntil) {
+            if (streams.stream().allMatch(condition)) {
+                return "ok";
+            }
+            Thread.sleep(5);
+        }
+        return streams.stream().filter(condition.negate()).count() + " of " + streams.size() + " streams did not";
+    }
+
+    private Stream open(String token) {
+        Stream stream = new Stream();
+        http.sendAsync(request("/api/live", token).header("Accept", "text/event-stream").build(),
+                HttpResponse.BodyHandlers.fromLineSubscriber(stream));
+        return stream;
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).header("Authorization", "Bearer " + token);
+    }
+
+    private HttpResponse<String> send(String method, String path, String token, String body)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = request(path, token).timeout(Duration.ofSeconds(30));
+        if (body == null) {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            request.header("Content-Type", "application/json").method(method, HttpRequest.BodyPublishers.ofString(body));
+        }
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2) {
+            throw new IllegalStateException(method + " " + path + " returned " + response.statusCode() + ": " + response.body());
+        }
+        return response;
+    }
+
+    private String token(long userId, String username) {
+        return jwtService.generateToken(new User(userId, username));
+    }
+
+    private static long insertUser(JdbcTemplate jdbc, String username) {
+        jdbc.update("insert into users (email, username, password, first_name, last_name) values (?, ?, ?, ?, ?)",
+                username + "@example.com", username, "not-used", "Live", "Check");
+        return jdbc.queryForObject("select id from users where username = ?", Long.class, username);
+    }
+
+    private void expect(String name, String actual, String expected) {
+        results.put(name, actual.equals(expected) ? "ok" : "FAIL: expected " + expected + ", got " + actual);
+    }
+
+    private int report() {
+        System.out.printf("%nLive updates, %d followers of one owner%n", FOLLOWERS);
+        results.forEach((name, result) -> System.out.printf("%-62s %s%n", name, result));
+        measurements.forEach((name, value) -> System.out.printf("%-62s %s%n", name, value));
+        return results.values().stream().allMatch("ok"::equals) ? 0 : 1;
+    }
+
+    private record Event(String name, JsonNode data) {
+    }
+
+    /**
+     * Parses a server-sent event stream as its lines arrive.
+     */
+    private static final class Stream implements Flow.Subscriber<String> {
+
+        private final List<Event> events = new CopyOnWriteArrayList<>();
+        private volatile boolean completed;
+        private String name;
+        private StringBuilder data = new StringBuilder();
+
+        long count(String event) {
+            return events.stream().filter(e -> e.name().equals(event)).count();
+        }
+
+        Event last(String event) {
+            Event last = null;
+            for (Event e : events) {
+                if (e.name().equals(event)) {
+                    last = e;
+                }
+            }
+            return last;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.isEmpty()) {
+                if (name != null) {
+                    try {
+                        events.add(new Event(name, JSON.readTree(data.toString())));
+                    } catch (IOException e) {
+                        events.add(new Event("unparsable", null));
+                    }
+                }
+                name = null;
+                data = new StringBuilder();
+            } else if (line.startsWith("event:")) {
+                name = line.substring("event:".length()).strip();
+            } else if (line.startsWith("data:")) {
+                data.append(line.substring("data:".length()));
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed = true;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.sashaprylutsky.wishplus.benchmarks.load;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Latencies and failed statuses of one endpoint. Each client thread records into its own instance,
+ * and the instances are merged once the step is over, so recording never contends.
+ */
+final class LatencyRecorder {
+
+    private long[] latencies = new long[1024];
+    private int count;
+    private final Map<Integer, Integer> failures = new TreeMap<>();
+
+    void record(long nanos, int status) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+        if (status < 200 || status >= 400) {
+            failures.merge(status, 1, Integer::sum);
+        }
+    }
+
+    void merge(LatencyRecorder other) {
+        if (count + other.count > latencies.length) {
+            latencies = Arrays.copyOf(latencies, Math.max(latencies.length * 2, count + other.count));
+        }
+        System.arraycopy(other.latencies, 0, latencies, count, other.count);
+        count += other.count;
+        other.failures.forEach((status, n) -> failures.merge(status, n, Integer::sum));
+    }
+
+    int count() {
+        return count;
+    }
+
+    int failureCount() {
+        return failures.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * Failed requests by status, e.g. {@code 503x12}; status 0 stands for an I/O error.
+     */
+    String failures() {
+        StringBuilder sb = new StringBuilder();
+        failures.forEach((status, n) -> sb.append(sb.isEmpty() ? "" : " ").append(status).append('x').append(n));
+        return sb.toString();
+    }
+
+    /**
+     * Latency percentiles in milliseconds, in the order of {@code quantiles}; the recorder is sorted in place.
+     */
+    double[] percentilesMillis(double... quantiles) {
+        Arrays.sort(latencies, 0, count);
+        double[] result = new double[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            if (count > 0) {
+                int index = (int) Math.min(count - 1, Math.ceil(quantiles[i] * count) - 1);
+                result[i] = latencies[Math.max(index, 0)] / 1e6;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+package com.sashaprylutsky.wishplus.benchmarks.load;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Command-line options of {@link LoadTest}, all given as {@code --name=value}.
+ * Options this class does not know are passed on to the application,
+ * e.g. {@code --spring.datasource.hikari.maximum-pool-size=10}.
+ */
+record LoadOptions(int users,
+                   int wishesPerUser,
+                   int datesPerUser,
+                   int followeesPerUser,
+                   List<Integer> clients,
+                   Duration warmup,
+                   Duration duration,
+                   Duration thinkTime,
+                   List<String> applicationArgs) {
+
+    static LoadOptions parse(String... args) {
+        int users = 1000;
+        int wishesPerUser = 20;
+        int datesPerUser = 10;
+        int followeesPerUser = 5;
+        List<Integer> clients = List.of(10, 50, 100, 200);
+        Duration warmup = Duration.ofSeconds(10);
+        Duration duration = Duration.ofSeconds(30);
+        Duration thinkTime = Duration.ZERO;
+        List<String> applicationArgs = new ArrayList<>();
+
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            switch (name) {
+                case "users" -> users = Integer.parseInt(value);
+                case "wishes-per-user" -> wishesPerUser = Integer.parseInt(value);
+                case "dates-per-user" -> datesPerUser = Integer.parseInt(value);
+                case "followees-per-user" -> followeesPerUser = Integer.parseInt(value);
+                case "clients" -> clients = Arrays.stream(value.split(",")).map(String::trim).map(Integer::valueOf).toList();
+                case "warmup" -> warmup = Duration.ofSeconds(Long.parseLong(value));
+                case "duration" -> duration = Duration.ofSeconds(Long.parseLong(value));
+                case "think-time" -> thinkTime = Duration.ofMillis(Long.parseLong(value));
+                default -> applicationArgs.add(arg);
+            }
+        }
+        if (users < 2 || followeesPerUser >= users) {
+            throw new IllegalArgumentException("Need at least two users and fewer followees per user than users");
+        }
+        return new LoadOptions(users, wishesPerUser, datesPerUser, followeesPerUser, clients,
+                warmup, duration, thinkTime, List.copyOf(applicationArgs));
+    }
+}
@@ -0,0 +1,105 @@
+package com.sashaprylutsky.wishplus.benchmarks.load;
+
+import com.sashaprylutsky.wishplus.search.UsernameSearch;
+import com.sashaprylutsky.wishplus.search.WishSearch;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Fills the in-memory database with users, their wishes and dates, and date subscriptions to their next
+ * {@code followeesPerUser} users. Rows go in through JDBC batches, so seeding a large data set takes seconds.
+ */
+final class LoadSeeder {
+
+    static final String PASSWORD = "load-test-password";
+
+    private static final String[] NAMES = {"alice", "bogdan", "carla", "dmytro", "elena", "fedir", "galina",
+            "hanna", "ivan", "julia", "kateryna", "lev", "maria", "nazar", "olena", "petro", "roman", "sofia",
+            "taras", "uliana", "viktor", "yaroslav", "zoryana"};
+    private static final int BATCH = 1000;
+
+    private final JdbcTemplate jdbc;
+    private final PasswordEncoder encoder;
+    private final UsernameSearch usernameSearch;
+    private final WishSearch wishSearch;
+
+    LoadSeeder(ConfigurableApplicationContext context) {
+        this.jdbc = context.getBean(JdbcTemplate.class);
+        this.encoder = context.getBean(PasswordEncoder.class);
+        this.usernameSearch = context.getBean(UsernameSearch.class);
+        this.wishSearch = context.getBean(WishSearch.class);
+    }
+
+    /**
+     * @return ids of the seeded users, in the order of their usernames' numbers
+     */
+    List<Long> seed(LoadOptions options) {
+        // one hash for everyone: hashing thousands of passwords would dominate the seeding time
+        String passwordHash = encoder.encode(PASSWORD);
+        insertInBatches("insert into users (email, username, password, first_name, last_name) values (?, ?, ?, ?, ?)",
+                options.users(), i -> new Object[]{"user" + i + "@example.com", username(i), passwordHash,
+                        NAMES[i % NAMES.length], "Load" + i});
+        List<Long> userIds = jdbc.queryForList("select id from users order by id", Long.class);
+
+        insertInBatches("""
+                        insert into wishlist (user_id, title, description, url, created_at, updated_at, is_archived)
+                        values (?, ?, ?, ?, current_timestamp, current_timestamp, false)
+                        """,
+                options.users() * options.wishesPerUser(), i -> new Object[]{
+                        userIds.get(i / options.wishesPerUser()), "Wish " + i,
+                        "Something nice, number " + i, "https://example.com/items/" + i});
+
+        LocalDate first = LocalDate.of(1980, 1, 1);
+        insertInBatches("insert into important_dates (user_id, title, date, month_day) values (?, ?, ?, ?)",
+                options.users() * options.datesPerUser(), i -> {
+                    LocalDate date = first.plusDays(i * 37L % 20_000);
+                    return new Object[]{userIds.get(i / options.datesPerUser()), "Date " + i, Date.valueOf(date),
+                            date.getMonthValue() * 100 + date.getDayOfMonth()};
+                });
+
+        insertInBatches("""
+                        insert into date_subscriptions (follower_id, followee_id, important_date_id, subscribed_at)
+                        select ?, user_id, id, current_timestamp from important_dates where user_id = ?
+                        """,
+                options.users() * options.followeesPerUser(), i -> {
+                    int follower = i / options.followeesPerUser();
+                    return new Object[]{userIds.get(follower), userIds.get(followee(follower, i % options.followeesPerUser(), options))};
+                });
+
+        usernameSearch.rebuild();
+        wishSearch.rebuild();
+        return userIds;
+    }
+
+    /**
+     * Index of the {@code n}-th user followed by the user at {@code follower}.
+     */
+    static int followee(int follower, int n, LoadOptions options) {
+        return (follower + n + 1) % options.users();
+    }
+
+    static String username(int i) {
+        return "%s_%06d".formatted(NAMES[i % NAMES.length], i);
+    }
+
+    static String searchPrefix(int i) {
+        String name = NAMES[i % NAMES.length];
+        return name.substring(0, Math.min(name.length(), 2 + i % 3));
+    }
+
+    private void insertInBatches(String sql, int rows, IntFunction<Object[]> row) {
+        for (int from = 0; from < rows; from += BATCH) {
+            List<Object[]> batch = new ArrayList<>(BATCH);
+            IntStream.range(from, Math.min(rows, from + BATCH)).mapToObj(row).forEach(batch::add);
+            jdbc.batchUpdate(sql, batch);
+        }
+    }
+}
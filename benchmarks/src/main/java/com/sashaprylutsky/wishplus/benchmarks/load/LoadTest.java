@@ -0,0 +1,159 @@
+package com.sashaprylutsky.wishplus.benchmarks.load;
+
+import com.sashaprylutsky.wishplus.benchmarks.InMemoryApplication;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test: boots the application on the H2 {@code test} profile, seeds it and drives it over HTTP
+ * with an increasing number of concurrent {@link VirtualUser}s. Each step prints throughput and latency
+ * percentiles per endpoint together with the time requests spent waiting for a pooled connection,
+ * and a summary at the end shows where p99 latency starts to climb. See {@code benchmarks/README.md}.
+ */
+public final class LoadTest {
+
+    private static final double[] QUANTILES = {0.50, 0.95, 0.99};
+
+    private final LoadOptions options;
+    private final URI baseUri;
+    private final List<Long> userIds;
+    private final MeterRegistry meterRegistry;
+    private final Map<Integer, String> sessions = new ConcurrentHashMap<>();
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private LoadTest(LoadOptions options, URI baseUri, List<Long> userIds, MeterRegistry meterRegistry) {
+        this.options = options;
+        this.baseUri = baseUri;
+        this.userIds = userIds;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadOptions options = LoadOptions.parse(args);
+        ConfigurableApplicationContext context = InMemoryApplication.start(options.applicationArgs().toArray(String[]::new));
+        int exitCode = 0;
+        try {
+            long seedingStart = System.nanoTime();
+            List<Long> userIds = new LoadSeeder(context).seed(options);
+            System.out.printf("Seeded %d users, %d wishes, %d dates, %d followees per user in %.1f s%n",
+                    options.users(), options.users() * options.wishesPerUser(), options.users() * options.datesPerUser(),
+                    options.followeesPerUser(), (System.nanoTime() - seedingStart) / 1e9);
+
+            URI baseUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+            LoadTest test = new LoadTest(options, baseUri, userIds, context.getBean(MeterRegistry.class));
+            test.openSessions(options.clients().stream().mapToInt(Integer::intValue).max().orElse(0));
+            List<String> summary = new ArrayList<>();
+            for (int clients : options.clients()) {
+                summary.add(test.runStep(clients));
+            }
+            System.out.println();
+            System.out.println("Summary");
+            System.out.printf("%8s %10s %9s %9s %9s %8s %14s %12s%n",
+                    "clients", "req/s", "p50 ms", "p95 ms", "p99 ms", "errors", "conn wait ms", "max pending");
+            summary.forEach(System.out::println);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            exitCode = 1;
+        } finally {
+            context.close();
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Logs every client in before the first step, so steps measure steady traffic rather than a login storm:
+     * each login costs a BCrypt check, and the hashing pool only has a few threads.
+     */
+    private void openSessions(int clients) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(clients, 16));
+        for (int i = 0; i < clients; i++) {
+            VirtualUser user = new VirtualUser(http, baseUri, options, userIds, i % userIds.size(), sessions, 0, 0, i);
+            executor.execute(user::openSession);
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        System.out.printf("Logged in %d clients in %.1f s%n", clients, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Runs one step with a fixed number of clients and returns its summary line.
+     */
+    private String runStep(int clients) throws InterruptedException {
+        long measureFrom = System.nanoTime() + options.warmup().toNanos();
+        long stopAt = measureFrom + options.duration().toNanos();
+        List<VirtualUser> users = new ArrayList<>(clients);
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        for (int i = 0; i < clients; i++) {
+            VirtualUser user = new VirtualUser(http, baseUri, options, userIds, i % userIds.size(),
+                    sessions, measureFrom, stopAt, 31L * clients + i);
+            users.add(user);
+            executor.execute(user);
+        }
+
+        TimeUnit.NANOSECONDS.sleep(Math.max(0, measureFrom - System.nanoTime()));
+        Timer acquire = meterRegistry.find("hikaricp.connections.acquire").timer();
+        Gauge pending = meterRegistry.find("hikaricp.connections.pending").gauge();
+        long acquiredBefore = acquire == null ? 0 : acquire.count();
+        double acquireMillisBefore = acquire == null ? 0 : acquire.totalTime(TimeUnit.MILLISECONDS);
+        double maxPending = 0;
+        while (System.nanoTime() < stopAt) {
+            maxPending = Math.max(maxPending, pending == null ? 0 : pending.value());
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        long acquired = acquire == null ? 0 : acquire.count() - acquiredBefore;
+        double connectionWait = acquired == 0 ? 0
+                : (acquire.totalTime(TimeUnit.MILLISECONDS) - acquireMillisBefore) / acquired;
+
+        executor.shutdown();
+        if (!executor.awaitTermination(2, TimeUnit.MINUTES)) {
+            executor.shutdownNow();
+        }
+
+        Map<String, LatencyRecorder> byEndpoint = new TreeMap<>();
+        LatencyRecorder total = new LatencyRecorder();
+        for (VirtualUser user : users) {
+            user.recorders().forEach((endpoint, recorder) -> {
+                byEndpoint.computeIfAbsent(endpoint, key -> new LatencyRecorder()).merge(recorder);
+                total.merge(recorder);
+            });
+        }
+
+        double seconds = options.duration().toNanos() / 1e9;
+        System.out.println();
+        System.out.printf("%d clients, %d s measured after %d s warmup%n",
+                clients, options.duration().toSeconds(), options.warmup().toSeconds());
+        System.out.printf("%-34s %8s %8s %9s %9s %9s  %s%n", "endpoint", "count", "req/s", "p50 ms", "p95 ms", "p99 ms", "failures");
+        byEndpoint.forEach((endpoint, recorder) -> printRow(endpoint, recorder, seconds));
+        printRow("all", total, seconds);
+        System.out.printf("connection pool: %d acquisitions, mean wait %.3f ms, max pending %.0f%n",
+                acquired, connectionWait, maxPending);
+
+        double[] p = total.percentilesMillis(QUANTILES);
+        return "%8d %10.1f %9.1f %9.1f %9.1f %8d %14.3f %12.0f".formatted(clients, total.count() / seconds,
+                p[0], p[1], p[2], total.failureCount(), connectionWait, maxPending);
+    }
+
+    private static void printRow(String endpoint, LatencyRecorder recorder, double seconds) {
+        double[] p = recorder.percentilesMillis(QUANTILES);
+        System.out.printf("%-34s %8d %8.1f %9.1f %9.1f %9.1f  %s%n", endpoint, recorder.count(),
+                recorder.count() / seconds, p[0], p[1], p[2], recorder.failures());
+    }
+}
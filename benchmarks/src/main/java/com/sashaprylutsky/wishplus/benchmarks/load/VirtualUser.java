@@ -0,0 +1,224 @@
+package com.sashaprylutsky.wishplus.benchmarks.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One simulated client: logs in as a seeded user, then keeps picking weighted actions until the step ends.
+ * The mix leans on reads (wish lists, search, upcoming dates) with a share of wishlist writes and
+ * subscribe-to-all fan-out. Registrations are rare, as in real traffic: with a one-hour token a client
+ * hashes a password once per session, and each hash costs as much CPU as hundreds of reads.
+ */
+final class VirtualUser implements Runnable {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final AtomicLong REGISTRATIONS = new AtomicLong(1_000_000_000L);
+    private static final int MAX_OWN_WISHES = 20;
+
+    private final HttpClient http;
+    private final URI baseUri;
+    private final LoadOptions options;
+    private final List<Long> userIds;
+    private final int userIndex;
+    private final long measureFrom;
+    private final long stopAt;
+    private final SplittableRandom random;
+    private final Map<String, LatencyRecorder> recorders = new HashMap<>();
+    private final Deque<Long> ownWishes = new ArrayDeque<>();
+    private final Map<Integer, String> sessions;
+    private String token;
+
+    /**
+     * @param sessions tokens by user index, shared across steps so a client only logs in once per test
+     */
+    VirtualUser(HttpClient http, URI baseUri, LoadOptions options, List<Long> userIds, int userIndex,
+                Map<Integer, String> sessions, long measureFrom, long stopAt, long seed) {
+        this.http = http;
+        this.baseUri = baseUri;
+        this.options = options;
+        this.userIds = userIds;
+        this.userIndex = userIndex;
+        this.sessions = sessions;
+        this.measureFrom = measureFrom;
+        this.stopAt = stopAt;
+        this.random = new SplittableRandom(seed);
+    }
+
+    Map<String, LatencyRecorder> recorders() {
+        return recorders;
+    }
+
+    /**
+     * Logs in, retrying while the login endpoint is busy, and keeps the token for later steps.
+     */
+    void openSession() {
+        while (sessions.get(userIndex) == null && !Thread.currentThread().isInterrupted()) {
+            String token = login(LoadSeeder.username(userIndex));
+            if (token != null) {
+                sessions.put(userIndex, token);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        token = sessions.get(userIndex);
+        while (System.nanoTime() < stopAt && !Thread.currentThread().isInterrupted()) {
+            if (token == null) {
+                token = login(LoadSeeder.username(userIndex));
+                if (token != null) {
+                    sessions.put(userIndex, token);
+                }
+            } else {
+                act(random.nextInt(1000));
+            }
+            pause();
+        }
+    }
+
+    private void act(int dice) {
+        if (dice < 330) {
+            send("GET /api/wishlist/user/{id}", get("/api/wishlist/user/" + randomUserId() + "?limit=50"));
+        } else if (dice < 480) {
+            send("GET /api/users/search/{prefix}",
+                    get("/api/users/search/" + LoadSeeder.searchPrefix(random.nextInt(options.users()))));
+        } else if (dice < 560) {
+            send("GET /api/users/{id}", get("/api/users/" + randomUserId()));
+        } else if (dice < 660) {
+            send("GET /api/dates/upcoming", get("/api/dates/upcoming?days=30"));
+        } else if (dice < 760 || ownWishes.isEmpty()) {
+            if (ownWishes.size() >= MAX_OWN_WISHES) {
+                deleteWish();
+            } else {
+                createWish();
+            }
+        } else if (dice < 810) {
+            send("GET /api/wishlist/{id}", get("/api/wishlist/" + ownWishes.peekLast()));
+        } else if (dice < 890) {
+            send("PUT /api/wishlist/{id}", json("PUT", "/api/wishlist/" + ownWishes.peekLast(),
+                    wishJson("Updated " + random.nextInt(1000))));
+        } else if (dice < 955) {
+            deleteWish();
+        } else if (dice < 995) {
+            int followee = LoadSeeder.followee(userIndex, random.nextInt(options.followeesPerUser()), options);
+            send("POST /api/subscription/{id}/all",
+                    json("POST", "/api/subscription/" + userIds.get(followee) + "/all", ""));
+        } else {
+            registerAndLogin();
+        }
+    }
+
+    private void createWish() {
+        HttpResponse<String> response = send("POST /api/wishlist",
+                json("POST", "/api/wishlist", wishJson("Wish " + random.nextInt(1000))));
+        if (response != null && response.statusCode() == 200) {
+            ownWishes.addLast(readLong(response.body(), "id"));
+        }
+    }
+
+    private void deleteWish() {
+        Long id = ownWishes.pollFirst();
+        if (id != null) {
+            send("DELETE /api/wishlist/{id}", json("DELETE", "/api/wishlist/" + id, ""));
+        }
+    }
+
+    private void registerAndLogin() {
+        String username = "newuser_" + REGISTRATIONS.incrementAndGet();
+        send("POST /api/users/register", json("POST", "/api/users/register", """
+                {"email":"%s@example.com","username":"%s","password":"%s","firstName":"New","lastName":"User"}
+                """.formatted(username, username, LoadSeeder.PASSWORD)));
+        login(username);
+    }
+
+    private String login(String username) {
+        HttpResponse<String> response = send("POST /api/users/login", HttpRequest.newBuilder(baseUri.resolve("/api/users/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("""
+                        {"username":"%s","password":"%s"}""".formatted(username, LoadSeeder.PASSWORD))));
+        if (response != null && response.statusCode() == 200) {
+            return response.body();
+        }
+        // a real client backs off instead of hammering a busy login endpoint
+        sleep(response == null ? Duration.ofSeconds(1) : response.headers().firstValueAsLong("Retry-After")
+                .stream().mapToObj(Duration::ofSeconds).findFirst().orElse(Duration.ofSeconds(1)));
+        return null;
+    }
+
+    private HttpResponse<String> send(String endpoint, HttpRequest.Builder request) {
+        long start = System.nanoTime();
+        HttpResponse<String> response = null;
+        int status;
+        try {
+            response = http.send(request.timeout(Duration.ofSeconds(60)).build(), HttpResponse.BodyHandlers.ofString());
+            status = response.statusCode();
+        } catch (IOException e) {
+            status = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (start >= measureFrom && start < stopAt) {
+            recorders.computeIfAbsent(endpoint, key -> new LatencyRecorder()).record(System.nanoTime() - start, status);
+        }
+        return response;
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .header("Authorization", "Bearer " + token)
+                .GET();
+    }
+
+    private HttpRequest.Builder json(String method, String path, String body) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private long randomUserId() {
+        return userIds.get(random.nextInt(userIds.size()));
+    }
+
+    private static String wishJson(String title) {
+        return """
+                {"title":"%s","description":"Added by the load test","url":"https://example.com/gift"}
+                """.formatted(title);
+    }
+
+    private static long readLong(String json, String field) {
+        try {
+            return JSON.readTree(json).get(field).asLong();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unexpected response: " + json, e);
+        }
+    }
+
+    private void pause() {
+        if (!options.thinkTime().isZero()) {
+            sleep(options.thinkTime());
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
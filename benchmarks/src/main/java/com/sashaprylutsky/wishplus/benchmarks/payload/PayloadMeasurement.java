@@ -0,0 +1,199 @@
+package com.sashaprylutsky.wishplus.benchmarks.payload;
+
+import com.sashaprylutsky.wishplus.benchmarks.InMemoryApplication;
+import com.sashaprylutsky.wishplus.search.UsernameSearch;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Measures what large list responses cost: bytes on the wire and heap allocated on the server per request,
+ * for the paged and the streamed variants of the wish list and user list endpoints, with and without gzip.
+ * A single profile shows how a response under {@code server.compression.min-response-size} is sent.
+ * <p>
+ * Allocation is the sum of {@code com.sun.management.ThreadMXBean#getThreadAllocatedBytes} over the server's
+ * threads, so it covers the request thread and the async thread of streamed responses. Requests run one at a
+ * time, so the difference over a batch of requests divided by its size is the allocation of one request.
+ * See {@code benchmarks/README.md}.
+ */
+public final class PayloadMeasurement {
+
+    private static final String PASSWORD = "payload-password";
+    private static final int BATCH = 1000;
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final URI baseUri;
+    private final String token;
+    private final int requests;
+
+    private PayloadMeasurement(URI baseUri, String token, int requests) {
+        this.baseUri = baseUri;
+        this.token = token;
+        this.requests = requests;
+    }
+
+    /**
+     * @param args {@code --rows=N} rows per list (5000 by default), {@code --requests=N} measured requests per
+     *             row of the table (50 by default); any other {@code --name=value} goes to the application
+     */
+    public static void main(String[] args) {
+        int rows = 5000;
+        int requests = 50;
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--rows=")) {
+                rows = Integer.parseInt(arg.substring("--rows=".length()));
+            } else if (arg.startsWith("--requests=")) {
+                requests = Integer.parseInt(arg.substring("--requests=".length()));
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+        if (rows < 1 || requests < 1) {
+            throw new IllegalArgumentException("Need at least one row and one request");
+        }
+
+        ConfigurableApplicationContext context = InMemoryApplication.start(applicationArgs.toArray(String[]::new));
+        int exitCode = 0;
+        try {
+            long ownerId = seed(context, rows);
+            URI baseUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+            PayloadMeasurement measurement = new PayloadMeasurement(baseUri, login(baseUri), requests);
+
+            System.out.printf("%n%d wishes of one user, %d users; %d requests per row, one at a time%n", rows, rows, requests);
+            System.out.printf("%-36s %-9s %12s %12s %14s %9s%n",
+                    "endpoint", "encoding", "JSON bytes", "wire bytes", "alloc KB/req", "mean ms");
+            for (String path : List.of(
+                    "/api/wishlist/user/" + ownerId + "?limit=500",
+                    "/api/wishlist/user/" + ownerId + "?stream=true",
+                    "/api/users?limit=500",
+                    "/api/users?stream=true",
+                    "/api/users/" + ownerId)) {
+                int jsonBytes = measurement.measure(path, "identity", 0);
+                measurement.measure(path, "gzip", jsonBytes);
+            }
+        } catch (RuntimeException | IOException | InterruptedException e) {
+            e.printStackTrace();
+            exitCode = 1;
+        } finally {
+            context.close();
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Prints one row of the table.
+     *
+     * @param encoding  value of {@code Accept-Encoding}
+     * @param jsonBytes size of the uncompressed body, for the {@code gzip} row
+     * @return size of the body as received
+     */
+    private int measure(String path, String encoding, int jsonBytes) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(path))
+                .header("Authorization", "Bearer " + token)
+                .header("Accept-Encoding", encoding)
+                .timeout(Duration.ofSeconds(60))
+                .build();
+        for (int i = 0; i < Math.max(10, requests / 5); i++) {
+            send(request);
+        }
+
+        long allocatedBefore = serverAllocatedBytes();
+        long start = System.nanoTime();
+        HttpResponse<byte[]> response = null;
+        for (int i = 0; i < requests; i++) {
+            response = send(request);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = serverAllocatedBytes() - allocatedBefore;
+        int wireBytes = response.body().length;
+        // what the server actually sent: identity when compression is off or the body is under the threshold
+        String received = response.headers().firstValue("Content-Encoding").orElse("identity");
+
+        System.out.printf("%-36s %-9s %12s %12d %14.0f %9.2f%n", path.replaceAll("/\\d+", "/{id}"), received,
+                jsonBytes == 0 ? String.valueOf(wireBytes) : String.valueOf(jsonBytes), wireBytes,
+                allocated / 1024.0 / requests, elapsed / 1e6 / requests);
+        return wireBytes;
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(request.uri() + " returned " + response.statusCode());
+        }
+        return response;
+    }
+
+    /**
+     * Bytes allocated so far by every live thread except this one and the HTTP client's.
+     */
+    private long serverAllocatedBytes() {
+        long total = 0;
+        for (var info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info != null && info.getThreadId() != Thread.currentThread().getId()
+                    && !info.getThreadName().startsWith("HttpClient")) {
+                total += Math.max(0, threads.getThreadAllocatedBytes(info.getThreadId()));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Inserts {@code rows} users, the first of whom owns {@code rows} wishes.
+     *
+     * @return id of the wish owner
+     */
+    private static long seed(ConfigurableApplicationContext context, int rows) {
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        String passwordHash = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+        for (int from = 0; from < rows; from += BATCH) {
+            jdbc.batchUpdate("insert into users (email, username, password, first_name, last_name) values (?, ?, ?, ?, ?)",
+                    IntStream.range(from, Math.min(rows, from + BATCH))
+                            .mapToObj(i -> new Object[]{"payload" + i + "@example.com", "payload_%06d".formatted(i),
+                                    passwordHash, "First" + i, "Last" + i})
+                            .toList());
+        }
+        long ownerId = jdbc.queryForObject("select id from users where username = 'payload_000000'", Long.class);
+        for (int from = 0; from < rows; from += BATCH) {
+            jdbc.batchUpdate("""
+                            insert into wishlist (user_id, title, description, url, created_at, updated_at, is_archived)
+                            values (?, ?, ?, ?, current_timestamp, current_timestamp, false)
+                            """,
+                    IntStream.range(from, Math.min(rows, from + BATCH))
+                            .mapToObj(i -> new Object[]{ownerId, "Wish " + i, "Something nice, number " + i,
+                                    "https://example.com/items/" + i})
+                            .toList());
+        }
+        context.getBean(UsernameSearch.class).rebuild();
+        return ownerId;
+    }
+
+    private static String login(URI baseUri) throws IOException, InterruptedException {
+        HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(baseUri.resolve("/api/users/login"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(
+                                "{\"username\":\"payload_000000\",\"password\":\"" + PASSWORD + "\"}"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Login returned " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,278 @@
+package com.sashaprylutsky.wishplus.benchmarks.photo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sashaprylutsky.wishplus.benchmarks.InMemoryApplication;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end check of profile photos: boots the application on the H2 {@code test} profile with photos stored in a
+ * temporary directory, uploads a generated image over HTTP and reads it back the way a browser would, without a
+ * token.
+ * <p>
+ * Checked: the content-addressed id, deduplication of the same upload, caching headers, {@code 304} on
+ * {@code If-None-Match}, single and suffix ranges, {@code If-Range}, {@code 416}, {@code HEAD}, the original
+ * standing in for a thumbnail until the background pool has made it, the thumbnail itself, rejection of oversized
+ * uploads (declared and streamed) and of non-images, and that a photo url cannot be set through the JSON body.
+ * The process exits with status 1 on any failure.
+ */
+public final class PhotoCheck {
+
+    private static final String PASSWORD = "photo-password";
+    private static final int MAX_UPLOAD_BYTES = 1024 * 1024;
+    private static final Duration WAIT = Duration.ofSeconds(20);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final Map<String, String> results = new LinkedHashMap<>();
+    private final URI baseUri;
+    private final String token;
+
+    private PhotoCheck(URI baseUri, String token) {
+        this.baseUri = baseUri;
+        this.token = token;
+    }
+
+    /**
+     * @param args {@code --name=value} arguments for the application
+     */
+    public static void main(String[] args) throws IOException {
+        Path storage = Files.createTempDirectory("wishplus-photos");
+        String[] applicationArgs = Stream.concat(Stream.of(
+                        "--photos.storage-path=" + storage,
+                        "--photos.max-upload-bytes=" + MAX_UPLOAD_BYTES),
+                Arrays.stream(args)).toArray(String[]::new);
+
+        ConfigurableApplicationContext context = InMemoryApplication.start(applicationArgs);
+        int exitCode;
+        try {
+            URI baseUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+            PhotoCheck check = new PhotoCheck(baseUri, login(baseUri, seed(context)));
+            check.run(storage, context.getBean(MeterRegistry.class));
+            exitCode = check.report();
+        } catch (RuntimeException | IOException | InterruptedException | NoSuchAlgorithmException e) {
+            e.printStackTrace();
+            exitCode = 1;
+        } finally {
+            context.close();
+        }
+        System.exit(exitCode);
+    }
+
+    private void run(Path storage, MeterRegistry meterRegistry)
+            throws IOException, InterruptedException, NoSuchAlgorithmException {
+        byte[] png = image(1200, 800);
+        String sha = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(png));
+        String photoUrl = "/api/photos/" + sha + ".png";
+
+        HttpResponse<String> uploaded = upload(HttpRequest.BodyPublishers.ofByteArray(png), "image/png");
+        expect("upload answers 200", String.valueOf(uploaded.statusCode()), "200");
+        expect("profile points at the content hash", JSON.readTree(uploaded.body()).path("profilePhoto").asText(), photoUrl);
+        expect("same upload, same photo",
+                JSON.readTree(upload(HttpRequest.BodyPublishers.ofByteArray(png), "image/png").body())
+                        .path("profilePhoto").asText(), photoUrl);
+        expect("/me shows the photo", JSON.readTree(get("/api/users/me", true, Map.of()).body())
+                .path("profilePhoto").asText(), photoUrl);
+
+        HttpResponse<byte[]> original = get(photoUrl, false, Map.of());
+        expect("original served without a token", String.valueOf(original.statusCode()), "200");
+        expect("original bytes", String.valueOf(Arrays.equals(original.body(), png)), "true");
+        expect("original Content-Type", header(original, "Content-Type"), "image/png");
+        expect("original ETag", header(original, "ETag"), "\"" + sha + "\"");
+        expect("original Cache-Control", header(original, "Cache-Control"), "public, max-age=31536000, immutable");
+        expect("Accept-Ranges", header(original, "Accept-Ranges"), "bytes");
+
+        String etag = header(original, "ETag");
+        expect("If-None-Match answers 304",
+                String.valueOf(get(photoUrl, false, Map.of("If-None-Match", etag)).statusCode()), "304");
+
+        HttpResponse<byte[]> range = get(photoUrl, false, Map.of("Range", "bytes=100-1123"));
+        expect("range answers 206", String.valueOf(range.statusCode()), "206");
+        expect("range Content-Range", header(range, "Content-Range"), "bytes 100-1123/" + png.length);
+        expect("range bytes", String.valueOf(Arrays.equals(range.body(), Arrays.copyOfRange(png, 100, 1124))), "true");
+        HttpResponse<byte[]> suffix = get(photoUrl, false, Map.of("Range", "bytes=-64"));
+        expect("suffix range bytes",
+                String.valueOf(Arrays.equals(suffix.body(), Arrays.copyOfRange(png, png.length - 64, png.length))), "true");
+        expect("If-Range with another ETag answers the whole photo", String.valueOf(get(photoUrl, false,
+                Map.of("Range", "bytes=0-9", "If-Range", "\"stale\"")).body().length), String.valueOf(png.length));
+        HttpResponse<byte[]> unsatisfiable = get(photoUrl, false, Map.of("Range", "bytes=" + png.length + "-"));
+        expect("range past the end answers 416", unsatisfiable.statusCode() + " " + header(unsatisfiable, "Content-Range"),
+                "416 bytes */" + png.length);
+        HttpResponse<Void> head = http.send(HttpRequest.newBuilder(baseUri.resolve(photoUrl))
+                .method("HEAD", HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding());
+        expect("HEAD Content-Length", head.statusCode() + " " + head.headers().firstValue("Content-Length").orElse(""),
+                "200 " + png.length);
+
+        // the thumbnail is made in the background; until then the original stands in and must not be cached
+        long waitUntil = System.nanoTime() + WAIT.toNanos();
+        HttpResponse<byte[]> thumbnail = get(photoUrl + "?size=256", false, Map.of());
+        while (header(thumbnail, "Content-Type").equals("image/png") && System.nanoTime() < waitUntil) {
+            expect("original standing in is revalidated", header(thumbnail, "Cache-Control"), "public, no-cache");
+            Thread.sleep(50);
+            thumbnail = get(photoUrl + "?size=256", false, Map.of());
+        }
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(thumbnail.body()));
+        expect("thumbnail is a 256x256 JPEG", header(thumbnail, "Content-Type") + " "
+                + (decoded == null ? "undecodable" : decoded.getWidth() + "x" + decoded.getHeight()), "image/jpeg 256x256");
+        expect("thumbnail ETag", header(thumbnail, "ETag"), "\"" + sha + "-256\"");
+        expect("thumbnail Cache-Control", header(thumbnail, "Cache-Control"), "public, max-age=31536000, immutable");
+        HttpResponse<byte[]> small = waitFor(photoUrl + "?size=64", waitUntil);
+        expect("64 px thumbnail", header(small, "ETag"), "\"" + sha + "-64\"");
+        expect("one thumbnail job for both sizes and the repeated upload",
+                String.valueOf((long) meterRegistry.get("photo.thumbnails").tag("outcome", "created").counter().count()), "1");
+
+        expect("size that is not configured answers 400",
+                String.valueOf(get(photoUrl + "?size=100", false, Map.of()).statusCode()), "400");
+        expect("unknown photo answers 404",
+                String.valueOf(get("/api/photos/" + "0".repeat(64) + ".png", false, Map.of()).statusCode()), "404");
+        expect("malformed id answers 404",
+                String.valueOf(get("/api/photos/..%2Fsecret.png", false, Map.of()).statusCode() / 100), "4");
+
+        expect("text answers 415", String.valueOf(upload(HttpRequest.BodyPublishers.ofString("hello, not a photo"),
+                "image/png").statusCode()), "415");
+        byte[] large = new byte[MAX_UPLOAD_BYTES + 1];
+        System.arraycopy(png, 0, large, 0, 16);
+        expect("declared length over the limit answers 413",
+                String.valueOf(upload(HttpRequest.BodyPublishers.ofByteArray(large), "image/png").statusCode()), "413");
+        // without a Content-Length the body goes out chunked and is only counted as it is read
+        InputStream streamed = new SequenceInputStream(new ByteArrayInputStream(png),
+                new ByteArrayInputStream(new byte[MAX_UPLOAD_BYTES]));
+        expect("streamed body over the limit answers 413", String.valueOf(upload(
+                HttpRequest.BodyPublishers.ofInputStream(() -> streamed), "image/png").statusCode()), "413");
+        try (Stream<Path> incoming = Files.list(storage.resolve("incoming"))) {
+            expect("rejected uploads leave no files behind", String.valueOf(incoming.count()), "0");
+        }
+        expect("profile keeps its photo after rejected uploads", JSON.readTree(get("/api/users/me", true, Map.of())
+                .body()).path("profilePhoto").asText(), photoUrl);
+
+        HttpResponse<byte[]> deleted = send(HttpRequest.newBuilder(baseUri.resolve("/api/users/me/photo"))
+                .header("Authorization", "Bearer " + token).DELETE());
+        expect("DELETE removes the photo from the profile",
+                JSON.readTree(deleted.body()).path("profilePhoto").isNull() ? "ok" : new String(deleted.body()), "ok");
+
+        HttpResponse<byte[]> registered = send(HttpRequest.newBuilder(baseUri.resolve("/api/users/register"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"photo_registrant\",\"password\":\"" + PASSWORD
+                        + "\",\"email\":\"registrant@example.com\",\"profilePhoto\":\"http://example.com/x.jpg\"}")));
+        expect("profilePhoto in a JSON body is ignored", registered.statusCode() + " "
+                + JSON.readTree(registered.body()).path("profilePhoto"), "201 null");
+    }
+
+    private HttpResponse<byte[]> waitFor(String path, long waitUntil) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = get(path, false, Map.of());
+        while (!header(response, "Content-Type").equals("image/jpeg") && System.nanoTime() < waitUntil) {
+            Thread.sleep(50);
+            response = get(path, false, Map.of());
+        }
+        return response;
+    }
+
+    /**
+     * A PNG of the given size with a gradient, so it does not compress to nearly nothing.
+     */
+    private static byte[] image(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, new Color(30, 60, 200, 128)));
+        graphics.fillRect(0, 0, width, height);
+        graphics.setColor(Color.BLACK);
+        for (int x = 0; x < width; x += 37) {
+            graphics.drawLine(x, 0, width - x, height);
+        }
+        graphics.dispose();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        return bytes.toByteArray();
+    }
+
+    private HttpResponse<String> upload(HttpRequest.BodyPublisher body, String contentType)
+            throws IOException, InterruptedException {
+        return http.send(HttpRequest.newBuilder(baseUri.resolve("/api/users/me/photo"))
+                        .header("Authorization", "Bearer " + token)
+                        .header("Content-Type", contentType)
+                        .timeout(Duration.ofSeconds(30))
+                        .PUT(body)
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<byte[]> get(String path, boolean authenticated, Map<String, String> headers)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(baseUri.resolve(path)).GET();
+        if (authenticated) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        headers.forEach(request::header);
+        return send(request);
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return http.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static String header(HttpResponse<?> response, String name) {
+        return response.headers().firstValue(name).orElse("");
+    }
+
+    private void expect(String name, String actual, String expected) {
+        results.put(name, actual.equals(expected) ? "ok" : "FAIL: expected " + expected + ", got " + actual);
+    }
+
+    private int report() {
+        System.out.printf("%nProfile photos, uploads of at most %d bytes%n", MAX_UPLOAD_BYTES);
+        results.forEach((name, result) -> System.out.printf("%-56s %s%n", name, result));
+        return results.values().stream().allMatch("ok"::equals) ? 0 : 1;
+    }
+
+    private static String seed(ConfigurableApplicationContext context) {
+        String username = "photo_owner";
+        context.getBean(JdbcTemplate.class).update(
+                "insert into users (email, username, password, first_name, last_name) values (?, ?, ?, ?, ?)",
+                "photo@example.com", username, context.getBean(PasswordEncoder.class).encode(PASSWORD), "Photo", "Owner");
+        return username;
+    }
+
+    private static String login(URI baseUri, String username) throws IOException, InterruptedException {
+        HttpResponse<String> response = HttpClient.newHttpClient().send(HttpRequest.newBuilder(baseUri.resolve("/api/users/login"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(
+                                "{\"username\":\"" + username + "\",\"password\":\"" + PASSWORD + "\"}"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Login returned " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+}
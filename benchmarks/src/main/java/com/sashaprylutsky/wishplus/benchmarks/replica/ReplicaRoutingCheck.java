@@ -0,0 +1,355 @@
+package com.sashaprylutsky.wishplus.benchmarks.replica;
+
+import com.sashaprylutsky.wishplus.benchmarks.InMemoryApplication;
+import com.sashaprylutsky.wishplus.model.User;
+import com.sashaprylutsky.wishplus.security.JwtService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * End-to-end check of read/write routing: boots the application on the H2 {@code test} profile with a second
+ * in-memory H2 database as the replica. Nothing replicates between the two on its own: the check copies the primary
+ * over the replica every {@value #COPY_EVERY_MILLIS} ms, and pauses the copies when it wants the replica behind.
+ * The schema is copied once; each copy replaces the rows of every table in one replica transaction, so the
+ * application never reads a half-copied replica.
+ * <p>
+ * Checked: reads of another client go to the replica and miss what it lacks, with the ETag the replica has; a
+ * client's own writes, including a registration followed by a login, are read from the primary through the
+ * last-write cookie, which each client here keeps like a browser would; a streamed list follows its owner's writes
+ * to the primary on the async thread; a replica behind by more than {@code datasource.replica.max-lag-millis} gets
+ * no reads; once it has caught up and the read-your-writes window has passed, all reads go to it again. The process
+ * exits with status 1 on any failure.
+ */
+public final class ReplicaRoutingCheck {
+
+    private static final String REPLICA_URL = "jdbc:h2:mem:replicadb;DB_CLOSE_DELAY=-1;MODE=MYSQL";
+    private static final long MAX_LAG_MILLIS = 5000;
+    private static final long READ_YOUR_WRITES_MILLIS = 6000;
+    private static final long COPY_EVERY_MILLIS = 250;
+    private static final Duration WAIT = Duration.ofSeconds(20);
+
+    private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final Map<String, String> results = new LinkedHashMap<>();
+    private final Map<String, String> measurements = new LinkedHashMap<>();
+    private final URI baseUri;
+    private final JwtService jwtService;
+    private final MeterRegistry meterRegistry;
+    private final JdbcTemplate primary;
+    private final ScheduledExecutorService replicator = Executors.newSingleThreadScheduledExecutor();
+    private volatile boolean replicating;
+    private final List<String> tables = new ArrayList<>();
+    /**
+     * token, or "" when anonymous -> the last-write cookie the client was last given
+     */
+    private final Map<String, String> lastWrites = new HashMap<>();
+
+    private ReplicaRoutingCheck(URI baseUri, JwtService jwtService, MeterRegistry meterRegistry, JdbcTemplate primary) {
+        this.baseUri = baseUri;
+        this.jwtService = jwtService;
+        this.meterRegistry = meterRegistry;
+        this.primary = primary;
+    }
+
+    /**
+     * @param args {@code --name=value} arguments for the application
+     */
+    public static void main(String[] args) {
+        String[] arguments = new String[args.length + 5];
+        arguments[0] = "--datasource.replica.enabled=true";
+        arguments[1] = "--datasource.replica.max-lag-millis=" + MAX_LAG_MILLIS;
+        arguments[2] = "--datasource.replica.read-your-writes-millis=" + READ_YOUR_WRITES_MILLIS;
+        arguments[3] = "--datasource.replica.heartbeat-millis=100";
+        // registration and login hash passwords; at the default strength they would outlast the lag allowed
+        arguments[4] = "--password-encoder-strength=4";
+        System.arraycopy(args, 0, arguments, 5, args.length);
+        ConfigurableApplicationContext context = InMemoryApplication.start(arguments);
+        int exitCode;
+        ReplicaRoutingCheck check = null;
+        try {
+            URI baseUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+            JdbcTemplate primary = new JdbcTemplate(context.getBean("primaryDataSource", DataSource.class));
+            check = new ReplicaRoutingCheck(baseUri, context.getBean(JwtService.class),
+                    context.getBean(MeterRegistry.class), primary);
+            check.run();
+            exitCode = check.report();
+        } catch (RuntimeException | IOException | InterruptedException | SQLException e) {
+            e.printStackTrace();
+            exitCode = 1;
+        } finally {
+            if (check != null) {
+                check.replicator.shutdownNow();
+            }
+            context.close();
+        }
+        System.exit(exitCode);
+    }
+
+    private void run() throws IOException, InterruptedException, SQLException {
+        long ownerId = insertUser("replica_owner");
+        long readerId = insertUser("replica_reader");
+        String owner = token(ownerId, "replica_owner");
+        String reader = token(readerId, "replica_reader");
+        copySchema();
+        long started = System.nanoTime();
+        replicate();
+        measurements.put("copy the primary to the replica", (System.nanoTime() - started) / 1_000_000 + " ms");
+        replicating = true;
+        replicator.scheduleWithFixedDelay(this::replicateIfOn, 0, COPY_EVERY_MILLIS, TimeUnit.MILLISECONDS);
+        expect("replica catches up", await(() -> lag() < MAX_LAG_MILLIS), "ok");
+
+        double replicaReads = routed("replica", "read");
+        expect("another client's list read goes to the replica",
+                String.valueOf(get("/api/users?limit=500", reader).contains("replica_owner")
+                        && routed("replica", "read") > replicaReads), "true");
+
+        String ownersList = "/api/wishlist/user/" + ownerId;
+        String etagBefore = send("GET", ownersList, reader, null).headers().firstValue("ETag").orElse("none");
+
+        // nothing of this reaches the replica until the copies resume
+        pauseReplication();
+        started = System.nanoTime();
+        send("POST", "/api/wishlist", owner, "{\"title\": \"Replica wish\", \"description\": \"routing\"}");
+        String newUser = "{\"email\": \"replica_new@example.com\", \"username\": \"replica_new\", "
+                + "\"password\": \"secret-password\", \"firstName\": \"New\", \"lastName\": \"User\"}";
+        send("POST", "/api/users/register", null, newUser);
+
+        double ownWrites = routed("primary", "own-write");
+        expect("the writer reads its own write from the primary",
+                String.valueOf(get(ownersList, owner).contains("Replica wish")), "true");
+        replicaReads = routed("replica", "read");
+        HttpResponse<String> othersView = send("GET", ownersList, reader, null);
+        expect("another client reads the list and its ETag from the replica",
+                String.valueOf(!othersView.body().contains("Replica wish")
+                        && othersView.headers().firstValue("ETag").orElse("none").equals(etagBefore)
+                        && routed("replica", "read") >= replicaReads + 2), "true");
+        expect("a streamed list follows its owner's write to the primary",
+                String.valueOf(get(ownersList + "?stream=true", owner).contains("Replica wish")
+                        && routed("primary", "own-write") > ownWrites), "true");
+        expect("login right after registering, with the registration's cookie",
+                String.valueOf(send("POST", "/api/users/login", null,
+                        "{\"username\": \"replica_new\", \"password\": \"secret-password\"}").statusCode()), "200");
+        expect("another client misses what the replica lacks",
+                String.valueOf(get("/api/users?limit=500", reader).contains("replica_new")), "false");
+
+        measurements.put("writes and reads while the replica is behind", (System.nanoTime() - started) / 1_000_000
+                + " ms of the " + MAX_LAG_MILLIS + " ms allowed");
+
+        double laggingReads = routed("primary", "lagging");
+        expect("a replica behind by more than max-lag gets no reads", await(() -> {
+            try {
+                return get("/api/users?limit=500", reader).contains("replica_new");
+            } catch (IOException | InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }), "ok");
+        measurements.put("lag when reads moved to the primary", "over " + MAX_LAG_MILLIS + " ms, "
+                + Math.round(routed("primary", "lagging") - laggingReads) + " reads sent there");
+
+        replicating = true;
+        expect("replica catches up once the copies resume", await(() -> lag() < MAX_LAG_MILLIS), "ok");
+        replicaReads = routed("replica", "read");
+        expect("another client reads the new user from the replica",
+                String.valueOf(get("/api/users?limit=500", reader).contains("replica_new")
+                        && routed("replica", "read") > replicaReads), "true");
+
+        Thread.sleep(READ_YOUR_WRITES_MILLIS);
+        replicaReads = routed("replica", "read");
+        expect("the writer reads from the replica once it has caught up",
+                String.valueOf(get(ownersList, owner).contains("Replica wish")
+                        && routed("replica", "read") > replicaReads), "true");
+        expect("both pools report metrics", meterRegistry.find("hikaricp.connections").tag("pool", "primary").gauge() != null
+                && meterRegistry.find("hikaricp.connections").tag("pool", "replica").gauge() != null ? "ok" : "missing", "ok");
+
+        int reads = 200;
+        double before = routed("replica", "read");
+        started = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            get("/api/users?limit=50", reader);
+        }
+        measurements.put(reads + " list reads of an idle client", "%.0f on the replica, %d ms".formatted(
+                routed("replica", "read") - before, (System.nanoTime() - started) / 1_000_000));
+    }
+
+    private synchronized void replicateIfOn() {
+        if (!replicating) {
+            return;
+        }
+        try {
+            replicate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns once no copy is running, so nothing written after it reaches the replica.
+     */
+    private synchronized void pauseReplication() {
+        replicating = false;
+    }
+
+    /**
+     * Creates the primary's tables on the replica, without foreign keys so tables can be refilled in any order.
+     */
+    private void copySchema() throws IOException, SQLException {
+        Path script = Files.createTempFile("replica", ".sql");
+        try {
+            primary.execute("script nodata to '" + script + "'");
+            try (Connection replica = DriverManager.getConnection(REPLICA_URL, "sa", "");
+                 Statement statement = replica.createStatement()) {
+                statement.execute("drop all objects");
+                statement.execute("runscript from '" + script + "'");
+                List<String[]> foreignKeys = new ArrayList<>();
+                try (ResultSet rows = statement.executeQuery("select table_name, constraint_name "
+                        + "from information_schema.table_constraints where constraint_type = 'FOREIGN KEY'")) {
+                    while (rows.next()) {
+                        foreignKeys.add(new String[]{rows.getString(1), rows.getString(2)});
+                    }
+                }
+                for (String[] foreignKey : foreignKeys) {
+                    statement.execute("alter table \"" + foreignKey[0] + "\" drop constraint \""
+                            + foreignKey[1] + "\"");
+                }
+                try (ResultSet rows = statement.executeQuery(
+                        "select table_name from information_schema.tables where table_schema = 'PUBLIC'")) {
+                    // quoted, as Flyway's history table has a lower-case name
+                    while (rows.next()) {
+                        tables.add('"' + rows.getString(1) + '"');
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(script);
+        }
+    }
+
+    /**
+     * Copies the rows of the primary over the replica, the way the replica would have caught up: read from one
+     * snapshot of the primary, written in one replica transaction.
+     */
+    private void replicate() throws SQLException {
+        try (Connection from = primary.getDataSource().getConnection();
+             Connection to = DriverManager.getConnection(REPLICA_URL, "sa", "")) {
+            from.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            from.setAutoCommit(false);
+            to.setAutoCommit(false);
+            for (String table : tables) {
+                try (Statement delete = to.createStatement()) {
+                    delete.execute("delete from " + table);
+                }
+                try (Statement select = from.createStatement();
+                     ResultSet rows = select.executeQuery("select * from " + table)) {
+                    int columns = rows.getMetaData().getColumnCount();
+                    try (PreparedStatement insert = to.prepareStatement(
+                            "insert into " + table + " values (" + "?, ".repeat(columns - 1) + "?)")) {
+                        while (rows.next()) {
+                            for (int column = 1; column <= columns; column++) {
+                                insert.setObject(column, rows.getObject(column));
+                            }
+                            insert.addBatch();
+                        }
+                        insert.executeBatch();
+                    }
+                }
+            }
+            to.commit();
+            from.commit();
+        }
+    }
+
+    private double lag() {
+        return meterRegistry.get("replica.lag").timeGauge().value(TimeUnit.MILLISECONDS);
+    }
+
+    private double routed(String target, String reason) {
+        return meterRegistry.get("replica.routing").tag("target", target).tag("reason", reason).counter().count();
+    }
+
+    private String await(Supplier<Boolean> condition) throws InterruptedException {
+        long waitUntil = System.nanoTime() + WAIT.toNanos();
+        while (System.nanoTime() < waitUntil) {
+            if (condition.get()) {
+                return "ok";
+            }
+            Thread.sleep(50);
+        }
+        return "timed out";
+    }
+
+    private String get(String path, String token) throws IOException, InterruptedException {
+        return send("GET", path, token, null).body();
+    }
+
+    private HttpResponse<String> send(String method, String path, String token, String body)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(baseUri.resolve(path)).timeout(Duration.ofSeconds(30));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        String client = token == null ? "" : token;
+        String lastWrite = lastWrites.get(client);
+        if (lastWrite != null) {
+            request.header("Cookie", lastWrite);
+        }
+        if (body == null) {
+            request.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            request.header("Content-Type", "application/json").method(method, HttpRequest.BodyPublishers.ofString(body));
+        }
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        response.headers().allValues("Set-Cookie").stream()
+                .filter(cookie -> cookie.startsWith("last-write="))
+                .forEach(cookie -> lastWrites.put(client, cookie.substring(0, cookie.indexOf(';'))));
+        if (response.statusCode() / 100 != 2) {
+            throw new IllegalStateException(method + " " + path + " returned " + response.statusCode() + ": " + response.body());
+        }
+        return response;
+    }
+
+    private String token(long userId, String username) {
+        return jwtService.generateToken(new User(userId, username));
+    }
+
+    private long insertUser(String username) {
+        primary.update("insert into users (email, username, password, first_name, last_name) values (?, ?, ?, ?, ?)",
+                username + "@example.com", username, "not-used", "Replica", "Check");
+        return primary.queryForObject("select id from users where username = ?", Long.class, username);
+    }
+
+    private void expect(String name, String actual, String expected) {
+        results.put(name, actual.equals(expected) ? "ok" : "FAIL: expected " + expected + ", got " + actual);
+    }
+
+    private int report() {
+        System.out.printf("%nRead/write routing to a replica%n");
+        results.forEach((name, result) -> System.out.printf("%-62s %s%n", name, result));
+        measurements.forEach((name, value) -> System.out.printf("%-62s %s%n", name, value));
+        return results.values().stream().allMatch("ok"::equals) ? 0 : 1;
+    }
+}
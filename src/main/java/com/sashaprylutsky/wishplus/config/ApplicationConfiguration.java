@@ -1,9 +1,11 @@
 package com.sashaprylutsky.wishplus.config;
 
-import com.sashaprylutsky.wishplus.repository.UserRepository;
+import com.sashaprylutsky.wishplus.pagination.CursorPage;
+import com.sashaprylutsky.wishplus.service.UserLookup;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -19,18 +21,18 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 @Configuration
 public class ApplicationConfiguration {
 
-    private final UserRepository userRepo;
+    private final UserLookup userLookup;
 
     @Value("${password-encoder-strength}")
     private int encoderStrength;
 
-    public ApplicationConfiguration(UserRepository userRepo) {
-        this.userRepo = userRepo;
+    public ApplicationConfiguration(UserLookup userLookup) {
+        this.userLookup = userLookup;
     }
 
     @Bean
     public UserDetailsService userDetailsService() {
-        return username -> userRepo.findUserByUsername(username)
+        return username -> userLookup.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User %s not found".formatted(username)));
     }
 
@@ -60,6 +62,8 @@ public class ApplicationConfiguration {
         config.addAllowedOrigin("http://localhost:3000"); // Точно вказуємо фронтенд
         config.addAllowedHeader("*"); // Дозволяємо всі заголовки
         config.addAllowedMethod("*"); // Дозволяємо всі методи (GET, POST тощо)
+        config.addExposedHeader(CursorPage.NEXT_CURSOR_HEADER); // Курсор наступної сторінки для списків
+        config.addExposedHeader(HttpHeaders.ETAG); // Для умовних запитів з If-None-Match
         source.registerCorsConfiguration("/**", config); // Застосовуємо до всіх шляхів
         return source;
     }
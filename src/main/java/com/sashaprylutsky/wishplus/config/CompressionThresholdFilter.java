@@ -0,0 +1,122 @@
+package com.sashaprylutsky.wishplus.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Makes {@code server.compression.min-response-size} apply to JSON responses.
+ * <p>
+ * Tomcat only checks the threshold against a known {@code Content-Length}. Jackson flushes the output stream
+ * after writing a body, which commits the response as chunked before its length is known, so even a 100-byte
+ * body would be gzipped. This filter holds back flushes of JSON bodies until they reach the threshold:
+ * a smaller body stays in Tomcat's buffer until the request ends and goes out uncompressed with its length,
+ * a larger one is flushed, and compressed, as before. Other content types, e.g. event streams, flush as usual.
+ */
+@Component
+@ConditionalOnProperty(name = "server.compression.enabled", havingValue = "true")
+public class CompressionThresholdFilter extends OncePerRequestFilter {
+
+    private final long minResponseSize;
+
+    public CompressionThresholdFilter(@Value("${server.compression.min-response-size}") DataSize minResponseSize) {
+        this.minResponseSize = minResponseSize.toBytes();
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        filterChain.doFilter(request, new ThresholdResponse(response, minResponseSize));
+    }
+
+    private static class ThresholdResponse extends HttpServletResponseWrapper {
+
+        private final long minResponseSize;
+        private ThresholdOutputStream outputStream;
+
+        ThresholdResponse(HttpServletResponse response, long minResponseSize) {
+            super(response);
+            this.minResponseSize = minResponseSize;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new ThresholdOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (!holdsBack()) {
+                super.flushBuffer();
+            }
+        }
+
+        private boolean holdsBack() {
+            long written = outputStream == null ? 0 : outputStream.written;
+            String contentType = getContentType();
+            return written < minResponseSize && contentType != null
+                    && MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(contentType));
+        }
+
+        private class ThresholdOutputStream extends ServletOutputStream {
+
+            private final ServletOutputStream delegate;
+            private long written;
+
+            ThresholdOutputStream(ServletOutputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                delegate.write(b);
+                written++;
+            }
+
+            @Override
+            public void write(@NonNull byte[] b, int off, int len) throws IOException {
+                delegate.write(b, off, len);
+                written += len;
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (!holdsBack()) {
+                    delegate.flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                delegate.close();
+            }
+
+            @Override
+            public boolean isReady() {
+                return delegate.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                delegate.setWriteListener(writeListener);
+            }
+        }
+    }
+}
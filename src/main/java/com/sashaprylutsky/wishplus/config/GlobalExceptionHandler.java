@@ -1,7 +1,13 @@
 package com.sashaprylutsky.wishplus.config;
 
+import com.sashaprylutsky.wishplus.live.LiveUpdatesBusyException;
+import com.sashaprylutsky.wishplus.photo.PhotoTooLargeException;
+import com.sashaprylutsky.wishplus.photo.UnsupportedPhotoTypeException;
+import com.sashaprylutsky.wishplus.security.PasswordHashingBusyException;
+import com.sashaprylutsky.wishplus.service.BulkValidationException;
 import jakarta.persistence.NoResultException;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.AccessDeniedException;
@@ -42,6 +48,38 @@ public class GlobalExceptionHandler {
         return ResponseEntity.badRequest().body(errors);
     }
 
+    @ExceptionHandler(BulkValidationException.class)
+    public ResponseEntity<Map<String, String>> handleBulkValidation(BulkValidationException e) {
+        return ResponseEntity.badRequest().body(e.getErrors());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleIllegalArgument(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(PasswordHashingBusyException.class)
+    public ResponseEntity<Map<String, String>> handlePasswordHashingBusy(PasswordHashingBusyException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                .body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(LiveUpdatesBusyException.class)
+    public ResponseEntity<Map<String, String>> handleLiveUpdatesBusy(LiveUpdatesBusyException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(PhotoTooLargeException.class)
+    public ResponseEntity<Map<String, String>> handlePhotoTooLarge(PhotoTooLargeException e) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(UnsupportedPhotoTypeException.class)
+    public ResponseEntity<Map<String, String>> handleUnsupportedPhotoType(UnsupportedPhotoTypeException e) {
+        return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).body(Map.of("error", e.getMessage()));
+    }
+
     @ExceptionHandler(NullPointerException.class)
     public ResponseEntity<Map<String, String>> handleNullPointerException(NullPointerException e) {
         return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", e.getMessage()));
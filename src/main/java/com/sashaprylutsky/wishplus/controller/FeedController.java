@@ -0,0 +1,29 @@
+package com.sashaprylutsky.wishplus.controller;
+
+import com.sashaprylutsky.wishplus.dto.FeedEntry;
+import com.sashaprylutsky.wishplus.service.FeedService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/feed")
+public class FeedController {
+
+    private final FeedService service;
+
+    public FeedController(FeedService service) {
+        this.service = service;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<FeedEntry>> getFeed(@RequestParam(required = false) String cursor,
+                                                   @RequestParam(defaultValue = "20") int limit,
+                                                   @RequestParam(defaultValue = "3") int wishes) {
+        return service.getFeed(cursor, limit, wishes).toResponse();
+    }
+}
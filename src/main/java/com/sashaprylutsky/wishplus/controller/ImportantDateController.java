@@ -1,9 +1,16 @@
 package com.sashaprylutsky.wishplus.controller;
 
+import com.sashaprylutsky.wishplus.dto.ImportantDateView;
+import com.sashaprylutsky.wishplus.dto.UpcomingDate;
 import com.sashaprylutsky.wishplus.model.ImportantDate;
+import com.sashaprylutsky.wishplus.pagination.CursorPage;
+import com.sashaprylutsky.wishplus.pagination.JsonArrayStreamer;
 import com.sashaprylutsky.wishplus.service.ImportantDateService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -12,34 +19,59 @@ import java.util.List;
 public class ImportantDateController {
 
     private final ImportantDateService service;
+    private final JsonArrayStreamer streamer;
 
-    public ImportantDateController(ImportantDateService service) {
+    public ImportantDateController(ImportantDateService service, JsonArrayStreamer streamer) {
         this.service = service;
+        this.streamer = streamer;
     }
 
     @PostMapping
-    public ResponseEntity<ImportantDate> createImportantDate(@RequestBody ImportantDate importantDate) {
+    public ResponseEntity<ImportantDateView> createImportantDate(@RequestBody ImportantDate importantDate) {
         ImportantDate record = service.createRecord(importantDate);
-        return ResponseEntity.ok(record);
+        return ResponseEntity.ok(ImportantDateView.from(record));
+    }
+
+    @GetMapping("/upcoming")
+    public ResponseEntity<List<UpcomingDate>> getUpcomingRecords(@RequestParam(defaultValue = "7") int days,
+                                                                 @RequestParam(defaultValue = "0") int page,
+                                                                 @RequestParam(defaultValue = "20") int size) {
+        List<UpcomingDate> dates = service.getUpcomingSubscribedRecords(days, page, size);
+        return ResponseEntity.ok(dates);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<ImportantDate> getRecordById(@PathVariable Long id) {
-        ImportantDate record = service.getRecordById(id);
+    public ResponseEntity<ImportantDateView> getRecordById(@PathVariable Long id, WebRequest request) {
+        ImportantDateView record = service.getRecordById(id);
+        if (request.checkNotModified(service.getRecordETag(record))) {
+            return null;
+        }
         return ResponseEntity.ok(record);
     }
 
     @GetMapping("/user/{id}")
-    public ResponseEntity<List<ImportantDate>> getRecordsByUserId(@PathVariable Long id) {
-        List<ImportantDate> dates = service.getRecordsByUserId(id);
-        return ResponseEntity.ok(dates);
+    public ResponseEntity<List<ImportantDateView>> getRecordsByUserId(@PathVariable Long id,
+                                                                  @RequestParam(required = false) String cursor,
+                                                                  @RequestParam(defaultValue = CursorPage.DEFAULT_LIMIT) int limit,
+                                                                  WebRequest request) {
+        if (request.checkNotModified(service.getRecordListETag(id, cursor, limit))) {
+            return null;
+        }
+        return service.getRecordsByUserId(id, cursor, limit).toResponse();
+    }
+
+    @GetMapping(value = "/user/{id}", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamRecordsByUserId(@PathVariable Long id) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(streamer.stream(() -> service.streamRecordsByUserId(id)));
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<ImportantDate> updateRecordById(@PathVariable Long id,
-                                                          @RequestBody ImportantDate importantDate) {
+    public ResponseEntity<ImportantDateView> updateRecordById(@PathVariable Long id,
+                                                              @RequestBody ImportantDate importantDate) {
         ImportantDate record = service.updateRecordById(id, importantDate);
-        return ResponseEntity.ok(record);
+        return ResponseEntity.ok(ImportantDateView.from(record));
     }
 
     @DeleteMapping("/{id}")
@@ -0,0 +1,27 @@
+package com.sashaprylutsky.wishplus.controller;
+
+import com.sashaprylutsky.wishplus.live.LiveUpdates;
+import com.sashaprylutsky.wishplus.service.UserService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/live")
+public class LiveController {
+
+    private final LiveUpdates liveUpdates;
+    private final UserService userService;
+
+    public LiveController(LiveUpdates liveUpdates, UserService userService) {
+        this.liveUpdates = liveUpdates;
+        this.userService = userService;
+    }
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter live() {
+        return liveUpdates.connect(userService.getPrincipal().getId());
+    }
+}
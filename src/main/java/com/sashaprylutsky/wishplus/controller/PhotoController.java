@@ -0,0 +1,31 @@
+package com.sashaprylutsky.wishplus.controller;
+
+import com.sashaprylutsky.wishplus.photo.Photos;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/photos")
+public class PhotoController {
+
+    private final Photos photos;
+
+    public PhotoController(Photos photos) {
+        this.photos = photos;
+    }
+
+    @GetMapping("/{id}")
+    public void getPhoto(@PathVariable String id,
+                         @RequestParam(required = false) Integer size,
+                         HttpServletRequest request,
+                         HttpServletResponse response) throws IOException {
+        photos.send(id, size, request, response);
+    }
+}
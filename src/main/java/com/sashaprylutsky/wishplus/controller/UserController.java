@@ -1,52 +1,72 @@
 package com.sashaprylutsky.wishplus.controller;
 
+import com.sashaprylutsky.wishplus.dto.UserView;
 import com.sashaprylutsky.wishplus.model.User;
+import com.sashaprylutsky.wishplus.pagination.CursorPage;
+import com.sashaprylutsky.wishplus.pagination.JsonArrayStreamer;
 import com.sashaprylutsky.wishplus.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
 
     private final UserService userService;
+    private final JsonArrayStreamer streamer;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, JsonArrayStreamer streamer) {
         this.userService = userService;
+        this.streamer = streamer;
     }
 
     @PostMapping("/login")
-    public ResponseEntity<String> login(@RequestBody @Validated User user) {
-        String jwt = userService.login(user);
-        return ResponseEntity.ok(jwt);
+    public CompletableFuture<ResponseEntity<String>> login(@RequestBody @Validated User user) {
+        return userService.login(user).thenApply(ResponseEntity::ok);
     }
 
     @PostMapping("/register")
-    public ResponseEntity<User> register(@RequestBody @Validated User user) {
+    public ResponseEntity<UserView> register(@RequestBody @Validated User user) {
         User createdUser = userService.registerUser(user);
-        return ResponseEntity.status(HttpStatus.CREATED).body(createdUser);
+        return ResponseEntity.status(HttpStatus.CREATED).body(UserView.from(createdUser));
     }
 
     @GetMapping
-    public ResponseEntity<List<User>> getUsers() {
-        List<User> users = userService.getUsers();
-        return ResponseEntity.ok(users);
+    public ResponseEntity<List<UserView>> getUsers(@RequestParam(required = false) String cursor,
+                                                   @RequestParam(defaultValue = CursorPage.DEFAULT_LIMIT) int limit) {
+        return userService.getUsers(cursor, limit).toResponse();
+    }
+
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamUsers() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(streamer.stream(userService::streamUsers));
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<User> getUserById(@PathVariable Long id) {
-        User userDTO = userService.getUserById(id);
+    public ResponseEntity<UserView> getUserById(@PathVariable Long id, WebRequest request) {
+        if (request.checkNotModified(userService.getProfileETag(id))) {
+            return null;
+        }
+        UserView userDTO = userService.getUserViewById(id);
         return ResponseEntity.status(HttpStatus.OK).body(userDTO);
     }
 
     @PutMapping
-    public ResponseEntity<User> updateUser(@Validated @RequestBody User user) {
-        return ResponseEntity.ok(userService.updateUser(user));
+    public ResponseEntity<UserView> updateUser(@Validated @RequestBody User user) {
+        return ResponseEntity.ok(UserView.from(userService.updateUser(user)));
     }
 
     @DeleteMapping
@@ -56,17 +76,35 @@ public class UserController {
         return ResponseEntity.ok("User is successfully deleted.");
     }
 
+    /**
+     * Takes the photo as the raw request body, e.g. {@code Content-Type: image/jpeg}, not as a multipart form.
+     */
+    @PutMapping("/me/photo")
+    public ResponseEntity<UserView> updateProfilePhoto(HttpServletRequest request) throws IOException {
+        User user = userService.updateProfilePhoto(request.getInputStream(), request.getContentLengthLong());
+        return ResponseEntity.ok(UserView.from(user));
+    }
+
+    @DeleteMapping("/me/photo")
+    public ResponseEntity<UserView> deleteProfilePhoto() {
+        return ResponseEntity.ok(UserView.from(userService.deleteProfilePhoto()));
+    }
+
     @GetMapping("/me")
-    public ResponseEntity<User> getPrincipal() {
+    public ResponseEntity<UserView> getPrincipal(WebRequest request) {
         User principal = userService.getPrincipal();
-        User currentUser = userService.getUserById(principal.getId());
+        if (request.checkNotModified(userService.getProfileETag(principal.getId()))) {
+            return null;
+        }
+        UserView currentUser = userService.getUserViewById(principal.getId());
         return ResponseEntity.ok(currentUser);
     }
 
     @GetMapping("/search/{user_prefix}")
-    public ResponseEntity<List<User>> userSearch(@PathVariable String user_prefix) {
-        List<User> users = userService.getUsersByPrefix(user_prefix);
-        return ResponseEntity.ok(users);
+    public ResponseEntity<List<UserView>> userSearch(@PathVariable String user_prefix,
+                                                 @RequestParam(required = false) String cursor,
+                                                 @RequestParam(required = false) Integer limit) {
+        return userService.getUsersByPrefix(user_prefix, cursor, limit).toResponse();
     }
 
 }
@@ -1,10 +1,17 @@
 package com.sashaprylutsky.wishplus.controller;
 
+import com.sashaprylutsky.wishplus.dto.BulkItemResult;
+import com.sashaprylutsky.wishplus.dto.WishView;
 import com.sashaprylutsky.wishplus.model.Wish;
+import com.sashaprylutsky.wishplus.pagination.CursorPage;
+import com.sashaprylutsky.wishplus.pagination.JsonArrayStreamer;
 import com.sashaprylutsky.wishplus.service.WishService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -13,33 +20,58 @@ import java.util.List;
 public class WishController {
 
     private final WishService service;
+    private final JsonArrayStreamer streamer;
 
-    public WishController(WishService service) {
+    public WishController(WishService service, JsonArrayStreamer streamer) {
         this.service = service;
+        this.streamer = streamer;
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Wish> getWishById(@PathVariable Long id) {
-        Wish wish = service.getWishById(id);
+    public ResponseEntity<WishView> getWishById(@PathVariable Long id, WebRequest request) {
+        String etag = service.getWishETag(id);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+        WishView wish = service.getWishViewById(id);
         return ResponseEntity.ok(wish);
     }
 
+    @GetMapping("/search")
+    public ResponseEntity<List<WishView>> searchWishes(@RequestParam String q,
+                                                       @RequestParam(defaultValue = "followees") String scope,
+                                                       @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(service.searchWishes(q, scope, limit));
+    }
+
     @GetMapping("/user/{user_id}")
-    public ResponseEntity<List<Wish>> getAllWishesByUserId(@PathVariable Long user_id) {
-        List<Wish> wishes = service.getAllWishesByUserId(user_id);
-        return ResponseEntity.ok(wishes);
+    public ResponseEntity<List<WishView>> getAllWishesByUserId(@PathVariable Long user_id,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam(defaultValue = CursorPage.DEFAULT_LIMIT) int limit,
+                                                           WebRequest request) {
+        if (request.checkNotModified(service.getWishListETag(user_id, cursor, limit))) {
+            return null;
+        }
+        return service.getWishesByUserId(user_id, cursor, limit).toResponse();
+    }
+
+    @GetMapping(value = "/user/{user_id}", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamWishesByUserId(@PathVariable Long user_id) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(streamer.stream(() -> service.streamWishesByUserId(user_id)));
     }
 
     @PostMapping
-    public ResponseEntity<Wish> createWish(@RequestBody @Validated Wish wish) {
-        return ResponseEntity.ok(service.createWish(wish));
+    public ResponseEntity<WishView> createWish(@RequestBody @Validated Wish wish) {
+        return ResponseEntity.ok(WishView.from(service.createWish(wish)));
     }
 
     @PutMapping("/{wish_id}")
-    public ResponseEntity<Wish> updateWish(@PathVariable Long wish_id,
-                                           @RequestBody @Validated Wish wish){
+    public ResponseEntity<WishView> updateWish(@PathVariable Long wish_id,
+                                               @RequestBody @Validated Wish wish){
         Wish updatedWish = service.updateWish(wish_id, wish);
-        return ResponseEntity.ok(updatedWish);
+        return ResponseEntity.ok(WishView.from(updatedWish));
     }
 
     @DeleteMapping("/{wish_id}")
@@ -47,4 +79,25 @@ public class WishController {
         service.deleteWishById(wish_id);
         return ResponseEntity.ok("Wish Num.%d is deleted".formatted(wish_id));
     }
+
+    @PostMapping("/bulk")
+    public ResponseEntity<List<BulkItemResult>> createWishes(@RequestBody List<Wish> wishes) {
+        return ResponseEntity.ok(service.createWishes(wishes));
+    }
+
+    @PutMapping("/bulk")
+    public ResponseEntity<List<BulkItemResult>> updateWishes(@RequestBody List<Wish> wishes) {
+        return ResponseEntity.ok(service.updateWishes(wishes));
+    }
+
+    @PostMapping("/bulk/archive")
+    public ResponseEntity<List<BulkItemResult>> archiveWishes(@RequestBody List<Long> ids,
+                                                              @RequestParam(defaultValue = "true") boolean archived) {
+        return ResponseEntity.ok(service.setWishesArchived(ids, archived));
+    }
+
+    @PostMapping("/bulk/delete")
+    public ResponseEntity<List<BulkItemResult>> deleteWishes(@RequestBody List<Long> ids) {
+        return ResponseEntity.ok(service.deleteWishes(ids));
+    }
 }
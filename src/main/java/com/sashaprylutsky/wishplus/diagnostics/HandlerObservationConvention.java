@@ -0,0 +1,34 @@
+package com.sashaprylutsky.wishplus.diagnostics;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.common.KeyValues;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.server.observation.DefaultServerRequestObservationConvention;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Adds a {@code handler} tag, e.g. {@code WishController#getAllWishesByUserId}, to the {@code http.server.requests}
+ * timers, so time can be broken down per controller method and not only per URI template.
+ */
+public class HandlerObservationConvention extends DefaultServerRequestObservationConvention {
+
+    static final String NONE = "none";
+
+    @Override
+    public KeyValues getLowCardinalityKeyValues(ServerRequestObservationContext context) {
+        return super.getLowCardinalityKeyValues(context)
+                .and(KeyValue.of("handler", handlerName(context.getCarrier())));
+    }
+
+    /**
+     * @return {@code Controller#method} that handled the request, or {@code none} if no controller was reached
+     */
+    static String handlerName(HttpServletRequest request) {
+        if (request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod handler) {
+            return handler.getBeanType().getSimpleName() + "#" + handler.getMethod().getName();
+        }
+        return NONE;
+    }
+}
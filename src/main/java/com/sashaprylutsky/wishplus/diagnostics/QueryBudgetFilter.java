@@ -0,0 +1,100 @@
+package com.sashaprylutsky.wishplus.diagnostics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records JDBC statements and fetched rows per controller method and flags requests over the statement budget.
+ * <p>
+ * Every request ends up in the {@code http.server.requests.statements} summary, and in
+ * {@code http.server.requests.rows} when rows are counted, tagged with the handler. A request that runs more
+ * statements than the budget increments {@code http.server.requests.over-budget} and is logged with its most
+ * repeated statement, at most once a minute per handler.
+ */
+public class QueryBudgetFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryBudgetFilter.class);
+    private static final Duration LOG_INTERVAL = Duration.ofMinutes(1);
+
+    private final MeterRegistry meterRegistry;
+    private final int maxStatements;
+    private final boolean countRows;
+    private final Map<String, Long> lastLoggedAt = new ConcurrentHashMap<>();
+
+    public QueryBudgetFilter(MeterRegistry meterRegistry, int maxStatements, boolean countRows) {
+        this.meterRegistry = meterRegistry;
+        this.maxStatements = maxStatements;
+        this.countRows = countRows;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        RequestQueryStats stats = RequestQueryStats.open();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            RequestQueryStats.close();
+            record(request, stats);
+        }
+    }
+
+    private void record(HttpServletRequest request, RequestQueryStats stats) {
+        String handler = HandlerObservationConvention.handlerName(request);
+        if (HandlerObservationConvention.NONE.equals(handler)) {
+            return;
+        }
+        DistributionSummary.builder("http.server.requests.statements")
+                .description("JDBC statements executed per request")
+                .tag("handler", handler)
+                .register(meterRegistry)
+                .record(stats.statements());
+        if (countRows) {
+            DistributionSummary.builder("http.server.requests.rows")
+                    .description("Rows fetched from JDBC result sets per request")
+                    .tag("handler", handler)
+                    .register(meterRegistry)
+                    .record(stats.rows());
+        }
+
+        if (stats.statements() > maxStatements) {
+            Counter.builder("http.server.requests.over-budget")
+                    .description("Requests that executed more JDBC statements than the budget")
+                    .tag("handler", handler)
+                    .register(meterRegistry)
+                    .increment();
+            if (shouldLog(handler)) {
+                Map.Entry<String, Integer> repeated = stats.mostRepeated();
+                log.warn("{} {} ({}) executed {} statements, budget is {}{}; most repeated, {} times: {}",
+                        request.getMethod(), request.getRequestURI(), handler, stats.statements(), maxStatements,
+                        countRows ? ", " + stats.rows() + " rows fetched" : "", repeated.getValue(), repeated.getKey());
+            }
+        }
+    }
+
+    private boolean shouldLog(String handler) {
+        long now = System.nanoTime();
+        Long previous = lastLoggedAt.get(handler);
+        if (previous != null && now - previous < LOG_INTERVAL.toNanos()) {
+            return false;
+        }
+        return previous == null
+                ? lastLoggedAt.putIfAbsent(handler, now) == null
+                : lastLoggedAt.replace(handler, previous, now);
+    }
+}
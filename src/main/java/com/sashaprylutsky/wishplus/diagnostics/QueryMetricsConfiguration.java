@@ -0,0 +1,70 @@
+package com.sashaprylutsky.wishplus.diagnostics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.http.server.observation.ServerRequestObservationConvention;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+
+/**
+ * Per-request SQL accounting: the data source is wrapped in a datasource-proxy that counts statements,
+ * and result set rows if {@code diagnostics.query-metrics.count-rows} is set, for {@link QueryBudgetFilter}.
+ * The {@link HandlerObservationConvention} is registered regardless, since the handler tag on request timers
+ * costs nothing.
+ */
+@Configuration
+public class QueryMetricsConfiguration {
+
+    @Bean
+    public ServerRequestObservationConvention handlerObservationConvention() {
+        return new HandlerObservationConvention();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "diagnostics.query-metrics.enabled", havingValue = "true")
+    public static BeanPostProcessor queryCountingDataSourcePostProcessor(Environment environment) {
+        boolean countRows = environment.getProperty("diagnostics.query-metrics.count-rows", Boolean.class, false);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                // a datasource that only hands out another one's connections, like the replica router, is left
+                // alone so its statements are not counted twice
+                if (bean instanceof DataSource dataSource && !(bean instanceof ProxyDataSource)
+                        && !(bean instanceof DelegatingDataSource)) {
+                    QueryCountingListener listener = new QueryCountingListener();
+                    ProxyDataSourceBuilder builder = ProxyDataSourceBuilder.create(beanName, dataSource)
+                            .listener(listener);
+                    if (countRows) {
+                        // every ResultSet call then goes through a proxy, which costs a few KB of heap per row
+                        builder.methodListener(listener).proxyResultSet();
+                    }
+                    return builder.build();
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "diagnostics.query-metrics.enabled", havingValue = "true")
+    public FilterRegistrationBean<QueryBudgetFilter> queryBudgetFilter(
+            MeterRegistry meterRegistry,
+            @Value("${diagnostics.query-budget.max-statements}") int maxStatements,
+            @Value("${diagnostics.query-metrics.count-rows:false}") boolean countRows) {
+        FilterRegistrationBean<QueryBudgetFilter> registration =
+                new FilterRegistrationBean<>(new QueryBudgetFilter(meterRegistry, maxStatements, countRows));
+        // outermost, so statements issued by security filters count towards the request as well
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,64 @@
+package com.sashaprylutsky.wishplus.diagnostics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JDBC statements and fetched rows of the request handled by the current thread.
+ * {@link QueryBudgetFilter} opens the stats for a request and {@link QueryCountingListener} fills them in;
+ * statements run outside a request, e.g. by scheduled jobs or async response rendering, are not counted.
+ */
+public final class RequestQueryStats {
+
+    private static final ThreadLocal<RequestQueryStats> CURRENT = new ThreadLocal<>();
+    private static final int MAX_DISTINCT_QUERIES = 64;
+
+    private int statements;
+    private long rows;
+    private final Map<String, Integer> executionsByQuery = new HashMap<>();
+
+    static RequestQueryStats open() {
+        RequestQueryStats stats = new RequestQueryStats();
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    static void close() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return stats of the current request, or {@code null} outside of one
+     */
+    public static RequestQueryStats current() {
+        return CURRENT.get();
+    }
+
+    void statementExecuted(String query) {
+        statements++;
+        if (executionsByQuery.size() < MAX_DISTINCT_QUERIES || executionsByQuery.containsKey(query)) {
+            executionsByQuery.merge(query, 1, Integer::sum);
+        }
+    }
+
+    void rowFetched() {
+        rows++;
+    }
+
+    public int statements() {
+        return statements;
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    /**
+     * The statement executed most often in this request, the usual suspect of an N+1 pattern.
+     */
+    Map.Entry<String, Integer> mostRepeated() {
+        return executionsByQuery.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .orElse(null);
+    }
+}
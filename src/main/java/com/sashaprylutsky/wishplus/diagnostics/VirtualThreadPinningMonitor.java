@@ -0,0 +1,110 @@
+package com.sashaprylutsky.wishplus.diagnostics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streams {@code jdk.VirtualThreadPinned} JFR events in process and reports where virtual threads
+ * stayed pinned to their carrier, typically a blocking call inside a {@code synchronized} block in a
+ * JDBC driver, the connection pool or Hibernate.
+ * <p>
+ * Each pinning is recorded in the {@code jvm.threads.virtual.pinned} timer, tagged with the pinning site:
+ * the first stack frame that belongs to the application, a JDBC driver, the pool or Hibernate.
+ * The first pinning at every site is logged with its stack trace.
+ */
+@Component
+@ConditionalOnProperty(name = "diagnostics.virtual-thread-pinning.enabled", havingValue = "true")
+public class VirtualThreadPinningMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+    private static final List<String> SITE_PACKAGES = List.of(
+            "com.sashaprylutsky.", "org.hibernate.", "com.zaxxer.hikari.", "com.mysql.", "org.h2.");
+    private static final int LOGGED_FRAMES = 15;
+
+    private final MeterRegistry meterRegistry;
+    private final Duration threshold;
+    private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+    private RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry,
+                                       @Value("${diagnostics.virtual-thread-pinning.threshold-millis}") long thresholdMillis) {
+        this.meterRegistry = meterRegistry;
+        this.threshold = Duration.ofMillis(thresholdMillis);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (Runtime.version().feature() < 21) {
+            log.warn("Virtual thread pinning diagnostics need Java 21, running on {}", Runtime.version());
+            return;
+        }
+        stream = new RecordingStream();
+        stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(EVENT, this::record);
+        stream.startAsync();
+        log.info("Reporting virtual threads pinned for longer than {} ms", threshold.toMillis());
+    }
+
+    private void record(RecordedEvent event) {
+        String site = site(event.getStackTrace());
+        Timer.builder("jvm.threads.virtual.pinned")
+                .description("Time virtual threads spent pinned to their carrier thread")
+                .tag("site", site)
+                .register(meterRegistry)
+                .record(event.getDuration());
+
+        if (reportedSites.add(site)) {
+            log.warn("Virtual thread pinned for {} ms at {}{}",
+                    event.getDuration().toMillis(), site, format(event.getStackTrace()));
+        }
+    }
+
+    private static String site(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "unknown";
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (SITE_PACKAGES.stream().anyMatch(type::startsWith)) {
+                return type + "." + frame.getMethod().getName();
+            }
+        }
+        return "unknown";
+    }
+
+    private static String format(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "";
+        }
+        StringBuilder frames = new StringBuilder();
+        stackTrace.getFrames().stream().limit(LOGGED_FRAMES).forEach(frame -> frames
+                .append(System.lineSeparator()).append("\tat ")
+                .append(frame.getMethod().getType().getName()).append('.')
+                .append(frame.getMethod().getName()).append(':').append(frame.getLineNumber()));
+        return frames.toString();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.sashaprylutsky.wishplus.dto;
+
+/**
+ * Outcome of one item of a bulk request. {@code index} is the item's position in the request,
+ * {@code id} the wish it applies to and {@code error} is only set for items that were skipped.
+ */
+public record BulkItemResult(int index, Long id, Status status, String error) {
+
+    public enum Status {
+        CREATED, UPDATED, ARCHIVED, UNARCHIVED, DELETED, NOT_FOUND, FORBIDDEN
+    }
+
+    public static BulkItemResult done(int index, Long id, Status status) {
+        return new BulkItemResult(index, id, status, null);
+    }
+
+    public static BulkItemResult notFound(int index, Long id) {
+        return new BulkItemResult(index, id, Status.NOT_FOUND, "No wish found with ID " + id);
+    }
+
+    public static BulkItemResult forbidden(int index, Long id) {
+        return new BulkItemResult(index, id, Status.FORBIDDEN, "Change access is prohibited.");
+    }
+}
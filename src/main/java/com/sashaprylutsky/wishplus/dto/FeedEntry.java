@@ -0,0 +1,9 @@
+package com.sashaprylutsky.wishplus.dto;
+
+import java.util.List;
+
+/**
+ * A subscribed date together with the newest non-archived wishes of its owner.
+ */
+public record FeedEntry(UpcomingDate date, List<FeedWish> wishes) {
+}
@@ -0,0 +1,17 @@
+package com.sashaprylutsky.wishplus.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+public record FeedWish(Long id, Long userId, String title, String description, String url, Instant createdAt,
+                       @JsonInclude(JsonInclude.Include.NON_NULL) LinkPreview preview) {
+
+    public FeedWish(Long id, Long userId, String title, String description, String url, Instant createdAt) {
+        this(id, userId, title, description, url, createdAt, null);
+    }
+
+    public FeedWish withPreview(LinkPreview preview) {
+        return preview == this.preview ? this : new FeedWish(id, userId, title, description, url, createdAt, preview);
+    }
+}
@@ -0,0 +1,16 @@
+package com.sashaprylutsky.wishplus.dto;
+
+import com.sashaprylutsky.wishplus.model.ImportantDate;
+
+import java.util.Date;
+
+/**
+ * An important date as returned by the API, with its owner referenced by id.
+ */
+public record ImportantDateView(Long id, Long userId, String title, Date date) {
+
+    public static ImportantDateView from(ImportantDate importantDate) {
+        return new ImportantDateView(importantDate.getId(), importantDate.getUser().getId(),
+                importantDate.getTitle(), importantDate.getDate());
+    }
+}
@@ -0,0 +1,14 @@
+package com.sashaprylutsky.wishplus.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * What the page behind a wish's url says about itself: its title, an image and, for product pages, a price.
+ * Any of them may be missing.
+ *
+ * @param price    amount as written on the page, e.g. {@code 19.99}
+ * @param currency ISO 4217 code, e.g. {@code EUR}
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record LinkPreview(String title, String image, String price, String currency) {
+}
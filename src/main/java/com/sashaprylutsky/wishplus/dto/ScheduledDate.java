@@ -0,0 +1,6 @@
+package com.sashaprylutsky.wishplus.dto;
+
+import java.util.Date;
+
+public record ScheduledDate(Long id, Date date) {
+}
@@ -0,0 +1,26 @@
+package com.sashaprylutsky.wishplus.dto;
+
+import com.sashaprylutsky.wishplus.model.RecurringDates;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+
+public record UpcomingDate(Long id,
+                           String title,
+                           Date date,
+                           Long followeeId,
+                           String followeeUsername,
+                           LocalDate nextOccurrence,
+                           long daysUntil) {
+
+    public UpcomingDate(Long id, String title, Date date, Long followeeId, String followeeUsername) {
+        this(id, title, date, followeeId, followeeUsername, null, 0);
+    }
+
+    public UpcomingDate from(LocalDate today) {
+        LocalDate next = RecurringDates.nextOccurrence(RecurringDates.toLocalDate(date), today);
+        return new UpcomingDate(id, title, date, followeeId, followeeUsername,
+                next, ChronoUnit.DAYS.between(today, next));
+    }
+}
@@ -0,0 +1,14 @@
+package com.sashaprylutsky.wishplus.dto;
+
+import com.sashaprylutsky.wishplus.model.User;
+
+/**
+ * Public profile of a user as returned by the API.
+ */
+public record UserView(Long id, String username, String firstName, String lastName, String profilePhoto) {
+
+    public static UserView from(User user) {
+        return new UserView(user.getId(), user.getUsername(), user.getFirstName(), user.getLastName(),
+                user.getProfilePhoto());
+    }
+}
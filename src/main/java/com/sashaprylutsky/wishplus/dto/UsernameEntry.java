@@ -0,0 +1,4 @@
+package com.sashaprylutsky.wishplus.dto;
+
+public record UsernameEntry(Long id, String username) {
+}
@@ -0,0 +1,7 @@
+package com.sashaprylutsky.wishplus.dto;
+
+/**
+ * The owner of a wish, read for ownership checks of bulk requests without loading the wishes.
+ */
+public record WishOwner(Long id, Long userId) {
+}
@@ -0,0 +1,9 @@
+package com.sashaprylutsky.wishplus.dto;
+
+import java.time.Instant;
+
+/**
+ * What the ETag of a single wish is derived from.
+ */
+public record WishVersion(Instant updatedAt, String url) {
+}
@@ -0,0 +1,39 @@
+package com.sashaprylutsky.wishplus.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.sashaprylutsky.wishplus.model.Wish;
+
+import java.time.Instant;
+
+/**
+ * A wish as returned by the API. The owner is referenced by id only, so wish lists never read the users table.
+ * {@code preview} is left out until a preview of the url has been fetched.
+ */
+public record WishView(Long id,
+                       Long userId,
+                       String title,
+                       String description,
+                       String url,
+                       boolean archived,
+                       Instant createdAt,
+                       Instant updatedAt,
+                       @JsonInclude(JsonInclude.Include.NON_NULL) LinkPreview preview) {
+
+    /**
+     * For JPQL constructor expressions; previews are not stored in the database.
+     */
+    public WishView(Long id, Long userId, String title, String description, String url, boolean archived,
+                    Instant createdAt, Instant updatedAt) {
+        this(id, userId, title, description, url, archived, createdAt, updatedAt, null);
+    }
+
+    public static WishView from(Wish wish) {
+        return new WishView(wish.getId(), wish.getUser().getId(), wish.getTitle(), wish.getDescription(),
+                wish.getUrl(), wish.isArchived(), wish.getCreatedAt(), wish.getUpdatedAt());
+    }
+
+    public WishView withPreview(LinkPreview preview) {
+        return preview == this.preview ? this
+                : new WishView(id, userId, title, description, url, archived, createdAt, updatedAt, preview);
+    }
+}
@@ -0,0 +1,34 @@
+package com.sashaprylutsky.wishplus.etag;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Strong ETags of single resources, derived from the values that make up their representation.
+ */
+public final class ETags {
+
+    private static final int DIGEST_BYTES = 8;
+
+    private ETags() {
+    }
+
+    /**
+     * @return {@code "<tag>-<first 8 bytes of the SHA-256 of the parts, in hex>"}, quoted
+     */
+    public static String of(String tag, Object... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Object part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            byte[] hash = digest.digest();
+            return "\"" + tag + "-" + HexFormat.of().formatHex(hash, 0, DIGEST_BYTES) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.sashaprylutsky.wishplus.etag;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+/**
+ * Per-user versions of the resources a user owns, the source of list and profile ETags.
+ * A version can be compared with {@code If-None-Match} before anything but the version is read from the database.
+ * <p>
+ * Versions are rows of {@code resource_versions}. Writers call {@link #bump} while changing a resource, and inside a
+ * transaction the version moves in that same transaction, so every instance sees a new version exactly when it sees
+ * the data it stands for. A resource that was never bumped is at version 0. Rows are kept when a user is deleted,
+ * so a version is never handed out twice.
+ * <p>
+ * Readers must take the ETag before they load the data, and from the same database, so a version never labels older
+ * data than it stands for.
+ * Listeners hear of every bump made by this instance once it has committed, e.g. to push it to clients that would
+ * otherwise poll; bumps made by other instances are found by reading {@link #versions}.
+ */
+@Component
+public class ResourceVersions {
+
+    public enum Resource {
+        WISHES("w"), DATES("d"), PROFILE("u"),
+        /**
+         * The dates a user is subscribed to, which decide whose changes the user's live streams hear.
+         */
+        SUBSCRIPTIONS("s");
+
+        private final String prefix;
+
+        Resource(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    /**
+     * Hears of a bump after it committed, with the version the resource moved to.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        void changed(Long userId, Resource resource, long version);
+    }
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbc;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public ResourceVersions(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Weak ETag of the user's resource, e.g. {@code W/"u42-7"}. Version-based ETags are weak: one version stands
+     * for both the plain and the gzip-encoded body, and Tomcat only compresses responses with weak ETags.
+     */
+    public String etag(Resource resource, Long userId) {
+        long version = read(resource, userId);
+        return "W/\"" + resource.prefix + userId + "-" + version + "\"";
+    }
+
+    /**
+     * Weak ETag of one page of the user's list, e.g. {@code W/"w42-7-5f1c0a9e3b7d2e11"}: the list's version and
+     * a digest of the page parameters, so two pages of one version never share an ETag.
+     *
+     * @param cursor {@code null} or blank for the first page
+     */
+    public String listETag(Resource resource, Long userId, String cursor, int limit) {
+        return listETag(resource, userId, read(resource, userId), cursor, limit);
+    }
+
+    /**
+     * {@link #listETag(Resource, Long, String, int)} for a version already known, e.g. from a {@link Listener}.
+     */
+    public String listETag(Resource resource, Long userId, long version, String cursor, int limit) {
+        return "W/" + ETags.of(resource.prefix + userId + "-" + version,
+                cursor == null || cursor.isBlank() ? "" : cursor, limit);
+    }
+
+    private long read(Resource resource, Long userId) {
+        List<Long> version = jdbc.queryForList(
+                "select version from resource_versions where user_id = ? and resource = ?",
+                Long.class, userId, resource.name());
+        return version.isEmpty() ? 0 : version.get(0);
+    }
+
+    /**
+     * Current versions of the resource of many users at once, e.g. to find changes made by other instances. Users
+     * whose resource was never bumped are left out.
+     */
+    public Map<Long, Long> versions(Resource resource, Collection<Long> userIds) {
+        Map<Long, Long> versions = new HashMap<>();
+        List<Long> ids = List.copyOf(userIds);
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(ids.size(), from + BATCH_SIZE));
+            jdbc.query("select user_id, version from resource_versions where resource = ? and user_id in ("
+                            + String.join(", ", Collections.nCopies(batch.size(), "?")) + ")",
+                    row -> {
+                        versions.put(row.getLong(1), row.getLong(2));
+                    },
+                    Stream.concat(Stream.of(resource.name()), batch.stream()).toArray());
+        }
+        return versions;
+    }
+
+    /**
+     * Calls the listener with the user id, the resource and its new version after every bump made by this instance.
+     * It runs on the thread that committed the change, so it must be quick.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Moves the user's resources to a new version, in the current transaction if there is one. Listeners hear of
+     * it after that transaction commits.
+     */
+    public void bump(Long userId, Resource... resources) {
+        List<Long> bumped = new ArrayList<>(resources.length);
+        for (Resource resource : resources) {
+            bumped.add(increment(resource, userId));
+        }
+        Runnable notify = () -> {
+            for (int i = 0; i < resources.length; i++) {
+                for (Listener listener : listeners) {
+                    listener.changed(userId, resources[i], bumped.get(i));
+                }
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    notify.run();
+                }
+            });
+        } else {
+            notify.run();
+        }
+    }
+
+    private long increment(Resource resource, Long userId) {
+        String increment = "update resource_versions set version = version + 1 where user_id = ? and resource = ?";
+        if (jdbc.update(increment, userId, resource.name()) == 0) {
+            try {
+                jdbc.update("insert into resource_versions (user_id, resource, version) values (?, ?, 1)",
+                        userId, resource.name());
+                return 1;
+            } catch (DuplicateKeyException e) {
+                // a concurrent first bump inserted the row
+                jdbc.update(increment, userId, resource.name());
+            }
+        }
+        return jdbc.queryForObject("select version from resource_versions where user_id = ? and resource = ?",
+                Long.class, userId, resource.name());
+    }
+}
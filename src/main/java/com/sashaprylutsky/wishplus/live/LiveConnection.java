@@ -0,0 +1,146 @@
+package com.sashaprylutsky.wishplus.live;
+
+import com.sashaprylutsky.wishplus.etag.ResourceVersions.Resource;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * One open event stream and the changes waiting to be written to it.
+ * <p>
+ * Changes are kept as a set of {@code (resource, user)} keys, so any number of changes to one list between two
+ * writes become one event, which carries the list's latest ETag. The set holds at most {@code maxPending} keys; a
+ * connection that falls further behind loses them and gets a single {@code resync} event instead. At most one
+ * flush of a connection is queued or running at a time.
+ */
+final class LiveConnection {
+
+    record Change(Resource resource, Long userId) {
+    }
+
+    /**
+     * What a flush writes: the changes in the order they came in, a resync instead of them, and a heartbeat.
+     */
+    record Batch(List<Change> changes, boolean resync, boolean heartbeat) {
+    }
+
+    enum Outcome {
+        QUEUED, COALESCED, OVERFLOWED
+    }
+
+    private final Long userId;
+    private final SseEmitter emitter;
+    private final int maxPending;
+    private final Consumer<LiveConnection> flusher;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile Set<Long> followees = Set.of();
+
+    private final Set<Change> pending = new LinkedHashSet<>();
+    private boolean resync;
+    private boolean heartbeat;
+    private boolean scheduled;
+
+    /**
+     * @param flusher schedules a {@link #drain() flush} of the connection
+     */
+    LiveConnection(Long userId, SseEmitter emitter, int maxPending, Consumer<LiveConnection> flusher) {
+        this.userId = userId;
+        this.emitter = emitter;
+        this.maxPending = maxPending;
+        this.flusher = flusher;
+    }
+
+    Long userId() {
+        return userId;
+    }
+
+    SseEmitter emitter() {
+        return emitter;
+    }
+
+    /**
+     * @return {@code true} for the call that closed it
+     */
+    boolean close() {
+        return closed.compareAndSet(false, true);
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    Set<Long> followees() {
+        return followees;
+    }
+
+    void followees(Set<Long> followees) {
+        this.followees = followees;
+    }
+
+    Outcome offer(Change change) {
+        Outcome outcome;
+        boolean schedule;
+        synchronized (this) {
+            if (resync || pending.contains(change)) {
+                outcome = Outcome.COALESCED;
+            } else if (pending.size() >= maxPending) {
+                pending.clear();
+                resync = true;
+                outcome = Outcome.OVERFLOWED;
+            } else {
+                pending.add(change);
+                outcome = Outcome.QUEUED;
+            }
+            schedule = schedule();
+        }
+        if (schedule) {
+            flusher.accept(this);
+        }
+        return outcome;
+    }
+
+    void offerHeartbeat() {
+        boolean schedule;
+        synchronized (this) {
+            heartbeat = true;
+            schedule = schedule();
+        }
+        if (schedule) {
+            flusher.accept(this);
+        }
+    }
+
+    private boolean schedule() {
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    /**
+     * Takes everything waiting; {@code null} when there is nothing, which also ends the current flush.
+     */
+    synchronized Batch drain() {
+        if (pending.isEmpty() && !resync && !heartbeat) {
+            scheduled = false;
+            return null;
+        }
+        Batch batch = new Batch(List.copyOf(pending), resync, heartbeat);
+        pending.clear();
+        resync = false;
+        heartbeat = false;
+        return batch;
+    }
+
+    /**
+     * Lets the next offer schedule a flush again, after a flush could not be queued.
+     */
+    synchronized void unschedule() {
+        scheduled = false;
+    }
+}
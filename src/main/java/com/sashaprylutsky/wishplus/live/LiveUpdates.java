@@ -0,0 +1,410 @@
+package com.sashaprylutsky.wishplus.live;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions.Resource;
+import com.sashaprylutsky.wishplus.live.LiveConnection.Batch;
+import com.sashaprylutsky.wishplus.live.LiveConnection.Change;
+import com.sashaprylutsky.wishplus.pagination.CursorPage;
+import com.sashaprylutsky.wishplus.repository.DateSubscriptionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes changes of wish and date lists to the followers of their owners over server-sent events, so followers
+ * do not have to poll the lists.
+ * <p>
+ * Every {@link ResourceVersions#bump bump} of a user's {@code WISHES} or {@code DATES} after commit becomes a
+ * {@code wishes} or {@code dates} event with the owner's id and the new ETag of the list's first page, sent to every
+ * open stream of a user subscribed to one of the owner's dates. Followees are looked up once per stream when it opens and again when
+ * the user's subscriptions change, so publishing an event never touches the database.
+ * <p>
+ * Other instances are heard through the database. Every {@code live.poll-millis} the versions of the lists and
+ * subscriptions that open streams here depend on are read in batches; one newer than the last seen is published
+ * as if it had been bumped here. Versions are committed with the data, so a change is never heard before it can be
+ * read. Changes made here are published at once and not again by the poll.
+ * <p>
+ * A stream holds no thread while it is idle. Publishing only records the change on each stream, which coalesces it
+ * with changes not written yet; {@code live.threads} threads then write what is waiting, one batch per stream at a
+ * time. A stream more than {@code live.max-pending} changes behind gets a {@code resync} event instead of them. A
+ * stream that cannot be written to is closed; a client that reconnects gets {@code ready} and reloads its lists
+ * with {@code If-None-Match}, which costs one primary-key lookup when they have not changed.
+ * <p>
+ * Metrics: {@code live.connections}, {@code live.connections.rejected}, {@code live.changes} tagged with
+ * {@code outcome} ({@code queued}, {@code coalesced}, {@code overflowed}), {@code live.events} (events written)
+ * and {@code executor.*} with {@code name=live-updates}.
+ */
+@Component
+public class LiveUpdates {
+
+    private static final Logger log = LoggerFactory.getLogger(LiveUpdates.class);
+
+    private static final Map<Resource, String> EVENTS = new EnumMap<>(Map.of(
+            Resource.WISHES, "wishes",
+            Resource.DATES, "dates"));
+    /**
+     * Events carry the ETag of the first page a client gets without a {@code limit}.
+     */
+    private static final int FIRST_PAGE_LIMIT = Integer.parseInt(CursorPage.DEFAULT_LIMIT);
+
+    private final DateSubscriptionRepository subscriptions;
+    private final ResourceVersions versions;
+    private final long timeoutMillis;
+    private final int maxConnections;
+    private final int maxConnectionsPerUser;
+    private final int maxPending;
+    private final AtomicInteger connections = new AtomicInteger();
+    /**
+     * followee id -> streams of their followers
+     */
+    private final Map<Long, Set<LiveConnection>> byFollowee = new ConcurrentHashMap<>();
+    /**
+     * user id -> the user's streams, oldest first; replaced, never changed in place
+     */
+    private final Map<Long, List<LiveConnection>> byUser = new ConcurrentHashMap<>();
+    /**
+     * latest version of each recently changed list, read when its event is written so a coalesced change carries
+     * the newest ETag; an entry gone by then is read from the database
+     */
+    private final Cache<Change, Long> latest;
+    /**
+     * last version seen of each list followed by a stream here, and of the subscriptions of each user with a stream
+     * here; the poll publishes newer ones
+     */
+    private final Map<Change, Long> known = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final Counter rejected;
+    private final Counter queued;
+    private final Counter coalesced;
+    private final Counter overflowed;
+    private final Counter events;
+
+    public LiveUpdates(DateSubscriptionRepository subscriptions,
+                       ResourceVersions versions,
+                       MeterRegistry meterRegistry,
+                       @Value("${live.threads}") int threads,
+                       @Value("${live.timeout-millis}") long timeoutMillis,
+                       @Value("${live.max-connections}") int maxConnections,
+                       @Value("${live.max-connections-per-user}") int maxConnectionsPerUser,
+                       @Value("${live.max-pending}") int maxPending) {
+        this.subscriptions = subscriptions;
+        this.versions = versions;
+        this.timeoutMillis = timeoutMillis;
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerUser = maxConnectionsPerUser;
+        this.maxPending = maxPending;
+        this.latest = Caffeine.newBuilder()
+                .maximumSize(maxConnections)
+                .expireAfterWrite(Duration.ofMinutes(1))
+                .build();
+        // a stream is queued at most once, so the queue never needs to hold more than every stream
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxConnections),
+                new CustomizableThreadFactory("live-updates-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        versions.addListener(this::changed);
+
+        new ExecutorServiceMetrics(executor, "live-updates", Tags.empty()).bindTo(meterRegistry);
+        Gauge.builder("live.connections", connections, AtomicInteger::get)
+                .description("Open live update streams")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("live.connections.rejected")
+                .description("Live update streams refused because live.max-connections were open")
+                .register(meterRegistry);
+        this.queued = changes(meterRegistry, "queued");
+        this.coalesced = changes(meterRegistry, "coalesced");
+        this.overflowed = changes(meterRegistry, "overflowed");
+        this.events = Counter.builder("live.events")
+                .description("Events written to live update streams")
+                .register(meterRegistry);
+    }
+
+    private static Counter changes(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("live.changes")
+                .description("Changes offered to live update streams by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Opens a stream of the changes of the user's followees. Opening more than
+     * {@code live.max-connections-per-user} streams closes the user's oldest one.
+     *
+     * @throws LiveUpdatesBusyException if {@code live.max-connections} streams are open
+     */
+    public SseEmitter connect(Long userId) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            rejected.increment();
+            throw new LiveUpdatesBusyException();
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        LiveConnection connection = new LiveConnection(userId, emitter, maxPending, this::schedule);
+        emitter.onCompletion(() -> close(connection));
+        emitter.onError(error -> close(connection));
+        // completing it ends the stream normally; otherwise a timeout is raised as an error
+        emitter.onTimeout(emitter::complete);
+        // what the stream depends on is read before ready, so a change the client's reload misses is found later
+        Change ownSubscriptions = new Change(Resource.SUBSCRIPTIONS, userId);
+        if (!known.containsKey(ownSubscriptions)) {
+            known.putIfAbsent(ownSubscriptions,
+                    versions.versions(Resource.SUBSCRIPTIONS, List.of(userId)).getOrDefault(userId, 0L));
+        }
+        Set<Long> followees = Set.copyOf(subscriptions.findFolloweeIds(userId));
+        watch(followees);
+        try {
+            emitter.send(SseEmitter.event().name("ready").data(Map.of(), MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            close(connection);
+            emitter.completeWithError(e);
+            return emitter;
+        }
+
+        List<LiveConnection> replaced = new ArrayList<>();
+        byUser.compute(userId, (id, own) -> {
+            List<LiveConnection> streams = new ArrayList<>(own == null ? List.of() : own);
+            streams.add(connection);
+            while (streams.size() > maxConnectionsPerUser) {
+                replaced.add(streams.remove(0));
+            }
+            return List.copyOf(streams);
+        });
+        follow(connection, followees);
+        if (connection.isClosed()) {
+            // closed while it was being registered
+            unregister(connection);
+        }
+        replaced.forEach(old -> {
+            close(old);
+            old.emitter().complete();
+        });
+        return emitter;
+    }
+
+    private void followeesChanged(Long userId) {
+        List<LiveConnection> own = byUser.get(userId);
+        if (own == null) {
+            return;
+        }
+        Set<Long> followees = Set.copyOf(subscriptions.findFolloweeIds(userId));
+        watch(followees);
+        own.forEach(connection -> follow(connection, followees));
+    }
+
+    /**
+     * Remembers the current versions of the lists a stream is about to follow, unless they are known already.
+     */
+    private void watch(Set<Long> followees) {
+        for (Resource resource : EVENTS.keySet()) {
+            List<Long> unknown = followees.stream()
+                    .filter(followee -> !known.containsKey(new Change(resource, followee)))
+                    .toList();
+            if (!unknown.isEmpty()) {
+                Map<Long, Long> current = versions.versions(resource, unknown);
+                unknown.forEach(followee -> known.putIfAbsent(new Change(resource, followee),
+                        current.getOrDefault(followee, 0L)));
+            }
+        }
+    }
+
+    private void follow(LiveConnection connection, Set<Long> followees) {
+        synchronized (connection) {
+            if (connection.isClosed()) {
+                return;
+            }
+            Set<Long> previous = connection.followees();
+            for (Long followee : previous) {
+                if (!followees.contains(followee)) {
+                    unfollow(followee, connection);
+                }
+            }
+            for (Long followee : followees) {
+                if (!previous.contains(followee)) {
+                    byFollowee.computeIfAbsent(followee, id -> ConcurrentHashMap.newKeySet()).add(connection);
+                }
+            }
+            connection.followees(followees);
+        }
+    }
+
+    private void unfollow(Long followee, LiveConnection connection) {
+        byFollowee.computeIfPresent(followee, (id, streams) -> {
+            streams.remove(connection);
+            return streams.isEmpty() ? null : streams;
+        });
+    }
+
+    private void changed(Long userId, Resource resource, long version) {
+        Change change = new Change(resource, userId);
+        known.computeIfPresent(change, (key, seen) -> Math.max(seen, version));
+        if (resource == Resource.SUBSCRIPTIONS) {
+            followeesChanged(userId);
+            return;
+        }
+        if (!EVENTS.containsKey(resource)) {
+            return;
+        }
+        Set<LiveConnection> followers = byFollowee.get(userId);
+        if (followers == null) {
+            return;
+        }
+        latest.asMap().merge(change, version, Math::max);
+        for (LiveConnection connection : followers) {
+            switch (connection.offer(change)) {
+                case QUEUED -> queued.increment();
+                case COALESCED -> coalesced.increment();
+                case OVERFLOWED -> overflowed.increment();
+            }
+        }
+    }
+
+    /**
+     * Publishes the changes other instances made to what streams here depend on, and forgets what no stream depends
+     * on any more.
+     */
+    @Scheduled(fixedDelayString = "${live.poll-millis}", initialDelayString = "${live.poll-millis}")
+    public void poll() {
+        known.keySet().removeIf(key -> key.resource() == Resource.SUBSCRIPTIONS
+                ? !byUser.containsKey(key.userId())
+                : !byFollowee.containsKey(key.userId()));
+        poll(Resource.SUBSCRIPTIONS, byUser.keySet());
+        for (Resource resource : EVENTS.keySet()) {
+            poll(resource, byFollowee.keySet());
+        }
+    }
+
+    private void poll(Resource resource, Set<Long> watched) {
+        List<Long> userIds = List.copyOf(watched);
+        if (userIds.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> current = versions.versions(resource, userIds);
+        for (Long userId : userIds) {
+            long version = current.getOrDefault(userId, 0L);
+            Long seen = known.putIfAbsent(new Change(resource, userId), version);
+            if (seen != null && version > seen) {
+                changed(userId, resource, version);
+            }
+        }
+    }
+
+    /**
+     * Keeps idle streams open through proxies that close silent connections, and finds streams whose client has
+     * gone away.
+     */
+    @Scheduled(fixedDelayString = "${live.heartbeat-millis}", initialDelayString = "${live.heartbeat-millis}")
+    public void heartbeat() {
+        byUser.values().forEach(own -> own.forEach(LiveConnection::offerHeartbeat));
+    }
+
+    private void schedule(LiveConnection connection) {
+        try {
+            executor.execute(() -> flush(connection));
+        } catch (RejectedExecutionException e) {
+            // picked up again by the next change or heartbeat
+            connection.unschedule();
+        }
+    }
+
+    private void flush(LiveConnection connection) {
+        Batch batch;
+        while ((batch = connection.drain()) != null) {
+            if (connection.isClosed()) {
+                continue;
+            }
+            try {
+                Set<DataWithMediaType> items = items(batch);
+                connection.emitter().send(items);
+                events.increment(batch.resync() ? 1 : batch.changes().size());
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Closing live update stream of user {}: {}", connection.userId(), e.toString());
+                close(connection);
+                connection.emitter().completeWithError(e);
+            }
+        }
+    }
+
+    private Set<DataWithMediaType> items(Batch batch) {
+        Set<DataWithMediaType> items = new LinkedHashSet<>();
+        if (batch.resync()) {
+            items.addAll(SseEmitter.event().name("resync").data(Map.of(), MediaType.APPLICATION_JSON).build());
+        } else if (!batch.changes().isEmpty()) {
+            for (Change change : batch.changes()) {
+                items.addAll(SseEmitter.event()
+                        .name(EVENTS.get(change.resource()))
+                        .data(Map.of("userId", change.userId(), "etag", etag(change)), MediaType.APPLICATION_JSON)
+                        .build());
+            }
+        } else {
+            items.addAll(SseEmitter.event().comment("").build());
+        }
+        return items;
+    }
+
+    private String etag(Change change) {
+        Long version = latest.getIfPresent(change);
+        return version == null
+                ? versions.listETag(change.resource(), change.userId(), null, FIRST_PAGE_LIMIT)
+                : versions.listETag(change.resource(), change.userId(), version, null, FIRST_PAGE_LIMIT);
+    }
+
+    private void close(LiveConnection connection) {
+        if (connection.close()) {
+            connections.decrementAndGet();
+            unregister(connection);
+        }
+    }
+
+    private void unregister(LiveConnection connection) {
+        byUser.computeIfPresent(connection.userId(), (id, own) -> {
+            List<LiveConnection> streams = new ArrayList<>(own);
+            streams.remove(connection);
+            return streams.isEmpty() ? null : List.copyOf(streams);
+        });
+        synchronized (connection) {
+            connection.followees().forEach(followee -> unfollow(followee, connection));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        byUser.values().forEach(own -> own.forEach(connection -> {
+            close(connection);
+            try {
+                connection.emitter().complete();
+            } catch (IllegalStateException e) {
+                // the server stopped first and has already closed the response
+            }
+        }));
+    }
+}
@@ -0,0 +1,12 @@
+package com.sashaprylutsky.wishplus.live;
+
+/**
+ * Thrown when {@code live.max-connections} live update streams are open. Mapped to
+ * {@code 503 Service Unavailable}; the client falls back to polling.
+ */
+public class LiveUpdatesBusyException extends RuntimeException {
+
+    public LiveUpdatesBusyException() {
+        super("Too many live update streams are open, try again later.");
+    }
+}
@@ -8,20 +8,24 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "date_subscriptions")
+@Table(name = "date_subscriptions",
+        uniqueConstraints = @UniqueConstraint(name = "uk_date_subscriptions_follower_date",
+                columnNames = {"follower_id", "followee_id", "important_date_id"}),
+        indexes = @Index(name = "idx_date_subscriptions_date",
+                columnList = "important_date_id, follower_id, followee_id"))
 public class DateSubscription {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private User follower;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private User followee;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private ImportantDate importantDate;
 
     @CreationTimestamp
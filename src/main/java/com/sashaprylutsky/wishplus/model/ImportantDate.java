@@ -1,23 +1,30 @@
 package com.sashaprylutsky.wishplus.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 
 import java.util.Date;
 
 @Entity
-@Table(name = "important_dates")
+@Table(name = "important_dates",
+        indexes = {@Index(name = "idx_important_dates_user_id", columnList = "user_id, id"),
+                @Index(name = "idx_important_dates_month_day", columnList = "month_day, id, date")})
 public class ImportantDate {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private User user;
 
     private String title;
     private Date date;
 
+    @JsonIgnore
+    @Column(name = "month_day")
+    private Integer monthDay;
+
     public ImportantDate() {}
 
     public ImportantDate(User user, String title, Date date) {
@@ -34,6 +41,16 @@ public class ImportantDate {
         this.date = date;
     }
 
+    public Integer getMonthDay() {
+        return monthDay;
+    }
+
+    @PrePersist
+    @PreUpdate
+    private void updateMonthDay() {
+        this.monthDay = date == null ? null : RecurringDates.monthDay(RecurringDates.toLocalDate(date));
+    }
+
     public Long getId() {
         return id;
     }
@@ -0,0 +1,11 @@
+package com.sashaprylutsky.wishplus.model;
+
+/**
+ * One or two ranges of month-day codes (see {@link RecurringDates#monthDay}) covering a window of days.
+ * A window that crosses New Year is split into {@code [start, 1231]} and {@code [101, end]};
+ * otherwise the second range is empty.
+ *
+ * @param start month-day code of the first day of the window, used to order results by next occurrence
+ */
+public record MonthDayWindow(int start, int firstFrom, int firstTo, int secondFrom, int secondTo) {
+}
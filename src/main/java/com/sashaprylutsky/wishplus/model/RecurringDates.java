@@ -0,0 +1,72 @@
+package com.sashaprylutsky.wishplus.model;
+
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+/**
+ * Calendar helpers for dates that repeat every year, such as birthdays and anniversaries.
+ * Dates are interpreted in UTC. A date on February 29 occurs on February 28 in non-leap years.
+ */
+public final class RecurringDates {
+
+    private static final int FEBRUARY_28 = 228;
+    private static final int FEBRUARY_29 = 229;
+
+    private RecurringDates() {
+    }
+
+    public static LocalDate toLocalDate(Date date) {
+        if (date instanceof java.sql.Date sqlDate) {
+            return sqlDate.toLocalDate();
+        }
+        return date.toInstant().atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    /**
+     * Encodes the month and day of a date as {@code month * 100 + day}, e.g. 1225 for December 25.
+     * The codes sort in calendar order within a year.
+     */
+    public static int monthDay(LocalDate date) {
+        return date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
+
+    public static MonthDay fromMonthDay(int monthDay) {
+        return MonthDay.of(monthDay / 100, monthDay % 100);
+    }
+
+    public static LocalDate occurrenceIn(LocalDate date, int year) {
+        return date.withYear(year);
+    }
+
+    public static LocalDate nextOccurrence(LocalDate date, LocalDate from) {
+        LocalDate occurrence = occurrenceIn(date, from.getYear());
+        return occurrence.isBefore(from) ? occurrenceIn(date, from.getYear() + 1) : occurrence;
+    }
+
+    /**
+     * Month-day codes of every date that occurs within {@code days} days starting at {@code from}, inclusive.
+     */
+    public static MonthDayWindow window(LocalDate from, int days) {
+        if (days < 0 || days > 366) {
+            throw new IllegalArgumentException("Window must be between 0 and 366 days, got " + days);
+        }
+        LocalDate to = from.plusDays(days);
+        int start = monthDay(from);
+
+        if (!to.isBefore(from.plusYears(1))) {
+            return new MonthDayWindow(start, 101, 1231, 0, -1);
+        }
+        if (to.getYear() == from.getYear()) {
+            return new MonthDayWindow(start, start, lastCode(to), 0, -1);
+        }
+        return new MonthDayWindow(start, start, 1231, 101, lastCode(to));
+    }
+
+    // in non-leap years February 29 dates fall on February 28
+    private static int lastCode(LocalDate to) {
+        int code = monthDay(to);
+        return code == FEBRUARY_28 && !to.isLeapYear() ? FEBRUARY_29 : code;
+    }
+}
@@ -0,0 +1,103 @@
+package com.sashaprylutsky.wishplus.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+@Entity
+@Table(name = "reminder_outbox",
+        uniqueConstraints = @UniqueConstraint(name = "uk_reminder_outbox_occurrence",
+                columnNames = {"important_date_id", "follower_id", "occurrence_date"}),
+        indexes = @Index(name = "idx_reminder_outbox_due", columnList = "status, next_attempt_at, id"))
+public class ReminderOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "follower_id", nullable = false)
+    private Long followerId;
+
+    @Column(name = "followee_id", nullable = false)
+    private Long followeeId;
+
+    @Column(name = "important_date_id", nullable = false)
+    private Long importantDateId;
+
+    @Column(name = "occurrence_date", nullable = false)
+    private LocalDate occurrenceDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private ReminderStatus status;
+
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @Column(name = "sent_at")
+    private Instant sentAt;
+
+    public ReminderOutbox() {}
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Long getFolloweeId() {
+        return followeeId;
+    }
+
+    public Long getFollowerId() {
+        return followerId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getImportantDateId() {
+        return importantDateId;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Instant nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public LocalDate getOccurrenceDate() {
+        return occurrenceDate;
+    }
+
+    public Instant getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(Instant sentAt) {
+        this.sentAt = sentAt;
+    }
+
+    public ReminderStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ReminderStatus status) {
+        this.status = status;
+    }
+}
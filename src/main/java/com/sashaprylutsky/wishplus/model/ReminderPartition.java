@@ -0,0 +1,49 @@
+package com.sashaprylutsky.wishplus.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * A slice of {@code important_dates} ({@code id mod partitions}) that one node scans per scan interval.
+ * Nodes claim a partition by taking a time-limited lease on its row.
+ */
+@Entity
+@Table(name = "reminder_partitions")
+public class ReminderPartition {
+
+    @Id
+    @Column(name = "partition_no")
+    private Integer partitionNo;
+
+    @Column(name = "lease_owner")
+    private String leaseOwner;
+
+    @Column(name = "lease_until")
+    private Instant leaseUntil;
+
+    @Column(name = "last_scanned_at")
+    private Instant lastScannedAt;
+
+    public ReminderPartition() {}
+
+    public ReminderPartition(Integer partitionNo) {
+        this.partitionNo = partitionNo;
+    }
+
+    public Instant getLastScannedAt() {
+        return lastScannedAt;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public Instant getLeaseUntil() {
+        return leaseUntil;
+    }
+
+    public Integer getPartitionNo() {
+        return partitionNo;
+    }
+}
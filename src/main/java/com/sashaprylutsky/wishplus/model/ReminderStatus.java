@@ -0,0 +1,7 @@
+package com.sashaprylutsky.wishplus.model;
+
+public enum ReminderStatus {
+    PENDING,
+    SENT,
+    FAILED
+}
@@ -41,6 +41,9 @@ public class User implements UserDetails {
 
     //    @NotBlank(message = "Second name is required")
     private String lastName;
+
+    // set through the photo upload endpoint only
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
     private String profilePhoto;
 
     public User() {
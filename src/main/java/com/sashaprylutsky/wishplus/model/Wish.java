@@ -10,7 +10,9 @@ import org.hibernate.validator.constraints.URL;
 import java.time.Instant;
 
 @Entity
-@Table(name = "wishlist")
+@Table(name = "wishlist",
+        indexes = {@Index(name = "idx_wishlist_user_id", columnList = "user_id, id"),
+                @Index(name = "idx_wishlist_user_feed", columnList = "user_id, is_archived, created_at, id")})
 @DynamicUpdate
 public class Wish {
 
@@ -18,7 +20,7 @@ public class Wish {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private User user;
 
     @Size(min = 2, max = 25, message = "Title must be 2-25 characters long")
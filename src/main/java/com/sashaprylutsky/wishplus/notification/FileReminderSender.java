@@ -0,0 +1,51 @@
+package com.sashaprylutsky.wishplus.notification;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Stand-in for a mail gateway: appends every reminder as a line to a local file.
+ */
+@Component
+@ConditionalOnProperty(name = "reminders.sender", havingValue = "file", matchIfMissing = true)
+public class FileReminderSender implements ReminderSender {
+
+    private final Path path;
+
+    public FileReminderSender(@Value("${reminders.file-sender.path}") Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public synchronized void send(Reminder reminder) {
+        String line = "%s reminder #%d to %s <%s>: %s's \"%s\" is on %s%n".formatted(
+                Instant.now(),
+                reminder.id(),
+                reminder.followerUsername(),
+                reminder.followerEmail(),
+                reminder.followeeUsername(),
+                reminder.dateTitle(),
+                reminder.occursOn());
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(line);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't write reminder #" + reminder.id(), e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.sashaprylutsky.wishplus.notification;
+
+import java.time.LocalDate;
+
+public record Reminder(Long id,
+                       String followerEmail,
+                       String followerUsername,
+                       String followeeUsername,
+                       String dateTitle,
+                       LocalDate occursOn) {
+}
@@ -0,0 +1,10 @@
+package com.sashaprylutsky.wishplus.notification;
+
+/**
+ * Delivers a reminder to a follower. Implementations signal a failed delivery by throwing a
+ * {@link RuntimeException}; the reminder is then retried with a backoff.
+ */
+public interface ReminderSender {
+
+    void send(Reminder reminder);
+}
@@ -0,0 +1,52 @@
+package com.sashaprylutsky.wishplus.pagination;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A page of a keyset-paginated list. {@code nextCursor} is {@code null} on the last page.
+ */
+public record CursorPage<T>(List<T> items, String nextCursor) {
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    /**
+     * Page size of the list endpoints when the request has no {@code limit}.
+     */
+    public static final String DEFAULT_LIMIT = "50";
+
+    /**
+     * Builds a page from rows fetched with a limit of {@code limit + 1}: the extra row only tells
+     * that another page exists and is dropped.
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int limit, Function<T, String> cursorOf) {
+        if (rows.size() <= limit) {
+            return new CursorPage<>(rows, null);
+        }
+        List<T> items = rows.subList(0, limit);
+        return new CursorPage<>(items, cursorOf.apply(items.get(limit - 1)));
+    }
+
+    public static int checkLimit(int limit, int max) {
+        if (limit < 1 || limit > max) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + max);
+        }
+        return limit;
+    }
+
+    public <R> CursorPage<R> map(Function<T, R> mapper) {
+        return new CursorPage<>(items.stream().map(mapper).toList(), nextCursor);
+    }
+
+    /**
+     * The items as the response body and the cursor of the next page in the {@value #NEXT_CURSOR_HEADER} header.
+     */
+    public ResponseEntity<List<T>> toResponse() {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, nextCursor);
+        }
+        return response.body(items);
+    }
+}
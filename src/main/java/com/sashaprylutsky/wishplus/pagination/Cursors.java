@@ -0,0 +1,50 @@
+package com.sashaprylutsky.wishplus.pagination;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.StringJoiner;
+
+/**
+ * Opaque keyset cursors. A cursor is the sort key of the last row of a page, Base64url-encoded
+ * so clients treat it as a token rather than something to construct themselves.
+ */
+public final class Cursors {
+
+    private static final String SEPARATOR = ":";
+
+    private Cursors() {
+    }
+
+    public static String encode(Object... keys) {
+        StringJoiner joiner = new StringJoiner(SEPARATOR);
+        for (Object key : keys) {
+            joiner.add(String.valueOf(key));
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(joiner.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Splits a cursor back into its keys. The last key may itself contain the separator.
+     */
+    public static String[] decode(String cursor, int keys) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = decoded.split(SEPARATOR, keys);
+            if (parts.length != keys) {
+                throw new IllegalArgumentException("Malformed cursor.");
+            }
+            return parts;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor.", e);
+        }
+    }
+
+    public static long decodeLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed cursor.", e);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.sashaprylutsky.wishplus.pagination;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Writes a repository {@link Stream} to the response as a JSON array, row by row.
+ * The query runs in its own read-only transaction on the async request thread, and the persistence
+ * context is cleared as rows are written, so memory stays flat however many rows are returned.
+ */
+@Component
+public class JsonArrayStreamer {
+
+    private static final int CLEAR_EVERY_ROWS = 100;
+
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter rowWriter;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public JsonArrayStreamer(ObjectMapper objectMapper,
+                             EntityManager entityManager,
+                             PlatformTransactionManager transactionManager) {
+        this.objectMapper = objectMapper;
+        this.rowWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.entityManager = entityManager;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public <T> StreamingResponseBody stream(Supplier<Stream<T>> query) {
+        return out -> readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<T> rows = query.get();
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                int written = 0;
+                for (T row : (Iterable<T>) rows::iterator) {
+                    rowWriter.writeValue(generator, row);
+                    if (++written % CLEAR_EVERY_ROWS == 0) {
+                        entityManager.clear();
+                    }
+                }
+                generator.writeEndArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
@@ -0,0 +1,188 @@
+package com.sashaprylutsky.wishplus.photo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed photo files on local disk. A photo's id is the SHA-256 of its bytes plus an extension, e.g.
+ * {@code 9f86d08...0f00a08.jpg}, stored as {@code <storage-path>/9f/9f86d08...0f00a08.jpg}; its thumbnails sit
+ * next to it as {@code 9f86d08...0f00a08-256.jpg}. A file is never changed once written, so it can be cached
+ * forever, and the same photo uploaded twice is stored once.
+ * <p>
+ * An upload is streamed to a temporary file and hashed on the way, so it is never held in memory, then moved
+ * into place. Its type is told from its first bytes; the image itself is only decoded by {@link PhotoThumbnails}.
+ */
+@Component
+public class PhotoStorage {
+
+    private static final Pattern ID = Pattern.compile("([0-9a-f]{64})\\.(jpg|png|gif)");
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int SNIFF_BYTES = 12;
+
+    public enum Type {
+        JPEG("jpg", "image/jpeg"),
+        PNG("png", "image/png"),
+        GIF("gif", "image/gif");
+
+        private final String extension;
+        private final String contentType;
+
+        Type(String extension, String contentType) {
+            this.extension = extension;
+            this.contentType = contentType;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        static Type ofExtension(String extension) {
+            return Arrays.stream(values()).filter(type -> type.extension.equals(extension)).findFirst().orElseThrow();
+        }
+
+        /**
+         * The type announced by the file signature, or {@code null}.
+         */
+        static Type sniff(byte[] head, int length) {
+            if (length >= 3 && (head[0] & 0xff) == 0xff && (head[1] & 0xff) == 0xd8 && (head[2] & 0xff) == 0xff) {
+                return JPEG;
+            }
+            if (length >= 8 && Arrays.equals(head, 0, 8,
+                    new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'}, 0, 8)) {
+                return PNG;
+            }
+            if (length >= 6 && head[0] == 'G' && head[1] == 'I' && head[2] == 'F' && head[3] == '8'
+                    && (head[4] == '7' || head[4] == '9') && head[5] == 'a') {
+                return GIF;
+            }
+            return null;
+        }
+    }
+
+    private final Path root;
+    private final Path incoming;
+    private final long maxUploadBytes;
+
+    public PhotoStorage(@Value("${photos.storage-path}") Path root,
+                        @Value("${photos.max-upload-bytes}") long maxUploadBytes) throws IOException {
+        this.root = root.toAbsolutePath();
+        this.incoming = this.root.resolve("incoming");
+        this.maxUploadBytes = maxUploadBytes;
+        Files.createDirectories(incoming);
+    }
+
+    /**
+     * Streams an upload into storage.
+     *
+     * @param contentLength declared length of the upload, {@code -1} if unknown
+     * @return id of the stored photo
+     * @throws PhotoTooLargeException        if the upload is longer than {@code photos.max-upload-bytes}
+     * @throws UnsupportedPhotoTypeException if it is not a JPEG, PNG or GIF image
+     */
+    public String store(InputStream upload, long contentLength) {
+        if (contentLength > maxUploadBytes) {
+            throw new PhotoTooLargeException(maxUploadBytes);
+        }
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(incoming, "upload-", ".tmp");
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            byte[] head = new byte[SNIFF_BYTES];
+            int headLength = 0;
+            long total = 0;
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                byte[] buffer = new byte[BUFFER_BYTES];
+                int read;
+                while ((read = upload.read(buffer)) != -1) {
+                    total += read;
+                    if (total > maxUploadBytes) {
+                        throw new PhotoTooLargeException(maxUploadBytes);
+                    }
+                    if (headLength < SNIFF_BYTES) {
+                        int copied = Math.min(read, SNIFF_BYTES - headLength);
+                        System.arraycopy(buffer, 0, head, headLength, copied);
+                        headLength += copied;
+                        if (headLength == SNIFF_BYTES || read == copied) {
+                            checkType(head, headLength, false);
+                        }
+                    }
+                    sha256.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            Type type = checkType(head, headLength, true);
+
+            String id = HexFormat.of().formatHex(sha256.digest()) + "." + type.extension;
+            Path target = original(id);
+            Files.createDirectories(target.getParent());
+            // the same bytes are the same file, so replacing an existing copy changes nothing
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            temporary = null;
+            return id;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store photo", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // the incoming directory only ever holds uploads in progress
+                }
+            }
+        }
+    }
+
+    /**
+     * Fails as soon as the first bytes cannot start a supported image; {@code complete} once the whole upload
+     * is in, so an upload shorter than a signature fails too.
+     */
+    private static Type checkType(byte[] head, int length, boolean complete) {
+        Type type = Type.sniff(head, length);
+        if (type == null && (complete || length == SNIFF_BYTES)) {
+            throw new UnsupportedPhotoTypeException();
+        }
+        return type;
+    }
+
+    public static boolean isValidId(String id) {
+        return id != null && ID.matcher(id).matches();
+    }
+
+    public static Type typeOf(String id) {
+        Matcher matcher = matcher(id);
+        return Type.ofExtension(matcher.group(2));
+    }
+
+    public Path original(String id) {
+        return root.resolve(id.substring(0, 2)).resolve(id);
+    }
+
+    public Path thumbnail(String id, int size) {
+        Matcher matcher = matcher(id);
+        return root.resolve(id.substring(0, 2)).resolve(matcher.group(1) + "-" + size + ".jpg");
+    }
+
+    private static Matcher matcher(String id) {
+        Matcher matcher = ID.matcher(id);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a photo id: " + id);
+        }
+        return matcher;
+    }
+}
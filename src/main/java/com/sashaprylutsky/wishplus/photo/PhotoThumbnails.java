@@ -0,0 +1,258 @@
+package com.sashaprylutsky.wishplus.photo;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Square JPEG thumbnails of stored photos, in each of {@code photos.thumbnail-sizes}, made on a small dedicated
+ * pool so that no request thread ever decodes an image.
+ * <p>
+ * A photo's thumbnails are asked for when it is uploaded, and again when one is requested but missing, e.g. after
+ * the queue was full or the files were lost. The queue is bounded: when it is full, the work is dropped and done on
+ * a later request. Images of more than {@code photos.max-pixels} are not decoded at all, and large ones are
+ * subsampled while decoding, so a thumbnail never needs the full image in memory. A photo that cannot be decoded is
+ * not tried again for a while.
+ * <p>
+ * Metrics: {@code executor.*} with {@code name=photo-thumbnail}, {@code photo.thumbnail} (time to make a photo's
+ * thumbnails) and {@code photo.thumbnails} tagged with {@code outcome} ({@code created}, {@code failed},
+ * {@code dropped}).
+ */
+@Component
+public class PhotoThumbnails {
+
+    private static final Logger log = LoggerFactory.getLogger(PhotoThumbnails.class);
+    private static final float JPEG_QUALITY = 0.85f;
+
+    private final PhotoStorage storage;
+    private final List<Integer> sizes;
+    private final long maxPixels;
+    private final ThreadPoolExecutor executor;
+    /**
+     * ids of photos queued or being worked on
+     */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Cache<String, Boolean> failed;
+    private final Timer thumbnailTimer;
+    private final Counter created;
+    private final Counter failures;
+    private final Counter dropped;
+
+    public PhotoThumbnails(PhotoStorage storage,
+                           MeterRegistry meterRegistry,
+                           @Value("${photos.thumbnail-sizes}") List<Integer> sizes,
+                           @Value("${photos.thumbnail-threads}") int threads,
+                           @Value("${photos.thumbnail-queue-capacity}") int queueCapacity,
+                           @Value("${photos.max-pixels}") long maxPixels) {
+        this.storage = storage;
+        this.sizes = List.copyOf(sizes);
+        this.maxPixels = maxPixels;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory("photo-thumbnail-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.failed = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofHours(1))
+                .build();
+        // decoding works on files and memory only, never on ImageIO's temporary cache files
+        ImageIO.setUseCache(false);
+
+        new ExecutorServiceMetrics(executor, "photo-thumbnail", Tags.empty()).bindTo(meterRegistry);
+        this.thumbnailTimer = Timer.builder("photo.thumbnail")
+                .description("Time to decode a photo and write its thumbnails")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.created = thumbnails(meterRegistry, "created");
+        this.failures = thumbnails(meterRegistry, "failed");
+        this.dropped = thumbnails(meterRegistry, "dropped");
+    }
+
+    private static Counter thumbnails(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("photo.thumbnails")
+                .description("Photo thumbnail jobs by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    public boolean isSize(int size) {
+        return sizes.contains(size);
+    }
+
+    /**
+     * The thumbnail if it has been made; if not, asks for it and returns {@code null}.
+     */
+    public Path get(String id, int size) {
+        Path thumbnail = storage.thumbnail(id, size);
+        if (Files.exists(thumbnail)) {
+            return thumbnail;
+        }
+        request(id);
+        return null;
+    }
+
+    /**
+     * Queues the missing thumbnails of a stored photo, unless they are queued already.
+     */
+    public void request(String id) {
+        if (failed.getIfPresent(id) != null || !inFlight.add(id)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    create(id);
+                } finally {
+                    inFlight.remove(id);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(id);
+            dropped.increment();
+        }
+    }
+
+    private void create(String id) {
+        long started = System.nanoTime();
+        try {
+            Path original = storage.original(id);
+            if (!Files.exists(original)) {
+                return;
+            }
+            int largest = sizes.stream().mapToInt(Integer::intValue).max().orElse(0);
+            BufferedImage square = null;
+            for (int size : sizes) {
+                Path thumbnail = storage.thumbnail(id, size);
+                if (Files.exists(thumbnail)) {
+                    continue;
+                }
+                if (square == null) {
+                    square = decodeSquare(original, largest);
+                }
+                write(scale(square, size), thumbnail);
+            }
+            if (square != null) {
+                created.increment();
+                thumbnailTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("No thumbnails of photo {}: {}", id, e.toString());
+            failed.put(id, Boolean.TRUE);
+            failures.increment();
+        }
+    }
+
+    /**
+     * The centered square of the image, decoded with subsampling down to no less than twice {@code targetSize}.
+     */
+    private BufferedImage decodeSquare(Path original, int targetSize) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("Not a readable image");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    throw new IOException(width + "x" + height + " is more than " + maxPixels + " pixels");
+                }
+                int side = Math.min(width, height);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(new Rectangle((width - side) / 2, (height - side) / 2, side, side));
+                int subsampling = Math.max(1, side / (2 * targetSize));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales down in halving steps, which keeps bilinear filtering sharp without a slower area-averaging pass.
+     */
+    private static BufferedImage scale(BufferedImage image, int size) {
+        BufferedImage current = image;
+        int side = Math.min(image.getWidth(), image.getHeight());
+        do {
+            side = Math.max(size, side / 2);
+            BufferedImage next = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                // JPEG has no alpha channel, so transparent pixels become white instead of black
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, side, side);
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(current, 0, 0, side, side, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (side > size);
+        return current;
+    }
+
+    private static void write(BufferedImage image, Path target) throws IOException {
+        Path temporary = Files.createTempFile(target.getParent(), "thumbnail-", ".tmp");
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(temporary.toFile())) {
+                writer.setOutput(output);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,11 @@
+package com.sashaprylutsky.wishplus.photo;
+
+/**
+ * Thrown when an upload is longer than {@code photos.max-upload-bytes}. Mapped to {@code 413 Content Too Large}.
+ */
+public class PhotoTooLargeException extends RuntimeException {
+
+    public PhotoTooLargeException(long maxBytes) {
+        super("Photo must be at most " + maxBytes + " bytes.");
+    }
+}
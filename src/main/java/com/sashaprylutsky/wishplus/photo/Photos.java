@@ -0,0 +1,80 @@
+package com.sashaprylutsky.wishplus.photo;
+
+import jakarta.persistence.NoResultException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Uploads and serves profile photos; see {@link PhotoStorage} for how they are stored and {@link PhotoThumbnails}
+ * for their thumbnails.
+ * <p>
+ * A photo or thumbnail never changes under its url, so it is served with a strong ETag and
+ * {@code Cache-Control: public, max-age=31536000, immutable}. A thumbnail that is not made yet is stood in for by
+ * the original photo with {@code Cache-Control: no-cache}, so clients ask again and get the thumbnail once it is
+ * ready.
+ */
+@Component
+public class Photos {
+
+    public static final String URL_PREFIX = "/api/photos/";
+
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String REVALIDATE = "public, no-cache";
+    private static final String THUMBNAIL_TYPE = "image/jpeg";
+
+    private final PhotoStorage storage;
+    private final PhotoThumbnails thumbnails;
+
+    public Photos(PhotoStorage storage, PhotoThumbnails thumbnails) {
+        this.storage = storage;
+        this.thumbnails = thumbnails;
+    }
+
+    /**
+     * Stores an upload and asks for its thumbnails.
+     *
+     * @param contentLength declared length of the upload, {@code -1} if unknown
+     * @return url of the photo
+     */
+    public String upload(InputStream upload, long contentLength) {
+        String id = storage.store(upload, contentLength);
+        thumbnails.request(id);
+        return URL_PREFIX + id;
+    }
+
+    /**
+     * Writes the photo, or its thumbnail of {@code size} pixels, to the response.
+     *
+     * @param size {@code null} for the original photo
+     */
+    public void send(String id, Integer size, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (!PhotoStorage.isValidId(id) || !Files.exists(storage.original(id))) {
+            throw new NoResultException("No photo found with ID " + id);
+        }
+        if (size != null && !thumbnails.isSize(size)) {
+            throw new IllegalArgumentException("Thumbnail size " + size + " is not available.");
+        }
+        Path thumbnail = size == null ? null : thumbnails.get(id, size);
+        if (thumbnail != null) {
+            FileSender.send(thumbnail, THUMBNAIL_TYPE, etag(id, size), IMMUTABLE, request, response);
+        } else {
+            FileSender.send(storage.original(id), PhotoStorage.typeOf(id).contentType(), etag(id, null),
+                    size == null ? IMMUTABLE : REVALIDATE, request, response);
+        }
+    }
+
+    /**
+     * The content hash of the photo, with the thumbnail size; {@code "<sha-256>"} or {@code "<sha-256>-<size>"}.
+     */
+    private static String etag(String id, Integer size) {
+        String hash = id.substring(0, id.indexOf('.'));
+        return "\"" + (size == null ? hash : hash + "-" + size) + "\"";
+    }
+}
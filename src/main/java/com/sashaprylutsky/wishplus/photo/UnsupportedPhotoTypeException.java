@@ -0,0 +1,11 @@
+package com.sashaprylutsky.wishplus.photo;
+
+/**
+ * Thrown when an upload is not a JPEG, PNG or GIF image. Mapped to {@code 415 Unsupported Media Type}.
+ */
+public class UnsupportedPhotoTypeException extends RuntimeException {
+
+    public UnsupportedPhotoTypeException() {
+        super("Photo must be a JPEG, PNG or GIF image.");
+    }
+}
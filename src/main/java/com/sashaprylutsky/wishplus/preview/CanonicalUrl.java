@@ -0,0 +1,75 @@
+package com.sashaprylutsky.wishplus.preview;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * The form of a url that previews are cached under, so the same page shared with different tracking parameters
+ * or spelled with a different case of host is fetched once.
+ */
+final class CanonicalUrl {
+
+    private static final Set<String> TRACKING_PARAMETERS = Set.of(
+            "fbclid", "gclid", "dclid", "msclkid", "yclid", "igshid", "mc_cid", "mc_eid", "_ga");
+
+    private CanonicalUrl() {
+    }
+
+    /**
+     * Lowercase scheme and host, no default port, user info, fragment or {@code utm_*} and click-id parameters,
+     * and {@code /} for an empty path.
+     *
+     * @return {@code null} if the url is not an absolute http or https url
+     */
+    static String of(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        URI uri;
+        try {
+            uri = new URI(url.strip()).normalize();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+        String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+        String host = uri.getHost();
+        if (!("http".equals(scheme) || "https".equals(scheme)) || host == null || host.isEmpty()) {
+            return null;
+        }
+        host = host.toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+
+        StringBuilder canonical = new StringBuilder(scheme).append("://").append(host);
+        int port = uri.getPort();
+        if (port != -1 && !(port == 80 && "http".equals(scheme)) && !(port == 443 && "https".equals(scheme))) {
+            canonical.append(':').append(port);
+        }
+        String path = uri.getRawPath();
+        canonical.append(path == null || path.isEmpty() ? "/" : path);
+        String query = query(uri.getRawQuery());
+        if (query != null) {
+            canonical.append('?').append(query);
+        }
+        return canonical.toString();
+    }
+
+    private static String query(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return null;
+        }
+        StringJoiner kept = new StringJoiner("&");
+        for (String parameter : rawQuery.split("&")) {
+            String name = parameter.substring(0, parameter.indexOf('=') < 0 ? parameter.length() : parameter.indexOf('='))
+                    .toLowerCase(Locale.ROOT);
+            if (!parameter.isEmpty() && !name.startsWith("utm_") && !TRACKING_PARAMETERS.contains(name)) {
+                kept.add(parameter);
+            }
+        }
+        return kept.length() == 0 ? null : kept.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package com.sashaprylutsky.wishplus.preview;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(LinkPreviewProperties.class)
+public class LinkPreviewConfiguration {
+
+    @Bean
+    public LinkPreviewFetcher linkPreviewFetcher(LinkPreviewProperties properties) {
+        return new LinkPreviewFetcher(properties);
+    }
+}
@@ -0,0 +1,229 @@
+package com.sashaprylutsky.wishplus.preview;
+
+import com.sashaprylutsky.wishplus.dto.LinkPreview;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fetches a page and extracts its {@link LinkPreview}, blocking the calling thread.
+ * <p>
+ * Urls come from users, so a fetch must not become a way into the server's own network: only http and https are
+ * fetched, and unless {@code link-preview.allow-private-addresses} is set, a host that resolves to a loopback,
+ * link-local, private or otherwise internal address is refused. Redirects are followed here, not by the
+ * {@link HttpClient}, so every hop is checked. The host is resolved again when the connection is opened, so a
+ * DNS answer that changes in between can still slip through; a fetch only ever reads the head of an HTML page and
+ * returns a title, an image url and a price, which limits what that could reveal.
+ * <p>
+ * A fetch reads at most {@code link-preview.max-body-bytes} and takes at most {@code link-preview.timeout-millis},
+ * redirects included.
+ */
+public class LinkPreviewFetcher {
+
+    private static final Set<Integer> REDIRECTS = Set.of(301, 302, 303, 307, 308);
+    private static final Pattern CHARSET = Pattern.compile("charset\\s*=\\s*[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+    private static final int CHARSET_SNIFF_BYTES = 1024;
+
+    private final HttpClient client;
+    private final LinkPreviewProperties properties;
+
+    public LinkPreviewFetcher(LinkPreviewProperties properties) {
+        this.properties = properties;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(properties.connectTimeoutMillis()))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    /**
+     * @return the preview, or {@code null} if the page is not HTML or has nothing to show
+     * @throws IOException if the page cannot be fetched, answers with an error or may not be fetched
+     */
+    public LinkPreview fetch(URI url) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.timeoutMillis());
+        URI current = url;
+        for (int redirects = 0; ; redirects++) {
+            checkAddress(current);
+            HttpResponse<byte[]> response = send(current, deadline);
+            int status = response.statusCode();
+            if (REDIRECTS.contains(status)) {
+                if (redirects == properties.maxRedirects()) {
+                    throw new IOException("More than " + properties.maxRedirects() + " redirects from " + url);
+                }
+                String location = response.headers().firstValue("Location")
+                        .orElseThrow(() -> new IOException("Redirect without a Location from " + response.uri()));
+                try {
+                    current = current.resolve(location);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Bad redirect from " + response.uri() + ": " + location, e);
+                }
+                continue;
+            }
+            if (status < 200 || status > 299) {
+                throw new IOException(response.uri() + " answered " + status);
+            }
+            if (response.body() == null) {
+                return null;
+            }
+            String contentType = response.headers().firstValue("Content-Type").orElse("");
+            return LinkPreviewParser.parse(new String(response.body(), charset(contentType, response.body())), current);
+        }
+    }
+
+    private HttpResponse<byte[]> send(URI url, long deadline) throws IOException, InterruptedException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            throw new HttpTimeoutException("Timed out fetching " + url);
+        }
+        HttpRequest request = HttpRequest.newBuilder(url)
+                .timeout(Duration.ofNanos(remaining))
+                .header("User-Agent", properties.userAgent())
+                .header("Accept", "text/html,application/xhtml+xml;q=0.9,*/*;q=0.1")
+                .GET()
+                .build();
+        CompletableFuture<HttpResponse<byte[]>> response = client.sendAsync(request, this::body);
+        try {
+            return response.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            response.cancel(true);
+            throw new HttpTimeoutException("Timed out fetching " + url);
+        } catch (InterruptedException e) {
+            response.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException("Failed to fetch " + url, e.getCause());
+        }
+    }
+
+    /**
+     * The head of a successful HTML response; {@code null} for anything else, without reading it.
+     */
+    private HttpResponse.BodySubscriber<byte[]> body(HttpResponse.ResponseInfo info) {
+        String contentType = info.headers().firstValue("Content-Type").orElse("text/html").toLowerCase(Locale.ROOT);
+        boolean html = contentType.startsWith("text/html") || contentType.startsWith("application/xhtml+xml");
+        if (info.statusCode() < 200 || info.statusCode() > 299 || !html) {
+            return HttpResponse.BodySubscribers.replacing(null);
+        }
+        return new HeadSubscriber(properties.maxBodyBytes());
+    }
+
+    private void checkAddress(URI url) throws IOException {
+        String scheme = url.getScheme();
+        if (!("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)) || url.getHost() == null) {
+            throw new IOException("Not an http or https url: " + url);
+        }
+        if (properties.allowPrivateAddresses()) {
+            return;
+        }
+        for (InetAddress address : InetAddress.getAllByName(url.getHost())) {
+            if (isInternal(address)) {
+                throw new IOException(url.getHost() + " resolves to the internal address " + address.getHostAddress());
+            }
+        }
+    }
+
+    static boolean isInternal(InetAddress address) {
+        if (address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress()
+                || address.isSiteLocalAddress() || address.isMulticastAddress()) {
+            return true;
+        }
+        byte[] bytes = address.getAddress();
+        if (bytes.length == 4) {
+            // 0.0.0.0/8 and the carrier-grade NAT range 100.64.0.0/10
+            return bytes[0] == 0 || ((bytes[0] & 0xff) == 100 && (bytes[1] & 0xc0) == 64);
+        }
+        // unique local fc00::/7
+        return (bytes[0] & 0xfe) == 0xfc;
+    }
+
+    /**
+     * The charset of the {@code Content-Type} header, else of a {@code <meta>} tag at the start of the page,
+     * else UTF-8.
+     */
+    private static Charset charset(String contentType, byte[] body) {
+        Matcher matcher = CHARSET.matcher(contentType);
+        if (!matcher.find()) {
+            matcher = CHARSET.matcher(new String(body, 0, Math.min(body.length, CHARSET_SNIFF_BYTES),
+                    StandardCharsets.ISO_8859_1));
+            if (!matcher.find()) {
+                return StandardCharsets.UTF_8;
+            }
+        }
+        try {
+            return Charset.forName(matcher.group(1));
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    /**
+     * Collects the body up to a limit, then cancels the rest of the download.
+     */
+    private static final class HeadSubscriber implements HttpResponse.BodySubscriber<byte[]> {
+
+        private final int limit;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        HeadSubscriber(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return body;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                int length = Math.min(buffer.remaining(), limit - bytes.size());
+                byte[] chunk = new byte[length];
+                buffer.get(chunk);
+                bytes.write(chunk, 0, length);
+            }
+            if (bytes.size() >= limit && !body.isDone()) {
+                subscription.cancel();
+                body.complete(bytes.toByteArray());
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(bytes.toByteArray());
+        }
+    }
+}
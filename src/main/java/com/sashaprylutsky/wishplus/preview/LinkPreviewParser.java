@@ -0,0 +1,206 @@
+package com.sashaprylutsky.wishplus.preview;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sashaprylutsky.wishplus.dto.LinkPreview;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts a {@link LinkPreview} from the HTML of a page, in this order of preference:
+ * <ul>
+ *     <li>title: Open Graph, Twitter card, {@code <title>};</li>
+ *     <li>image: Open Graph, Twitter card, resolved against the page url;</li>
+ *     <li>price: Open Graph product tags, schema.org {@code itemprop} microdata, schema.org JSON-LD offers.</li>
+ * </ul>
+ * Pages are scanned with regular expressions instead of being parsed into a DOM: only a few tags are needed, and
+ * the input is the first {@code link-preview.max-body-bytes} of a page, which may end in the middle of a tag.
+ */
+final class LinkPreviewParser {
+
+    private static final int MAX_TITLE_LENGTH = 200;
+    private static final int MAX_URL_LENGTH = 2048;
+    private static final int MAX_PRICE_LENGTH = 32;
+    private static final int MAX_JSON_DEPTH = 8;
+
+    private static final Pattern META = Pattern.compile("<meta\\b([^>]*)>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ITEMPROP = Pattern.compile("<[a-z][a-z0-9]*\\b([^>]*\\bitemprop\\s*=[^>]*)>",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTRIBUTE = Pattern.compile(
+            "([\\w:.-]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'>]+))");
+    private static final Pattern TITLE = Pattern.compile("<title\\b[^>]*>(.*?)</title>",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern JSON_LD = Pattern.compile(
+            "<script\\b[^>]*application/ld\\+json[^>]*>(.*?)</script>", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern ENTITY = Pattern.compile("&(#[xX][0-9a-fA-F]{1,6}|#\\d{1,7}|amp|lt|gt|quot|apos|nbsp);");
+    private static final Pattern CURRENCY = Pattern.compile("[A-Z]{3}");
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private LinkPreviewParser() {
+    }
+
+    /**
+     * @param page url the HTML was fetched from, after redirects
+     * @return {@code null} if the page has neither a title, an image nor a price
+     */
+    static LinkPreview parse(String html, URI page) {
+        Map<String, String> tags = new HashMap<>();
+        collect(META, html, tags);
+        collect(ITEMPROP, html, tags);
+
+        String title = text(first(tags, "og:title", "twitter:title"), MAX_TITLE_LENGTH);
+        if (title == null) {
+            Matcher matcher = TITLE.matcher(html);
+            title = matcher.find() ? text(matcher.group(1), MAX_TITLE_LENGTH) : null;
+        }
+        String image = link(first(tags, "og:image", "og:image:url", "og:image:secure_url",
+                "twitter:image", "twitter:image:src"), page);
+        String price = text(first(tags, "product:price:amount", "og:price:amount", "price"), MAX_PRICE_LENGTH);
+        String currency = currency(first(tags, "product:price:currency", "og:price:currency", "pricecurrency"));
+        if (price == null) {
+            JsonNode offer = offer(html);
+            if (offer != null) {
+                price = text(offer.path("price").isValueNode() ? offer.get("price").asText() : offer.get("lowPrice").asText(),
+                        MAX_PRICE_LENGTH);
+                currency = currency(offer.path("priceCurrency").asText(null));
+            }
+        }
+
+        if (title == null && image == null && price == null) {
+            return null;
+        }
+        return new LinkPreview(title, image, price, price == null ? null : currency);
+    }
+
+    /**
+     * Content of tags by their {@code property}, {@code name} or {@code itemprop}, lowercase; the first one wins.
+     */
+    private static void collect(Pattern tag, String html, Map<String, String> tags) {
+        Matcher matcher = tag.matcher(html);
+        while (matcher.find()) {
+            Map<String, String> attributes = new HashMap<>();
+            Matcher attribute = ATTRIBUTE.matcher(matcher.group(1));
+            while (attribute.find()) {
+                String value = attribute.group(2) != null ? attribute.group(2)
+                        : attribute.group(3) != null ? attribute.group(3) : attribute.group(4);
+                attributes.putIfAbsent(attribute.group(1).toLowerCase(Locale.ROOT), value);
+            }
+            String content = attributes.get("content");
+            if (content == null) {
+                continue;
+            }
+            for (String key : List.of("property", "name", "itemprop")) {
+                String name = attributes.get(key);
+                if (name != null) {
+                    tags.putIfAbsent(name.toLowerCase(Locale.ROOT), content);
+                }
+            }
+        }
+    }
+
+    private static String first(Map<String, String> tags, String... names) {
+        for (String name : names) {
+            String value = tags.get(name);
+            if (value != null && !value.isBlank()) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * First object with a {@code price} or {@code lowPrice} in the JSON-LD blocks of the page.
+     */
+    private static JsonNode offer(String html) {
+        Matcher matcher = JSON_LD.matcher(html);
+        while (matcher.find()) {
+            try {
+                JsonNode offer = offer(JSON.readTree(matcher.group(1)), 0);
+                if (offer != null) {
+                    return offer;
+                }
+            } catch (JsonProcessingException e) {
+                // a broken block does not spoil the rest of the page
+            }
+        }
+        return null;
+    }
+
+    private static JsonNode offer(JsonNode node, int depth) {
+        if (node == null || depth > MAX_JSON_DEPTH) {
+            return null;
+        }
+        if (node.isObject() && (node.path("price").isValueNode() || node.path("lowPrice").isValueNode())) {
+            return node;
+        }
+        if (node.isContainerNode()) {
+            for (JsonNode child : node) {
+                JsonNode offer = offer(child, depth + 1);
+                if (offer != null) {
+                    return offer;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String link(String value, URI page) {
+        String url = text(value, MAX_URL_LENGTH);
+        if (url == null) {
+            return null;
+        }
+        try {
+            URI resolved = page.resolve(url);
+            String scheme = resolved.getScheme();
+            return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme) ? resolved.toString() : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String currency(String value) {
+        String currency = text(value, MAX_PRICE_LENGTH);
+        return currency != null && CURRENCY.matcher(currency.toUpperCase(Locale.ROOT)).matches()
+                ? currency.toUpperCase(Locale.ROOT) : null;
+    }
+
+    /**
+     * Decoded, with runs of whitespace collapsed, cut to {@code maxLength}; {@code null} if blank.
+     */
+    private static String text(String value, int maxLength) {
+        if (value == null) {
+            return null;
+        }
+        String text = ENTITY.matcher(value).replaceAll(entity -> Matcher.quoteReplacement(decode(entity.group(1))))
+                .replaceAll("\\s+", " ")
+                .strip();
+        if (text.isEmpty()) {
+            return null;
+        }
+        return text.length() > maxLength ? text.substring(0, maxLength).strip() : text;
+    }
+
+    private static String decode(String entity) {
+        return switch (entity) {
+            case "amp" -> "&";
+            case "lt" -> "<";
+            case "gt" -> ">";
+            case "quot" -> "\"";
+            case "apos" -> "'";
+            case "nbsp" -> " ";
+            default -> {
+                int codePoint = entity.charAt(1) == 'x' || entity.charAt(1) == 'X'
+                        ? Integer.parseInt(entity.substring(2), 16)
+                        : Integer.parseInt(entity.substring(1));
+                yield Character.isValidCodePoint(codePoint) ? Character.toString(codePoint) : "";
+            }
+        };
+    }
+}
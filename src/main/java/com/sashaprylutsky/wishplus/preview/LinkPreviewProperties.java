@@ -0,0 +1,38 @@
+package com.sashaprylutsky.wishplus.preview;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * {@code link-preview.*}: how previews of wish urls are fetched and how long they are kept.
+ *
+ * @param enabled               {@code false} neither fetches nor returns previews
+ * @param threads               pages fetched at the same time
+ * @param maxPending            most urls waiting for or being fetched; more are dropped until a later read
+ * @param connectTimeoutMillis  time to open a connection
+ * @param timeoutMillis         time for a whole fetch, redirects and body included
+ * @param maxBodyBytes          bytes of a page that are read; previews live in the head of a page
+ * @param maxRedirects          redirects followed per fetch
+ * @param hostIntervalMillis    time between the starts of two fetches from the same host
+ * @param maxHostDelayMillis    longest a fetch may wait for its host; later ones are dropped
+ * @param cacheMaximumSize      previews kept, by canonical url
+ * @param cacheTtlSeconds       how long a fetched preview is kept
+ * @param failureTtlSeconds     how long a url that could not be fetched is left alone
+ * @param allowPrivateAddresses {@code true} also fetches from loopback and private networks, for local testing only
+ * @param userAgent             {@code User-Agent} of fetches
+ */
+@ConfigurationProperties("link-preview")
+public record LinkPreviewProperties(boolean enabled,
+                                    int threads,
+                                    int maxPending,
+                                    long connectTimeoutMillis,
+                                    long timeoutMillis,
+                                    int maxBodyBytes,
+                                    int maxRedirects,
+                                    long hostIntervalMillis,
+                                    long maxHostDelayMillis,
+                                    long cacheMaximumSize,
+                                    long cacheTtlSeconds,
+                                    long failureTtlSeconds,
+                                    boolean allowPrivateAddresses,
+                                    String userAgent) {
+}
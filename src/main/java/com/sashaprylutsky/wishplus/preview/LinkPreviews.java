@@ -0,0 +1,298 @@
+package com.sashaprylutsky.wishplus.preview;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.sashaprylutsky.wishplus.dto.FeedWish;
+import com.sashaprylutsky.wishplus.dto.LinkPreview;
+import com.sashaprylutsky.wishplus.dto.WishView;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions.Resource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Previews of wish urls, fetched in the background and cached by {@link CanonicalUrl canonical url}, so a page is
+ * fetched once however many wishes and readers share it.
+ * <p>
+ * Saving a wish asks for a preview of its url after the transaction commits. Reading a wish attaches the cached
+ * preview if there is one, and asks for it otherwise, which fills the cache again after a restart or an eviction.
+ * A read never waits for a fetch. When a preview arrives, the wish lists of the owners who asked for it get a new
+ * ETag, so clients holding a list without it load the list again.
+ * <p>
+ * Fetches run on {@code link-preview.threads} threads. Fetches of the same host start at least
+ * {@code link-preview.host-interval-millis} apart: a fetch is scheduled for its host's next free slot, and dropped
+ * if that is more than {@code link-preview.max-host-delay-millis} away, as it is when more than
+ * {@code link-preview.max-pending} urls are waiting. A dropped url is asked for again on a later read.
+ * Urls that could not be fetched are left alone for {@code link-preview.failure-ttl-seconds}.
+ * <p>
+ * Metrics: {@code link-preview.fetches} tagged with {@code outcome} ({@code preview}, {@code empty}, {@code failed},
+ * {@code dropped}), {@code link-preview.fetch} (fetch time), {@code cache.*} with {@code cache=link-previews} and
+ * {@code executor.*} with {@code name=link-preview}.
+ */
+@Component
+public class LinkPreviews {
+
+    private static final Logger log = LoggerFactory.getLogger(LinkPreviews.class);
+
+    /**
+     * A cached fetch; {@code preview} is {@code null} when the page had nothing to show or could not be fetched.
+     */
+    private record Entry(LinkPreview preview, boolean failed) {
+    }
+
+    private final boolean enabled;
+    private final LinkPreviewFetcher fetcher;
+    private final ResourceVersions versions;
+    private final int maxPending;
+    private final long hostIntervalNanos;
+    private final long maxHostDelayNanos;
+    private final Cache<String, Entry> previews;
+    /**
+     * host -> {@link System#nanoTime()} from which the next fetch of the host may start
+     */
+    private final Cache<String, Long> hosts;
+    /**
+     * canonical url -> owners whose wish lists change when its preview arrives, for every url waiting for a fetch
+     */
+    private final Map<String, Set<Long>> pending = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor executor;
+    private final Timer fetchTimer;
+    private final Counter previewFetches;
+    private final Counter emptyFetches;
+    private final Counter failedFetches;
+    private final Counter droppedFetches;
+
+    public LinkPreviews(LinkPreviewProperties properties,
+                        LinkPreviewFetcher fetcher,
+                        ResourceVersions versions,
+                        MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.fetcher = fetcher;
+        this.versions = versions;
+        this.maxPending = properties.maxPending();
+        this.hostIntervalNanos = TimeUnit.MILLISECONDS.toNanos(properties.hostIntervalMillis());
+        this.maxHostDelayNanos = TimeUnit.MILLISECONDS.toNanos(properties.maxHostDelayMillis());
+        this.previews = Caffeine.newBuilder()
+                .maximumSize(properties.cacheMaximumSize())
+                .expireAfter(new EntryExpiry(Duration.ofSeconds(properties.cacheTtlSeconds()),
+                        Duration.ofSeconds(properties.failureTtlSeconds())))
+                .recordStats()
+                .build();
+        // a slot in the past is as good as none, so an entry is only needed until its slot has passed
+        this.hosts = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, properties.maxPending()))
+                .expireAfterWrite(Duration.ofNanos(maxHostDelayNanos + hostIntervalNanos))
+                .build();
+        this.executor = new ScheduledThreadPoolExecutor(properties.threads(), new CustomizableThreadFactory("link-preview-"));
+        this.executor.setRemoveOnCancelPolicy(true);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, previews, "link-previews");
+        new ExecutorServiceMetrics(executor, "link-preview", Tags.empty()).bindTo(meterRegistry);
+        this.fetchTimer = Timer.builder("link-preview.fetch")
+                .description("Time to fetch a page and extract its preview")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.previewFetches = fetches(meterRegistry, "preview");
+        this.emptyFetches = fetches(meterRegistry, "empty");
+        this.failedFetches = fetches(meterRegistry, "failed");
+        this.droppedFetches = fetches(meterRegistry, "dropped");
+    }
+
+    private static Counter fetches(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("link-preview.fetches")
+                .description("Link preview fetches by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    public WishView attach(WishView wish) {
+        return wish.withPreview(get(wish.url(), wish.userId()));
+    }
+
+    public FeedWish attach(FeedWish wish) {
+        return wish.withPreview(get(wish.url(), wish.userId()));
+    }
+
+    /**
+     * The cached preview of the url; if there is none yet, a fetch is scheduled and {@code null} returned.
+     *
+     * @param ownerId owner of a wish with this url, whose wish list changes when the preview arrives
+     */
+    public LinkPreview get(String url, Long ownerId) {
+        if (!enabled) {
+            return null;
+        }
+        String key = CanonicalUrl.of(url);
+        if (key == null) {
+            return null;
+        }
+        Entry entry = previews.getIfPresent(key);
+        if (entry == null) {
+            schedule(key, ownerId);
+            return null;
+        }
+        return entry.preview();
+    }
+
+    /**
+     * The cached preview of the url, without scheduling a fetch.
+     */
+    public LinkPreview peek(String url) {
+        String key = enabled ? CanonicalUrl.of(url) : null;
+        Entry entry = key == null ? null : previews.getIfPresent(key);
+        return entry == null ? null : entry.preview();
+    }
+
+    /**
+     * Asks for a preview of the url of a saved wish, after the current transaction commits if there is one.
+     */
+    public void request(String url, Long ownerId) {
+        if (!enabled || url == null || url.isBlank()) {
+            return;
+        }
+        Runnable request = () -> get(url, ownerId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    request.run();
+                }
+            });
+        } else {
+            request.run();
+        }
+    }
+
+    private void schedule(String key, Long ownerId) {
+        boolean[] added = {false};
+        pending.compute(key, (url, owners) -> {
+            if (owners == null) {
+                if (pending.size() >= maxPending) {
+                    return null;
+                }
+                owners = ConcurrentHashMap.newKeySet();
+                added[0] = true;
+            }
+            if (ownerId != null) {
+                owners.add(ownerId);
+            }
+            return owners;
+        });
+        if (!added[0]) {
+            if (!pending.containsKey(key)) {
+                droppedFetches.increment();
+            }
+            return;
+        }
+
+        long delay = reserveSlot(URI.create(key).getHost(), System.nanoTime());
+        if (delay < 0) {
+            pending.remove(key);
+            droppedFetches.increment();
+            return;
+        }
+        try {
+            executor.schedule(() -> fetch(key), delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+            droppedFetches.increment();
+        }
+    }
+
+    /**
+     * Takes the host's next free slot.
+     *
+     * @return nanoseconds until the slot, or {@code -1} if it is too far away to take
+     */
+    private long reserveSlot(String host, long now) {
+        long[] delay = {-1};
+        hosts.asMap().compute(host, (name, next) -> {
+            long start = next == null ? now : Math.max(next, now);
+            if (start - now > maxHostDelayNanos) {
+                return next;
+            }
+            delay[0] = start - now;
+            return start + hostIntervalNanos;
+        });
+        return delay[0];
+    }
+
+    private void fetch(String key) {
+        Entry entry;
+        long started = System.nanoTime();
+        try {
+            LinkPreview preview = fetcher.fetch(URI.create(key));
+            entry = new Entry(preview, false);
+            (preview == null ? emptyFetches : previewFetches).increment();
+        } catch (IOException | RuntimeException e) {
+            log.debug("No preview of {}: {}", key, e.toString());
+            entry = new Entry(null, true);
+            failedFetches.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.remove(key);
+            return;
+        } finally {
+            fetchTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+
+        previews.put(key, entry);
+        Set<Long> owners = pending.remove(key);
+        if (owners != null && entry.preview() != null) {
+            owners.forEach(owner -> versions.bump(owner, Resource.WISHES));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class EntryExpiry implements Expiry<String, Entry> {
+
+        private final long ttlNanos;
+        private final long failureTtlNanos;
+
+        EntryExpiry(Duration ttl, Duration failureTtl) {
+            this.ttlNanos = ttl.toNanos();
+            this.failureTtlNanos = failureTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(String key, Entry value, long currentTime) {
+            return value.failed() ? failureTtlNanos : ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Entry value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Entry value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
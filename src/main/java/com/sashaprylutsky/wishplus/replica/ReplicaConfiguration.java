@@ -0,0 +1,66 @@
+package com.sashaprylutsky.wishplus.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * With {@code datasource.replica.enabled}, replaces the single auto-configured datasource with two Hikari pools,
+ * {@code primary} from {@code spring.datasource.*} and {@code replica} from {@code datasource.replica.*}, behind one
+ * routing datasource that JPA and everything else use. See {@link ReplicaRouting} for which pool serves what.
+ */
+@Configuration
+@ConditionalOnProperty(name = "datasource.replica.enabled", havingValue = "true")
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class ReplicaConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConfigurationProperties("datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties primary, ReplicaProperties replica) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(primary.determineDriverClassName())
+                .url(replica.url())
+                .username(replica.username())
+                .password(replica.password())
+                .build();
+        dataSource.setPoolName("replica");
+        // a write sent to the replica by mistake fails instead of diverging from the primary
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaRouting replicaRouting(@Qualifier("primaryDataSource") DataSource primary,
+                                         @Qualifier("replicaDataSource") DataSource replica,
+                                         ReplicaProperties properties, MeterRegistry meterRegistry) {
+        return new ReplicaRouting(primary, replica, properties, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica,
+                                 ReplicaRouting routing) {
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, replica, routing));
+    }
+}
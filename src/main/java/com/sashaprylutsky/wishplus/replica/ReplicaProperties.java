@@ -0,0 +1,38 @@
+package com.sashaprylutsky.wishplus.replica;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * {@code datasource.replica.*}: the read replica that read-only transactions go to, e.g.
+ * <pre>
+ * datasource.replica.enabled=true
+ * datasource.replica.url=jdbc:mysql://replica:3306/wishplus?useCursorFetch=true
+ * datasource.replica.username=wishplus_ro
+ * datasource.replica.password=...
+ * datasource.replica.hikari.maximum-pool-size=20
+ * </pre>
+ * The driver is the primary's, {@code spring.datasource.driver-class-name}; pool settings under
+ * {@code datasource.replica.hikari.*} are bound to the replica's pool the way {@code spring.datasource.hikari.*} are
+ * to the primary's.
+ *
+ * @param enabled              {@code false} keeps the single datasource of {@code spring.datasource.*}
+ * @param maxLagMillis         a replica further behind than this gets no reads at all
+ * @param readYourWritesMillis how long a client keeps the time of its last write; at least {@code maxLagMillis},
+ *                             since a replica that has not caught up by then gets no reads
+ * @param heartbeatMillis      how often the primary writes the heartbeat that the replica's lag is read from
+ */
+@ConfigurationProperties("datasource.replica")
+public record ReplicaProperties(boolean enabled, String url, String username, String password,
+                                long maxLagMillis, long readYourWritesMillis, long heartbeatMillis) {
+
+    public ReplicaProperties {
+        if (enabled && readYourWritesMillis < maxLagMillis) {
+            throw new IllegalArgumentException("datasource.replica.read-your-writes-millis must not be less than "
+                    + "datasource.replica.max-lag-millis");
+        }
+        if (enabled && heartbeatMillis >= maxLagMillis) {
+            throw new IllegalArgumentException("datasource.replica.heartbeat-millis must be less than "
+                    + "datasource.replica.max-lag-millis");
+        }
+    }
+}
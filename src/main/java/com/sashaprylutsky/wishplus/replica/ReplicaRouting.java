@@ -0,0 +1,249 @@
+package com.sashaprylutsky.wishplus.replica;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which pool a connection is taken from. Read-only transactions go to the replica, except when:
+ * <ul>
+ *     <li>the replica lags more than {@code datasource.replica.max-lag-millis}, when every read goes to the primary;</li>
+ *     <li>the client wrote something the replica does not have yet, so a user always reads their own writes.</li>
+ * </ul>
+ * Read-write transactions and statements outside a transaction go to the primary. Once a request has read from the
+ * primary, its later reads do too, so a list is never read from an older database than its ETag.
+ * <p>
+ * The lag is read from a heartbeat: every {@code datasource.replica.heartbeat-millis} the primary's
+ * {@code replica_heartbeat} row is set to the current time and read back from the replica. The replica has every
+ * change committed before the time it returns, so a write is visible there once that time passes the moment it was
+ * committed. Instances compare times of their own clocks, which must be kept in sync.
+ * <p>
+ * The client carries the time of its last write: after a write commits, the response sets the
+ * {@value #LAST_WRITE_COOKIE} cookie to the current time, for {@code datasource.replica.read-your-writes-millis}. A
+ * request that sends it back reads from the primary while the replica has not caught up to that time, on whichever
+ * instance it reaches. Routing a request that does not send it takes no lookups at all. Clients that keep no cookies
+ * may read from a replica up to {@code max-lag-millis} behind their own writes.
+ * <p>
+ * Metrics: {@code replica.lag}, and {@code replica.routing} tagged with the {@code target} pool and the
+ * {@code reason}: {@code read}, {@code write}, {@code no-transaction}, {@code lagging} or {@code own-write}.
+ */
+public class ReplicaRouting {
+
+    enum Target {
+        PRIMARY, REPLICA
+    }
+
+    static final String LAST_WRITE_COOKIE = "last-write";
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRouting.class);
+    /**
+     * the counter of the reason the request's first read went to the primary
+     */
+    private static final String PRIMARY_ATTRIBUTE = ReplicaRouting.class.getName() + ".primary";
+    /**
+     * when the request's own last write committed
+     */
+    private static final String WROTE_AT_ATTRIBUTE = ReplicaRouting.class.getName() + ".wroteAt";
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final long maxLagMillis;
+    private final Duration readYourWrites;
+    /**
+     * primary time of the latest heartbeat the replica has; 0 until one has been read
+     */
+    private volatile long caughtUpTo;
+    private boolean lagging = true;
+    private boolean heartbeatFailing;
+
+    private final Counter toReplica;
+    private final Counter writeToPrimary;
+    private final Counter noTransactionToPrimary;
+    private final Counter laggingToPrimary;
+    private final Counter ownWriteToPrimary;
+
+    public ReplicaRouting(DataSource primary, DataSource replica, ReplicaProperties properties,
+                          MeterRegistry meterRegistry) {
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(replica);
+        this.maxLagMillis = properties.maxLagMillis();
+        this.readYourWrites = Duration.ofMillis(properties.readYourWritesMillis());
+
+        this.toReplica = counter(meterRegistry, Target.REPLICA, "read");
+        this.writeToPrimary = counter(meterRegistry, Target.PRIMARY, "write");
+        this.noTransactionToPrimary = counter(meterRegistry, Target.PRIMARY, "no-transaction");
+        this.laggingToPrimary = counter(meterRegistry, Target.PRIMARY, "lagging");
+        this.ownWriteToPrimary = counter(meterRegistry, Target.PRIMARY, "own-write");
+        TimeGauge.builder("replica.lag", this, TimeUnit.MILLISECONDS,
+                        routing -> routing.caughtUpTo == 0 ? Double.NaN : routing.lagMillis())
+                .description("How far the replica is behind the primary, from the last heartbeat read")
+                .register(meterRegistry);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, Target target, String reason) {
+        return Counter.builder("replica.routing")
+                .description("Connections taken from each pool, by why that pool was chosen")
+                .tag("target", target.name().toLowerCase())
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * The pool for a connection taken now, on the thread that will use it.
+     */
+    Target route() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            noTransactionToPrimary.increment();
+            return Target.PRIMARY;
+        }
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            rememberWrite(request);
+            writeToPrimary.increment();
+            return Target.PRIMARY;
+        }
+        Counter reason = request == null
+                ? null
+                : (Counter) request.getAttribute(PRIMARY_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (reason == null) {
+            long caughtUpTo = this.caughtUpTo;
+            if (System.currentTimeMillis() - caughtUpTo > maxLagMillis) {
+                reason = laggingToPrimary;
+            } else if (lastWrite(request) >= caughtUpTo) {
+                reason = ownWriteToPrimary;
+            } else {
+                toReplica.increment();
+                return Target.REPLICA;
+            }
+            if (request != null) {
+                request.setAttribute(PRIMARY_ATTRIBUTE, reason, RequestAttributes.SCOPE_REQUEST);
+            }
+        }
+        reason.increment();
+        return Target.PRIMARY;
+    }
+
+    private void rememberWrite(RequestAttributes request) {
+        if (!(request instanceof ServletRequestAttributes servletRequest)) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recordWrite(servletRequest);
+                }
+            });
+        } else {
+            recordWrite(servletRequest);
+        }
+    }
+
+    /**
+     * Stamped after the commit, so a replica that has a later heartbeat has the write. A response already sent, e.g.
+     * a write made while streaming, cannot take the cookie; the request's own later reads still see the write.
+     */
+    private void recordWrite(ServletRequestAttributes request) {
+        long now = System.currentTimeMillis();
+        request.setAttribute(WROTE_AT_ATTRIBUTE, now, RequestAttributes.SCOPE_REQUEST);
+        HttpServletResponse response = request.getResponse();
+        if (response != null && !response.isCommitted()) {
+            response.addHeader(HttpHeaders.SET_COOKIE, ResponseCookie.from(LAST_WRITE_COOKIE, Long.toString(now))
+                    .path("/")
+                    .maxAge(readYourWrites)
+                    .httpOnly(true)
+                    .secure(request.getRequest().isSecure())
+                    .sameSite("Lax")
+                    .build()
+                    .toString());
+        }
+    }
+
+    /**
+     * When the client last wrote, from this request or from the {@value #LAST_WRITE_COOKIE} cookie it sent; -1 when
+     * it sent none. A time further ahead than the replica may lag is ignored, so a made-up cookie cannot hold a
+     * client on the primary.
+     */
+    private long lastWrite(RequestAttributes request) {
+        if (!(request instanceof ServletRequestAttributes servletRequest)) {
+            return -1;
+        }
+        Object wroteAt = request.getAttribute(WROTE_AT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (wroteAt != null) {
+            return (Long) wroteAt;
+        }
+        Cookie[] cookies = servletRequest.getRequest().getCookies();
+        if (cookies == null) {
+            return -1;
+        }
+        for (Cookie cookie : cookies) {
+            if (LAST_WRITE_COOKIE.equals(cookie.getName())) {
+                try {
+                    long sent = Long.parseLong(cookie.getValue());
+                    return sent > System.currentTimeMillis() + maxLagMillis ? -1 : sent;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    long lagMillis() {
+        return System.currentTimeMillis() - caughtUpTo;
+    }
+
+    /**
+     * Runs on the shared scheduler thread; a heartbeat held up by another job only makes the replica look further
+     * behind, which sends reads to the primary.
+     */
+    @Scheduled(fixedDelayString = "${datasource.replica.heartbeat-millis}")
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        try {
+            if (primary.update("update replica_heartbeat set beat_at = ? where id = 1", now) == 0) {
+                primary.update("insert into replica_heartbeat (id, beat_at) values (1, ?)", now);
+            }
+            Long beatAt = replica.query("select beat_at from replica_heartbeat where id = 1",
+                    rs -> rs.next() ? rs.getLong(1) : null);
+            if (beatAt != null && beatAt > caughtUpTo) {
+                caughtUpTo = beatAt;
+            }
+            heartbeatFailing = false;
+        } catch (DataAccessException e) {
+            // logged once per outage; the lag keeps growing meanwhile and sends reads to the primary
+            if (!heartbeatFailing) {
+                heartbeatFailing = true;
+                log.warn("Replica heartbeat failed: {}", e.getMessage());
+            }
+        }
+
+        boolean nowLagging = lagMillis() > maxLagMillis;
+        if (nowLagging != lagging) {
+            lagging = nowLagging;
+            if (nowLagging) {
+                log.warn("Replica is {} ms behind, reading from the primary", lagMillis());
+            } else {
+                log.info("Replica has caught up, reading from it again");
+            }
+        }
+    }
+}
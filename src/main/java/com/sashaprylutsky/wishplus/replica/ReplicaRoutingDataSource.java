@@ -0,0 +1,29 @@
+package com.sashaprylutsky.wishplus.replica;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Hands out connections of the pool {@link ReplicaRouting} picks. It must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: the transaction manager takes its
+ * connection before it marks the transaction read-only, and the proxy defers that to the first statement.
+ */
+final class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final ReplicaRouting routing;
+
+    ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaRouting routing) {
+        this.routing = routing;
+        setTargetDataSources(Map.of(ReplicaRouting.Target.PRIMARY, primary, ReplicaRouting.Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return routing.route();
+    }
+}
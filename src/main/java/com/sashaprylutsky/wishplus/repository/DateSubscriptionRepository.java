@@ -4,8 +4,12 @@ import com.sashaprylutsky.wishplus.model.DateSubscription;
 import com.sashaprylutsky.wishplus.model.ImportantDate;
 import com.sashaprylutsky.wishplus.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,4 +19,51 @@ public interface DateSubscriptionRepository extends JpaRepository<DateSubscripti
     List<DateSubscription> findAllByFolloweeAndFollower(User followee, User follower);
 
     Optional<DateSubscription> findByFolloweeAndFollowerAndImportantDate(User followee, User follower, ImportantDate importantDate);
+
+    @Query("select distinct s.followee.id from DateSubscription s where s.follower.id = :follower_id")
+    List<Long> findFolloweeIds(@Param("follower_id") Long followerId);
+
+    /**
+     * Subscribes the follower to every date of the followee they are not subscribed to yet,
+     * in one statement regardless of how many dates the followee has.
+     */
+    @Modifying
+    @Query(value = """
+            insert into date_subscriptions (follower_id, followee_id, important_date_id, subscribed_at)
+            select :follower_id, d.user_id, d.id, :now
+            from important_dates d
+            where d.user_id = :followee_id
+              and not exists (select 1 from date_subscriptions s
+                              where s.follower_id = :follower_id
+                                and s.followee_id = d.user_id
+                                and s.important_date_id = d.id)
+            """, nativeQuery = true)
+    int subscribeToAllDates(@Param("follower_id") Long followerId,
+                            @Param("followee_id") Long followeeId,
+                            @Param("now") Instant now);
+
+    /**
+     * Removes subscriptions of the follower to dates that no longer belong to the followee.
+     */
+    @Modifying
+    @Query(value = """
+            delete from date_subscriptions
+            where follower_id = :follower_id
+              and followee_id = :followee_id
+              and important_date_id not in (select d.id from important_dates d where d.user_id = :followee_id)
+            """, nativeQuery = true)
+    int deleteStaleSubscriptions(@Param("follower_id") Long followerId,
+                                 @Param("followee_id") Long followeeId);
+
+    /**
+     * Removes every subscription of the follower to the followee's dates in one statement.
+     */
+    @Modifying
+    @Query(value = """
+            delete from date_subscriptions
+            where follower_id = :follower_id
+              and followee_id = :followee_id
+            """, nativeQuery = true)
+    int deleteAllSubscriptions(@Param("follower_id") Long followerId,
+                               @Param("followee_id") Long followeeId);
 }
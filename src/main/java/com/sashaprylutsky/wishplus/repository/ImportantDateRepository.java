@@ -1,20 +1,96 @@
 package com.sashaprylutsky.wishplus.repository;
 
+import com.sashaprylutsky.wishplus.dto.ImportantDateView;
+import com.sashaprylutsky.wishplus.dto.ScheduledDate;
+import com.sashaprylutsky.wishplus.dto.UpcomingDate;
 import com.sashaprylutsky.wishplus.model.ImportantDate;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface ImportantDateRepository extends JpaRepository<ImportantDate, Long> {
 
-    List<ImportantDate> findAllByUser_Id(Long userId);
+    @Query("select new com.sashaprylutsky.wishplus.dto.ImportantDateView(r.id, r.user.id, r.title, r.date) from ImportantDate r where r.id =:id")
+    Optional<ImportantDateView> findViewById(@Param("id") Long id);
+
+    @Query("select new com.sashaprylutsky.wishplus.dto.ImportantDateView(r.id, r.user.id, r.title, r.date) from ImportantDate r " +
+            "where r.user.id =:user_id and r.id > :after_id order by r.id")
+    List<ImportantDateView> findPageByUserId(@Param("user_id") Long user_id,
+                                             @Param("after_id") Long afterId,
+                                             Limit limit);
 
-    @Query("select r from ImportantDate r join fetch r.user where r.id =:record_id and r.user.id =:user_id")
+    @Query("select new com.sashaprylutsky.wishplus.dto.ImportantDateView(r.id, r.user.id, r.title, r.date) from ImportantDate r " +
+            "where r.user.id =:user_id order by r.id")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<ImportantDateView> streamAllByUserId(@Param("user_id") Long user_id);
+
+    @Query("select r from ImportantDate r where r.id =:record_id and r.user.id =:user_id")
     Optional<ImportantDate> selectRecordByRecordIdAndUserId(@Param("record_id") Long record_id,
                                                             @Param("user_id") Long user_id);
+
+    /**
+     * One range of month-day codes per query: H2 reads no index for two ranges joined by {@code or}.
+     */
+    @Query("select new com.sashaprylutsky.wishplus.dto.ScheduledDate(d.id, d.date) from ImportantDate d " +
+            "where d.monthDay between :from and :to " +
+            "and mod(d.id, :partitions) = :partition_no and d.id > :after_id order by d.id")
+    List<ScheduledDate> findPartitionPage(@Param("from") int from,
+                                          @Param("to") int to,
+                                          @Param("partitions") int partitions,
+                                          @Param("partition_no") int partitionNo,
+                                          @Param("after_id") Long afterId,
+                                          Limit limit);
+
+    @Query("select new com.sashaprylutsky.wishplus.dto.UpcomingDate(d.id, d.title, d.date, u.id, u.username) " +
+            "from DateSubscription s join s.importantDate d join d.user u " +
+            "where s.follower.id = :follower_id " +
+            "and (d.monthDay between :first_from and :first_to or d.monthDay between :second_from and :second_to) " +
+            "order by case when d.monthDay >= :start then 0 else 1 end, d.monthDay, d.id")
+    List<UpcomingDate> findUpcomingSubscribed(@Param("follower_id") Long followerId,
+                                              @Param("start") int start,
+                                              @Param("first_from") int firstFrom,
+                                              @Param("first_to") int firstTo,
+                                              @Param("second_from") int secondFrom,
+                                              @Param("second_to") int secondTo,
+                                              Pageable pageable);
+
+    /**
+     * Keyset page of subscribed dates ordered by next occurrence: dates still ahead this year
+     * (bucket 0) come before those that already passed (bucket 1).
+     */
+    @Query("select new com.sashaprylutsky.wishplus.dto.UpcomingDate(d.id, d.title, d.date, u.id, u.username) " +
+            "from DateSubscription s join s.importantDate d join d.user u " +
+            "where s.follower.id = :follower_id and d.monthDay is not null " +
+            "and (case when d.monthDay >= :start then 0 else 1 end > :after_bucket " +
+            "or (case when d.monthDay >= :start then 0 else 1 end = :after_bucket " +
+            "and (d.monthDay > :after_month_day or (d.monthDay = :after_month_day and d.id > :after_id)))) " +
+            "order by case when d.monthDay >= :start then 0 else 1 end, d.monthDay, d.id")
+    List<UpcomingDate> findSubscribedAfter(@Param("follower_id") Long followerId,
+                                           @Param("start") int start,
+                                           @Param("after_bucket") int afterBucket,
+                                           @Param("after_month_day") int afterMonthDay,
+                                           @Param("after_id") Long afterId,
+                                           Limit limit);
+
+    @Query("select new com.sashaprylutsky.wishplus.dto.ScheduledDate(d.id, d.date) from ImportantDate d " +
+            "where d.monthDay is null and d.date is not null and d.id > :after_id order by d.id")
+    List<ScheduledDate> findPageWithoutMonthDay(@Param("after_id") Long afterId, Limit limit);
+
+    @Modifying
+    @Query("update ImportantDate d set d.monthDay = :month_day where d.id in :ids and d.monthDay is null")
+    int setMonthDay(@Param("ids") Collection<Long> ids, @Param("month_day") int monthDay);
 }
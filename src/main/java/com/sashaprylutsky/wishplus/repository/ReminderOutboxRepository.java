@@ -0,0 +1,62 @@
+package com.sashaprylutsky.wishplus.repository;
+
+import com.sashaprylutsky.wishplus.model.ReminderOutbox;
+import com.sashaprylutsky.wishplus.model.ReminderStatus;
+import com.sashaprylutsky.wishplus.notification.Reminder;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ReminderOutboxRepository extends JpaRepository<ReminderOutbox, Long> {
+
+    /**
+     * Writes one pending reminder per follower of the date in a single set-based statement,
+     * so followers are never loaded into memory. Reminders that already exist for this occurrence are skipped.
+     */
+    @Modifying
+    @Query(value = """
+            insert into reminder_outbox (follower_id, followee_id, important_date_id, occurrence_date,
+                                         status, attempts, next_attempt_at, created_at)
+            select distinct s.follower_id, s.followee_id, s.important_date_id, :occurrence_date,
+                            'PENDING', 0, :now, :now
+            from date_subscriptions s
+            where s.important_date_id = :important_date_id
+              and not exists (select 1 from reminder_outbox o
+                              where o.important_date_id = s.important_date_id
+                                and o.follower_id = s.follower_id
+                                and o.occurrence_date = :occurrence_date)
+            """, nativeQuery = true)
+    int enqueueFollowers(@Param("important_date_id") Long importantDateId,
+                         @Param("occurrence_date") LocalDate occurrenceDate,
+                         @Param("now") Instant now);
+
+    /**
+     * Locks a batch of due reminders, the longest due first. Rows locked by another node are skipped rather than
+     * waited for. The order is that of {@code idx_reminder_outbox_due}, so a backlog is not sorted to take a batch.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select o from ReminderOutbox o where o.status = :status and o.nextAttemptAt <= :now " +
+            "order by o.nextAttemptAt, o.id")
+    List<ReminderOutbox> lockDue(@Param("status") ReminderStatus status,
+                                 @Param("now") Instant now,
+                                 Limit limit);
+
+    @Query("select new com.sashaprylutsky.wishplus.notification.Reminder(" +
+            "o.id, follower.email, follower.username, followee.username, d.title, o.occurrenceDate) " +
+            "from ReminderOutbox o " +
+            "join User follower on follower.id = o.followerId " +
+            "join User followee on followee.id = o.followeeId " +
+            "join ImportantDate d on d.id = o.importantDateId " +
+            "where o.id in :ids")
+    List<Reminder> findReminders(@Param("ids") Collection<Long> ids);
+}
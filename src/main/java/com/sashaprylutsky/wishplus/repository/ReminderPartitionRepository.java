@@ -0,0 +1,39 @@
+package com.sashaprylutsky.wishplus.repository;
+
+import com.sashaprylutsky.wishplus.model.ReminderPartition;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+
+@Repository
+public interface ReminderPartitionRepository extends JpaRepository<ReminderPartition, Integer> {
+
+    @Modifying
+    @Query("update ReminderPartition p set p.leaseOwner = :owner, p.leaseUntil = :lease_until " +
+            "where p.partitionNo = :partition_no " +
+            "and (p.lastScannedAt is null or p.lastScannedAt < :scanned_before) " +
+            "and (p.leaseUntil is null or p.leaseUntil < :now or p.leaseOwner = :owner)")
+    int claim(@Param("partition_no") int partitionNo,
+              @Param("owner") String owner,
+              @Param("scanned_before") Instant scannedBefore,
+              @Param("now") Instant now,
+              @Param("lease_until") Instant leaseUntil);
+
+    @Modifying
+    @Query("update ReminderPartition p set p.leaseUntil = :lease_until " +
+            "where p.partitionNo = :partition_no and p.leaseOwner = :owner")
+    int renew(@Param("partition_no") int partitionNo,
+              @Param("owner") String owner,
+              @Param("lease_until") Instant leaseUntil);
+
+    @Modifying
+    @Query("update ReminderPartition p set p.leaseOwner = null, p.leaseUntil = null, p.lastScannedAt = :now " +
+            "where p.partitionNo = :partition_no and p.leaseOwner = :owner")
+    int complete(@Param("partition_no") int partitionNo,
+                 @Param("owner") String owner,
+                 @Param("now") Instant now);
+}
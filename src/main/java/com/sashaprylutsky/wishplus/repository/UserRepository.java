@@ -1,17 +1,40 @@
 package com.sashaprylutsky.wishplus.repository;
 
+import com.sashaprylutsky.wishplus.dto.UserView;
+import com.sashaprylutsky.wishplus.dto.UsernameEntry;
 import com.sashaprylutsky.wishplus.model.User;
-import jakarta.validation.constraints.Size;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findUserByUsername(String username);
 
-    List<User> findUsersByUsernameStartsWith(String user_prefix);
+    @Query("select new com.sashaprylutsky.wishplus.dto.UserView(u.id, u.username, u.firstName, u.lastName, u.profilePhoto) from User u where u.id in :ids")
+    List<UserView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select new com.sashaprylutsky.wishplus.dto.UserView(u.id, u.username, u.firstName, u.lastName, u.profilePhoto) from User u where u.id > :after_id order by u.id")
+    List<UserView> findPage(@Param("after_id") Long afterId, Limit limit);
+
+    @Query("select new com.sashaprylutsky.wishplus.dto.UserView(u.id, u.username, u.firstName, u.lastName, u.profilePhoto) from User u order by u.id")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<UserView> streamAll();
+
+    @Query("select new com.sashaprylutsky.wishplus.dto.UsernameEntry(u.id, u.username) from User u " +
+            "where u.username is not null")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    Stream<UsernameEntry> streamUsernames();
 }
@@ -0,0 +1,119 @@
+package com.sashaprylutsky.wishplus.repository;
+
+import com.sashaprylutsky.wishplus.model.Wish;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Writes many wishes as one JDBC batch, a single round trip per statement instead of one per wish.
+ * Hibernate cannot batch inserts of entities with {@code IDENTITY} ids, and {@code @DynamicUpdate} gives every
+ * update its own SQL, so bulk requests bypass the persistence context. Runs in the caller's transaction.
+ * <p>
+ * Timestamps are bound in UTC, the way Hibernate stores {@link Instant} columns.
+ */
+@Repository
+public class WishBatchRepository {
+
+    private static final String INSERT = """
+            insert into wishlist (user_id, title, description, url, is_archived, created_at, updated_at)
+            values (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    /**
+     * {@code null} keeps the current value, as in a single update.
+     */
+    private static final String UPDATE = """
+            update wishlist
+            set title = coalesce(?, title), description = coalesce(?, description), url = coalesce(?, url),
+                is_archived = ?, updated_at = ?
+            where id = ?
+            """;
+
+    private final JdbcTemplate jdbc;
+
+    public WishBatchRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * @return generated ids, in the order of {@code wishes}
+     */
+    public List<Long> insertAll(Long userId, List<Wish> wishes, Instant now) {
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbc.batchUpdate(connection -> connection.prepareStatement(INSERT, new String[]{"id"}),
+                new Setter(wishes.size()) {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Wish wish = wishes.get(i);
+                        ps.setLong(1, userId);
+                        ps.setString(2, wish.getTitle());
+                        ps.setString(3, wish.getDescription());
+                        ps.setString(4, wish.getUrl());
+                        ps.setBoolean(5, wish.isArchived());
+                        setInstant(ps, 6, now);
+                        setInstant(ps, 7, now);
+                    }
+                }, keys);
+        return keys.getKeyList().stream()
+                .map(Map::values)
+                .map(values -> ((Number) values.iterator().next()).longValue())
+                .toList();
+    }
+
+    /**
+     * Updates each wish by {@link Wish#getId()}; blank and {@code null} fields keep their current value.
+     */
+    public void updateAll(List<Wish> wishes, Instant now) {
+        jdbc.batchUpdate(UPDATE, new Setter(wishes.size()) {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Wish wish = wishes.get(i);
+                setText(ps, 1, wish.getTitle());
+                setText(ps, 2, wish.getDescription());
+                setText(ps, 3, wish.getUrl());
+                ps.setBoolean(4, wish.isArchived());
+                setInstant(ps, 5, now);
+                ps.setLong(6, wish.getId());
+            }
+        });
+    }
+
+    private static void setText(PreparedStatement ps, int index, String value) throws SQLException {
+        if (value == null || value.isBlank()) {
+            ps.setNull(index, Types.VARCHAR);
+        } else {
+            ps.setString(index, value);
+        }
+    }
+
+    private static void setInstant(PreparedStatement ps, int index, Instant value) throws SQLException {
+        ps.setTimestamp(index, Timestamp.from(value), Calendar.getInstance(TimeZone.getTimeZone("UTC")));
+    }
+
+    private abstract static class Setter implements BatchPreparedStatementSetter {
+
+        private final int size;
+
+        Setter(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int getBatchSize() {
+            return size;
+        }
+    }
+}
@@ -1,16 +1,85 @@
 package com.sashaprylutsky.wishplus.repository;
 
+import com.sashaprylutsky.wishplus.dto.FeedWish;
+import com.sashaprylutsky.wishplus.dto.WishOwner;
+import com.sashaprylutsky.wishplus.dto.WishVersion;
+import com.sashaprylutsky.wishplus.dto.WishView;
 import com.sashaprylutsky.wishplus.model.Wish;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface WishRepository extends JpaRepository<Wish, Long> {
 
-    @Query("select r from Wish r join fetch r.user where r.user.id =:user_id")
-    List<Wish> findAllByUser_Id(@Param("user_id") Long user_id);
+    @Query("select new com.sashaprylutsky.wishplus.dto.WishView(r.id, r.user.id, r.title, r.description, r.url, r.isArchived, r.createdAt, r.updatedAt) " +
+            "from Wish r where r.id =:id")
+    Optional<WishView> findViewById(@Param("id") Long id);
+
+    @Query("select new com.sashaprylutsky.wishplus.dto.WishView(r.id, r.user.id, r.title, r.description, r.url, r.isArchived, r.createdAt, r.updatedAt) " +
+            "from Wish r where r.id in :ids")
+    List<WishView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Every wish that is not archived, for the search index.
+     */
+    @Query("select new com.sashaprylutsky.wishplus.dto.WishView(r.id, r.user.id, r.title, r.description, r.url, r.isArchived, r.createdAt, r.updatedAt) " +
+            "from Wish r where r.isArchived = false")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    Stream<WishView> streamAllActive();
+
+    @Query("select new com.sashaprylutsky.wishplus.dto.WishVersion(r.updatedAt, r.url) from Wish r where r.id =:id")
+    Optional<WishVersion> findVersionById(@Param("id") Long id);
+
+    @Query("select new com.sashaprylutsky.wishplus.dto.WishView(r.id, r.user.id, r.title, r.description, r.url, r.isArchived, r.createdAt, r.updatedAt) " +
+            "from Wish r where r.user.id =:user_id and r.id > :after_id order by r.id")
+    List<WishView> findPageByUserId(@Param("user_id") Long user_id,
+                                    @Param("after_id") Long afterId,
+                                    Limit limit);
+
+    @Query("select new com.sashaprylutsky.wishplus.dto.WishView(r.id, r.user.id, r.title, r.description, r.url, r.isArchived, r.createdAt, r.updatedAt) " +
+            "from Wish r where r.user.id =:user_id order by r.id")
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<WishView> streamAllByUserId(@Param("user_id") Long user_id);
+
+    /**
+     * The newest {@code per_user} non-archived wishes of each of the given users, in one query.
+     */
+    @Query("select new com.sashaprylutsky.wishplus.dto.FeedWish(r.id, r.userId, r.title, r.description, r.url, r.createdAt) " +
+            "from (select w.id as id, w.user.id as userId, w.title as title, w.description as description, " +
+            "w.url as url, w.createdAt as createdAt, " +
+            "row_number() over (partition by w.user.id order by w.createdAt desc, w.id desc) as rn " +
+            "from Wish w where w.user.id in :user_ids and w.isArchived = false) r " +
+            "where r.rn <= :per_user order by r.userId, r.rn")
+    List<FeedWish> findTopWishesByUserIds(@Param("user_ids") Collection<Long> userIds,
+                                          @Param("per_user") int perUser);
+
+    /**
+     * Owners of the given wishes, in one query; ids without a wish are absent.
+     */
+    @Query("select new com.sashaprylutsky.wishplus.dto.WishOwner(r.id, r.user.id) from Wish r where r.id in :ids")
+    List<WishOwner> findOwnersByIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("update Wish r set r.isArchived = :archived, r.updatedAt = :now where r.id in :ids")
+    int setArchivedByIds(@Param("ids") Collection<Long> ids,
+                         @Param("archived") boolean archived,
+                         @Param("now") Instant now);
+
+    @Modifying
+    @Query("delete from Wish r where r.id in :ids")
+    int deleteAllByIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,158 @@
+package com.sashaprylutsky.wishplus.schema;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Checks at startup, once the migrations have run and before the web server takes requests, that every index the
+ * repository queries rely on exists. A database migrated by hand, or baselined from a schema that was not quite V1,
+ * would otherwise only show up as full scans under load.
+ * <p>
+ * Indexes are matched by table and columns, not by name: an index whose leading columns are the expected ones will
+ * do, and a unique one must be unique on exactly those columns. Missing indexes fail the startup unless
+ * {@code schema.index-check.fail-on-missing} is {@code false}, when they are only logged.
+ */
+@Component
+@ConditionalOnProperty(name = "schema.index-check.enabled", havingValue = "true")
+public class SchemaIndexCheck implements SmartInitializingSingleton {
+
+    /**
+     * @param usedBy the repository methods that need it, for the log
+     */
+    record ExpectedIndex(String table, List<String> columns, boolean unique, String usedBy) {
+
+        @Override
+        public String toString() {
+            return (unique ? "unique " : "") + table + " (" + String.join(", ", columns) + "), used by " + usedBy;
+        }
+    }
+
+    /**
+     * Mirrors {@code db/migration}; a new query that needs an index adds it to both.
+     */
+    static final List<ExpectedIndex> EXPECTED = List.of(
+            unique("users", "UserRepository.findUserByUsername, streamUsernames", "username"),
+            unique("users", "registration", "email"),
+            index("wishlist", "WishRepository.findPageByUserId, streamAllByUserId", "user_id", "id"),
+            index("wishlist", "WishRepository.findTopWishesByUserIds",
+                    "user_id", "is_archived", "created_at", "id"),
+            index("important_dates", "ImportantDateRepository.findPageByUserId, streamAllByUserId, "
+                    + "DateSubscriptionRepository.subscribeToAllDates, deleteStaleSubscriptions", "user_id", "id"),
+            index("important_dates", "ImportantDateRepository.findPartitionPage, findPageWithoutMonthDay",
+                    "month_day", "id", "date"),
+            unique("date_subscriptions", "DateSubscriptionRepository, ImportantDateRepository.findUpcomingSubscribed, "
+                    + "findSubscribedAfter", "follower_id", "followee_id", "important_date_id"),
+            index("date_subscriptions", "ReminderOutboxRepository.enqueueFollowers",
+                    "important_date_id", "follower_id", "followee_id"),
+            unique("reminder_outbox", "ReminderOutboxRepository.enqueueFollowers",
+                    "important_date_id", "follower_id", "occurrence_date"),
+            index("reminder_outbox", "ReminderOutboxRepository.lockDue", "status", "next_attempt_at", "id"));
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaIndexCheck.class);
+
+    private final DataSource dataSource;
+    private final boolean failOnMissing;
+
+    public SchemaIndexCheck(DataSource dataSource,
+                            @Value("${schema.index-check.fail-on-missing}") boolean failOnMissing) {
+        this.dataSource = dataSource;
+        this.failOnMissing = failOnMissing;
+    }
+
+    private static ExpectedIndex index(String table, String usedBy, String... columns) {
+        return new ExpectedIndex(table, List.of(columns), false, usedBy);
+    }
+
+    private static ExpectedIndex unique(String table, String usedBy, String... columns) {
+        return new ExpectedIndex(table, List.of(columns), true, usedBy);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        List<ExpectedIndex> missing;
+        try (Connection connection = dataSource.getConnection()) {
+            missing = missing(connection.getMetaData(), connection.getCatalog(), connection.getSchema());
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read the indexes of the schema", e);
+        }
+
+        if (missing.isEmpty()) {
+            log.info("All {} indexes the repository queries rely on are present", EXPECTED.size());
+            return;
+        }
+        missing.forEach(index -> log.error("Missing index: {}", index));
+        if (failOnMissing) {
+            throw new IllegalStateException(missing.size() + " indexes the repository queries rely on are missing; "
+                    + "apply the migrations in db/migration, or set schema.index-check.fail-on-missing=false");
+        }
+    }
+
+    private static List<ExpectedIndex> missing(DatabaseMetaData metaData, String catalog, String schema)
+            throws SQLException {
+        Map<String, List<IndexInfo>> byTable = new HashMap<>();
+        List<ExpectedIndex> missing = new ArrayList<>();
+        for (ExpectedIndex expected : EXPECTED) {
+            List<IndexInfo> indexes = byTable.get(expected.table());
+            if (indexes == null) {
+                indexes = indexes(metaData, catalog, schema, expected.table());
+                byTable.put(expected.table(), indexes);
+            }
+            if (indexes.stream().noneMatch(index -> index.satisfies(expected))) {
+                missing.add(expected);
+            }
+        }
+        return missing;
+    }
+
+    private record IndexInfo(List<String> columns, boolean unique) {
+
+        boolean satisfies(ExpectedIndex expected) {
+            if (expected.unique()) {
+                return unique && columns.equals(expected.columns());
+            }
+            return columns.size() >= expected.columns().size()
+                    && columns.subList(0, expected.columns().size()).equals(expected.columns());
+        }
+    }
+
+    /**
+     * Every index of the table with its columns in order, lower-cased.
+     */
+    private static List<IndexInfo> indexes(DatabaseMetaData metaData, String catalog, String schema, String table)
+            throws SQLException {
+        String name = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+        Map<String, TreeMap<Short, String>> columns = new HashMap<>();
+        Map<String, Boolean> unique = new HashMap<>();
+        try (ResultSet rs = metaData.getIndexInfo(catalog, schema, name, false, false)) {
+            while (rs.next()) {
+                String index = rs.getString("INDEX_NAME");
+                String column = rs.getString("COLUMN_NAME");
+                if (index == null || column == null) {
+                    continue;
+                }
+                columns.computeIfAbsent(index, key -> new TreeMap<>())
+                        .put(rs.getShort("ORDINAL_POSITION"), column.toLowerCase(Locale.ROOT));
+                unique.put(index, !rs.getBoolean("NON_UNIQUE"));
+            }
+        }
+        return columns.entrySet().stream()
+                .map(entry -> new IndexInfo(List.copyOf(entry.getValue().values()), unique.get(entry.getKey())))
+                .toList();
+    }
+}
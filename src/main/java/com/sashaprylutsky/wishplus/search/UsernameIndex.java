@@ -0,0 +1,81 @@
+package com.sashaprylutsky.wishplus.search;
+
+import com.sashaprylutsky.wishplus.dto.UsernameEntry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Sorted in-memory index of lowercase usernames for search-as-you-type.
+ * A prefix query is a seek into the sorted keys followed by a scan of at most {@code limit} entries,
+ * so its cost does not depend on how many users exist.
+ * Lookups are lock-free; writes are rare and serialized.
+ */
+public class UsernameIndex {
+
+    private static final Comparator<Key> ORDER = Comparator.comparing(Key::name).thenComparingLong(Key::id);
+
+    private final NavigableMap<Key, Long> byName = new ConcurrentSkipListMap<>(ORDER);
+    private final Map<Long, Key> byId = new ConcurrentHashMap<>();
+
+    public static UsernameIndex of(Stream<UsernameEntry> entries) {
+        UsernameIndex index = new UsernameIndex();
+        entries.forEach(entry -> index.put(entry.id(), entry.username()));
+        return index;
+    }
+
+    public synchronized void put(Long id, String username) {
+        Key key = new Key(normalize(username), id);
+        Key previous = byId.put(id, key);
+        if (previous != null && !previous.equals(key)) {
+            byName.remove(previous);
+        }
+        byName.put(key, id);
+    }
+
+    public synchronized void remove(Long id) {
+        Key previous = byId.remove(id);
+        if (previous != null) {
+            byName.remove(previous);
+        }
+    }
+
+    /**
+     * Up to {@code limit} entries whose username starts with {@code prefix}, ignoring case,
+     * ordered by lowercase username and id. When {@code after} is given, the scan starts
+     * right after that entry.
+     */
+    public List<Key> search(String prefix, Key after, int limit) {
+        String normalized = normalize(prefix);
+        NavigableMap<Key, Long> tail = after == null
+                ? byName.tailMap(new Key(normalized, Long.MIN_VALUE), true)
+                : byName.tailMap(after, false);
+
+        List<Key> result = new ArrayList<>(Math.min(limit, 64));
+        for (Key key : tail.keySet()) {
+            if (result.size() == limit || !key.name().startsWith(normalized)) {
+                break;
+            }
+            result.add(key);
+        }
+        return result;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public static String normalize(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    public record Key(String name, long id) {
+    }
+}
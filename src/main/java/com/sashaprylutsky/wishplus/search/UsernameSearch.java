@@ -0,0 +1,103 @@
+package com.sashaprylutsky.wishplus.search;
+
+import com.sashaprylutsky.wishplus.dto.UsernameEntry;
+import com.sashaprylutsky.wishplus.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Owns the process-wide {@link UsernameIndex}. The index is loaded from the database at startup,
+ * kept current by {@code UserService} on every register, update and delete, and periodically rebuilt
+ * so changes made by other instances are picked up.
+ * <p>
+ * Writes made while a rebuild reads the users go to the current index and are also queued. They are replayed
+ * on the new index before it replaces the old one, so a rebuild never drops them.
+ */
+@Component
+public class UsernameSearch {
+
+    private static final Logger log = LoggerFactory.getLogger(UsernameSearch.class);
+
+    private final UserRepository userRepository;
+    private final Object writeLock = new Object();
+    private volatile UsernameIndex index = new UsernameIndex();
+    /** Writes to replay on the index being rebuilt; {@code null} when no rebuild is running. */
+    private List<Consumer<UsernameIndex>> pendingWrites;
+
+    @Value("${users.search.default-limit}")
+    private int defaultLimit;
+
+    @Value("${users.search.max-limit}")
+    private int maxLimit;
+
+    public UsernameSearch(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @Transactional(readOnly = true)
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${users.search.rebuild-interval-millis}",
+            initialDelayString = "${users.search.rebuild-interval-millis}")
+    public void rebuild() {
+        long started = System.nanoTime();
+        synchronized (writeLock) {
+            pendingWrites = new ArrayList<>();
+        }
+        UsernameIndex rebuilt;
+        try (Stream<UsernameEntry> entries = userRepository.streamUsernames()) {
+            rebuilt = UsernameIndex.of(entries);
+        } catch (RuntimeException e) {
+            synchronized (writeLock) {
+                pendingWrites = null;
+            }
+            throw e;
+        }
+        synchronized (writeLock) {
+            pendingWrites.forEach(write -> write.accept(rebuilt));
+            pendingWrites = null;
+            index = rebuilt;
+        }
+        log.info("Username index rebuilt with {} users in {} ms",
+                rebuilt.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    public List<UsernameIndex.Key> search(String prefix, UsernameIndex.Key after, int limit) {
+        return index.search(prefix, after, limit);
+    }
+
+    public void put(Long id, String username) {
+        write(target -> target.put(id, username));
+    }
+
+    public void remove(Long id) {
+        write(target -> target.remove(id));
+    }
+
+    private void write(Consumer<UsernameIndex> write) {
+        synchronized (writeLock) {
+            write.accept(index);
+            if (pendingWrites != null) {
+                pendingWrites.add(write);
+            }
+        }
+    }
+
+    public int defaultLimit() {
+        return defaultLimit;
+    }
+
+    public int maxLimit() {
+        return maxLimit;
+    }
+}
@@ -0,0 +1,210 @@
+package com.sashaprylutsky.wishplus.search;
+
+import com.sashaprylutsky.wishplus.dto.WishView;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
+
+/**
+ * In-memory inverted index over the titles and descriptions of wishes, for full-text search.
+ * <p>
+ * Text is split into lowercase words of letters and digits; a title word counts {@value #TITLE_WEIGHT} times.
+ * A query matches wishes that contain any of its words, ranked with BM25, so wishes that contain more of the words,
+ * rarer words or shorter texts come first. The last word of the query also matches as a prefix, for
+ * search-as-you-type. The cost of a query grows with the number of wishes containing its words, not with the size
+ * of the index.
+ * <p>
+ * Lookups are lock-free; writes are serialized.
+ */
+public class WishIndex {
+
+    private static final int TITLE_WEIGHT = 2;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int MAX_QUERY_WORDS = 8;
+    private static final int MAX_PREFIX_EXPANSIONS = 50;
+    private static final Comparator<Hit> RANK = Comparator.comparingDouble(Hit::score)
+            .thenComparingLong(Hit::wishId);
+
+    /**
+     * word -> wish id -> occurrences of the word in the wish, with what ranking needs to know about the wish
+     */
+    private final NavigableMap<String, Map<Long, Posting>> postings = new ConcurrentSkipListMap<>();
+    private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+    private volatile long totalLength;
+
+    public static WishIndex of(Stream<WishView> wishes) {
+        WishIndex index = new WishIndex();
+        wishes.forEach(index::put);
+        return index;
+    }
+
+    public void put(WishView wish) {
+        put(wish.id(), wish.userId(), wish.title(), wish.description());
+    }
+
+    public synchronized void put(long wishId, long userId, String title, String description) {
+        remove(wishId);
+        Map<String, Integer> words = new HashMap<>();
+        tokenize(title).forEach(word -> words.merge(word, TITLE_WEIGHT, Integer::sum));
+        tokenize(description).forEach(word -> words.merge(word, 1, Integer::sum));
+        if (words.isEmpty()) {
+            return;
+        }
+
+        int length = words.values().stream().mapToInt(Integer::intValue).sum();
+        for (Map.Entry<String, Integer> word : words.entrySet()) {
+            postings.computeIfAbsent(word.getKey(), key -> new ConcurrentHashMap<>())
+                    .put(wishId, new Posting(userId, word.getValue(), length));
+        }
+        documents.put(wishId, new Document(length, words.keySet()));
+        totalLength += length;
+    }
+
+    public synchronized void remove(long wishId) {
+        Document previous = documents.remove(wishId);
+        if (previous == null) {
+            return;
+        }
+        for (String word : previous.words()) {
+            Map<Long, Posting> wishes = postings.get(word);
+            if (wishes != null) {
+                wishes.remove(wishId);
+                if (wishes.isEmpty()) {
+                    postings.remove(word);
+                }
+            }
+        }
+        totalLength -= previous.length();
+    }
+
+    /**
+     * Up to {@code limit} wishes of the owners accepted by {@code owners} that match the query, best first.
+     * Equal scores are ordered newest first.
+     */
+    public List<Hit> search(String query, LongPredicate owners, int limit) {
+        List<String> words = tokenize(query).stream().distinct().limit(MAX_QUERY_WORDS).toList();
+        int count = documents.size();
+        if (words.isEmpty() || count == 0) {
+            return List.of();
+        }
+        double averageLength = Math.max(1.0, (double) totalLength / count);
+
+        Map<Long, Score> scores = new HashMap<>();
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            if (i < words.size() - 1) {
+                score(postings.get(word), count, averageLength, owners, scores);
+                continue;
+            }
+            int expansions = 0;
+            for (Map.Entry<String, Map<Long, Posting>> entry : postings.tailMap(word, true).entrySet()) {
+                if (expansions++ == MAX_PREFIX_EXPANSIONS || !entry.getKey().startsWith(word)) {
+                    break;
+                }
+                score(entry.getValue(), count, averageLength, owners, scores);
+            }
+        }
+
+        PriorityQueue<Hit> best = new PriorityQueue<>(RANK);
+        for (Map.Entry<Long, Score> entry : scores.entrySet()) {
+            Score score = entry.getValue();
+            if (best.size() < limit || score.value > best.peek().score()) {
+                best.add(new Hit(entry.getKey(), score.userId, score.value));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+        List<Hit> result = new ArrayList<>(best);
+        result.sort(RANK.reversed());
+        return result;
+    }
+
+    private static void score(Map<Long, Posting> wishes, int count, double averageLength, LongPredicate owners,
+                              Map<Long, Score> scores) {
+        if (wishes == null || wishes.isEmpty()) {
+            return;
+        }
+        double idf = Math.log(1 + (count - wishes.size() + 0.5) / (wishes.size() + 0.5));
+        for (Map.Entry<Long, Posting> entry : wishes.entrySet()) {
+            Posting posting = entry.getValue();
+            if (!owners.test(posting.userId())) {
+                continue;
+            }
+            int frequency = posting.frequency();
+            double value = idf * frequency * (K1 + 1)
+                    / (frequency + K1 * (1 - B + B * posting.length() / averageLength));
+            Score score = scores.get(entry.getKey());
+            if (score == null) {
+                scores.put(entry.getKey(), new Score(posting.userId(), value));
+            } else {
+                score.value += value;
+            }
+        }
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    /**
+     * Lowercase words of letters and digits, in order; single letters are dropped.
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start > 1 || Character.isDigit(normalized.charAt(start))) {
+                    words.add(normalized.substring(start, i));
+                }
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private record Posting(long userId, int frequency, int length) {
+    }
+
+    private record Document(int length, Set<String> words) {
+
+        private Document {
+            words = Set.copyOf(words);
+        }
+    }
+
+    private static final class Score {
+
+        private final long userId;
+        private double value;
+
+        Score(long userId, double value) {
+            this.userId = userId;
+            this.value = value;
+        }
+    }
+
+    public record Hit(long wishId, long userId, double score) {
+    }
+}
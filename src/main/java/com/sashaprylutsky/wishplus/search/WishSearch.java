@@ -0,0 +1,149 @@
+package com.sashaprylutsky.wishplus.search;
+
+import com.sashaprylutsky.wishplus.dto.WishView;
+import com.sashaprylutsky.wishplus.repository.WishRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.stream.Stream;
+
+/**
+ * Owns the process-wide {@link WishIndex} of wishes that are not archived. The index is loaded from the database
+ * at startup, kept current by {@code WishService} on every change, and periodically rebuilt so changes made by
+ * other instances are picked up. Changes made inside a transaction reach the index after it commits.
+ * <p>
+ * Changes that reach the index while a rebuild reads the wishes go to the current index and are also queued. They
+ * are replayed on the new index before it replaces the old one, so a rebuild never drops them.
+ */
+@Component
+public class WishSearch {
+
+    private static final Logger log = LoggerFactory.getLogger(WishSearch.class);
+
+    public enum Scope {
+        /**
+         * Wishes of the users whose dates the caller is subscribed to.
+         */
+        FOLLOWEES,
+        /**
+         * Wishes of every user; wish lists are readable by every signed-in user.
+         */
+        ALL;
+
+        public static Scope parse(String scope) {
+            try {
+                return valueOf(scope.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Scope must be one of: followees, all");
+            }
+        }
+    }
+
+    private final WishRepository wishRepository;
+    private final Object writeLock = new Object();
+    private volatile WishIndex index = new WishIndex();
+    /** Writes to replay on the index being rebuilt; {@code null} when no rebuild is running. */
+    private List<Consumer<WishIndex>> pendingWrites;
+
+    @Value("${wishlist.search.default-limit}")
+    private int defaultLimit;
+
+    @Value("${wishlist.search.max-limit}")
+    private int maxLimit;
+
+    public WishSearch(WishRepository wishRepository) {
+        this.wishRepository = wishRepository;
+    }
+
+    @Transactional(readOnly = true)
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${wishlist.search.rebuild-interval-millis}",
+            initialDelayString = "${wishlist.search.rebuild-interval-millis}")
+    public void rebuild() {
+        long started = System.nanoTime();
+        synchronized (writeLock) {
+            pendingWrites = new ArrayList<>();
+        }
+        WishIndex rebuilt;
+        try (Stream<WishView> wishes = wishRepository.streamAllActive()) {
+            rebuilt = WishIndex.of(wishes);
+        } catch (RuntimeException e) {
+            synchronized (writeLock) {
+                pendingWrites = null;
+            }
+            throw e;
+        }
+        synchronized (writeLock) {
+            pendingWrites.forEach(write -> write.accept(rebuilt));
+            pendingWrites = null;
+            index = rebuilt;
+        }
+        log.info("Wish index rebuilt with {} wishes in {} ms",
+                rebuilt.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    public List<WishIndex.Hit> search(String query, LongPredicate owners, int limit) {
+        return index.search(query, owners, limit);
+    }
+
+    /**
+     * Indexes the wishes as they are now, or drops the archived ones.
+     */
+    public void putAll(Collection<WishView> wishes) {
+        afterCommit(() -> write(target -> wishes.forEach(wish -> {
+            if (wish.archived()) {
+                target.remove(wish.id());
+            } else {
+                target.put(wish);
+            }
+        })));
+    }
+
+    public void removeAll(Collection<Long> wishIds) {
+        afterCommit(() -> write(target -> wishIds.forEach(target::remove)));
+    }
+
+    private void write(Consumer<WishIndex> write) {
+        synchronized (writeLock) {
+            write.accept(index);
+            if (pendingWrites != null) {
+                pendingWrites.add(write);
+            }
+        }
+    }
+
+    public int defaultLimit() {
+        return defaultLimit;
+    }
+
+    public int maxLimit() {
+        return maxLimit;
+    }
+
+    private static void afterCommit(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.sashaprylutsky.wishplus.security;
 
 import com.sashaprylutsky.wishplus.model.User;
-import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -31,25 +30,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                                     @NonNull HttpServletResponse response,
                                     @NonNull FilterChain filterChain) throws ServletException, IOException {
         final String authHeader = request.getHeader("Authorization");
-        final String token;
-        final String subject;
 
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             filterChain.doFilter(request, response);
             return;
         }
 
-        token = authHeader.substring(7);
-        subject = jwtService.extractSubject(token); //in this case, subject is a username
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            VerifiedToken token = jwtService.verify(authHeader.substring(7));
 
-        if (subject != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            Claims claims = jwtService.extractAllClaims(token);
-
-            UserDetails userDetails = new User(
-                    claims.get("userId", Long.class),
-                    subject
-            );
-            if (jwtService.isTokenValid(token, userDetails)) {
+            if (token.subject() != null) { //in this case, subject is a username
+                UserDetails userDetails = new User(token.userId(), token.subject());
                 UsernamePasswordAuthenticationToken authToken = new
                         UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
 
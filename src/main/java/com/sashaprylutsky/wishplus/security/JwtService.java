@@ -2,9 +2,9 @@ package com.sashaprylutsky.wishplus.security;
 
 import com.sashaprylutsky.wishplus.model.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
-import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
@@ -18,17 +18,20 @@ import java.util.function.Function;
 @Service
 public class JwtService {
 
-    @Value("${jwt.secret}")
-    private String secret;
+    private final long expirationMillis;
+    private final SecretKey secretKey;
+    private final JwtParser parser;
+    private final VerifiedTokenCache verifiedTokens;
 
-    @Value("${jwt.expiration-millis}")
-    private long expirationMillis;
-
-    private SecretKey secretKey;
-
-    @PostConstruct
-    private void init() {
+    public JwtService(@Value("${jwt.secret}") String secret,
+                      @Value("${jwt.expiration-millis}") long expirationMillis,
+                      VerifiedTokenCache verifiedTokens) {
+        this.expirationMillis = expirationMillis;
         this.secretKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parser()
+                .verifyWith(secretKey)
+                .build();
+        this.verifiedTokens = verifiedTokens;
     }
 
     public String generateToken(User user) {
@@ -41,6 +44,22 @@ public class JwtService {
                 .compact();
     }
 
+    /**
+     * Verifies the token signature and expiration once and returns its claims.
+     * Tokens seen before are answered from {@link VerifiedTokenCache} without any parsing.
+     */
+    public VerifiedToken verify(String token) {
+        return verifiedTokens.get(token, this::parse);
+    }
+
+    private VerifiedToken parse(String token) {
+        Claims claims = extractAllClaims(token);
+        Date expiration = claims.getExpiration();
+        return new VerifiedToken(claims.getSubject(),
+                claims.get("userId", Long.class),
+                expiration == null ? null : expiration.toInstant());
+    }
+
     public String extractSubject(String token) {
         return extractClaim(token, Claims::getSubject);
     }
@@ -55,11 +74,7 @@ public class JwtService {
     }
 
     public Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(secretKey)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return parser.parseSignedClaims(token).getPayload();
     }
 
     public boolean isTokenValid(String token, UserDetails userDetails) {
@@ -0,0 +1,21 @@
+package com.sashaprylutsky.wishplus.security;
+
+import java.time.Duration;
+
+/**
+ * Thrown when the password hashing queue is full. Mapped to {@code 503 Service Unavailable}
+ * with a {@code Retry-After} header.
+ */
+public class PasswordHashingBusyException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public PasswordHashingBusyException(Duration retryAfter) {
+        super("Too many login attempts in progress, try again later.");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,111 @@
+package com.sashaprylutsky.wishplus.security;
+
+import com.sashaprylutsky.wishplus.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-route rate limits with {@link TokenBuckets}, right after {@link JwtAuthenticationFilter} so buckets
+ * can be keyed by the authenticated user. Every policy whose path matches the request takes a token; when one of
+ * them has none left the request is answered with {@code 429 Too Many Requests} and a {@code Retry-After} header.
+ * <p>
+ * The client IP is {@link HttpServletRequest#getRemoteAddr()}; behind a proxy set
+ * {@code server.forward-headers-strategy} so it is the client's and not the proxy's.
+ * <p>
+ * Metrics: {@code rate-limit.rejected} and {@code rate-limit.keys}, tagged with the policy name.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final boolean enabled;
+    private final List<Limit> limits;
+
+    public RateLimitFilter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.limits = properties.policies().entrySet().stream()
+                .map(entry -> new Limit(entry.getKey(), entry.getValue(), properties.maxKeys(), meterRegistry))
+                .toList();
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain) throws ServletException, IOException {
+        if (enabled && !limits.isEmpty()) {
+            PathContainer path = PathContainer.parsePath(request.getRequestURI());
+            long now = System.nanoTime();
+            for (Limit limit : limits) {
+                if (!limit.pattern.matches(path)) {
+                    continue;
+                }
+                long waitNanos = limit.buckets.tryAcquire(keyOf(limit.policy.key(), request), now);
+                if (waitNanos > 0) {
+                    limit.rejected.increment();
+                    reject(response, waitNanos);
+                    return;
+                }
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private static Object keyOf(RateLimitProperties.Key key, HttpServletRequest request) {
+        if (key == RateLimitProperties.Key.USER) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication != null && authentication.getPrincipal() instanceof User user && user.getId() != null) {
+                return user.getId();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private static void reject(HttpServletResponse response, long waitNanos) throws IOException {
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\": \"Too many requests, try again later.\"}");
+    }
+
+    private static final class Limit {
+
+        private final RateLimitProperties.Policy policy;
+        private final PathPattern pattern;
+        private final TokenBuckets buckets;
+        private final Counter rejected;
+
+        Limit(String name, RateLimitProperties.Policy policy, long maxKeys, MeterRegistry meterRegistry) {
+            this.policy = policy;
+            this.pattern = PathPatternParser.defaultInstance.parse(policy.path());
+            this.buckets = new TokenBuckets(policy.capacity(), policy.refillPerSecond(), maxKeys);
+            this.rejected = Counter.builder("rate-limit.rejected")
+                    .description("Requests answered with 429 Too Many Requests")
+                    .tag("policy", name)
+                    .register(meterRegistry);
+            Gauge.builder("rate-limit.keys", buckets, TokenBuckets::size)
+                    .description("Clients with a bucket")
+                    .tag("policy", name)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.sashaprylutsky.wishplus.security;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Map;
+
+/**
+ * {@code rate-limit.*}: named per-route token bucket policies, e.g.
+ * <pre>
+ * rate-limit.policies.login.path=/api/users/login
+ * rate-limit.policies.login.key=ip
+ * rate-limit.policies.login.capacity=10
+ * rate-limit.policies.login.refill-per-second=0.2
+ * </pre>
+ *
+ * @param enabled  {@code false} lets every request through
+ * @param maxKeys  most buckets kept per policy; beyond it a new key evicts one of the fullest
+ * @param policies policies by name, the name tags their metrics
+ */
+@ConfigurationProperties("rate-limit")
+public record RateLimitProperties(boolean enabled, long maxKeys, Map<String, Policy> policies) {
+
+    /**
+     * @param path            path pattern, e.g. {@code /api/users/search/**}
+     * @param key             what a bucket belongs to, {@link Key#USER} by default
+     * @param capacity        requests allowed in a burst
+     * @param refillPerSecond requests allowed per second over time
+     */
+    public record Policy(String path, Key key, long capacity, double refillPerSecond) {
+
+        public Policy {
+            key = key == null ? Key.USER : key;
+        }
+    }
+
+    public enum Key {
+        /**
+         * The authenticated user's id; the client IP for anonymous requests.
+         */
+        USER,
+        /**
+         * The client IP, even for authenticated requests.
+         */
+        IP
+    }
+
+    public RateLimitProperties {
+        policies = policies == null ? Map.of() : policies;
+    }
+}
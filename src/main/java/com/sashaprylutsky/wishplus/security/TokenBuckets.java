@@ -0,0 +1,120 @@
+package com.sashaprylutsky.wishplus.security;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets of one rate limit policy, one per key, without locks.
+ * <p>
+ * A bucket is a single {@link AtomicLong}: the time at which it will be full again (the generic cell rate
+ * algorithm, which behaves exactly like a token bucket). Taking a token is one compare-and-set that moves this time
+ * forward by one refill interval; it fails when that would be more than {@code capacity} intervals ahead of now.
+ * <p>
+ * Buckets are spread over {@value #STRIPES} {@link ConcurrentHashMap}s by key. A bucket whose time lies in the past
+ * is full, no different from a new one, so it can be dropped. When a new key arrives, its stripe drops its full
+ * buckets, at most once a second, so idle keys go away without a background thread or any bookkeeping on reads.
+ * A token taken from a bucket while it is being dropped is lost, which at worst lets one extra request through.
+ * <p>
+ * A stripe holds at most its share of {@code maxKeys}. When it is full of buckets in use, a new key evicts the
+ * fullest of the first {@value #EVICTION_SAMPLE} buckets it finds there, the one whose loss forgives the fewest
+ * requests. The evicted key starts over with a full bucket, but a new key is never let through unlimited.
+ */
+public class TokenBuckets {
+
+    private static final int STRIPES = 16;
+    private static final long SWEEP_INTERVAL_NANOS = Duration.ofSeconds(1).toNanos();
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int maxKeysPerStripe;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public TokenBuckets(long capacity, double refillPerSecond, long maxKeys) {
+        if (capacity < 1 || refillPerSecond <= 0 || maxKeys < 1) {
+            throw new IllegalArgumentException("A rate limit needs a capacity of at least 1, a positive refill rate and room for keys");
+        }
+        this.intervalNanos = Math.max(1, (long) (Duration.ofSeconds(1).toNanos() / refillPerSecond));
+        // far enough from overflow for any nanoTime arithmetic below
+        this.burstNanos = capacity > Long.MAX_VALUE / 4 / intervalNanos ? Long.MAX_VALUE / 4 : intervalNanos * capacity;
+        this.maxKeysPerStripe = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxKeys / STRIPES));
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Takes a token from the key's bucket.
+     *
+     * @param now {@link System#nanoTime()}
+     * @return {@code 0} if a token was taken, otherwise nanoseconds until the next one is available
+     */
+    public long tryAcquire(Object key, long now) {
+        Stripe stripe = stripes[spread(key.hashCode())];
+        AtomicLong fullAt = stripe.buckets.get(key);
+        if (fullAt == null) {
+            fullAt = stripe.add(key, now);
+        }
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long ahead = next - now;
+            if (ahead > burstNanos) {
+                return ahead - burstNanos;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.buckets.size();
+        }
+        return size;
+    }
+
+    private static int spread(int hash) {
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private final class Stripe {
+
+        private final ConcurrentHashMap<Object, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+        AtomicLong add(Object key, long now) {
+            long sweepAt = nextSweep.get();
+            if (now - sweepAt >= 0 && nextSweep.compareAndSet(sweepAt, now + SWEEP_INTERVAL_NANOS)) {
+                buckets.values().removeIf(fullAt -> fullAt.get() - now <= 0);
+            }
+            if (buckets.size() >= maxKeysPerStripe) {
+                evict();
+            }
+            return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+
+        /**
+         * New keys that pass the size check together can leave a stripe a few buckets over its share.
+         */
+        private void evict() {
+            Map.Entry<Object, AtomicLong> fullest = null;
+            int sampled = 0;
+            for (Map.Entry<Object, AtomicLong> entry : buckets.entrySet()) {
+                if (fullest == null || entry.getValue().get() - fullest.getValue().get() < 0) {
+                    fullest = entry;
+                }
+                if (++sampled == EVICTION_SAMPLE) {
+                    break;
+                }
+            }
+            if (fullest != null) {
+                buckets.remove(fullest.getKey(), fullest.getValue());
+            }
+        }
+    }
+}
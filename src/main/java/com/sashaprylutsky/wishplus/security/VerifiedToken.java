@@ -0,0 +1,13 @@
+package com.sashaprylutsky.wishplus.security;
+
+import java.time.Instant;
+
+/**
+ * Claims of a token whose signature and expiration have already been checked.
+ */
+public record VerifiedToken(String subject, Long userId, Instant expiresAt) {
+
+    public boolean isExpired(Instant now) {
+        return expiresAt != null && !expiresAt.isAfter(now);
+    }
+}
@@ -0,0 +1,21 @@
+package com.sashaprylutsky.wishplus.service;
+
+import java.util.Map;
+
+/**
+ * Thrown when any item of a bulk request is invalid; nothing of the request is written.
+ * Mapped to {@code 400 Bad Request} with the errors keyed by item, e.g. {@code "[3].title"}.
+ */
+public class BulkValidationException extends RuntimeException {
+
+    private final Map<String, String> errors;
+
+    public BulkValidationException(Map<String, String> errors) {
+        super("Bulk request has invalid items: " + errors.keySet());
+        this.errors = errors;
+    }
+
+    public Map<String, String> getErrors() {
+        return errors;
+    }
+}
@@ -1,29 +1,44 @@
 package com.sashaprylutsky.wishplus.service;
 
+import com.sashaprylutsky.wishplus.etag.ResourceVersions;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions.Resource;
 import com.sashaprylutsky.wishplus.model.DateSubscription;
 import com.sashaprylutsky.wishplus.model.ImportantDate;
 import com.sashaprylutsky.wishplus.model.User;
 import com.sashaprylutsky.wishplus.repository.DateSubscriptionRepository;
 import jakarta.persistence.NoResultException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.List;
+import java.time.Instant;
 
 @Service
 public class DataSubscriptionService {
 
+    private static final Logger log = LoggerFactory.getLogger(DataSubscriptionService.class);
+
     private final DateSubscriptionRepository repo;
     private final ImportantDateService importantDateService;
     private final UserService userService;
+    private final TransactionTemplate transaction;
+    private final ResourceVersions versions;
 
     public DataSubscriptionService(ImportantDateService importantDateService,
                                    DateSubscriptionRepository repo,
-                                   UserService userService) {
+                                   UserService userService,
+                                   PlatformTransactionManager transactionManager,
+                                   ResourceVersions versions) {
         this.importantDateService = importantDateService;
         this.repo = repo;
         this.userService = userService;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.versions = versions;
     }
 
     @Transactional
@@ -37,42 +52,40 @@ public class DataSubscriptionService {
                         alreadyPresent -> {
                             throw new DuplicateKeyException("You're already subscribed to this record.");
                         },
-                        () -> repo.save(new DateSubscription(followee, principal, importantDate))
+                        () -> {
+                            try {
+                                repo.saveAndFlush(new DateSubscription(followee, principal, importantDate));
+                            } catch (DataIntegrityViolationException e) {
+                                throw new DuplicateKeyException("You're already subscribed to this record.");
+                            }
+                        }
                 );
+        versions.bump(principal.getId(), Resource.SUBSCRIPTIONS);
     }
 
-    @Transactional
+    /**
+     * Brings the principal's subscriptions to the followee in line with the followee's current dates
+     * using two set-based statements. A concurrent call for the same pair can make the insert hit
+     * the unique constraint; the transaction is then retried once and inserts only what is still missing.
+     */
     public void subscribeToAll(Long followee_id) {
         User principal = userService.getPrincipal();
         User followee = userService.getUserById(followee_id);
 
-        List<ImportantDate> followeeImportantDates = importantDateService.getRecordsByUserId(followee_id);
-        List<DateSubscription> existingSubscriptions = repo.findAllByFolloweeAndFollower(followee, principal);
-
-        List<Long> existingDateIds = existingSubscriptions.stream()
-                .map(sub -> sub.getImportantDate().getId())
-                .toList();
-
-        List<DateSubscription> subscriptionsToSave = followeeImportantDates.stream()
-                .filter(date -> !existingDateIds.contains(date.getId()))
-                .map(date -> new DateSubscription(followee, principal, date))
-                .toList();
-
-        List<Long> currentFolloweeDateIds = followeeImportantDates.stream()
-                .map(ImportantDate::getId)
-                .toList();
-
-        List<DateSubscription> subscriptionsToRemove = existingSubscriptions.stream()
-                .filter(sub -> !currentFolloweeDateIds.contains(sub.getImportantDate().getId()))
-                .toList();
-
-        if (!subscriptionsToRemove.isEmpty()) {
-            repo.deleteAll(subscriptionsToRemove);
+        try {
+            syncSubscriptions(principal.getId(), followee.getId());
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Concurrent subscription of user {} to user {}, retrying", principal.getId(), followee.getId());
+            syncSubscriptions(principal.getId(), followee.getId());
         }
+    }
 
-        if (!subscriptionsToSave.isEmpty()) {
-            repo.saveAll(subscriptionsToSave);
-        }
+    private void syncSubscriptions(Long followerId, Long followeeId) {
+        transaction.executeWithoutResult(status -> {
+            repo.deleteStaleSubscriptions(followerId, followeeId);
+            repo.subscribeToAllDates(followerId, followeeId, Instant.now());
+            versions.bump(followerId, Resource.SUBSCRIPTIONS);
+        });
     }
 
     @Transactional
@@ -88,6 +101,7 @@ public class DataSubscriptionService {
                             throw new NoResultException("You're already unsubscribed from this record.");
                         }
                 );
+        versions.bump(principal.getId(), Resource.SUBSCRIPTIONS);
     }
 
     @Transactional
@@ -95,11 +109,9 @@ public class DataSubscriptionService {
         User principal = userService.getPrincipal();
         User followee = userService.getUserById(followee_id);
 
-        List<DateSubscription> subscriptions = repo.findAllByFolloweeAndFollower(followee, principal);
-
-        if (subscriptions.isEmpty()) {
+        if (repo.deleteAllSubscriptions(principal.getId(), followee.getId()) == 0) {
             throw new NoResultException("You're not subscribed to this user.");
         }
-        repo.deleteAll(subscriptions);
+        versions.bump(principal.getId(), Resource.SUBSCRIPTIONS);
     }
 }
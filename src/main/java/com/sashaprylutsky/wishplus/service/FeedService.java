@@ -0,0 +1,94 @@
+package com.sashaprylutsky.wishplus.service;
+
+import com.sashaprylutsky.wishplus.dto.FeedEntry;
+import com.sashaprylutsky.wishplus.dto.FeedWish;
+import com.sashaprylutsky.wishplus.dto.UpcomingDate;
+import com.sashaprylutsky.wishplus.model.RecurringDates;
+import com.sashaprylutsky.wishplus.model.User;
+import com.sashaprylutsky.wishplus.pagination.CursorPage;
+import com.sashaprylutsky.wishplus.pagination.Cursors;
+import com.sashaprylutsky.wishplus.preview.LinkPreviews;
+import com.sashaprylutsky.wishplus.repository.ImportantDateRepository;
+import com.sashaprylutsky.wishplus.repository.WishRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Home screen of a follower: subscribed dates ordered by next occurrence, each with the newest wishes
+ * of its owner. A page is built from two queries regardless of how many users are followed.
+ */
+@Service
+public class FeedService {
+
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_WISHES_PER_DATE = 10;
+
+    private final ImportantDateRepository importantDateRepo;
+    private final WishRepository wishRepo;
+    private final UserService userService;
+    private final LinkPreviews linkPreviews;
+
+    public FeedService(ImportantDateRepository importantDateRepo,
+                       WishRepository wishRepo,
+                       UserService userService,
+                       LinkPreviews linkPreviews) {
+        this.importantDateRepo = importantDateRepo;
+        this.wishRepo = wishRepo;
+        this.userService = userService;
+        this.linkPreviews = linkPreviews;
+    }
+
+    @Transactional(readOnly = true)
+    public CursorPage<FeedEntry> getFeed(String cursor, int limit, int wishesPerDate) {
+        CursorPage.checkLimit(limit, MAX_PAGE_SIZE);
+        if (wishesPerDate < 0 || wishesPerDate > MAX_WISHES_PER_DATE) {
+            throw new IllegalArgumentException("Wishes per date must be between 0 and " + MAX_WISHES_PER_DATE);
+        }
+        User principal = userService.getPrincipal();
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+
+        // the cursor pins the day the ordering started from, so pages stay consistent across midnight
+        int start = RecurringDates.monthDay(today);
+        int afterBucket = -1;
+        int afterMonthDay = 0;
+        long afterId = 0;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] keys = Cursors.decode(cursor, 4);
+            start = (int) Cursors.decodeLong(keys[0]);
+            afterBucket = (int) Cursors.decodeLong(keys[1]);
+            afterMonthDay = (int) Cursors.decodeLong(keys[2]);
+            afterId = Cursors.decodeLong(keys[3]);
+        }
+
+        int orderStart = start;
+        CursorPage<UpcomingDate> dates = CursorPage.of(
+                importantDateRepo.findSubscribedAfter(principal.getId(), start,
+                        afterBucket, afterMonthDay, afterId, Limit.of(limit + 1)),
+                limit,
+                last -> {
+                    int lastMonthDay = RecurringDates.monthDay(RecurringDates.toLocalDate(last.date()));
+                    return Cursors.encode(orderStart, lastMonthDay >= orderStart ? 0 : 1, lastMonthDay, last.id());
+                });
+
+        Map<Long, List<FeedWish>> wishesByUser = Map.of();
+        if (wishesPerDate > 0 && !dates.items().isEmpty()) {
+            Set<Long> followeeIds = dates.items().stream()
+                    .map(UpcomingDate::followeeId)
+                    .collect(Collectors.toSet());
+            wishesByUser = wishRepo.findTopWishesByUserIds(followeeIds, wishesPerDate).stream()
+                    .map(linkPreviews::attach)
+                    .collect(Collectors.groupingBy(FeedWish::userId));
+        }
+
+        Map<Long, List<FeedWish>> wishes = wishesByUser;
+        return dates.map(date -> new FeedEntry(date.from(today), wishes.getOrDefault(date.followeeId(), List.of())));
+    }
+}
@@ -1,49 +1,184 @@
 package com.sashaprylutsky.wishplus.service;
 
+import com.sashaprylutsky.wishplus.dto.ImportantDateView;
+import com.sashaprylutsky.wishplus.dto.ScheduledDate;
+import com.sashaprylutsky.wishplus.dto.UpcomingDate;
+import com.sashaprylutsky.wishplus.etag.ETags;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions.Resource;
 import com.sashaprylutsky.wishplus.model.ImportantDate;
+import com.sashaprylutsky.wishplus.model.MonthDayWindow;
+import com.sashaprylutsky.wishplus.model.RecurringDates;
 import com.sashaprylutsky.wishplus.model.User;
+import com.sashaprylutsky.wishplus.pagination.CursorPage;
+import com.sashaprylutsky.wishplus.pagination.Cursors;
 import com.sashaprylutsky.wishplus.repository.ImportantDateRepository;
 import jakarta.persistence.NoResultException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class ImportantDateService {
 
+    private static final Logger log = LoggerFactory.getLogger(ImportantDateService.class);
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_CURSOR_PAGE_SIZE = 500;
+    private static final int BACKFILL_PAGE_SIZE = 1000;
+    static final String IMPORTANT_DATES = "importantDates";
+
     private final UserService userService;
     private final ImportantDateRepository repo;
+    private final Cache cache;
+    private final ResourceVersions versions;
 
-    public ImportantDateService(ImportantDateRepository repo, UserService userService) {
+    public ImportantDateService(ImportantDateRepository repo, UserService userService, CacheManager cacheManager,
+                                ResourceVersions versions) {
         this.repo = repo;
         this.userService = userService;
+        this.versions = versions;
+        // evictions inside a transaction apply after commit, so a concurrent read cannot re-cache the old row
+        this.cache = new TransactionAwareCacheDecorator(
+                Objects.requireNonNull(cacheManager.getCache(IMPORTANT_DATES)));
+    }
+
+    @Transactional(readOnly = true)
+    public CursorPage<ImportantDateView> getRecordsByUserId(Long id, String cursor, int limit) {
+        CursorPage.checkLimit(limit, MAX_CURSOR_PAGE_SIZE);
+        long afterId = cursor == null || cursor.isBlank() ? 0 : Cursors.decodeLong(Cursors.decode(cursor, 1)[0]);
+        return CursorPage.of(repo.findPageByUserId(id, afterId, Limit.of(limit + 1)),
+                limit, last -> Cursors.encode(last.id()));
+    }
+
+    /**
+     * ETag of one page of the user's date list, known without querying the dates. Read-only like the list
+     * itself, so both come from the same database.
+     */
+    @Transactional(readOnly = true)
+    public String getRecordListETag(Long id, String cursor, int limit) {
+        return versions.listETag(Resource.DATES, id, cursor, limit);
+    }
+
+    /**
+     * ETag of a single record, derived from its content; cheap because records are usually served from the cache.
+     */
+    public String getRecordETag(ImportantDateView record) {
+        return ETags.of("d" + record.id(), record.userId(), record.title(), record.date());
+    }
+
+    public Stream<ImportantDateView> streamRecordsByUserId(Long id) {
+        return repo.streamAllByUserId(id);
     }
 
-    public List<ImportantDate> getRecordsByUserId(Long id) {
-        return repo.findAllByUser_Id(id);
+    /**
+     * Dates the current user is subscribed to that occur within the next {@code days} days,
+     * ordered by their next occurrence.
+     */
+    public List<UpcomingDate> getUpcomingSubscribedRecords(int days, int page, int size) {
+        if (size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must not exceed " + MAX_PAGE_SIZE);
+        }
+        User principal = userService.getPrincipal();
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        MonthDayWindow window = RecurringDates.window(today, days);
+
+        return repo.findUpcomingSubscribed(principal.getId(), window.start(),
+                        window.firstFrom(), window.firstTo(), window.secondFrom(), window.secondTo(),
+                        PageRequest.of(page, size))
+                .stream()
+                .map(date -> date.from(today))
+                .toList();
     }
 
+    /**
+     * Sets {@code month_day} on dates saved before the column existed. The code is computed here, in UTC, exactly
+     * as {@link ImportantDate} computes it on save; the database's {@code month()} and {@code day()} would use the
+     * session's time zone and give dates near midnight another day.
+     */
+    @Transactional
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillMonthDays() {
+        int updated = 0;
+        long afterId = 0;
+        List<ScheduledDate> page;
+        while (!(page = repo.findPageWithoutMonthDay(afterId, Limit.of(BACKFILL_PAGE_SIZE))).isEmpty()) {
+            Map<Integer, List<Long>> idsByMonthDay = page.stream().collect(Collectors.groupingBy(
+                    date -> RecurringDates.monthDay(RecurringDates.toLocalDate(date.date())),
+                    Collectors.mapping(ScheduledDate::id, Collectors.toList())));
+            for (Map.Entry<Integer, List<Long>> ids : idsByMonthDay.entrySet()) {
+                updated += repo.setMonthDay(ids.getValue(), ids.getKey());
+            }
+            afterId = page.get(page.size() - 1).id();
+        }
+        if (updated > 0) {
+            log.info("Backfilled month_day for {} important dates", updated);
+        }
+    }
+
+    @Transactional
     public ImportantDate createRecord(ImportantDate importantDate) {
         User principal = userService.getPrincipal();
         importantDate.setUser(new User(principal.getId()));
 
-        return repo.save(importantDate);
+        ImportantDate saved = repo.save(importantDate);
+        versions.bump(principal.getId(), Resource.DATES);
+        return saved;
     }
 
-    public ImportantDate getRecordById(Long record_id) {
-        return repo.findById(record_id)
+    /**
+     * The record with the given id, served from the {@value #IMPORTANT_DATES} cache when possible.
+     */
+    public ImportantDateView getRecordById(Long record_id) {
+        ImportantDateView cached = cache.get(record_id, ImportantDateView.class);
+        if (cached != null) {
+            return cached;
+        }
+        ImportantDateView record = repo.findViewById(record_id)
                 .orElseThrow(() -> new NoResultException("No record is being found with id: " + record_id));
+        cache.put(record_id, record);
+        return record;
     }
 
+    /**
+     * Checks against the cached record that it belongs to the user and returns a reference to it
+     * that can be used in associations without loading the row.
+     */
     public ImportantDate getRecordByRecordIdAndUserId(Long record_id, Long user_id) {
+        try {
+            if (Objects.equals(getRecordById(record_id).userId(), user_id)) {
+                return repo.getReferenceById(record_id);
+            }
+        } catch (NoResultException ignored) {
+            // reported below, same as a record of another user
+        }
+        throw new RuntimeException("User doesn't have a record Num." + record_id);
+    }
+
+    private ImportantDate loadOwnedRecord(Long record_id, Long user_id) {
         return repo.selectRecordByRecordIdAndUserId(record_id, user_id)
                 .orElseThrow(() -> new RuntimeException("User doesn't have a record Num." + record_id));
     }
 
+    @Transactional
     public ImportantDate updateRecordById(Long record_id, ImportantDate importantDate) {
         User principal = userService.getPrincipal();
-        ImportantDate dateRecord = getRecordByRecordIdAndUserId(record_id, principal.getId());
+        ImportantDate dateRecord = loadOwnedRecord(record_id, principal.getId());
 
         if (importantDate.getTitle() != null && !importantDate.getTitle().isBlank()) {
             dateRecord.setTitle(importantDate.getTitle());
@@ -51,13 +186,18 @@ public class ImportantDateService {
         if (importantDate.getDate() != null) {
             dateRecord.setDate(importantDate.getDate());
         }
-        return repo.save(dateRecord);
+        ImportantDate saved = repo.save(dateRecord);
+        cache.evict(record_id);
+        versions.bump(principal.getId(), Resource.DATES);
+        return saved;
     }
 
     @Transactional
     public void deleteRecordById(Long record_id) {
         User principal = userService.getPrincipal();
-        ImportantDate dateRecord = getRecordByRecordIdAndUserId(record_id, principal.getId());
+        ImportantDate dateRecord = loadOwnedRecord(record_id, principal.getId());
         repo.delete(dateRecord);
+        cache.evict(record_id);
+        versions.bump(principal.getId(), Resource.DATES);
     }
 }
\ No newline at end of file
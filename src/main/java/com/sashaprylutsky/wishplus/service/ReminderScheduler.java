@@ -0,0 +1,95 @@
+package com.sashaprylutsky.wishplus.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Drives the reminder engine: scans {@code important_dates} partition by partition and drains the outbox.
+ * Every node runs the same loop; partition leases make sure each partition is scanned by one node per interval,
+ * so adding nodes spreads the scan. Rescanning is idempotent: a reminder is written once per follower and occurrence.
+ */
+@Component
+@ConditionalOnProperty(name = "reminders.enabled", havingValue = "true", matchIfMissing = true)
+public class ReminderScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(ReminderScheduler.class);
+
+    private final ReminderService reminderService;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Value("${reminders.partitions}")
+    private int partitions;
+
+    @Value("${reminders.days-ahead}")
+    private int daysAhead;
+
+    @Value("${reminders.scan-page-size}")
+    private int scanPageSize;
+
+    @Value("${reminders.scan-interval-millis}")
+    private long scanIntervalMillis;
+
+    @Value("${reminders.dispatch-batch-size}")
+    private int dispatchBatchSize;
+
+    public ReminderScheduler(ReminderService reminderService) {
+        this.reminderService = reminderService;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createPartitions() {
+        try {
+            reminderService.ensurePartitions(partitions);
+        } catch (RuntimeException e) {
+            log.warn("Reminder partitions were not created, another node may be creating them: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${reminders.scan-interval-millis}", fixedDelayString = "${reminders.scan-interval-millis}")
+    public void scanUpcomingDates() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        int offset = ThreadLocalRandom.current().nextInt(partitions);
+
+        for (int i = 0; i < partitions; i++) {
+            int partitionNo = (offset + i) % partitions;
+            if (reminderService.claimPartition(partitionNo, nodeId, scanIntervalMillis)) {
+                scanPartition(partitionNo, today);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${reminders.dispatch-interval-millis}")
+    public void dispatchReminders() {
+        int dispatched;
+        do {
+            dispatched = reminderService.dispatchBatch(dispatchBatchSize);
+        } while (dispatched == dispatchBatchSize);
+    }
+
+    private void scanPartition(int partitionNo, LocalDate today) {
+        long afterId = 0;
+        int scanned = 0;
+        int enqueued = 0;
+
+        ReminderService.ScanResult page;
+        while ((page = reminderService.scanPage(partitionNo, partitions, afterId, nodeId,
+                today, daysAhead, scanPageSize)) != null) {
+            afterId = page.lastId();
+            scanned += page.scannedDates();
+            enqueued += page.enqueuedReminders();
+        }
+        reminderService.completePartition(partitionNo, nodeId);
+        log.debug("Reminder partition {} scanned: {} dates, {} reminders enqueued", partitionNo, scanned, enqueued);
+    }
+}
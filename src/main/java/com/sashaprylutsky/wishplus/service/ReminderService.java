@@ -0,0 +1,190 @@
+package com.sashaprylutsky.wishplus.service;
+
+import com.sashaprylutsky.wishplus.dto.ScheduledDate;
+import com.sashaprylutsky.wishplus.model.MonthDayWindow;
+import com.sashaprylutsky.wishplus.model.RecurringDates;
+import com.sashaprylutsky.wishplus.model.ReminderOutbox;
+import com.sashaprylutsky.wishplus.model.ReminderPartition;
+import com.sashaprylutsky.wishplus.model.ReminderStatus;
+import com.sashaprylutsky.wishplus.notification.Reminder;
+import com.sashaprylutsky.wishplus.notification.ReminderSender;
+import com.sashaprylutsky.wishplus.repository.ImportantDateRepository;
+import com.sashaprylutsky.wishplus.repository.ReminderOutboxRepository;
+import com.sashaprylutsky.wishplus.repository.ReminderPartitionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+@Service
+public class ReminderService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReminderService.class);
+
+    private final ReminderPartitionRepository partitionRepo;
+    private final ReminderOutboxRepository outboxRepo;
+    private final ImportantDateRepository importantDateRepo;
+    private final ReminderSender sender;
+
+    @Value("${reminders.lease-millis}")
+    private long leaseMillis;
+
+    @Value("${reminders.max-attempts}")
+    private int maxAttempts;
+
+    @Value("${reminders.retry-backoff-millis}")
+    private long retryBackoffMillis;
+
+    public ReminderService(ReminderPartitionRepository partitionRepo,
+                           ReminderOutboxRepository outboxRepo,
+                           ImportantDateRepository importantDateRepo,
+                           ReminderSender sender) {
+        this.partitionRepo = partitionRepo;
+        this.outboxRepo = outboxRepo;
+        this.importantDateRepo = importantDateRepo;
+        this.sender = sender;
+    }
+
+    @Transactional
+    public void ensurePartitions(int partitions) {
+        Set<Integer> existing = partitionRepo.findAll().stream()
+                .map(ReminderPartition::getPartitionNo)
+                .collect(Collectors.toSet());
+
+        List<ReminderPartition> missing = IntStream.range(0, partitions)
+                .filter(partitionNo -> !existing.contains(partitionNo))
+                .mapToObj(ReminderPartition::new)
+                .toList();
+
+        if (!missing.isEmpty()) {
+            partitionRepo.saveAll(missing);
+        }
+    }
+
+    /**
+     * Takes the lease on a partition that has not been scanned within the last {@code scanIntervalMillis}.
+     * Returns {@code false} when another node holds a live lease or the partition was scanned recently.
+     */
+    @Transactional
+    public boolean claimPartition(int partitionNo, String owner, long scanIntervalMillis) {
+        Instant now = Instant.now();
+        return partitionRepo.claim(partitionNo, owner, now.minusMillis(scanIntervalMillis),
+                now, now.plusMillis(leaseMillis)) == 1;
+    }
+
+    @Transactional
+    public void completePartition(int partitionNo, String owner) {
+        partitionRepo.complete(partitionNo, owner, Instant.now());
+    }
+
+    /**
+     * Scans the next page of a claimed partition for dates that occur within {@code daysAhead} days
+     * (a range lookup on {@code month_day}) and enqueues their reminders. Returns {@code null} when the partition is exhausted or the lease was lost.
+     */
+    @Transactional
+    public ScanResult scanPage(int partitionNo, int partitions, long afterId, String owner,
+                               LocalDate today, int daysAhead, int pageSize) {
+        if (partitionRepo.renew(partitionNo, owner, Instant.now().plusMillis(leaseMillis)) != 1) {
+            log.warn("Lease on reminder partition {} was lost", partitionNo);
+            return null;
+        }
+
+        List<ScheduledDate> page = partitionPage(RecurringDates.window(today, daysAhead),
+                partitions, partitionNo, afterId, pageSize);
+        if (page.isEmpty()) {
+            return null;
+        }
+
+        LocalDate windowEnd = today.plusDays(daysAhead);
+        Instant now = Instant.now();
+        int enqueued = 0;
+
+        for (ScheduledDate date : page) {
+            if (date.date() == null) {
+                continue;
+            }
+            LocalDate occurrence = RecurringDates.nextOccurrence(RecurringDates.toLocalDate(date.date()), today);
+            if (!occurrence.isAfter(windowEnd)) {
+                enqueued += outboxRepo.enqueueFollowers(date.id(), occurrence, now);
+            }
+        }
+        return new ScanResult(page.get(page.size() - 1).id(), page.size(), enqueued);
+    }
+
+    /**
+     * The next {@code pageSize} dates of the partition in either range of the window, by id: each range is read
+     * on its own and the two pages are merged.
+     */
+    private List<ScheduledDate> partitionPage(MonthDayWindow window, int partitions, int partitionNo,
+                                              long afterId, int pageSize) {
+        List<ScheduledDate> first = importantDateRepo.findPartitionPage(window.firstFrom(), window.firstTo(),
+                partitions, partitionNo, afterId, Limit.of(pageSize));
+        if (window.secondFrom() > window.secondTo()) {
+            return first;
+        }
+        List<ScheduledDate> second = importantDateRepo.findPartitionPage(window.secondFrom(), window.secondTo(),
+                partitions, partitionNo, afterId, Limit.of(pageSize));
+        return Stream.concat(first.stream(), second.stream())
+                .sorted(Comparator.comparing(ScheduledDate::id))
+                .limit(pageSize)
+                .toList();
+    }
+
+    /**
+     * Delivers up to {@code batchSize} due reminders. The rows stay locked until the transaction ends,
+     * so concurrent dispatchers on other nodes pick different rows.
+     */
+    @Transactional
+    public int dispatchBatch(int batchSize) {
+        Instant now = Instant.now();
+        List<ReminderOutbox> due = outboxRepo.lockDue(ReminderStatus.PENDING, now, Limit.of(batchSize));
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        Map<Long, Reminder> reminders = outboxRepo.findReminders(due.stream().map(ReminderOutbox::getId).toList())
+                .stream()
+                .collect(Collectors.toMap(Reminder::id, Function.identity()));
+
+        for (ReminderOutbox row : due) {
+            Reminder reminder = reminders.get(row.getId());
+            if (reminder == null) {
+                // follower, followee or the date itself is gone
+                row.setStatus(ReminderStatus.FAILED);
+                continue;
+            }
+            try {
+                sender.send(reminder);
+                row.setStatus(ReminderStatus.SENT);
+                row.setSentAt(Instant.now());
+            } catch (RuntimeException e) {
+                row.setAttempts(row.getAttempts() + 1);
+                if (row.getAttempts() >= maxAttempts) {
+                    row.setStatus(ReminderStatus.FAILED);
+                    log.error("Giving up on reminder #{} after {} attempts", row.getId(), row.getAttempts(), e);
+                } else {
+                    row.setNextAttemptAt(now.plus(Duration.ofMillis(retryBackoffMillis * row.getAttempts())));
+                    log.warn("Reminder #{} failed, retrying later: {}", row.getId(), e.getMessage());
+                }
+            }
+        }
+        return due.size();
+    }
+
+    public record ScanResult(long lastId, int scannedDates, int enqueuedReminders) {
+    }
+}
@@ -0,0 +1,68 @@
+package com.sashaprylutsky.wishplus.service;
+
+import com.sashaprylutsky.wishplus.model.User;
+import com.sashaprylutsky.wishplus.repository.UserRepository;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of users by id and by username in front of {@link UserRepository}.
+ * Cached instances are shared between requests and must be treated as read-only:
+ * code that modifies a user loads it from the repository and calls {@link #evict} after saving.
+ * Entries also expire after {@code spring.cache.caffeine.spec}, which bounds staleness caused by
+ * other instances or by a read racing with an update.
+ */
+@Component
+public class UserLookup {
+
+    static final String USERS_BY_ID = "users";
+    static final String USERS_BY_USERNAME = "usernames";
+
+    private final UserRepository userRepository;
+    private final Cache byId;
+    private final Cache byUsername;
+
+    public UserLookup(UserRepository userRepository, CacheManager cacheManager) {
+        this.userRepository = userRepository;
+        this.byId = new TransactionAwareCacheDecorator(Objects.requireNonNull(cacheManager.getCache(USERS_BY_ID)));
+        this.byUsername = new TransactionAwareCacheDecorator(
+                Objects.requireNonNull(cacheManager.getCache(USERS_BY_USERNAME)));
+    }
+
+    public Optional<User> findById(Long id) {
+        return lookup(byId, id, () -> userRepository.findById(id));
+    }
+
+    public Optional<User> findByUsername(String username) {
+        return lookup(byUsername, username, () -> userRepository.findUserByUsername(username));
+    }
+
+    /**
+     * Drops every entry of the user. {@code usernames} should include the username the user had before
+     * a rename as well as the current one.
+     */
+    public void evict(Long id, String... usernames) {
+        byId.evict(id);
+        for (String username : usernames) {
+            if (username != null) {
+                byUsername.evict(username);
+            }
+        }
+    }
+
+    private static Optional<User> lookup(Cache cache, Object key, Supplier<Optional<User>> loader) {
+        User cached = cache.get(key, User.class);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<User> loaded = loader.get();
+        loaded.ifPresent(user -> cache.put(key, user));
+        return loaded;
+    }
+}
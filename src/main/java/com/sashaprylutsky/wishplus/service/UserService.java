@@ -1,34 +1,71 @@
 package com.sashaprylutsky.wishplus.service;
 
+import com.sashaprylutsky.wishplus.dto.UserView;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions.Resource;
 import com.sashaprylutsky.wishplus.model.User;
+import com.sashaprylutsky.wishplus.pagination.CursorPage;
+import com.sashaprylutsky.wishplus.pagination.Cursors;
+import com.sashaprylutsky.wishplus.photo.Photos;
 import com.sashaprylutsky.wishplus.repository.UserRepository;
+import com.sashaprylutsky.wishplus.search.UsernameIndex;
+import com.sashaprylutsky.wishplus.search.UsernameSearch;
 import com.sashaprylutsky.wishplus.security.JwtService;
+import com.sashaprylutsky.wishplus.security.PasswordHashingExecutor;
 import jakarta.persistence.NoResultException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class UserService {
 
+    public static final int MAX_PAGE_SIZE = 500;
+
     private final UserRepository userRepository;
     private final PasswordEncoder encoder;
     private static final Logger log = LoggerFactory.getLogger(UserService.class);
     private final JwtService jwtService;
+    private final UsernameSearch usernameSearch;
+    private final UserLookup userLookup;
+    private final PasswordHashingExecutor passwordHashing;
+    private final ResourceVersions versions;
+    private final Photos photos;
+    private final TransactionTemplate transaction;
 
-    public UserService(PasswordEncoder encoder, UserRepository userRepository, JwtService jwtService) {
+    public UserService(PasswordEncoder encoder, UserRepository userRepository, JwtService jwtService,
+                       UsernameSearch usernameSearch, UserLookup userLookup,
+                       PasswordHashingExecutor passwordHashing, ResourceVersions versions, Photos photos,
+                       PlatformTransactionManager transactionManager) {
         this.encoder = encoder;
         this.userRepository = userRepository;
         this.jwtService = jwtService;
+        this.usernameSearch = usernameSearch;
+        this.userLookup = userLookup;
+        this.passwordHashing = passwordHashing;
+        this.versions = versions;
+        this.photos = photos;
+        this.transaction = new TransactionTemplate(transactionManager);
     }
 
     public User getPrincipal() {
@@ -48,29 +85,56 @@ public class UserService {
                     encoder.encode(user.getPassword()),
                     user.getFirstName(),
                     user.getLastName());
-            return userRepository.save(createdUser);
+            User savedUser = userRepository.save(createdUser);
+            usernameSearch.put(savedUser.getId(), savedUser.getUsername());
+            return savedUser;
         } catch (DataIntegrityViolationException e) {
             throw new DuplicateKeyException("Email/username is already taken.");
         }
     }
 
-    public String login(User userDTO) {
+    /**
+     * Verifies the password on the {@link PasswordHashingExecutor} and completes with a JWT.
+     * Throws {@link com.sashaprylutsky.wishplus.security.PasswordHashingBusyException} right away
+     * when too many checks are already queued.
+     */
+    public CompletableFuture<String> login(User userDTO) {
         User user = getUserByUsername(userDTO.getUsername());
-        if (encoder.matches(userDTO.getPassword(), user.getPassword())) {
-            return jwtService.generateToken(user);
-        }
-        throw new RuntimeException("Invalid credentials");
+        return passwordHashing.matches(userDTO.getPassword(), user.getPassword())
+                .thenApply(matches -> {
+                    if (!matches) {
+                        throw new RuntimeException("Invalid credentials");
+                    }
+                    return jwtService.generateToken(user);
+                });
     }
 
+    /**
+     * The user with the given id, possibly from the cache. The returned instance must not be modified.
+     */
     public User getUserById(Long id) {
-        return userRepository.findById(id)
+        return userLookup.findById(id)
                 .orElseThrow(() -> new NoResultException("No user found with ID " + id));
     }
 
+    /**
+     * ETag of the user's profile, known without loading the user.
+     */
+    public String getProfileETag(Long id) {
+        return versions.etag(Resource.PROFILE, id);
+    }
+
+    public UserView getUserViewById(Long id) {
+        return UserView.from(getUserById(id));
+    }
+
+    @Transactional
     public User updateUser(User userDTO) {
         try {
             User principal = getPrincipal();
-            User user = getUserById(principal.getId());
+            User user = userRepository.findById(principal.getId())
+                    .orElseThrow(() -> new NoResultException("No user found with ID " + principal.getId()));
+            String previousUsername = user.getUsername();
 
             if (userDTO.getEmail() != null && !userDTO.getEmail().isBlank()) {
                 user.setEmail(userDTO.getEmail());
@@ -84,36 +148,111 @@ public class UserService {
             if (userDTO.getLastName() != null && !userDTO.getLastName().isBlank()) {
                 user.setLastName(userDTO.getLastName());
             }
-            if (userDTO.getProfilePhoto() != null && !userDTO.getProfilePhoto().isBlank()) {
-                user.setProfilePhoto(userDTO.getProfilePhoto());
-            }
 
-            return userRepository.save(user);
+            // flushed here, so that a taken email or username is reported below and not at commit
+            User savedUser = userRepository.saveAndFlush(user);
+            userLookup.evict(savedUser.getId(), previousUsername, savedUser.getUsername());
+            versions.bump(savedUser.getId(), Resource.PROFILE);
+            usernameSearch.put(savedUser.getId(), savedUser.getUsername());
+            return savedUser;
         } catch (DataIntegrityViolationException e) {
             throw new DuplicateKeyException("Update error: " + e.getMessage());
         }
     }
 
+    /**
+     * Stores an uploaded photo, streamed from the request body, as the current user's profile photo.
+     *
+     * @param contentLength declared length of the upload, {@code -1} if unknown
+     */
+    public User updateProfilePhoto(InputStream upload, long contentLength) {
+        User principal = getPrincipal();
+        return setProfilePhoto(principal.getId(), photos.upload(upload, contentLength));
+    }
+
+    public User deleteProfilePhoto() {
+        return setProfilePhoto(getPrincipal().getId(), null);
+    }
+
+    /**
+     * Runs in a transaction of its own, which starts only after the upload has been stored.
+     */
+    private User setProfilePhoto(Long id, String photoUrl) {
+        return transaction.execute(status -> {
+            User user = userRepository.findById(id)
+                    .orElseThrow(() -> new NoResultException("No user found with ID " + id));
+            user.setProfilePhoto(photoUrl);
+
+            User savedUser = userRepository.save(user);
+            userLookup.evict(savedUser.getId(), savedUser.getUsername());
+            versions.bump(savedUser.getId(), Resource.PROFILE);
+            return savedUser;
+        });
+    }
+
+    @Transactional
     public void deleteUser(String submitMessage) {
-        User user = getPrincipal();
+        User principal = getPrincipal();
 
         final String submitPhrase = "Delete my account forever!";
         if (!submitMessage.equals(submitPhrase)) {
             throw new CancellationException("The deletion is aborted.");
         }
-        userRepository.deleteById(user.getId());
+        // the principal may carry a username from before a rename, the cache is keyed by the stored one
+        User user = userRepository.findById(principal.getId())
+                .orElseThrow(() -> new NoResultException("No user found with ID " + principal.getId()));
+        userRepository.delete(user);
+        userLookup.evict(user.getId(), user.getUsername());
+        usernameSearch.remove(user.getId());
+        versions.bump(user.getId(), Resource.values());
     }
 
-    public List<User> getUsers() {
-        return userRepository.findAll();
+    @Transactional(readOnly = true)
+    public CursorPage<UserView> getUsers(String cursor, int limit) {
+        CursorPage.checkLimit(limit, MAX_PAGE_SIZE);
+        long afterId = cursor == null || cursor.isBlank() ? 0 : Cursors.decodeLong(Cursors.decode(cursor, 1)[0]);
+        return CursorPage.of(userRepository.findPage(afterId, Limit.of(limit + 1)),
+                limit, last -> Cursors.encode(last.id()));
+    }
+
+    /**
+     * All users ordered by id. The stream holds a JDBC cursor open and must be consumed inside a transaction.
+     */
+    public Stream<UserView> streamUsers() {
+        return userRepository.streamAll();
     }
 
     public User getUserByUsername(String username) {
-        return userRepository.findUserByUsername(username)
+        return userLookup.findByUsername(username)
                 .orElseThrow(() -> new NoResultException("No user found with username: " + username));
     }
 
-    public List<User> getUsersByPrefix(String user_prefix) {
-        return userRepository.findUsersByUsernameStartsWith(user_prefix);
+    /**
+     * Case-insensitive prefix search served from the in-memory {@link UsernameIndex};
+     * only the users of the returned page are loaded from the database.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<UserView> getUsersByPrefix(String user_prefix, String cursor, Integer limit) {
+        int pageSize = CursorPage.checkLimit(limit == null ? usernameSearch.defaultLimit() : limit,
+                usernameSearch.maxLimit());
+        UsernameIndex.Key after = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] keys = Cursors.decode(cursor, 2);
+            after = new UsernameIndex.Key(keys[1], Cursors.decodeLong(keys[0]));
+        }
+
+        CursorPage<UsernameIndex.Key> matches = CursorPage.of(
+                usernameSearch.search(user_prefix, after, pageSize + 1),
+                pageSize, last -> Cursors.encode(last.id(), last.name()));
+        Map<Long, UserView> users = userRepository.findViewsByIdIn(
+                        matches.items().stream().map(UsernameIndex.Key::id).toList()).stream()
+                .collect(Collectors.toMap(UserView::id, Function.identity()));
+
+        // an id may be missing if the user was deleted on another instance since the last rebuild
+        List<UserView> page = matches.items().stream()
+                .map(key -> users.get(key.id()))
+                .filter(Objects::nonNull)
+                .toList();
+        return new CursorPage<>(page, matches.nextCursor());
     }
 }
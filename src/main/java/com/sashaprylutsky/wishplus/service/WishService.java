@@ -1,36 +1,116 @@
 package com.sashaprylutsky.wishplus.service;
 
+import com.sashaprylutsky.wishplus.dto.BulkItemResult;
+import com.sashaprylutsky.wishplus.dto.BulkItemResult.Status;
+import com.sashaprylutsky.wishplus.dto.WishOwner;
+import com.sashaprylutsky.wishplus.dto.WishView;
+import com.sashaprylutsky.wishplus.etag.ETags;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions.Resource;
 import com.sashaprylutsky.wishplus.model.User;
 import com.sashaprylutsky.wishplus.model.Wish;
+import com.sashaprylutsky.wishplus.pagination.CursorPage;
+import com.sashaprylutsky.wishplus.pagination.Cursors;
+import com.sashaprylutsky.wishplus.preview.LinkPreviews;
+import com.sashaprylutsky.wishplus.repository.DateSubscriptionRepository;
+import com.sashaprylutsky.wishplus.repository.WishBatchRepository;
 import com.sashaprylutsky.wishplus.repository.WishRepository;
+import com.sashaprylutsky.wishplus.search.WishIndex;
+import com.sashaprylutsky.wishplus.search.WishSearch;
 import jakarta.persistence.NoResultException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class WishService {
 
+    public static final int MAX_PAGE_SIZE = 500;
+
     private final WishRepository wishRepo;
+    private final WishBatchRepository wishBatchRepo;
+    private final DateSubscriptionRepository subscriptionRepo;
     private final UserService userService;
+    private final ResourceVersions versions;
+    private final WishSearch wishSearch;
+    private final LinkPreviews linkPreviews;
+    private final Validator validator;
+
+    @Value("${wishlist.bulk.max-items}")
+    private int maxBulkItems;
 
-    public WishService(WishRepository wishRepo, UserService userService) {
+    public WishService(WishRepository wishRepo, WishBatchRepository wishBatchRepo,
+                       DateSubscriptionRepository subscriptionRepo, UserService userService,
+                       ResourceVersions versions, WishSearch wishSearch, LinkPreviews linkPreviews,
+                       Validator validator) {
         this.wishRepo = wishRepo;
+        this.wishBatchRepo = wishBatchRepo;
+        this.subscriptionRepo = subscriptionRepo;
         this.userService = userService;
+        this.versions = versions;
+        this.wishSearch = wishSearch;
+        this.linkPreviews = linkPreviews;
+        this.validator = validator;
     }
 
+    @Transactional
     public Wish createWish(Wish wish) {
         User principal = userService.getPrincipal();
         wish.setUser(new User(principal.getId()));
 
-        return wishRepo.save(wish);
+        Wish saved = wishRepo.save(wish);
+        versions.bump(principal.getId(), Resource.WISHES);
+        wishSearch.putAll(List.of(WishView.from(saved)));
+        linkPreviews.request(saved.getUrl(), principal.getId());
+        return saved;
+    }
+
+    /**
+     * ETag of one page of the user's wish list, known without querying the wishes. Read-only like the list
+     * itself, so both come from the same database.
+     */
+    @Transactional(readOnly = true)
+    public String getWishListETag(Long user_id, String cursor, int limit) {
+        return versions.listETag(Resource.WISHES, user_id, cursor, limit);
+    }
+
+    /**
+     * ETag of a single wish, derived from its {@code updatedAt} and the preview of its url; {@code null} if there is
+     * no such wish.
+     */
+    public String getWishETag(Long id) {
+        return wishRepo.findVersionById(id)
+                .map(version -> ETags.of("w" + id, version.updatedAt(), linkPreviews.peek(version.url())))
+                .orElse(null);
+    }
+
+    @Transactional(readOnly = true)
+    public CursorPage<WishView> getWishesByUserId(Long user_id, String cursor, int limit) {
+        CursorPage.checkLimit(limit, MAX_PAGE_SIZE);
+        long afterId = cursor == null || cursor.isBlank() ? 0 : Cursors.decodeLong(Cursors.decode(cursor, 1)[0]);
+        return CursorPage.of(wishRepo.findPageByUserId(user_id, afterId, Limit.of(limit + 1)),
+                limit, last -> Cursors.encode(last.id())).map(linkPreviews::attach);
     }
 
-    public List<Wish> getAllWishesByUserId(Long user_id) {
-        return wishRepo.findAllByUser_Id(user_id);
+    public Stream<WishView> streamWishesByUserId(Long user_id) {
+        return wishRepo.streamAllByUserId(user_id).map(linkPreviews::attach);
     }
 
     public Wish getWishById(Long id) {
@@ -38,6 +118,13 @@ public class WishService {
                 .orElseThrow(() -> new NoResultException("No wish found with ID " + id));
     }
 
+    public WishView getWishViewById(Long id) {
+        return wishRepo.findViewById(id)
+                .map(linkPreviews::attach)
+                .orElseThrow(() -> new NoResultException("No wish found with ID " + id));
+    }
+
+    @Transactional
     public Wish updateWish(Long wish_id, Wish wish) {
         User principal = userService.getPrincipal();
         Wish wishRecord = getWishById(wish_id);
@@ -67,9 +154,14 @@ public class WishService {
             wishRecord.setUpdatedAt(Instant.now());
         }
 
-        return wishRepo.save(wishRecord);
+        Wish saved = wishRepo.save(wishRecord);
+        versions.bump(principal.getId(), Resource.WISHES);
+        wishSearch.putAll(List.of(WishView.from(saved)));
+        linkPreviews.request(saved.getUrl(), principal.getId());
+        return saved;
     }
 
+    @Transactional
     public void deleteWishById(Long wish_id) {
         User principal = userService.getPrincipal();
         Wish wishRecord = getWishById(wish_id);
@@ -79,5 +171,222 @@ public class WishService {
         }
 
         wishRepo.delete(wishRecord);
+        versions.bump(principal.getId(), Resource.WISHES);
+        wishSearch.removeAll(List.of(wish_id));
+    }
+
+    /**
+     * Full-text search over titles and descriptions of wishes that are not archived, served from the in-memory
+     * {@link WishIndex}; only the wishes of the result are loaded from the database.
+     *
+     * @param scope {@code followees} for the users whose dates the caller is subscribed to, {@code all} for everyone
+     * @return best matches first
+     */
+    @Transactional(readOnly = true)
+    public List<WishView> searchWishes(String query, String scope, Integer limit) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query must not be blank");
+        }
+        int size = CursorPage.checkLimit(limit == null ? wishSearch.defaultLimit() : limit, wishSearch.maxLimit());
+
+        List<WishIndex.Hit> hits;
+        if (WishSearch.Scope.parse(scope) == WishSearch.Scope.FOLLOWEES) {
+            Set<Long> followees = Set.copyOf(subscriptionRepo.findFolloweeIds(userService.getPrincipal().getId()));
+            if (followees.isEmpty()) {
+                return List.of();
+            }
+            hits = wishSearch.search(query, followees::contains, size);
+        } else {
+            hits = wishSearch.search(query, owner -> true, size);
+        }
+        if (hits.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Long, WishView> wishes = wishRepo.findViewsByIdIn(hits.stream().map(WishIndex.Hit::wishId).toList()).stream()
+                .collect(Collectors.toMap(WishView::id, Function.identity()));
+        // a wish may be gone or archived if it changed on another instance since the last rebuild
+        return hits.stream()
+                .map(hit -> wishes.get(hit.wishId()))
+                .filter(wish -> wish != null && !wish.archived())
+                .map(linkPreviews::attach)
+                .toList();
+    }
+
+    /**
+     * Creates all wishes in one transaction and one JDBC batch. Either every wish is valid and created,
+     * or nothing is written.
+     */
+    @Transactional
+    public List<BulkItemResult> createWishes(List<Wish> wishes) {
+        checkBulkSize(wishes);
+        Map<String, String> errors = new LinkedHashMap<>();
+        for (int i = 0; i < wishes.size(); i++) {
+            validate(i, wishes.get(i), errors);
+        }
+        throwIfInvalid(errors);
+
+        User principal = userService.getPrincipal();
+        Instant now = Instant.now();
+        List<Long> ids = wishBatchRepo.insertAll(principal.getId(), wishes, now);
+        versions.bump(principal.getId(), Resource.WISHES);
+
+        List<BulkItemResult> results = new ArrayList<>(ids.size());
+        List<WishView> created = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Wish wish = wishes.get(i);
+            results.add(BulkItemResult.done(i, ids.get(i), Status.CREATED));
+            created.add(new WishView(ids.get(i), principal.getId(), wish.getTitle(), wish.getDescription(),
+                    wish.getUrl(), wish.isArchived(), now, now));
+            linkPreviews.request(wish.getUrl(), principal.getId());
+        }
+        wishSearch.putAll(created);
+        return results;
+    }
+
+    /**
+     * Updates the wishes by id the way {@link #updateWish} does, in one transaction and one JDBC batch.
+     * Ownership of the whole batch is checked with one query; wishes that do not exist or belong to someone else
+     * are reported and skipped. An invalid item rejects the whole request.
+     */
+    @Transactional
+    public List<BulkItemResult> updateWishes(List<Wish> wishes) {
+        checkBulkSize(wishes);
+        Map<String, String> errors = new LinkedHashMap<>();
+        List<Long> ids = wishes.stream().map(Wish::getId).toList();
+        checkIds(ids, errors);
+        for (int i = 0; i < wishes.size(); i++) {
+            validate(i, wishes.get(i), errors);
+        }
+        throwIfInvalid(errors);
+
+        User principal = userService.getPrincipal();
+        BulkItemResult[] results = new BulkItemResult[wishes.size()];
+        Set<Long> owned = checkOwnership(principal.getId(), ids, results);
+        if (!owned.isEmpty()) {
+            wishBatchRepo.updateAll(wishes.stream().filter(wish -> owned.contains(wish.getId())).toList(), Instant.now());
+            versions.bump(principal.getId(), Resource.WISHES);
+            // blank fields kept their stored values, so index what was written
+            List<WishView> updated = wishRepo.findViewsByIdIn(owned);
+            wishSearch.putAll(updated);
+            updated.forEach(wish -> linkPreviews.request(wish.url(), wish.userId()));
+        }
+        return complete(results, ids, Status.UPDATED);
+    }
+
+    /**
+     * Archives or restores the wishes in one statement; see {@link #updateWishes} for how items are checked.
+     */
+    @Transactional
+    public List<BulkItemResult> setWishesArchived(List<Long> ids, boolean archived) {
+        checkBulkSize(ids);
+        Map<String, String> errors = new LinkedHashMap<>();
+        checkIds(ids, errors);
+        throwIfInvalid(errors);
+
+        User principal = userService.getPrincipal();
+        BulkItemResult[] results = new BulkItemResult[ids.size()];
+        Set<Long> owned = checkOwnership(principal.getId(), ids, results);
+        if (!owned.isEmpty()) {
+            wishRepo.setArchivedByIds(owned, archived, Instant.now());
+            versions.bump(principal.getId(), Resource.WISHES);
+            if (archived) {
+                wishSearch.removeAll(owned);
+            } else {
+                wishSearch.putAll(wishRepo.findViewsByIdIn(owned));
+            }
+        }
+        return complete(results, ids, archived ? Status.ARCHIVED : Status.UNARCHIVED);
+    }
+
+    /**
+     * Deletes the wishes in one statement; see {@link #updateWishes} for how items are checked.
+     */
+    @Transactional
+    public List<BulkItemResult> deleteWishes(List<Long> ids) {
+        checkBulkSize(ids);
+        Map<String, String> errors = new LinkedHashMap<>();
+        checkIds(ids, errors);
+        throwIfInvalid(errors);
+
+        User principal = userService.getPrincipal();
+        BulkItemResult[] results = new BulkItemResult[ids.size()];
+        Set<Long> owned = checkOwnership(principal.getId(), ids, results);
+        if (!owned.isEmpty()) {
+            wishRepo.deleteAllByIds(owned);
+            versions.bump(principal.getId(), Resource.WISHES);
+            wishSearch.removeAll(owned);
+        }
+        return complete(results, ids, Status.DELETED);
+    }
+
+    private void checkBulkSize(List<?> items) {
+        if (items == null || items.isEmpty() || items.size() > maxBulkItems) {
+            throw new IllegalArgumentException("A bulk request must have between 1 and " + maxBulkItems + " items");
+        }
+    }
+
+    private void validate(int index, Wish wish, Map<String, String> errors) {
+        if (wish == null) {
+            errors.put("[" + index + "]", "must not be null");
+            return;
+        }
+        for (ConstraintViolation<Wish> violation : validator.validate(wish)) {
+            errors.put("[" + index + "]." + violation.getPropertyPath(), violation.getMessage());
+        }
+    }
+
+    private static void checkIds(List<Long> ids, Map<String, String> errors) {
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            if (id == null) {
+                errors.put("[" + i + "].id", "must not be null");
+            } else if (!seen.add(id)) {
+                errors.put("[" + i + "].id", "duplicate id " + id);
+            }
+        }
+    }
+
+    private static void throwIfInvalid(Map<String, String> errors) {
+        if (!errors.isEmpty()) {
+            throw new BulkValidationException(errors);
+        }
+    }
+
+    /**
+     * Looks up the owners of all wishes in one query and records a result for every wish the principal may not
+     * change.
+     *
+     * @return ids of the wishes the principal owns
+     */
+    private Set<Long> checkOwnership(Long principalId, List<Long> ids, BulkItemResult[] results) {
+        Map<Long, Long> owners = wishRepo.findOwnersByIds(ids).stream()
+                .collect(Collectors.toMap(WishOwner::id, WishOwner::userId));
+        Set<Long> owned = new HashSet<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            Long ownerId = owners.get(id);
+            if (ownerId == null) {
+                results[i] = BulkItemResult.notFound(i, id);
+            } else if (!Objects.equals(principalId, ownerId)) {
+                results[i] = BulkItemResult.forbidden(i, id);
+            } else {
+                owned.add(id);
+            }
+        }
+        return owned;
+    }
+
+    /**
+     * Fills the results of the items that were written.
+     */
+    private static List<BulkItemResult> complete(BulkItemResult[] results, List<Long> ids, Status status) {
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = BulkItemResult.done(i, ids.get(i), status);
+            }
+        }
+        return Arrays.asList(results);
     }
 }
@@ -0,0 +1,53 @@
+-- The schema as Hibernate created it from the entities the application started with: users, wishlist,
+-- important_dates and date_subscriptions. A database that already has it is baselined at this version
+-- (spring.flyway.baseline-on-migrate) and starts from V2; every later change to the schema is a later version.
+
+create table users (
+    id            bigint       not null auto_increment,
+    username      varchar(20),
+    email         varchar(255),
+    first_name    varchar(255),
+    last_name     varchar(255),
+    password      varchar(255) not null,
+    profile_photo varchar(255),
+    primary key (id)
+) engine=InnoDB;
+
+create table wishlist (
+    id          bigint      not null auto_increment,
+    user_id     bigint,
+    title       varchar(25),
+    description varchar(255),
+    url         varchar(255),
+    is_archived bit         not null,
+    created_at  datetime(6) not null,
+    updated_at  datetime(6),
+    primary key (id)
+) engine=InnoDB;
+
+create table important_dates (
+    id        bigint not null auto_increment,
+    user_id   bigint,
+    title     varchar(255),
+    date      datetime(6),
+    primary key (id)
+) engine=InnoDB;
+
+create table date_subscriptions (
+    id                bigint not null auto_increment,
+    follower_id       bigint,
+    followee_id       bigint,
+    important_date_id bigint,
+    subscribed_at     datetime(6),
+    primary key (id)
+) engine=InnoDB;
+
+alter table users add constraint UKr43af9ap4edm43mmtq01oddj6 unique (username);
+alter table users add constraint UK6dotkott2kjsp8vw4d0m25fb7 unique (email);
+
+alter table wishlist add constraint FKtrd6335blsefl2gxpb8lr0gr7 foreign key (user_id) references users (id);
+alter table important_dates add constraint FKg3k5jan7i7so2bqmp3rmdegsf foreign key (user_id) references users (id);
+alter table date_subscriptions add constraint FKfa721mb6fe5nwvkdhjt6urp38 foreign key (follower_id) references users (id);
+alter table date_subscriptions add constraint FKrv8r70rtbxbe01yxr23rp8g2w foreign key (followee_id) references users (id);
+alter table date_subscriptions add constraint FKmn65qriv99ij4r9gbkdn8l2ct
+    foreign key (important_date_id) references important_dates (id);
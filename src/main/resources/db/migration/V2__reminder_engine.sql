@@ -0,0 +1,29 @@
+-- The reminder engine: the outbox of reminders to deliver and the partitions of important_dates that nodes lease
+-- to scan. The unique key keeps a rescan from writing a reminder twice.
+
+create table reminder_outbox (
+    id                bigint                              not null auto_increment,
+    follower_id       bigint                              not null,
+    followee_id       bigint                              not null,
+    important_date_id bigint                              not null,
+    occurrence_date   date                                not null,
+    status            enum ('FAILED', 'PENDING', 'SENT') not null,
+    attempts          integer                             not null,
+    next_attempt_at   datetime(6)                         not null,
+    created_at        datetime(6)                         not null,
+    sent_at           datetime(6),
+    primary key (id)
+) engine=InnoDB;
+
+create table reminder_partitions (
+    partition_no    integer not null,
+    lease_owner     varchar(255),
+    lease_until     datetime(6),
+    last_scanned_at datetime(6),
+    primary key (partition_no)
+) engine=InnoDB;
+
+alter table reminder_outbox add constraint uk_reminder_outbox_occurrence
+    unique (important_date_id, follower_id, occurrence_date);
+
+create index idx_reminder_outbox_due on reminder_outbox (status, next_attempt_at);
@@ -0,0 +1,7 @@
+-- The month and day of an important date as month * 100 + day, so dates that recur every year can be looked up by
+-- a range of days. Set by the application whenever a date is saved; rows written before this version are filled in
+-- by ImportantDateService.backfillMonthDays at startup.
+
+alter table important_dates add column month_day integer;
+
+create index idx_important_dates_month_day on important_dates (month_day);
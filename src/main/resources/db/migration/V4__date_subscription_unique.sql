@@ -0,0 +1,12 @@
+-- One subscription per follower and date, so two concurrent subscribeToAll calls cannot both insert the same row.
+-- Duplicates the old diff-based subscribeToAll could leave behind are removed first, keeping the oldest row. The
+-- derived table lets MySQL read the table it deletes from.
+
+delete from date_subscriptions
+where id not in (select id
+                 from (select min(id) as id
+                       from date_subscriptions
+                       group by follower_id, followee_id, important_date_id) kept);
+
+alter table date_subscriptions add constraint uk_date_subscriptions_follower_date
+    unique (follower_id, followee_id, important_date_id);
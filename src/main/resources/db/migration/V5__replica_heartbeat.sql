@@ -0,0 +1,7 @@
+-- The row ReplicaRouting writes on the primary and reads back from the replica to measure its lag. Created by the
+-- application itself before migrations, hence "if not exists".
+create table if not exists replica_heartbeat (
+    id      int    not null,
+    beat_at bigint not null,
+    primary key (id)
+) engine=InnoDB;
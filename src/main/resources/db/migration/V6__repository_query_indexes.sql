@@ -0,0 +1,29 @@
+-- An index for every repository query that filters or joins on more than a primary key. Each index leads with the
+-- equality columns of its queries and ends with the column they order or range on, and covers the selected columns
+-- where there are few. On MySQL a foreign key's implicit index is dropped once one of these can enforce it.
+
+-- WishRepository.findPageByUserId, streamAllByUserId: user_id = ? and id > ? order by id
+create index idx_wishlist_user_id on wishlist (user_id, id);
+
+-- WishRepository.findTopWishesByUserIds: user_id in (...) and is_archived = false,
+-- row_number() over (partition by user_id order by created_at desc, id desc)
+create index idx_wishlist_user_feed on wishlist (user_id, is_archived, created_at, id);
+
+-- ImportantDateRepository.findPageByUserId, streamAllByUserId: user_id = ? and id > ? order by id;
+-- DateSubscriptionRepository.subscribeToAllDates, deleteStaleSubscriptions: ids of the followee's dates
+create index idx_important_dates_user_id on important_dates (user_id, id);
+
+-- ImportantDateRepository.findPartitionPage: month_day between ? and ?, mod(id, ?) = ? and id > ?, selecting id and
+-- date, read from the index alone; findPageWithoutMonthDay: month_day is null and id > ? order by id
+drop index idx_important_dates_month_day on important_dates;
+create index idx_important_dates_month_day on important_dates (month_day, id, date);
+
+-- ReminderOutboxRepository.lockDue: status = ? and next_attempt_at <= ? order by next_attempt_at, id, so a batch
+-- is the first rows of the index rather than a sort of every due row
+drop index idx_reminder_outbox_due on reminder_outbox;
+create index idx_reminder_outbox_due on reminder_outbox (status, next_attempt_at, id);
+
+-- ReminderOutboxRepository.enqueueFollowers: the followers subscribed to one date, read from the index alone.
+-- The follower side, follower_id = ? [and followee_id = ? [and important_date_id = ?]], is
+-- uk_date_subscriptions_follower_date
+create index idx_date_subscriptions_date on date_subscriptions (important_date_id, follower_id, followee_id);
@@ -0,0 +1,10 @@
+-- Versions behind the ETags of wish lists, date lists and profiles, moved by ResourceVersions.bump in the
+-- transaction that changes the resource. No foreign key to users: the rows of a deleted user are kept, so a new
+-- version never repeats an old one.
+
+create table resource_versions (
+    user_id  bigint      not null,
+    resource varchar(16) not null,
+    version  bigint      not null,
+    primary key (user_id, resource)
+) engine=InnoDB;
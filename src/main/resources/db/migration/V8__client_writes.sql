@@ -0,0 +1,10 @@
+-- When each client last wrote, set on the primary by ReplicaRouting after every committed write, so a client's
+-- reads go to the primary on every instance until the replica has its write. The client is "u:<user id>" or
+-- "ip:<address>". Rows older than datasource.replica.read-your-writes-millis are deleted by the heartbeat.
+
+create table client_writes (
+    client     varchar(64) not null,
+    written_at bigint      not null,
+    primary key (client),
+    index idx_client_writes_written_at (written_at)
+) engine=InnoDB;
@@ -0,0 +1,4 @@
+-- Clients now carry the time of their last write in a cookie (see ReplicaRouting), so the primary no longer
+-- records it and reads no longer look it up.
+
+drop table client_writes;
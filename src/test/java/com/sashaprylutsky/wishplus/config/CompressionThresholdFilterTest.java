@@ -0,0 +1,117 @@
+package com.sashaprylutsky.wishplus.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * JSON responses are gzipped from {@code server.compression.min-response-size} and go out as is, with a
+ * {@code Content-Length}, below it, although Jackson flushes every body it writes.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "reminders.enabled=false",
+        "rate-limit.enabled=false",
+        "link-preview.enabled=false"})
+@ActiveProfiles("test")
+class CompressionThresholdFilterTest {
+
+    private static final String PASSWORD = "password01";
+    private static final int WISHES = 50;
+    private static final AtomicInteger USERS = new AtomicInteger();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private String token;
+    private long userId;
+
+    /**
+     * A new user each time: users are cached by name, so a name deleted by an earlier test would keep its old id.
+     */
+    @BeforeEach
+    void seed() throws Exception {
+        String username = "compressor%02d".formatted(USERS.incrementAndGet());
+        send(HttpRequest.newBuilder(uri("/api/users/register"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(Map.of(
+                        "username", username, "email", username + "@example.com", "password", PASSWORD)))));
+        token = new String(send(HttpRequest.newBuilder(uri("/api/users/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(Map.of(
+                        "username", username, "password", PASSWORD))))).body());
+        userId = jdbc.queryForObject("select id from users where username = ?", Long.class, username);
+        for (int i = 0; i < WISHES; i++) {
+            jdbc.update("insert into wishlist (user_id, title, description, created_at, updated_at, is_archived) "
+                            + "values (?, ?, ?, current_timestamp, current_timestamp, false)",
+                    userId, "Wish " + i, "Something nice to have, number " + i);
+        }
+    }
+
+    @AfterEach
+    void clear() {
+        jdbc.update("delete from wishlist");
+        jdbc.update("delete from users");
+    }
+
+    @Test
+    void largeListIsGzipped() throws Exception {
+        HttpResponse<byte[]> response = send(get("/api/wishlist/user/" + userId));
+
+        assertThat(response.headers().firstValue("Content-Encoding")).hasValue("gzip");
+        // a strong ETag would make Tomcat skip compression
+        assertThat(response.headers().firstValue("ETag")).hasValueSatisfying(etag -> assertThat(etag).startsWith("W/"));
+        byte[] body = new GZIPInputStream(new ByteArrayInputStream(response.body())).readAllBytes();
+        assertThat(body.length).isGreaterThan(2048);
+        assertThat(objectMapper.readTree(body)).hasSize(WISHES);
+    }
+
+    @Test
+    void smallBodyGoesOutAsIsWithItsLength() throws Exception {
+        HttpResponse<byte[]> response = send(get("/api/wishlist/user/" + userId + "?limit=1"));
+
+        assertThat(response.headers().firstValue("Content-Encoding")).isEmpty();
+        assertThat(response.headers().firstValueAsLong("Content-Length")).hasValue(response.body().length);
+        assertThat(objectMapper.readTree(response.body())).hasSize(1);
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Authorization", "Bearer " + token)
+                .header("Accept-Encoding", "gzip");
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = http.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertThat(response.statusCode() / 100).as("status of " + response.uri()).isEqualTo(2);
+        return response;
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+}
@@ -0,0 +1,161 @@
+package com.sashaprylutsky.wishplus.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authorization.event.AuthorizationDeniedEvent;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The {@code ?stream=true} list endpoints against a real Tomcat: the body is written on an async dispatch, which
+ * must get past the security filter chain although the JWT is only checked on the original request.
+ * <p>
+ * A denied async dispatch comes after the body was committed, so the client still sees a 200 and the whole array;
+ * the denial only shows in the server log, and here as an {@link AuthorizationDeniedEvent}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "reminders.enabled=false",
+        "link-preview.enabled=false"})
+@ActiveProfiles("test")
+class StreamingListTest {
+
+    private static final String PASSWORD = "password01";
+    private static final AtomicInteger USERS = new AtomicInteger();
+
+    @TestConfiguration
+    static class DenialsConfiguration {
+
+        @Bean
+        Denials denials() {
+            return new Denials();
+        }
+    }
+
+    static class Denials {
+
+        final List<String> uris = new CopyOnWriteArrayList<>();
+
+        @EventListener
+        void denied(AuthorizationDeniedEvent<?> event) {
+            if (event.getObject() instanceof HttpServletRequest request) {
+                uris.add(request.getDispatcherType() + " " + request.getRequestURI());
+            }
+        }
+    }
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private Denials denials;
+
+    private String username;
+    private String token;
+
+    /**
+     * A new user each time: users are cached by name, so a name deleted by an earlier test would keep its old id.
+     */
+    @BeforeEach
+    void login() {
+        username = "streamer%02d".formatted(USERS.incrementAndGet());
+        Map<String, String> user = Map.of(
+                "username", username, "email", username + "@example.com", "password", PASSWORD);
+        assertThat(rest.postForEntity("/api/users/register", user, String.class).getStatusCode())
+                .isEqualTo(HttpStatus.CREATED);
+        ResponseEntity<String> login = rest.postForEntity("/api/users/login",
+                Map.of("username", username, "password", PASSWORD), String.class);
+        assertThat(login.getStatusCode()).isEqualTo(HttpStatus.OK);
+        token = login.getBody();
+        denials.uris.clear();
+    }
+
+    @AfterEach
+    void clear() {
+        jdbc.update("delete from wishlist");
+        jdbc.update("delete from users");
+    }
+
+    @Test
+    void streamsUsers() throws Exception {
+        ResponseEntity<String> response = get("/api/users?stream=true", token);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        JsonNode users = objectMapper.readTree(response.getBody());
+        assertThat(users.isArray()).isTrue();
+        assertThat(users.findValuesAsText("username")).contains(username);
+        assertNoDenials();
+    }
+
+    @Test
+    void streamsWishes() throws Exception {
+        long userId = jdbc.queryForObject("select id from users where username = ?", Long.class, username);
+        HttpHeaders headers = bearer(token);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        for (String title : new String[]{"Bicycle", "Kettle"}) {
+            assertThat(rest.exchange("/api/wishlist", HttpMethod.POST,
+                    new HttpEntity<>(Map.of("title", title), headers), String.class).getStatusCode())
+                    .isEqualTo(HttpStatus.OK);
+        }
+
+        ResponseEntity<String> response = get("/api/wishlist/user/" + userId + "?stream=true", token);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(objectMapper.readTree(response.getBody()).findValuesAsText("title"))
+                .containsExactly("Bicycle", "Kettle");
+        assertNoDenials();
+    }
+
+    @Test
+    void streamNeedsAToken() {
+        assertThat(get("/api/users?stream=true", null).getStatusCode().is4xxClientError()).isTrue();
+    }
+
+    /**
+     * The async dispatch finishes on a Tomcat thread after the client has read the body; give it time to be denied.
+     */
+    private void assertNoDenials() throws InterruptedException {
+        Thread.sleep(1000);
+        assertThat(denials.uris).isEmpty();
+    }
+
+    private ResponseEntity<String> get(String uri, String token) {
+        return rest.exchange(uri, HttpMethod.GET, new HttpEntity<>(bearer(token)), String.class);
+    }
+
+    private static HttpHeaders bearer(String token) {
+        HttpHeaders headers = new HttpHeaders();
+        if (token != null) {
+            headers.setBearerAuth(token);
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,101 @@
+package com.sashaprylutsky.wishplus.diagnostics;
+
+import com.sashaprylutsky.wishplus.search.UsernameSearch;
+import com.sashaprylutsky.wishplus.search.WishSearch;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Seeds one data set of a given size through JDBC: an owner with {@code size} wishes and dates, and a follower
+ * subscribed to every date of {@code size} followees, each of whom has {@code size} wishes and dates.
+ * All dates fall within the next week, so the upcoming-dates and feed endpoints have something to return.
+ */
+final class QueryCountSeeder {
+
+    static final String PASSWORD = "query-count-password";
+
+    private final JdbcTemplate jdbc;
+    private final UsernameSearch usernameSearch;
+    private final WishSearch wishSearch;
+    private final String passwordHash;
+
+    QueryCountSeeder(ApplicationContext context) {
+        this.jdbc = context.getBean(JdbcTemplate.class);
+        this.usernameSearch = context.getBean(UsernameSearch.class);
+        this.wishSearch = context.getBean(WishSearch.class);
+        this.passwordHash = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+    }
+
+    DataSet seed(String name, int size) {
+        long ownerId = insertUser(name + "_owner");
+        long followerId = insertUser(name + "_follower");
+        insertContent(ownerId, size);
+        for (int i = 0; i < size; i++) {
+            long followeeId = insertUser("%s_fol_%03d".formatted(name, i));
+            insertContent(followeeId, size);
+            jdbc.update("""
+                    insert into date_subscriptions (follower_id, followee_id, important_date_id, subscribed_at)
+                    select ?, user_id, id, current_timestamp from important_dates where user_id = ?
+                    """, followerId, followeeId);
+        }
+        usernameSearch.rebuild();
+        wishSearch.rebuild();
+
+        long wishId = jdbc.queryForObject("select min(id) from wishlist where user_id = ?", Long.class, ownerId);
+        long dateId = jdbc.queryForObject("select min(id) from important_dates where user_id = ?", Long.class, ownerId);
+        return new DataSet(name, size, ownerId, followerId, wishId, dateId);
+    }
+
+    void clear() {
+        jdbc.update("delete from date_subscriptions");
+        jdbc.update("delete from important_dates");
+        jdbc.update("delete from wishlist");
+        jdbc.update("delete from users");
+    }
+
+    private long insertUser(String username) {
+        jdbc.update("insert into users (email, username, password, first_name, last_name) values (?, ?, ?, ?, ?)",
+                username + "@example.com", username, passwordHash, "Query", "Count");
+        return jdbc.queryForObject("select id from users where username = ?", Long.class, username);
+    }
+
+    private void insertContent(long userId, int size) {
+        List<Object[]> wishes = new ArrayList<>(size);
+        List<Object[]> dates = new ArrayList<>(size);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < size; i++) {
+            wishes.add(new Object[]{userId, "Wish " + i, "Something nice, number " + i, "https://example.com/" + i});
+            LocalDate date = today.plusDays(i % 7).minusYears(20 + i % 30);
+            dates.add(new Object[]{userId, "Date " + i, Date.valueOf(date),
+                    date.getMonthValue() * 100 + date.getDayOfMonth()});
+        }
+        jdbc.batchUpdate("""
+                insert into wishlist (user_id, title, description, url, created_at, updated_at, is_archived)
+                values (?, ?, ?, ?, current_timestamp, current_timestamp, false)
+                """, wishes);
+        jdbc.batchUpdate("insert into important_dates (user_id, title, date, month_day) values (?, ?, ?, ?)", dates);
+    }
+
+    /**
+     * Ids of one seeded data set.
+     *
+     * @param wishId one of the owner's wishes
+     * @param dateId one of the owner's dates
+     */
+    record DataSet(String name, int size, long ownerId, long followerId, long wishId, long dateId) {
+
+        String ownerUsername() {
+            return name + "_owner";
+        }
+
+        String followerUsername() {
+            return name + "_follower";
+        }
+    }
+}
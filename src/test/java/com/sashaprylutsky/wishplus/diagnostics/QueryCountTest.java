@@ -0,0 +1,309 @@
+package com.sashaprylutsky.wishplus.diagnostics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sashaprylutsky.wishplus.diagnostics.QueryCountSeeder.DataSet;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * SQL statement-count regression test: seeds a small and a large data set and calls every endpoint of every
+ * controller against both over HTTP.
+ * <p>
+ * Statements are counted by the application's own datasource proxy and read back from the
+ * {@code http.server.requests.statements} summary. An endpoint fails the test when it runs more statements on
+ * the large data set than on the small one, i.e. when its statement count grows with the number of wishes,
+ * dates or subscriptions, or when it runs more than {@code diagnostics.query-budget.max-statements}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "diagnostics.query-metrics.enabled=true",
+        "diagnostics.query-metrics.count-rows=true",
+        "spring.jpa.show-sql=false",
+        "reminders.enabled=false",
+        "rate-limit.enabled=false",
+        "link-preview.enabled=false"})
+@ActiveProfiles("test")
+class QueryCountTest {
+
+    private static final int SMALL = 5;
+    private static final int LARGE = 50;
+    private static final String STATEMENTS = "http.server.requests.statements";
+    private static final String ROWS = "http.server.requests.rows";
+    private static final Duration RECORD_TIMEOUT = Duration.ofSeconds(5);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Value("${diagnostics.query-budget.max-statements}")
+    private int budget;
+
+    @LocalServerPort
+    private int port;
+
+    private URI baseUri;
+    private QueryCountSeeder seeder;
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    @BeforeEach
+    void setUp() {
+        baseUri = URI.create("http://localhost:" + port);
+        seeder = new QueryCountSeeder(context);
+    }
+
+    @AfterEach
+    void clear() {
+        seeder.clear();
+    }
+
+    @Test
+    void statementsPerRequestDoNotGrowWithTheData() throws Exception {
+        DataSet smallSet = seeder.seed("small", SMALL);
+        DataSet largeSet = seeder.seed("large", LARGE);
+
+        Map<String, Count> smallCounts = run(smallSet);
+        Map<String, Count> largeCounts = run(largeSet);
+
+        List<String> failures = new ArrayList<>();
+        String report = report(smallCounts, largeCounts, failures);
+        assertThat(failures).as(report).isEmpty();
+    }
+
+    /**
+     * Calls every endpoint once against the data set, in an order that leaves each call something to work on.
+     * Both data sets go through the same sequence, so caches are in the same state for the same call.
+     *
+     * @return statements and rows per endpoint, in call order
+     */
+    private Map<String, Count> run(DataSet data) throws IOException, InterruptedException {
+        Map<String, Count> counts = new LinkedHashMap<>();
+        String owner = login(counts, data.ownerUsername());
+        String follower = login(counts, data.followerUsername());
+
+        // UserController
+        call(counts, "GET /api/users/me", owner, "GET", "/api/users/me", null);
+        call(counts, "GET /api/users", follower, "GET", "/api/users?limit=50", null);
+        revalidate(counts, "GET /api/users/{id}", follower, "/api/users/" + data.ownerId());
+        call(counts, "GET /api/users/search/{prefix}", follower, "GET", "/api/users/search/" + data.name() + "_", null);
+        call(counts, "PUT /api/users", owner, "PUT", "/api/users", Map.of("firstName", "Renamed"));
+
+        // WishController
+        revalidate(counts, "GET /api/wishlist/user/{id}", follower, "/api/wishlist/user/" + data.ownerId());
+        revalidate(counts, "GET /api/wishlist/{id}", follower, "/api/wishlist/" + data.wishId());
+        call(counts, "GET /api/wishlist/search (followees)", follower, "GET", "/api/wishlist/search?q=nice+number", null);
+        call(counts, "GET /api/wishlist/search (all)", follower, "GET", "/api/wishlist/search?q=wish&scope=all", null);
+        long wishId = call(counts, "POST /api/wishlist", owner, "POST", "/api/wishlist",
+                Map.of("title", "New wish", "description", "Fresh one")).get("id").asLong();
+        call(counts, "PUT /api/wishlist/{id}", owner, "PUT", "/api/wishlist/" + wishId,
+                Map.of("title", "Changed wish", "description", "Changed"));
+        call(counts, "DELETE /api/wishlist/{id}", owner, "DELETE", "/api/wishlist/" + wishId, null);
+        // a batch as large as the data set: statements must not grow with the number of items
+        List<Map<String, Object>> batch = IntStream.range(0, data.size())
+                .mapToObj(i -> Map.<String, Object>of("title", "Bulk wish " + i))
+                .toList();
+        List<Long> ids = new ArrayList<>();
+        call(counts, "POST /api/wishlist/bulk", owner, "POST", "/api/wishlist/bulk", batch)
+                .forEach(result -> ids.add(result.get("id").asLong()));
+        call(counts, "PUT /api/wishlist/bulk", owner, "PUT", "/api/wishlist/bulk", ids.stream()
+                .map(id -> Map.<String, Object>of("id", id, "description", "Changed in bulk"))
+                .toList());
+        call(counts, "POST /api/wishlist/bulk/archive", owner, "POST", "/api/wishlist/bulk/archive", ids);
+        call(counts, "POST /api/wishlist/bulk/delete", owner, "POST", "/api/wishlist/bulk/delete", ids);
+
+        // ImportantDateController
+        revalidate(counts, "GET /api/dates/user/{id}", follower, "/api/dates/user/" + data.ownerId());
+        revalidate(counts, "GET /api/dates/{id}", follower, "/api/dates/" + data.dateId());
+        long dateId = call(counts, "POST /api/dates", owner, "POST", "/api/dates",
+                Map.of("title", "Anniversary", "date", "2010-06-15")).get("id").asLong();
+        call(counts, "PUT /api/dates/{id}", owner, "PUT", "/api/dates/" + dateId,
+                Map.of("title", "Anniversary", "date", "2010-06-16"));
+        call(counts, "DELETE /api/dates/{id}", owner, "DELETE", "/api/dates/" + dateId, null);
+        call(counts, "GET /api/dates/upcoming", follower, "GET", "/api/dates/upcoming?days=7&size=50", null);
+
+        // FeedController
+        call(counts, "GET /api/feed", follower, "GET", "/api/feed?limit=50&wishes=10", null);
+
+        // DateSubscriptionController
+        String subscription = "/api/subscription/" + data.ownerId();
+        call(counts, "POST /api/subscription/{followee}/all", follower, "POST", subscription + "/all", null);
+        call(counts, "DELETE /api/subscription/{followee}/{date}", follower, "DELETE", subscription + "/" + data.dateId(), null);
+        call(counts, "POST /api/subscription/{followee}/{date}", follower, "POST", subscription + "/" + data.dateId(), null);
+        call(counts, "DELETE /api/subscription/{followee}/all", follower, "DELETE", subscription + "/all", null);
+
+        // registration and account deletion, on a user of its own
+        String username = data.name() + "_newcomer";
+        call(counts, "POST /api/users/register", null, "POST", "/api/users/register", Map.of(
+                "email", username + "@example.com", "username", username, "password", QueryCountSeeder.PASSWORD,
+                "firstName", "New", "lastName", "Comer"));
+        String newcomer = login(new HashMap<>(), username);
+        call(counts, "DELETE /api/users", newcomer, "DELETE", "/api/users",
+                Map.of("submitMessage", "Delete my account forever!"));
+        return counts;
+    }
+
+    private String login(Map<String, Count> counts, String username) throws IOException, InterruptedException {
+        // every user logs in the same way, report the data set's first login
+        Map<String, Count> logins = new HashMap<>();
+        String token = call(logins, "POST /api/users/login", null, "POST", "/api/users/login",
+                Map.of("username", username, "password", QueryCountSeeder.PASSWORD)).asText();
+        counts.putIfAbsent("POST /api/users/login", logins.get("POST /api/users/login"));
+        return token;
+    }
+
+    /**
+     * Sends one request and records the statements and rows it caused.
+     *
+     * @return the response body, as a JSON text node if it is not JSON
+     */
+    private JsonNode call(Map<String, Count> counts, String endpoint, String token, String method, String path,
+                          Object body) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(counts, endpoint, token, method, path, body, null);
+        String content = response.body();
+        if (content.startsWith("{") || content.startsWith("[")) {
+            return JSON.readTree(content);
+        }
+        return JSON.getNodeFactory().textNode(content);
+    }
+
+    /**
+     * Fetches the resource, then asks for it again with its ETag in {@code If-None-Match}, which must answer
+     * {@code 304}. The conditional request is recorded as {@code <endpoint> (304)}.
+     */
+    private void revalidate(Map<String, Count> counts, String endpoint, String token, String path)
+            throws IOException, InterruptedException {
+        String etag = send(counts, endpoint, token, "GET", path, null, null)
+                .headers().firstValue("ETag")
+                .orElseThrow(() -> new IllegalStateException("GET " + path + " returned no ETag"));
+        HttpResponse<String> response = send(counts, endpoint + " (304)", token, "GET", path, null, etag);
+        if (response.statusCode() != 304) {
+            throw new IllegalStateException("GET %s with If-None-Match returned %d".formatted(path, response.statusCode()));
+        }
+    }
+
+    private HttpResponse<String> send(Map<String, Count> counts, String endpoint, String token, String method,
+                                      String path, Object body, String ifNoneMatch)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(Duration.ofSeconds(30))
+                .method(method, body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(JSON.writeValueAsString(body)));
+        if (body != null) {
+            request.header("Content-Type", "application/json");
+        }
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+
+        Count before = totals();
+        HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() / 100 != 2 && response.statusCode() != 304) {
+            throw new IllegalStateException("%s %s returned %d: %s".formatted(method, path, response.statusCode(), response.body()));
+        }
+        counts.put(endpoint, awaitRecorded(before).minus(before));
+        return response;
+    }
+
+    /**
+     * The query budget filter records a request after the response may already have reached the client,
+     * so wait until the request shows up in the summaries.
+     */
+    private Count awaitRecorded(Count before) throws InterruptedException {
+        long deadline = System.nanoTime() + RECORD_TIMEOUT.toNanos();
+        Count after = totals();
+        while (after.requests() == before.requests()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Request was not recorded in " + STATEMENTS
+                        + ", is diagnostics.query-metrics.enabled set?");
+            }
+            TimeUnit.MILLISECONDS.sleep(5);
+            after = totals();
+        }
+        return after;
+    }
+
+    private Count totals() {
+        long requests = 0;
+        double statements = 0;
+        double rows = 0;
+        for (DistributionSummary summary : meterRegistry.find(STATEMENTS).summaries()) {
+            requests += summary.count();
+            statements += summary.totalAmount();
+        }
+        for (DistributionSummary summary : meterRegistry.find(ROWS).summaries()) {
+            rows += summary.totalAmount();
+        }
+        return new Count(requests, (long) statements, (long) rows);
+    }
+
+    /**
+     * Statements and rows per endpoint for both sizes, as a table; endpoints that failed are added to
+     * {@code failures}.
+     */
+    private String report(Map<String, Count> small, Map<String, Count> large, List<String> failures) {
+        StringBuilder report = new StringBuilder("%nStatements (rows) per request, data sets of %d and %d, budget %d%n"
+                .formatted(SMALL, LARGE, budget));
+        report.append("%-42s %14s %14s  %s%n".formatted("endpoint", "small", "large", "result"));
+        for (Map.Entry<String, Count> entry : small.entrySet()) {
+            Count smallCount = entry.getValue();
+            Count largeCount = large.get(entry.getKey());
+            String result = "ok";
+            if (largeCount.statements() > smallCount.statements()) {
+                result = "FAIL: grows with data";
+            } else if (largeCount.statements() > budget || smallCount.statements() > budget) {
+                result = "FAIL: over budget";
+            }
+            if (!result.equals("ok")) {
+                failures.add(entry.getKey());
+            }
+            report.append("%-42s %14s %14s  %s%n".formatted(entry.getKey(), smallCount, largeCount, result));
+        }
+        return report.toString();
+    }
+
+    private record Count(long requests, long statements, long rows) {
+
+        Count minus(Count other) {
+            return new Count(requests - other.requests, statements - other.statements, rows - other.rows);
+        }
+
+        @Override
+        public String toString() {
+            return "%d (%d)".formatted(statements, rows);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.sashaprylutsky.wishplus.etag;
+
+import com.sashaprylutsky.wishplus.etag.ResourceVersions.Resource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Versions are shared by every instance and move with the transaction that changes the data. A second instance is
+ * a second {@link ResourceVersions} on the same database.
+ */
+@SpringBootTest(properties = {
+        "reminders.enabled=false",
+        "link-preview.enabled=false"})
+@ActiveProfiles("test")
+class ResourceVersionsTest {
+
+    private static final long USER_ID = 4242;
+
+    @Autowired
+    private ResourceVersions versions;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void clear() {
+        jdbc.update("delete from resource_versions where user_id = ?", USER_ID);
+    }
+
+    @Test
+    void bumpOnOneInstanceChangesTheETagOnAnother() {
+        ResourceVersions other = new ResourceVersions(jdbc);
+        String before = other.etag(Resource.PROFILE, USER_ID);
+        assertThat(versions.etag(Resource.PROFILE, USER_ID)).isEqualTo(before);
+
+        versions.bump(USER_ID, Resource.PROFILE);
+
+        assertThat(other.etag(Resource.PROFILE, USER_ID)).isNotEqualTo(before)
+                .isEqualTo(versions.etag(Resource.PROFILE, USER_ID));
+    }
+
+    @Test
+    void rolledBackBumpKeepsTheVersion() {
+        versions.bump(USER_ID, Resource.WISHES);
+        String before = versions.listETag(Resource.WISHES, USER_ID, null, 50);
+        List<Long> heard = new ArrayList<>();
+        versions.addListener((userId, resource, version) -> {
+            if (userId == USER_ID) {
+                heard.add(version);
+            }
+        });
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            versions.bump(USER_ID, Resource.WISHES);
+            status.setRollbackOnly();
+        });
+        assertThat(versions.listETag(Resource.WISHES, USER_ID, null, 50)).isEqualTo(before);
+        assertThat(heard).isEmpty();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                versions.bump(USER_ID, Resource.WISHES));
+        assertThat(versions.listETag(Resource.WISHES, USER_ID, null, 50)).isNotEqualTo(before);
+        assertThat(heard).containsExactly(2L);
+    }
+
+    @Test
+    void pagesOfOneVersionHaveTheirOwnETags() {
+        String first = versions.listETag(Resource.DATES, USER_ID, null, 50);
+
+        assertThat(versions.listETag(Resource.DATES, USER_ID, "", 50)).isEqualTo(first);
+        assertThat(versions.listETag(Resource.DATES, USER_ID, null, 10)).isNotEqualTo(first);
+        assertThat(versions.listETag(Resource.DATES, USER_ID, "MTA", 50)).isNotEqualTo(first);
+        assertThat(first).startsWith("W/\"d" + USER_ID + "-0-");
+    }
+}
@@ -0,0 +1,89 @@
+package com.sashaprylutsky.wishplus.live;
+
+import com.sashaprylutsky.wishplus.etag.ResourceVersions;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions.Resource;
+import com.sashaprylutsky.wishplus.repository.DateSubscriptionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Changes made on one instance reach the streams open on another. Two instances are two {@link LiveUpdates}, each
+ * with its own {@link ResourceVersions}, on the same database.
+ */
+@SpringBootTest(properties = {
+        "reminders.enabled=false",
+        "link-preview.enabled=false"})
+@ActiveProfiles("test")
+class LiveUpdatesTest {
+
+    private static final long FOLLOWER = 4301;
+    private static final long FOLLOWEE = 4302;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private final DateSubscriptionRepository subscriptions = mock(DateSubscriptionRepository.class);
+    private ResourceVersions writer;
+    private SimpleMeterRegistry readerMetrics;
+    private LiveUpdates reader;
+
+    @BeforeEach
+    void instances() {
+        writer = new ResourceVersions(jdbc);
+        readerMetrics = new SimpleMeterRegistry();
+        reader = new LiveUpdates(subscriptions, new ResourceVersions(jdbc), readerMetrics, 1, 60_000, 10, 5, 10);
+    }
+
+    @AfterEach
+    void clear() {
+        reader.shutdown();
+        jdbc.update("delete from resource_versions where user_id in (?, ?)", FOLLOWER, FOLLOWEE);
+    }
+
+    @Test
+    void changeOnAnotherInstanceIsPublishedOnce() {
+        when(subscriptions.findFolloweeIds(FOLLOWER)).thenReturn(List.of(FOLLOWEE));
+        reader.connect(FOLLOWER);
+
+        reader.poll();
+        assertThat(queued()).isZero();
+
+        writer.bump(FOLLOWEE, Resource.WISHES);
+        writer.bump(FOLLOWER, Resource.WISHES);
+        reader.poll();
+        assertThat(queued()).isEqualTo(1);
+
+        reader.poll();
+        assertThat(queued()).isEqualTo(1);
+    }
+
+    @Test
+    void subscriptionOnAnotherInstanceIsFollowed() {
+        when(subscriptions.findFolloweeIds(FOLLOWER)).thenReturn(List.of());
+        reader.connect(FOLLOWER);
+
+        when(subscriptions.findFolloweeIds(FOLLOWER)).thenReturn(List.of(FOLLOWEE));
+        writer.bump(FOLLOWER, Resource.SUBSCRIPTIONS);
+        reader.poll();
+        writer.bump(FOLLOWEE, Resource.DATES);
+        reader.poll();
+
+        assertThat(queued()).isEqualTo(1);
+    }
+
+    private double queued() {
+        return readerMetrics.get("live.changes").tag("outcome", "queued").counter().count();
+    }
+}
@@ -0,0 +1,186 @@
+package com.sashaprylutsky.wishplus.photo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Uploading a profile photo and reading it back the way browsers and download managers do, against a real Tomcat,
+ * so ranges go through its sendfile.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "reminders.enabled=false",
+        "rate-limit.enabled=false",
+        "link-preview.enabled=false",
+        "photos.storage-path=target/photos-test",
+        "photos.max-upload-bytes=65536"})
+@ActiveProfiles("test")
+class PhotosTest {
+
+    private static final String PASSWORD = "password01";
+    private static final AtomicInteger USERS = new AtomicInteger();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private String token;
+    private long userId;
+    private byte[] photo;
+    private String photoUrl;
+
+    @BeforeEach
+    void upload() throws Exception {
+        String username = "photographer%02d".formatted(USERS.incrementAndGet());
+        send(HttpRequest.newBuilder(uri("/api/users/register"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(Map.of(
+                        "username", username, "email", username + "@example.com", "password", PASSWORD)))));
+        token = new String(send(HttpRequest.newBuilder(uri("/api/users/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(Map.of(
+                        "username", username, "password", PASSWORD))))).body());
+        userId = jdbc.queryForObject("select id from users where username = ?", Long.class, username);
+
+        photo = png(120, 80);
+        HttpResponse<byte[]> uploaded = send(put(photo, "image/png"));
+        assertThat(uploaded.statusCode()).isEqualTo(200);
+        photoUrl = objectMapper.readTree(uploaded.body()).get("profilePhoto").asText();
+        assertThat(photoUrl).startsWith(Photos.URL_PREFIX).endsWith(".png");
+    }
+
+    @AfterEach
+    void clear() {
+        jdbc.update("delete from users where id = ?", userId);
+    }
+
+    @Test
+    void wholePhotoIsServedWithItsETag() throws Exception {
+        HttpResponse<byte[]> response = send(get());
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).isEqualTo(photo);
+        assertThat(response.headers().firstValue("Content-Type")).hasValue("image/png");
+        assertThat(response.headers().firstValue("Accept-Ranges")).hasValue("bytes");
+        String etag = response.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<byte[]> notModified = send(get().header("If-None-Match", etag));
+        assertThat(notModified.statusCode()).isEqualTo(304);
+        assertThat(notModified.body()).isEmpty();
+    }
+
+    @Test
+    void firstByte() throws Exception {
+        HttpResponse<byte[]> response = send(get().header("Range", "bytes=0-0"));
+
+        assertThat(response.statusCode()).isEqualTo(206);
+        assertThat(response.headers().firstValue("Content-Range")).hasValue("bytes 0-0/" + photo.length);
+        assertThat(response.body()).containsExactly(photo[0]);
+    }
+
+    @Test
+    void suffixRange() throws Exception {
+        HttpResponse<byte[]> response = send(get().header("Range", "bytes=-10"));
+
+        assertThat(response.statusCode()).isEqualTo(206);
+        assertThat(response.headers().firstValue("Content-Range"))
+                .hasValue("bytes " + (photo.length - 10) + "-" + (photo.length - 1) + "/" + photo.length);
+        assertThat(response.body()).isEqualTo(Arrays.copyOfRange(photo, photo.length - 10, photo.length));
+    }
+
+    @Test
+    void rangePastTheEndIsNotSatisfiable() throws Exception {
+        HttpResponse<byte[]> response = send(get().header("Range", "bytes=" + photo.length + "-"));
+
+        assertThat(response.statusCode()).isEqualTo(416);
+        assertThat(response.headers().firstValue("Content-Range")).hasValue("bytes */" + photo.length);
+    }
+
+    @Test
+    void staleIfRangeGetsTheWholePhoto() throws Exception {
+        String etag = send(get()).headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<byte[]> stale = send(get().header("Range", "bytes=0-9").header("If-Range", "\"stale\""));
+        assertThat(stale.statusCode()).isEqualTo(200);
+        assertThat(stale.body()).isEqualTo(photo);
+
+        HttpResponse<byte[]> current = send(get().header("Range", "bytes=0-9").header("If-Range", etag));
+        assertThat(current.statusCode()).isEqualTo(206);
+        assertThat(current.body()).isEqualTo(Arrays.copyOf(photo, 10));
+    }
+
+    @Test
+    void oversizedAndNonImageUploadsAreRefused() throws Exception {
+        byte[] oversized = Arrays.copyOf(photo, 65536 + 1);
+        assertThat(send(put(oversized, "image/png")).statusCode()).isEqualTo(413);
+        assertThat(send(put("not an image".getBytes(), "image/png")).statusCode()).isEqualTo(415);
+
+        assertThat(jdbc.queryForObject("select profile_photo from users where id = ?", String.class, userId))
+                .isEqualTo(photoUrl);
+        // refused uploads leave no temporary files behind
+        try (Stream<Path> incoming = Files.list(Path.of("target/photos-test/incoming"))) {
+            assertThat(incoming).isEmpty();
+        }
+    }
+
+    private HttpRequest.Builder get() {
+        // photos are public, as <img> tags cannot send a token
+        return HttpRequest.newBuilder(uri(photoUrl));
+    }
+
+    private HttpRequest.Builder put(byte[] body, String contentType) {
+        return HttpRequest.newBuilder(uri("/api/users/me/photo"))
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", contentType)
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(body));
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, (x * 2) << 16 | (y * 3) << 8 | (x + y));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,280 @@
+package com.sashaprylutsky.wishplus.preview;
+
+import com.sashaprylutsky.wishplus.dto.LinkPreview;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions.Resource;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Fetches against a stub shop on a local {@link HttpServer}. The stub is on loopback, so every test but the one
+ * for the address check allows private addresses; the scheme of every redirect hop is checked regardless.
+ * Versions live in an in-memory H2 database.
+ */
+class LinkPreviewsTest {
+
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+    private static final long TIMEOUT_MILLIS = 1000;
+    private static final long HOST_INTERVAL_MILLIS = 200;
+    private static final long OWNER = 4343;
+    private static final long OTHER_OWNER = 4344;
+
+    private final JdbcTemplate jdbc = new JdbcTemplate(
+            new DriverManagerDataSource("jdbc:h2:mem:link-previews;DB_CLOSE_DELAY=-1;MODE=MYSQL", "sa", ""));
+    private final ResourceVersions versions = new ResourceVersions(jdbc);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> requested = new CopyOnWriteArrayList<>();
+    private final List<Long> spacedStarts = new CopyOnWriteArrayList<>();
+    private final CountDownLatch hungUp = new CountDownLatch(1);
+    private final ExecutorService shopThreads = Executors.newCachedThreadPool();
+    private HttpServer shop;
+    private String shopUri;
+    private LinkPreviews previews;
+
+    @BeforeEach
+    void start() throws IOException {
+        jdbc.execute("create table if not exists resource_versions "
+                + "(user_id bigint, resource varchar(16), version bigint not null, primary key (user_id, resource))");
+
+        shop = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        shop.setExecutor(shopThreads);
+        page("/product", """
+                <html><head>
+                <meta property="og:title" content="Espresso Machine">
+                <meta property="og:image" content="/images/espresso.jpg">
+                </head></html>
+                """);
+        page("/json-ld", """
+                <html><head><title>Trail Running Shoes</title>
+                <script type="application/ld+json">
+                {"@type": "Product", "offers": {"@type": "Offer", "price": 89.5, "priceCurrency": "USD"}}
+                </script></head></html>
+                """);
+        page("/empty", "<html><body>Nothing to see</body></html>");
+        redirect("/moved", "/product");
+        redirect("/to-file", "file:///etc/passwd");
+        redirect("/loop", "/loop");
+        shop.createContext("/large", exchange -> {
+            requested.add(exchange.getRequestURI().getPath());
+            exchange.getResponseHeaders().add("Content-Type", "text/html");
+            exchange.sendResponseHeaders(200, 0);
+            byte[] filler = "x".repeat(64 * 1024).getBytes(StandardCharsets.UTF_8);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("<html><head><title>Large Page</title></head><body>".getBytes(StandardCharsets.UTF_8));
+                // far more than socket buffers hold, so the write fails once the fetcher hangs up
+                for (int i = 0; i < 1024; i++) {
+                    out.write(filler);
+                }
+            } catch (IOException e) {
+                hungUp.countDown();
+            }
+        });
+        shop.createContext("/slow", exchange -> {
+            requested.add(exchange.getRequestURI().getPath());
+            try {
+                Thread.sleep(3 * TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        shop.createContext("/spaced", exchange -> {
+            spacedStarts.add(System.nanoTime());
+            String path = exchange.getRequestURI().getPath();
+            respond(exchange, "<html><head><title>" + path + "</title></head></html>");
+        });
+        shop.start();
+        shopUri = "http://localhost:" + shop.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stop() {
+        if (previews != null) {
+            previews.shutdown();
+        }
+        shop.stop(0);
+        shopThreads.shutdownNow();
+        jdbc.update("delete from resource_versions");
+    }
+
+    @Test
+    void internalAddressesAreRecognised() throws UnknownHostException {
+        for (String internal : List.of("127.0.0.1", "0.0.0.0", "10.1.2.3", "172.16.0.1", "192.168.1.1",
+                "169.254.169.254", "100.64.0.1", "224.0.0.1", "::1", "fe80::1", "fd00::1")) {
+            assertThat(LinkPreviewFetcher.isInternal(InetAddress.getByName(internal))).as(internal).isTrue();
+        }
+        for (String external : List.of("8.8.8.8", "100.128.0.1", "172.32.0.1", "2001:4860:4860::8888")) {
+            assertThat(LinkPreviewFetcher.isInternal(InetAddress.getByName(external))).as(external).isFalse();
+        }
+    }
+
+    @Test
+    void loopbackIsRefusedUnlessAllowed() throws Exception {
+        LinkPreviewFetcher strict = new LinkPreviewFetcher(properties(false));
+
+        assertThatThrownBy(() -> strict.fetch(URI.create(shopUri + "/product")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("internal address");
+        assertThat(requested).isEmpty();
+
+        assertThat(new LinkPreviewFetcher(properties(true)).fetch(URI.create(shopUri + "/product")).title())
+                .isEqualTo("Espresso Machine");
+    }
+
+    @Test
+    void jsonLdOfferIsRead() throws Exception {
+        assertThat(new LinkPreviewFetcher(properties(true)).fetch(URI.create(shopUri + "/json-ld")))
+                .isEqualTo(new LinkPreview("Trail Running Shoes", null, "89.5", "USD"));
+    }
+
+    @Test
+    void everyRedirectHopIsChecked() throws Exception {
+        LinkPreviewFetcher fetcher = new LinkPreviewFetcher(properties(true));
+
+        assertThat(fetcher.fetch(URI.create(shopUri + "/moved")))
+                .isEqualTo(new LinkPreview("Espresso Machine", shopUri + "/images/espresso.jpg", null, null));
+        assertThatThrownBy(() -> fetcher.fetch(URI.create(shopUri + "/to-file")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Not an http or https url: file:");
+        assertThatThrownBy(() -> fetcher.fetch(URI.create(shopUri + "/loop")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("More than 2 redirects");
+        assertThat(requested).containsExactly("/moved", "/product", "/to-file", "/loop", "/loop", "/loop");
+    }
+
+    @Test
+    void onlyTheHeadOfALargePageIsRead() throws Exception {
+        LinkPreview preview = new LinkPreviewFetcher(properties(true)).fetch(URI.create(shopUri + "/large"));
+
+        assertThat(preview.title()).isEqualTo("Large Page");
+        assertThat(hungUp.await(5, TimeUnit.SECONDS)).as("fetcher hung up before the end of the page").isTrue();
+    }
+
+    @Test
+    void slowPageTimesOut() {
+        LinkPreviewFetcher fetcher = new LinkPreviewFetcher(properties(true));
+        long started = System.nanoTime();
+
+        assertThatThrownBy(() -> fetcher.fetch(URI.create(shopUri + "/slow")))
+                .isInstanceOf(HttpTimeoutException.class);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).isLessThan(2 * TIMEOUT_MILLIS);
+    }
+
+    @Test
+    void fetchesOfOneHostAreSpacedOut() throws InterruptedException {
+        previews = previews();
+        List<String> urls = List.of(shopUri + "/spaced/1", shopUri + "/spaced/2", shopUri + "/spaced/3",
+                shopUri + "/spaced/4");
+        urls.forEach(url -> previews.request(url, OWNER));
+
+        awaitTrue(() -> urls.stream().allMatch(url -> previews.peek(url) != null));
+        List<Long> starts = new ArrayList<>(spacedStarts);
+        Collections.sort(starts);
+        assertThat(starts).hasSize(urls.size());
+        // the stub sees a request a little after its fetch starts, later for the fetch that opens the connection
+        for (int i = 1; i < starts.size(); i++) {
+            assertThat(starts.get(i) - starts.get(i - 1))
+                    .isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(HOST_INTERVAL_MILLIS / 2));
+        }
+        assertThat(starts.get(starts.size() - 1) - starts.get(0))
+                .isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(HOST_INTERVAL_MILLIS * (starts.size() - 1) - 50));
+    }
+
+    @Test
+    void trackingParametersShareOneFetch() throws InterruptedException {
+        previews = previews();
+
+        previews.request(shopUri + "/product", OWNER);
+        previews.request(shopUri + "/product?utm_source=newsletter&fbclid=abc", OTHER_OWNER);
+
+        awaitTrue(() -> previews.peek(shopUri + "/product") != null);
+        assertThat(previews.peek(shopUri + "/product?utm_source=newsletter")).isEqualTo(previews.peek(shopUri + "/product"));
+        assertThat(requested).containsExactly("/product");
+    }
+
+    @Test
+    void arrivingPreviewMovesTheOwnersWishList() throws InterruptedException {
+        previews = previews();
+        String before = versions.listETag(Resource.WISHES, OWNER, null, 50);
+        String otherBefore = versions.listETag(Resource.WISHES, OTHER_OWNER, null, 50);
+
+        previews.request(shopUri + "/product", OWNER);
+        previews.request(shopUri + "/empty", OTHER_OWNER);
+
+        awaitTrue(() -> previews.peek(shopUri + "/product") != null
+                && meterRegistry.counter("link-preview.fetches", "outcome", "empty").count() == 1);
+        assertThat(versions.listETag(Resource.WISHES, OWNER, null, 50)).isNotEqualTo(before);
+        // a page with nothing to show changes nothing
+        assertThat(versions.listETag(Resource.WISHES, OTHER_OWNER, null, 50)).isEqualTo(otherBefore);
+    }
+
+    private LinkPreviews previews() {
+        LinkPreviewProperties properties = properties(true);
+        return new LinkPreviews(properties, new LinkPreviewFetcher(properties), versions, meterRegistry);
+    }
+
+    private static LinkPreviewProperties properties(boolean allowPrivateAddresses) {
+        return new LinkPreviewProperties(true, 4, 100, 1000, TIMEOUT_MILLIS, MAX_BODY_BYTES, 2, HOST_INTERVAL_MILLIS,
+                10_000, 100, 60, 60, allowPrivateAddresses, "WishPlus-LinkPreview/test");
+    }
+
+    private void page(String path, String html) {
+        shop.createContext(path, exchange -> {
+            requested.add(exchange.getRequestURI().getPath());
+            respond(exchange, html);
+        });
+    }
+
+    private void redirect(String path, String location) {
+        shop.createContext(path, exchange -> {
+            requested.add(exchange.getRequestURI().getPath());
+            exchange.getResponseHeaders().add("Location", location);
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+    }
+
+    private static void respond(HttpExchange exchange, String html) throws IOException {
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition met within 10 s").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
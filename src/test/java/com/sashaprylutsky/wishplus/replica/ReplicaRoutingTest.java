@@ -0,0 +1,224 @@
+package com.sashaprylutsky.wishplus.replica;
+
+import com.sashaprylutsky.wishplus.etag.ResourceVersions;
+import com.sashaprylutsky.wishplus.etag.ResourceVersions.Resource;
+import com.sashaprylutsky.wishplus.replica.ReplicaRouting.Target;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.Cookie;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Routing between two instances, {@code writer} and {@code reader}, that share a primary and a replica. Both are
+ * in-memory H2 databases; the test moves the replica forward itself.
+ */
+class ReplicaRoutingTest {
+
+    private static final ReplicaProperties PROPERTIES = new ReplicaProperties(true, null, null, null, 5000, 6000, 1000);
+    private static final long OWNER = 42;
+
+    private final DataSource primaryDataSource = database("routing-primary");
+    private final DataSource replicaDataSource = database("routing-replica");
+    private final JdbcTemplate primary = new JdbcTemplate(primaryDataSource);
+    private final JdbcTemplate replica = new JdbcTemplate(replicaDataSource);
+    /**
+     * statements run on the primary through the routing datasources; the heartbeat is not among them
+     */
+    private final AtomicInteger primaryStatements = new AtomicInteger();
+    private final DataSource countedPrimary = ProxyDataSourceBuilder.create(primaryDataSource)
+            .afterQuery((execution, queries) -> primaryStatements.addAndGet(queries.size()))
+            .build();
+    private Instance writer;
+    private Instance reader;
+
+    @BeforeEach
+    void instances() {
+        for (JdbcTemplate database : new JdbcTemplate[]{primary, replica}) {
+            database.execute("create table if not exists replica_heartbeat (id int primary key, beat_at bigint not null)");
+            database.execute("create table if not exists resource_versions "
+                    + "(user_id bigint, resource varchar(16), version bigint not null, primary key (user_id, resource))");
+            database.execute("create table if not exists wishlist (user_id bigint not null, title varchar(64))");
+        }
+        writer = new Instance();
+        reader = new Instance();
+        catchUp();
+    }
+
+    @AfterEach
+    void clear() {
+        RequestContextHolder.resetRequestAttributes();
+        for (JdbcTemplate database : new JdbcTemplate[]{primary, replica}) {
+            database.execute("delete from replica_heartbeat");
+            database.execute("delete from resource_versions");
+            database.execute("delete from wishlist");
+        }
+    }
+
+    @Test
+    void plainListReadMakesNoPrimaryStatements() {
+        replica.update("insert into wishlist (user_id, title) values (?, 'Replica wish')", OWNER);
+        request(null);
+        // the datasource proxy reads the connection defaults once, outside any transaction
+        reader.readList();
+        primaryStatements.set(0);
+        double toPrimary = reader.routedToPrimary();
+        double toReplica = reader.routed(Target.REPLICA, "read");
+
+        request(null);
+        List<String> titles = reader.readList();
+
+        assertThat(titles).containsExactly("Replica wish");
+        assertThat(reader.routed(Target.REPLICA, "read")).isEqualTo(toReplica + 2);
+        assertThat(reader.routedToPrimary()).isEqualTo(toPrimary);
+        assertThat(primaryStatements).hasValue(0);
+    }
+
+    @Test
+    void ownWriteThroughAnotherInstanceIsReadFromThePrimary() throws InterruptedException {
+        MockHttpServletResponse response = request(null);
+        writer.write();
+        Cookie lastWrite = response.getCookie(ReplicaRouting.LAST_WRITE_COOKIE);
+        assertThat(lastWrite).isNotNull();
+        assertThat(lastWrite.getMaxAge()).isEqualTo(6);
+
+        request(lastWrite);
+        assertThat(reader.readList()).containsExactly("Own wish");
+        assertThat(reader.routed(Target.PRIMARY, "own-write")).isEqualTo(2);
+
+        // another client, without the cookie, reads the replica that lacks the write
+        request(null);
+        assertThat(reader.readList()).isEmpty();
+
+        Thread.sleep(2);
+        catchUp();
+        request(lastWrite);
+        reader.readList();
+        assertThat(reader.routed(Target.REPLICA, "read")).isEqualTo(4);
+    }
+
+    @Test
+    void listIsReadFromWhereItsETagWasRead() throws InterruptedException {
+        MockHttpServletResponse response = request(null);
+        writer.write();
+        Cookie lastWrite = response.getCookie(ReplicaRouting.LAST_WRITE_COOKIE);
+
+        request(lastWrite);
+        reader.read(jdbc -> new ResourceVersions(jdbc).listETag(Resource.WISHES, OWNER, null, 50));
+        // the replica catches up between the ETag and the list, which must still come from the primary
+        Thread.sleep(2);
+        catchUp();
+        List<String> titles = reader.read(jdbc -> jdbc.queryForList("select title from wishlist", String.class));
+        assertThat(titles).containsExactly("Own wish");
+        assertThat(reader.routed(Target.PRIMARY, "own-write")).isEqualTo(2);
+    }
+
+    @Test
+    void madeUpLastWriteIsIgnored() {
+        request(new Cookie(ReplicaRouting.LAST_WRITE_COOKIE, Long.toString(Long.MAX_VALUE)));
+        assertThat(reader.route()).isEqualTo(Target.REPLICA);
+
+        request(new Cookie(ReplicaRouting.LAST_WRITE_COOKIE, "soon"));
+        assertThat(reader.route()).isEqualTo(Target.REPLICA);
+    }
+
+    /**
+     * Copies the primary's heartbeat to the replica, as replication would, and lets the reader read it.
+     */
+    private void catchUp() {
+        writer.routing.heartbeat();
+        Long beatAt = primary.queryForObject("select beat_at from replica_heartbeat where id = 1", Long.class);
+        replica.update("delete from replica_heartbeat");
+        replica.update("insert into replica_heartbeat (id, beat_at) values (1, ?)", beatAt);
+        reader.routing.heartbeat();
+    }
+
+    private static MockHttpServletResponse request(Cookie lastWrite) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (lastWrite != null) {
+            request.setCookies(lastWrite);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        return response;
+    }
+
+    private static DataSource database(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1;MODE=MYSQL", "sa", "");
+    }
+
+    /**
+     * An application instance: its routing and the transactions it runs through it.
+     */
+    private final class Instance {
+
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        final ReplicaRouting routing = new ReplicaRouting(primaryDataSource, replicaDataSource, PROPERTIES, meterRegistry);
+        final JdbcTemplate jdbc = new JdbcTemplate(
+                new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(countedPrimary, replicaDataSource, routing)));
+        final DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(jdbc.getDataSource());
+
+        void write() {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                jdbc.update("insert into wishlist (user_id, title) values (?, 'Own wish')", OWNER);
+                new ResourceVersions(jdbc).bump(OWNER, Resource.WISHES);
+            });
+        }
+
+        /**
+         * The list's ETag and then the list, each in its own read-only transaction, as a list request takes them.
+         */
+        List<String> readList() {
+            read(jdbc -> new ResourceVersions(jdbc).listETag(Resource.WISHES, OWNER, null, 50));
+            return read(jdbc -> jdbc.queryForList("select title from wishlist where user_id = ?", String.class, OWNER));
+        }
+
+        <T> T read(Function<JdbcTemplate, T> query) {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            return transaction.execute(status -> query.apply(jdbc));
+        }
+
+        Target route() {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            return transaction.execute(status -> routing.route());
+        }
+
+        /**
+         * Connections taken from the primary, for any reason
+         */
+        double routedToPrimary() {
+            return meterRegistry.get("replica.routing").tag("target", "primary").counters().stream()
+                    .mapToDouble(Counter::count)
+                    .sum();
+        }
+
+        double routed(Target target, String reason) {
+            return meterRegistry.get("replica.routing")
+                    .tag("target", target.name().toLowerCase())
+                    .tag("reason", reason)
+                    .counter()
+                    .count();
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.sashaprylutsky.wishplus.schema;
+
+import com.sashaprylutsky.wishplus.model.MonthDayWindow;
+import com.sashaprylutsky.wishplus.model.RecurringDates;
+import com.sashaprylutsky.wishplus.model.ReminderStatus;
+import com.sashaprylutsky.wishplus.model.Wish;
+import com.sashaprylutsky.wishplus.repository.DateSubscriptionRepository;
+import com.sashaprylutsky.wishplus.repository.ImportantDateRepository;
+import com.sashaprylutsky.wishplus.repository.ReminderOutboxRepository;
+import com.sashaprylutsky.wishplus.repository.ReminderPartitionRepository;
+import com.sashaprylutsky.wishplus.repository.UserRepository;
+import com.sashaprylutsky.wishplus.repository.WishBatchRepository;
+import com.sashaprylutsky.wishplus.repository.WishRepository;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * EXPLAIN test of every repository query, on the H2 {@code test} profile in MySQL mode, on the schema the
+ * migrations create, with a few thousand seeded rows. Each repository method is called once in a
+ * transaction that is rolled back; every statement it sends is recorded through the datasource-proxy with its
+ * parameters, then run again under {@code EXPLAIN ANALYZE} with the same parameters, and rolled back too. A plan
+ * that scans a table, or reads more than {@value #MAX_ROWS_READ} rows of one through an index, which an index on
+ * the cursor column alone would, fails the check. The methods that read every row by design are listed as full
+ * reads, as is {@code lockDue}: H2 takes every due row for {@code for update} before it applies the limit, while
+ * MySQL stops at the limit since the rows come in index order.
+ * <p>
+ * Also checked: the startup index check notices a dropped index.
+ */
+@SpringBootTest(properties = {
+        "diagnostics.query-metrics.enabled=true",
+        "spring.jpa.show-sql=false",
+        "reminders.enabled=false",
+        "link-preview.enabled=false"})
+@ActiveProfiles("test")
+class QueryPlanTest {
+
+    private static final int USERS = 500;
+    private static final int WISHES_PER_USER = 20;
+    private static final int DATES_PER_USER = 5;
+    private static final int FOLLOWEES_PER_USER = 5;
+    private static final int PARTITIONS = 16;
+    /**
+     * Most rows one table access of a query that is not a full read may take: a user has
+     * {@value #WISHES_PER_USER} wishes and follows {@value #FOLLOWEES_PER_USER * DATES_PER_USER} dates, and pages are
+     * at most 100 long, while the smallest seeded table that is queried by more than its key has 500 rows.
+     */
+    private static final int MAX_ROWS_READ = 200;
+    /**
+     * H2 marks each table access in the plan with a comment, {@code /* PUBLIC.WISHLIST.tableScan *}{@code /} for
+     * a full scan or {@code /* PUBLIC.IDX_WISHLIST_USER_ID: USER_ID = ?1 *}{@code /} for an index, followed under
+     * {@code EXPLAIN ANALYZE} by the rows it read plus one, {@code /* scanCount: 21 *}{@code /}.
+     */
+    private static final Pattern ACCESS =
+            Pattern.compile("/\\* PUBLIC\\.(\\S+?)(?::.*?)? \\*/\\s*/\\* scanCount: (\\d+) \\*/", Pattern.DOTALL);
+    private static final String TABLE_SCAN = ".tableScan";
+
+    private final Map<String, String> results = new LinkedHashMap<>();
+    private final Map<String, String> indexes = new LinkedHashMap<>();
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private DataSource unrecorded;
+    private TransactionTemplate transactions;
+    private volatile List<QueryInfo> recording;
+
+    @BeforeEach
+    void record() {
+        this.transactions = new TransactionTemplate(transactionManager);
+        assertThat(dataSource).as("statements are recorded through the query metrics datasource-proxy")
+                .isInstanceOf(ProxyDataSource.class);
+        ProxyDataSource proxy = (ProxyDataSource) dataSource;
+        this.unrecorded = proxy.getDataSource();
+        proxy.addListener(new QueryExecutionListener() {
+            @Override
+            public void beforeQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+            }
+
+            @Override
+            public void afterQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+                List<QueryInfo> statements = recording;
+                if (statements != null) {
+                    statements.addAll(queries);
+                }
+            }
+        });
+    }
+
+    @AfterEach
+    void clear() {
+        jdbc.update("delete from reminder_outbox");
+        jdbc.update("delete from reminder_partitions");
+        jdbc.update("delete from date_subscriptions");
+        jdbc.update("delete from important_dates");
+        jdbc.update("delete from wishlist");
+        jdbc.update("delete from users");
+    }
+
+    @Test
+    void repositoryQueriesUseIndexes() throws SQLException {
+        run();
+
+        assertThat(results.values()).as(report()).allMatch(result -> result.startsWith("ok"));
+    }
+
+    private void run() throws SQLException {
+        List<Long> userIds = seed();
+        jdbc.execute("analyze");
+
+        long ownerId = userIds.get(0);
+        long followeeId = userIds.get(1);
+        List<Long> wishIds = jdbc.queryForList("select id from wishlist where user_id = ? order by id limit 5",
+                Long.class, ownerId);
+        long dateId = jdbc.queryForObject("select min(id) from important_dates where user_id = ?", Long.class,
+                followeeId);
+        List<Long> outboxIds = jdbc.queryForList("select id from reminder_outbox order by id limit 5", Long.class);
+        LocalDate today = LocalDate.now();
+        MonthDayWindow reminders = RecurringDates.window(today, 3);
+        MonthDayWindow upcoming = RecurringDates.window(today, 30);
+        Instant now = Instant.now();
+
+        WishRepository wishes = context.getBean(WishRepository.class);
+        check("WishRepository.findViewById", () -> wishes.findViewById(wishIds.get(0)));
+        check("WishRepository.findViewsByIdIn", () -> wishes.findViewsByIdIn(wishIds));
+        checkReadsAll("WishRepository.streamAllActive", "a full read", () -> consume(wishes.streamAllActive()));
+        check("WishRepository.findVersionById", () -> wishes.findVersionById(wishIds.get(0)));
+        check("WishRepository.findPageByUserId", () -> wishes.findPageByUserId(ownerId, 0L, Limit.of(50)));
+        check("WishRepository.streamAllByUserId", () -> consume(wishes.streamAllByUserId(ownerId)));
+        check("WishRepository.findTopWishesByUserIds",
+                () -> wishes.findTopWishesByUserIds(userIds.subList(1, 1 + FOLLOWEES_PER_USER), 5));
+        check("WishRepository.findOwnersByIds", () -> wishes.findOwnersByIds(wishIds));
+        check("WishRepository.setArchivedByIds", () -> wishes.setArchivedByIds(wishIds, true, now));
+        check("WishRepository.deleteAllByIds", () -> wishes.deleteAllByIds(wishIds));
+
+        WishBatchRepository batch = context.getBean(WishBatchRepository.class);
+        check("WishBatchRepository.insertAll",
+                () -> batch.insertAll(ownerId, List.of(new Wish("Plan wish", "explained", null)), now));
+        Wish update = new Wish("Plan wish", null, null);
+        update.setId(wishIds.get(0));
+        check("WishBatchRepository.updateAll", () -> batch.updateAll(List.of(update), now));
+
+        ImportantDateRepository dates = context.getBean(ImportantDateRepository.class);
+        check("ImportantDateRepository.findViewById", () -> dates.findViewById(dateId));
+        check("ImportantDateRepository.findPageByUserId", () -> dates.findPageByUserId(followeeId, 0L, Limit.of(50)));
+        check("ImportantDateRepository.streamAllByUserId", () -> consume(dates.streamAllByUserId(followeeId)));
+        check("ImportantDateRepository.selectRecordByRecordIdAndUserId",
+                () -> dates.selectRecordByRecordIdAndUserId(dateId, followeeId));
+        check("ImportantDateRepository.findPartitionPage",
+                () -> dates.findPartitionPage(reminders.firstFrom(), reminders.firstTo(), PARTITIONS, 3, 0L,
+                        Limit.of(500)));
+        check("ImportantDateRepository.findUpcomingSubscribed",
+                () -> dates.findUpcomingSubscribed(ownerId, upcoming.start(), upcoming.firstFrom(),
+                        upcoming.firstTo(), upcoming.secondFrom(), upcoming.secondTo(), PageRequest.of(0, 20)));
+        check("ImportantDateRepository.findSubscribedAfter",
+                () -> dates.findSubscribedAfter(ownerId, upcoming.start(), 0, upcoming.start(), 0L, Limit.of(20)));
+        check("ImportantDateRepository.findPageWithoutMonthDay",
+                () -> dates.findPageWithoutMonthDay(0L, Limit.of(1000)));
+        check("ImportantDateRepository.setMonthDay", () -> dates.setMonthDay(List.of(dateId), 101));
+
+        UserRepository users = context.getBean(UserRepository.class);
+        DateSubscriptionRepository subscriptions = context.getBean(DateSubscriptionRepository.class);
+        check("DateSubscriptionRepository.findAllByFolloweeAndFollower",
+                () -> subscriptions.findAllByFolloweeAndFollower(users.getReferenceById(followeeId),
+                        users.getReferenceById(ownerId)));
+        check("DateSubscriptionRepository.findByFolloweeAndFollowerAndImportantDate",
+                () -> subscriptions.findByFolloweeAndFollowerAndImportantDate(users.getReferenceById(followeeId),
+                        users.getReferenceById(ownerId), dates.getReferenceById(dateId)));
+        check("DateSubscriptionRepository.findFolloweeIds", () -> subscriptions.findFolloweeIds(ownerId));
+        check("DateSubscriptionRepository.subscribeToAllDates",
+                () -> subscriptions.subscribeToAllDates(ownerId, userIds.get(100), now));
+        check("DateSubscriptionRepository.deleteStaleSubscriptions",
+                () -> subscriptions.deleteStaleSubscriptions(ownerId, followeeId));
+        check("DateSubscriptionRepository.deleteAllSubscriptions",
+                () -> subscriptions.deleteAllSubscriptions(ownerId, followeeId));
+
+        ReminderOutboxRepository outbox = context.getBean(ReminderOutboxRepository.class);
+        check("ReminderOutboxRepository.enqueueFollowers", () -> outbox.enqueueFollowers(dateId, today, now));
+        checkReadsAll("ReminderOutboxRepository.lockDue", "every due row locked on H2",
+                () -> outbox.lockDue(ReminderStatus.PENDING, now, Limit.of(100)));
+        check("ReminderOutboxRepository.findReminders", () -> outbox.findReminders(outboxIds));
+
+        ReminderPartitionRepository partitions = context.getBean(ReminderPartitionRepository.class);
+        check("ReminderPartitionRepository.claim",
+                () -> partitions.claim(3, "plan-check", now, now, now.plusSeconds(60)));
+        check("ReminderPartitionRepository.renew", () -> partitions.renew(3, "plan-check", now.plusSeconds(60)));
+        check("ReminderPartitionRepository.complete", () -> partitions.complete(3, "plan-check", now));
+
+        check("UserRepository.findUserByUsername", () -> users.findUserByUsername("plan_user_0042"));
+        check("UserRepository.findViewsByIdIn", () -> users.findViewsByIdIn(userIds.subList(0, 10)));
+        check("UserRepository.findPage", () -> users.findPage(0L, Limit.of(50)));
+        checkReadsAll("UserRepository.streamAll", "a full read", () -> consume(users.streamAll()));
+        checkReadsAll("UserRepository.streamUsernames", "a full read", () -> consume(users.streamUsernames()));
+
+        SchemaIndexCheck indexCheck = context.getBean(SchemaIndexCheck.class);
+        jdbc.execute("drop index idx_wishlist_user_feed on wishlist");
+        String detected;
+        try {
+            indexCheck.afterSingletonsInstantiated();
+            detected = "FAIL: not noticed";
+        } catch (IllegalStateException e) {
+            detected = "ok";
+        } finally {
+            jdbc.execute("create index idx_wishlist_user_feed on wishlist (user_id, is_archived, created_at, id)");
+        }
+        results.put("startup index check notices a dropped index", detected);
+    }
+
+    private void check(String method, Runnable call) throws SQLException {
+        check(method, call, null);
+    }
+
+    /**
+     * @param why why the method may read a whole table, for the report
+     */
+    private void checkReadsAll(String method, String why, Runnable call) throws SQLException {
+        check(method, call, why);
+    }
+
+    private void check(String method, Runnable call, String readsAll) throws SQLException {
+        List<QueryInfo> statements = Collections.synchronizedList(new ArrayList<>());
+        recording = statements;
+        try {
+            transactions.executeWithoutResult(status -> {
+                call.run();
+                status.setRollbackOnly();
+            });
+        } finally {
+            recording = null;
+        }
+        if (statements.isEmpty()) {
+            results.put(method, "FAIL: no statement recorded");
+            return;
+        }
+
+        List<String> used = new ArrayList<>();
+        Set<String> scanned = new LinkedHashSet<>();
+        Set<String> overRead = new LinkedHashSet<>();
+        for (QueryInfo statement : statements) {
+            Matcher access = ACCESS.matcher(explain(statement));
+            while (access.find()) {
+                String target = access.group(1);
+                int rows = Integer.parseInt(access.group(2)) - 1;
+                if (target.endsWith(TABLE_SCAN)) {
+                    scanned.add(target.substring(0, target.length() - TABLE_SCAN.length()));
+                } else if (rows > MAX_ROWS_READ) {
+                    overRead.add(target);
+                }
+                used.add(target + " " + rows);
+            }
+        }
+        indexes.put(method, used.isEmpty() ? "-" : String.join(", ", used));
+        if (scanned.isEmpty() && overRead.isEmpty()) {
+            results.put(method, "ok");
+        } else if (readsAll != null) {
+            results.put(method, "ok, " + readsAll);
+        } else if (!scanned.isEmpty()) {
+            results.put(method, "FAIL: full scan of " + String.join(", ", scanned));
+        } else {
+            results.put(method, "FAIL: too many rows from " + String.join(", ", overRead));
+        }
+    }
+
+    /**
+     * The plan of the statement run with the parameters it was sent with, the first set of a batch, and with the
+     * rows each table access read. What the statement changed is rolled back.
+     */
+    private String explain(QueryInfo statement) throws SQLException {
+        try (Connection connection = unrecorded.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement explain = connection.prepareStatement("explain analyze " + statement.getQuery())) {
+                List<List<ParameterSetOperation>> parameters = statement.getParametersList();
+                if (!parameters.isEmpty()) {
+                    for (ParameterSetOperation parameter : parameters.get(0)) {
+                        parameter.getMethod().invoke(explain, parameter.getArgs());
+                    }
+                }
+                StringBuilder plan = new StringBuilder();
+                try (ResultSet rs = explain.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append(rs.getString(1)).append('\n');
+                    }
+                }
+                return plan.toString();
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Could not set the parameters of " + statement.getQuery(), e);
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static void consume(Stream<?> stream) {
+        try (stream) {
+            stream.forEach(row -> {
+            });
+        }
+    }
+
+    /**
+     * {@value #USERS} users, each with wishes, dates and subscriptions to every date of the next
+     * {@value #FOLLOWEES_PER_USER} users, a pending reminder per subscription of the first users, and the reminder
+     * partitions.
+     *
+     * @return user ids in the order they were inserted
+     */
+    private List<Long> seed() {
+        List<Object[]> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            String username = "plan_user_%04d".formatted(i);
+            users.add(new Object[]{username + "@example.com", username, "not-used", "Plan", "Check"});
+        }
+        jdbc.batchUpdate("insert into users (email, username, password, first_name, last_name) values (?, ?, ?, ?, ?)",
+                users);
+        List<Long> userIds = jdbc.queryForList("select id from users where username like 'plan_user_%' order by id",
+                Long.class);
+
+        LocalDate today = LocalDate.now();
+        List<Object[]> wishes = new ArrayList<>();
+        List<Object[]> dates = new ArrayList<>();
+        for (long userId : userIds) {
+            for (int i = 0; i < WISHES_PER_USER; i++) {
+                wishes.add(new Object[]{userId, "Wish " + i, "Something nice, number " + i, i % 5 == 0});
+            }
+            for (int i = 0; i < DATES_PER_USER; i++) {
+                LocalDate date = today.plusDays((userId * 37 + i * 71) % 365).minusYears(30);
+                dates.add(new Object[]{userId, "Date " + i, Date.valueOf(date), RecurringDates.monthDay(date)});
+            }
+        }
+        jdbc.batchUpdate("""
+                insert into wishlist (user_id, title, description, created_at, updated_at, is_archived)
+                values (?, ?, ?, current_timestamp, current_timestamp, ?)
+                """, wishes);
+        jdbc.batchUpdate("insert into important_dates (user_id, title, date, month_day) values (?, ?, ?, ?)", dates);
+
+        List<Object[]> follows = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            for (int j = 1; j <= FOLLOWEES_PER_USER; j++) {
+                follows.add(new Object[]{userIds.get(i), userIds.get((i + j) % USERS)});
+            }
+        }
+        jdbc.batchUpdate("""
+                insert into date_subscriptions (follower_id, followee_id, important_date_id, subscribed_at)
+                select ?, user_id, id, current_timestamp from important_dates where user_id = ?
+                """, follows);
+        jdbc.update("""
+                insert into reminder_outbox (follower_id, followee_id, important_date_id, occurrence_date,
+                                             status, attempts, next_attempt_at, created_at)
+                select follower_id, followee_id, important_date_id, current_date, 'PENDING', 0,
+                       current_timestamp, current_timestamp
+                from date_subscriptions where follower_id <= ?
+                """, userIds.get(20));
+        List<Object[]> partitions = new ArrayList<>(PARTITIONS);
+        for (int i = 0; i < PARTITIONS; i++) {
+            partitions.add(new Object[]{i});
+        }
+        jdbc.batchUpdate("insert into reminder_partitions (partition_no) values (?)", partitions);
+        return userIds;
+    }
+
+    private String report() {
+        return results.entrySet().stream()
+                .map(result -> "%-68s %-34s %s".formatted(
+                        result.getKey(), result.getValue(), indexes.getOrDefault(result.getKey(), "")))
+                .collect(Collectors.joining("\n", "Query plans of the repository methods, with the rows each index "
+                        + "access read\n", "\n"));
+    }
+}
@@ -0,0 +1,49 @@
+package com.sashaprylutsky.wishplus.search;
+
+import com.sashaprylutsky.wishplus.dto.UsernameEntry;
+import com.sashaprylutsky.wishplus.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UsernameSearchTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final UsernameSearch search = new UsernameSearch(userRepository);
+
+    @Test
+    void rebuildClosesTheStream() {
+        AtomicBoolean closed = new AtomicBoolean();
+        when(userRepository.streamUsernames())
+                .thenReturn(Stream.of(new UsernameEntry(1L, "alice")).onClose(() -> closed.set(true)));
+
+        search.rebuild();
+
+        assertThat(closed).isTrue();
+        assertThat(search.search("al", null, 10)).extracting(UsernameIndex.Key::id).containsExactly(1L);
+    }
+
+    @Test
+    void writesDuringRebuildAreKept() {
+        search.put(2L, "bob");
+        // the users are read before the writes below commit, so the stream still has bob and not carol
+        when(userRepository.streamUsernames()).thenReturn(
+                Stream.of(new UsernameEntry(1L, "alice"), new UsernameEntry(2L, "bob"))
+                        .peek(entry -> {
+                            if (entry.id() == 2L) {
+                                search.put(3L, "carol");
+                                search.remove(2L);
+                            }
+                        }));
+
+        search.rebuild();
+
+        assertThat(search.search("", null, 10)).extracting(UsernameIndex.Key::name)
+                .containsExactly("alice", "carol");
+    }
+}
@@ -0,0 +1,57 @@
+package com.sashaprylutsky.wishplus.search;
+
+import com.sashaprylutsky.wishplus.dto.WishView;
+import com.sashaprylutsky.wishplus.repository.WishRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WishSearchTest {
+
+    private final WishRepository wishRepository = mock(WishRepository.class);
+    private final WishSearch search = new WishSearch(wishRepository);
+
+    @Test
+    void rebuildClosesTheStream() {
+        AtomicBoolean closed = new AtomicBoolean();
+        when(wishRepository.streamAllActive())
+                .thenReturn(Stream.of(wish(1L, "Bicycle")).onClose(() -> closed.set(true)));
+
+        search.rebuild();
+
+        assertThat(closed).isTrue();
+        assertThat(search.search("bicycle", owner -> true, 10)).extracting(WishIndex.Hit::wishId)
+                .containsExactly(1L);
+    }
+
+    @Test
+    void writesDuringRebuildAreKept() {
+        search.putAll(List.of(wish(2L, "Kettle")));
+        // the wishes are read before the writes below commit, so the stream still has the kettle and not the lamp
+        when(wishRepository.streamAllActive()).thenReturn(
+                Stream.of(wish(1L, "Bicycle"), wish(2L, "Kettle"))
+                        .peek(wish -> {
+                            if (wish.id() == 2L) {
+                                search.putAll(List.of(wish(3L, "Lamp")));
+                                search.removeAll(List.of(2L));
+                            }
+                        }));
+
+        search.rebuild();
+
+        assertThat(search.search("bicycle kettle lamp", owner -> true, 10)).extracting(WishIndex.Hit::wishId)
+                .containsExactlyInAnyOrder(1L, 3L);
+    }
+
+    private static WishView wish(Long id, String title) {
+        Instant now = Instant.now();
+        return new WishView(id, 42L, title, null, null, false, now, now);
+    }
+}
@@ -0,0 +1,32 @@
+package com.sashaprylutsky.wishplus.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketsTest {
+
+    @Test
+    void emptyBucketWaitsForItsNextToken() {
+        TokenBuckets buckets = new TokenBuckets(2, 1, 10);
+        long now = System.nanoTime();
+
+        assertThat(buckets.tryAcquire("alice", now)).isZero();
+        assertThat(buckets.tryAcquire("alice", now)).isZero();
+        assertThat(buckets.tryAcquire("alice", now)).isEqualTo(1_000_000_000L);
+        assertThat(buckets.tryAcquire("bob", now)).isZero();
+    }
+
+    @Test
+    void newKeysAreLimitedWhenEveryBucketIsTaken() {
+        TokenBuckets buckets = new TokenBuckets(1, 0.001, 16);
+        long now = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            assertThat(buckets.tryAcquire("client" + i, now)).isZero();
+        }
+
+        assertThat(buckets.tryAcquire("mallory", now)).isZero();
+        assertThat(buckets.tryAcquire("mallory", now)).isPositive();
+        assertThat(buckets.size()).isLessThanOrEqualTo(16);
+    }
+}
@@ -0,0 +1,243 @@
+package com.sashaprylutsky.wishplus.service;
+
+import com.sashaprylutsky.wishplus.notification.Reminder;
+import com.sashaprylutsky.wishplus.notification.ReminderSender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The reminder engine's guarantees between nodes: concurrent dispatchers never deliver a reminder twice, a
+ * partition lease keeps a second node out until it expires, and a node whose lease expired stops scanning without
+ * undoing the work of the node that took the partition over.
+ * <p>
+ * Nodes are threads and owner names sharing one H2 database. H2 has no {@code skip locked}, so its dispatchers wait
+ * for the rows another one holds instead of skipping them, as MySQL's do; either way a row is delivered once.
+ */
+@SpringBootTest(properties = {
+        "reminders.enabled=false",
+        "reminders.sender=recording",
+        "reminders.lease-millis=60000",
+        "link-preview.enabled=false"})
+@ActiveProfiles("test")
+class ReminderServiceTest {
+
+    private static final int FOLLOWERS = 300;
+    private static final int PARTITIONS = 4;
+    private static final int DISPATCHERS = 4;
+
+    @TestConfiguration
+    static class RecordingSenderConfiguration {
+
+        @Bean
+        RecordingSender recordingSender() {
+            return new RecordingSender();
+        }
+    }
+
+    static class RecordingSender implements ReminderSender {
+
+        final Map<Long, AtomicInteger> sends = new ConcurrentHashMap<>();
+
+        @Override
+        public void send(Reminder reminder) {
+            sends.computeIfAbsent(reminder.id(), id -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    @Autowired
+    private ReminderService reminders;
+
+    @Autowired
+    private RecordingSender sender;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private final LocalDate today = LocalDate.now(ZoneOffset.UTC);
+    private long followeeId;
+    private long dateId;
+
+    @BeforeEach
+    void seed() {
+        clear();
+        followeeId = insertUser("followee");
+        dateId = insertDate(followeeId, today.plusDays(1));
+        for (int i = 0; i < FOLLOWERS; i++) {
+            long followerId = insertUser("follower" + i);
+            jdbc.update("insert into date_subscriptions (follower_id, followee_id, important_date_id, subscribed_at) "
+                    + "values (?, ?, ?, ?)", followerId, followeeId, dateId, Timestamp.from(Instant.now()));
+        }
+        reminders.ensurePartitions(PARTITIONS);
+        sender.sends.clear();
+    }
+
+    @AfterEach
+    void clear() {
+        jdbc.update("delete from reminder_outbox");
+        jdbc.update("delete from reminder_partitions");
+        jdbc.update("delete from date_subscriptions");
+        jdbc.update("delete from important_dates");
+        jdbc.update("delete from users");
+    }
+
+    @Test
+    void concurrentDispatchersDeliverEveryReminderOnce() throws Exception {
+        scanAll("node-a");
+        assertThat(count("select count(*) from reminder_outbox where status = 'PENDING'")).isEqualTo(FOLLOWERS);
+
+        ExecutorService nodes = Executors.newFixedThreadPool(DISPATCHERS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> dispatched = new ArrayList<>();
+            for (int i = 0; i < DISPATCHERS; i++) {
+                dispatched.add(nodes.submit(dispatchUntilEmpty(start)));
+            }
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> future : dispatched) {
+                total += future.get(60, TimeUnit.SECONDS);
+            }
+            assertThat(total).isEqualTo(FOLLOWERS);
+        } finally {
+            nodes.shutdownNow();
+        }
+
+        assertThat(sender.sends).hasSize(FOLLOWERS);
+        assertThat(sender.sends.values()).allSatisfy(sends -> assertThat(sends.get()).isEqualTo(1));
+        assertThat(count("select count(*) from reminder_outbox where status = 'SENT'")).isEqualTo(FOLLOWERS);
+    }
+
+    private Callable<Integer> dispatchUntilEmpty(CountDownLatch start) {
+        return () -> {
+            start.await();
+            int total = 0;
+            int dispatched;
+            while ((dispatched = reminders.dispatchBatch(20)) > 0) {
+                total += dispatched;
+            }
+            return total;
+        };
+    }
+
+    @Test
+    void rescanningWritesNoSecondReminder() {
+        scanAll("node-a");
+        jdbc.update("update reminder_partitions set last_scanned_at = null");
+        scanAll("node-b");
+
+        assertThat(count("select count(*) from reminder_outbox")).isEqualTo(FOLLOWERS);
+        assertThat(reminders.dispatchBatch(FOLLOWERS * 2)).isEqualTo(FOLLOWERS);
+        assertThat(reminders.dispatchBatch(FOLLOWERS * 2)).isZero();
+        assertThat(sender.sends).hasSize(FOLLOWERS);
+    }
+
+    @Test
+    void liveLeaseKeepsOtherNodesOut() {
+        int partitionNo = partitionOfDate();
+        assertThat(reminders.claimPartition(partitionNo, "node-a", 0)).isTrue();
+
+        assertThat(reminders.claimPartition(partitionNo, "node-b", 0)).isFalse();
+        assertThat(reminders.scanPage(partitionNo, PARTITIONS, 0, "node-b", today, 3, 100)).isNull();
+        reminders.completePartition(partitionNo, "node-b");
+
+        assertThat(count("select count(*) from reminder_outbox")).isZero();
+        assertThat(jdbc.queryForObject("select lease_owner from reminder_partitions where partition_no = ?",
+                String.class, partitionNo)).isEqualTo("node-a");
+    }
+
+    @Test
+    void expiredLeaseIsTakenOverAndTheFormerOwnerStops() {
+        int partitionNo = partitionOfDate();
+        assertThat(reminders.claimPartition(partitionNo, "node-a", 0)).isTrue();
+        // node-a stalls, e.g. in a long GC pause, past the end of its lease
+        jdbc.update("update reminder_partitions set lease_until = ? where partition_no = ?",
+                Timestamp.from(Instant.now().minusSeconds(1)), partitionNo);
+
+        assertThat(reminders.claimPartition(partitionNo, "node-b", 0)).isTrue();
+        ReminderService.ScanResult page = reminders.scanPage(partitionNo, PARTITIONS, 0, "node-b", today, 3, 100);
+        assertThat(page).isNotNull();
+        assertThat(page.enqueuedReminders()).isEqualTo(FOLLOWERS);
+
+        // node-a wakes up: its next page finds the lease gone, and its completion must not release node-b's lease
+        assertThat(reminders.scanPage(partitionNo, PARTITIONS, 0, "node-a", today, 3, 100)).isNull();
+        reminders.completePartition(partitionNo, "node-a");
+        assertThat(jdbc.queryForObject("select lease_owner from reminder_partitions where partition_no = ?",
+                String.class, partitionNo)).isEqualTo("node-b");
+        assertThat(reminders.claimPartition(partitionNo, "node-a", 0)).isFalse();
+
+        reminders.completePartition(partitionNo, "node-b");
+        assertThat(count("select count(*) from reminder_outbox")).isEqualTo(FOLLOWERS);
+        assertThat(reminders.dispatchBatch(FOLLOWERS * 2)).isEqualTo(FOLLOWERS);
+        assertThat(sender.sends.values()).allSatisfy(sends -> assertThat(sends.get()).isEqualTo(1));
+    }
+
+    @Test
+    void completedPartitionIsNotClaimedAgainWithinTheScanInterval() {
+        int partitionNo = partitionOfDate();
+        assertThat(reminders.claimPartition(partitionNo, "node-a", 60_000)).isTrue();
+        reminders.completePartition(partitionNo, "node-a");
+
+        assertThat(reminders.claimPartition(partitionNo, "node-b", 60_000)).isFalse();
+        assertThat(reminders.claimPartition(partitionNo, "node-a", 60_000)).isFalse();
+    }
+
+    private void scanAll(String owner) {
+        for (int partitionNo = 0; partitionNo < PARTITIONS; partitionNo++) {
+            if (!reminders.claimPartition(partitionNo, owner, 0)) {
+                continue;
+            }
+            long afterId = 0;
+            ReminderService.ScanResult page;
+            while ((page = reminders.scanPage(partitionNo, PARTITIONS, afterId, owner, today, 3, 100)) != null) {
+                afterId = page.lastId();
+            }
+            reminders.completePartition(partitionNo, owner);
+        }
+    }
+
+    private int partitionOfDate() {
+        return (int) (dateId % PARTITIONS);
+    }
+
+    private long insertUser(String username) {
+        jdbc.update("insert into users (username, email, password) values (?, ?, ?)",
+                username, username + "@example.com", "x");
+        return jdbc.queryForObject("select id from users where username = ?", Long.class, username);
+    }
+
+    private long insertDate(long userId, LocalDate date) {
+        jdbc.update("insert into important_dates (user_id, title, date, month_day) values (?, ?, ?, ?)",
+                userId, "Birthday", Timestamp.from(date.atStartOfDay(ZoneOffset.UTC).toInstant()),
+                date.getMonthValue() * 100 + date.getDayOfMonth());
+        return jdbc.queryForObject("select max(id) from important_dates where user_id = ?", Long.class, userId);
+    }
+
+    private int count(String sql) {
+        return jdbc.queryForObject(sql, Integer.class);
+    }
+}